@@ -3,6 +3,7 @@ plugins {
     id("com.gradleup.shadow") version "8.3.9"
     id("io.micronaut.test-resources") version "4.6.1"
     id("io.micronaut.aot") version "4.6.1"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 version = "0.1"
@@ -18,20 +19,23 @@ dependencies {
     annotationProcessor("io.micronaut:micronaut-http-validation")
     annotationProcessor("io.micronaut.openapi:micronaut-openapi")
     annotationProcessor("io.micronaut.serde:micronaut-serde-processor")
-    implementation("io.micronaut:micronaut-jackson-databind")
+    implementation("io.micronaut:micronaut-http-client")
+    implementation("io.micronaut:micronaut-management")
     implementation("io.micronaut.cache:micronaut-cache-caffeine")
     implementation("io.micronaut.data:micronaut-data-mongodb")
+    implementation("io.micronaut.micrometer:micronaut-micrometer-core")
     implementation("io.micronaut.mongodb:micronaut-mongo-sync")
+    implementation("io.micronaut.reactor:micronaut-reactor")
     implementation("io.micronaut.redis:micronaut-redis-lettuce")
     implementation("io.micronaut.serde:micronaut-serde-jackson")
     implementation("jakarta.annotation:jakarta.annotation-api")
-    compileOnly("io.micronaut:micronaut-http-client")
+    implementation("org.mongodb:mongodb-driver-sync")
     compileOnly("io.micronaut.openapi:micronaut-openapi-annotations")
     compileOnly("org.projectlombok:lombok")
     runtimeOnly("ch.qos.logback:logback-classic")
-    runtimeOnly("org.mongodb:mongodb-driver-sync")
     runtimeOnly("org.yaml:snakeyaml")
-    testImplementation("io.micronaut:micronaut-http-client")
+    testImplementation("org.hdrhistogram:HdrHistogram:2.2.2")
+    testImplementation("org.junit.jupiter:junit-jupiter-params")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
@@ -45,7 +49,98 @@ java {
 }
 
 
-graalvmNative.toolchainDetection = false
+graalvmNative {
+    toolchainDetection = false
+    // Lettuce, Netty, the Mongo driver and Caffeine's generated cache classes are covered by
+    // the GraalVM reachability metadata repository; what it misses has to be recorded by
+    // scripts/native-image.sh metadata into src/main/resources/META-INF/native-image, see
+    // requireNativeMetadata.
+    metadataRepository {
+        enabled = true
+    }
+    // ./gradlew -Pagent test metadataCopy records what the JVM tests reach, the stand-ins
+    // included, for the nativeTest binary.
+    agent {
+        defaultMode = "standard"
+        metadataCopy {
+            inputTaskNames.add("test")
+            outputDirectories.add("src/test/resources/META-INF/native-image/io.carloship.jouwblog/jouwblog-test")
+            mergeWithExisting = true
+        }
+    }
+    binaries {
+        named("main") {
+            imageName = "jouwblog"
+            buildArgs.addAll(
+                "-march=compatibility",
+                "-H:+ReportExceptionStackTraces",
+            )
+        }
+    }
+}
+
+// No agent-recorded metadata is checked in yet, so the native build is not supported: native
+// compilation stops here instead of producing an image whose reflection and proxies nobody
+// has traced. Run scripts/native-image.sh metadata under GraalVM and commit its output first.
+val requireNativeMetadata by tasks.registering {
+    description = "Fails unless native-image metadata recorded by the tracing agent is checked in."
+    group = "verification"
+    val metadata = layout.projectDirectory.dir("src/main/resources/META-INF/native-image/io.carloship.jouwblog/jouwblog")
+    doLast {
+        val recorded = listOf("reachability-metadata.json", "reflect-config.json").any { metadata.file(it).asFile.exists() }
+        if (!recorded) {
+            throw GradleException("No agent-recorded native-image metadata in ${metadata.asFile}; run scripts/native-image.sh metadata under GraalVM first.")
+        }
+    }
+}
+
+tasks.matching { it.name in setOf("nativeCompile", "nativeOptimizedCompile", "nativeTestCompile") }.configureEach {
+    dependsOn(requireNativeMetadata)
+}
+
+// Fails when the AOT-optimized native executable starts, answers its first request or peaks
+// in RSS over budget. Needs the Redis and Mongo of application.yml.
+val nativeBudgetCheck by tasks.registering(Exec::class) {
+    description = "Checks startup time, time to first request and RSS of the native executable against budgets."
+    group = "verification"
+    // The test suite runs as a native binary first, so a path missing from the metadata fails
+    // there instead of at runtime.
+    dependsOn("nativeTest", "nativeOptimizedCompile")
+    val executable = layout.buildDirectory.file("native/nativeOptimizedCompile/jouwblog")
+    commandLine("scripts/native-image.sh", "budget", executable.get().asFile.path)
+    environment("STARTUP_BUDGET_MS", providers.gradleProperty("native.startupBudgetMs").get())
+    environment("FIRST_REQUEST_BUDGET_MS", providers.gradleProperty("native.firstRequestBudgetMs").get())
+    environment("RSS_BUDGET_MB", providers.gradleProperty("native.rssBudgetMb").get())
+}
+
+val gitCommit = providers.exec {
+    commandLine("git", "rev-parse", "--short", "HEAD")
+    isIgnoreExitValue = true
+}.standardOutput.asText.map { it.trim().ifEmpty { "unknown" } }
+
+jmh {
+    warmupIterations = 3
+    iterations = 5
+    fork = 1
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    // A fixed heap and collector, so numbers from different commits are comparable.
+    jvmArgs = listOf("-Xms2g", "-Xmx2g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch")
+    // ./gradlew jmh -PjmhIncludes=PostCache
+    includes = providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(listOf())
+}
+
+// Keeps every run under benchmarks/<commit>.json, ready to diff against another commit. The
+// directory is git-ignored and survives ./gradlew clean, unlike build/.
+val jmhArchive by tasks.registering(Copy::class) {
+    from(jmh.resultsFile)
+    into(layout.projectDirectory.dir("benchmarks"))
+    rename { "${gitCommit.get()}.json" }
+}
+
+tasks.named("jmh") {
+    finalizedBy(jmhArchive)
+}
 
 micronaut {
     runtime("netty")
@@ -57,8 +152,8 @@ micronaut {
     aot {
         // Please review carefully the optimizations enabled below
         // Check https://micronaut-projects.github.io/micronaut-aot/latest/guide/ for more details
-        optimizeServiceLoading = false
-        convertYamlToJava = false
+        optimizeServiceLoading = true
+        convertYamlToJava = true
         precomputeOperations = true
         cacheEnvironment = true
         optimizeClassLoading = true
@@ -69,6 +164,46 @@ micronaut {
 }
 
 
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("load")
+    }
+}
+
+// Drives the API against the in-memory Redis and Mongo stand-ins, see BlogLoadTest.
+// ./gradlew loadTest -Pload.duration=60s -Pload.clients=128
+val loadTest by tasks.registering(Test::class) {
+    description = "Runs the load generator against in-memory Redis and Mongo stand-ins."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("load")
+    }
+    maxHeapSize = "2g"
+    outputs.upToDateWhen { false }
+    testLogging.showStandardStreams = true
+    systemProperties(project.properties.filterKeys { it.startsWith("load.") })
+}
+
+// Command-line tools run against a deployment. They use the application classes but are not
+// part of its jar or native image.
+val tools by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+}
+
+// Writes src/main/resources/compression/post-text.dict from a sample of the posts in Mongo.
+// ./gradlew trainPostDictionary -Pdictionary.uri=mongodb://localhost:27017/jouwBlog
+val trainPostDictionary by tasks.registering(JavaExec::class) {
+    description = "Trains the post body compression dictionary on the posts in Mongo."
+    group = "application"
+    classpath = tools.runtimeClasspath
+    mainClass = "io.carloship.jouwblog.tools.TrainPostDictionary"
+    workingDir = projectDir
+    systemProperties(project.properties.filterKeys { it.startsWith("dictionary.") })
+}
+
 tasks.named<io.micronaut.gradle.docker.NativeImageDockerfile>("dockerfileNative") {
     jdkVersion = "25"
 }
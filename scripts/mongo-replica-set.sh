@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+#
+# A local three-member replica set of plain mongod processes, for trying
+# jouwblog.mongo.secondary-reads against real secondaries.
+#
+#   start  Starts members on BASE_PORT (default 27018) and the next two ports and initiates
+#          the set REPLICA_SET (default rs0). Point mongodb.uri at the same members, for
+#          example mongodb://localhost:27018,localhost:27019,localhost:27020/jouwBlog?replicaSet=rs0
+#   lag    Prints how far each secondary's last applied write is behind the primary.
+#   stop   Shuts the members down and removes their data.
+#
+# Then run the application with JOUWBLOG_MONGO_SECONDARY_READS_ENABLED=true.
+set -euo pipefail
+
+BASE_PORT=${BASE_PORT:-27018}
+REPLICA_SET=${REPLICA_SET:-rs0}
+DATA_DIR=${DATA_DIR:-build/mongo-replica-set}
+
+ports() { seq "$BASE_PORT" $((BASE_PORT + 2)); }
+
+start() {
+  local port members=() id=0
+  for port in $(ports); do
+    mkdir -p "$DATA_DIR/$port"
+    mongod --replSet "$REPLICA_SET" --port "$port" --bind_ip localhost --dbpath "$DATA_DIR/$port" \
+      --logpath "$DATA_DIR/$port/mongod.log" --fork >/dev/null
+    members+=("{_id: $id, host: 'localhost:$port'}")
+    id=$((id + 1))
+  done
+
+  mongosh --quiet --port "$BASE_PORT" --eval \
+    "rs.initiate({_id: '$REPLICA_SET', members: [$(IFS=,; echo "${members[*]}")]})"
+  until mongosh --quiet --port "$BASE_PORT" --eval 'db.hello().isWritablePrimary' | grep -q true; do
+    sleep 0.5
+  done
+  mongosh --quiet --port "$BASE_PORT" --eval \
+    'rs.status().members.forEach(m => print(m.name + " " + m.stateStr))'
+}
+
+lag() {
+  mongosh --quiet --port "$BASE_PORT" --eval 'rs.printSecondaryReplicationInfo()'
+}
+
+stop() {
+  local port
+  for port in $(ports); do
+    mongosh --quiet --port "$port" --eval 'db.getSiblingDB("admin").shutdownServer({force: true})' \
+      >/dev/null 2>&1 || true
+  done
+  rm -rf "$DATA_DIR"
+}
+
+case "${1:-}" in
+  start) start ;;
+  lag) lag ;;
+  stop) stop ;;
+  *) echo "usage: $0 start|lag|stop" >&2; exit 2 ;;
+esac
@@ -0,0 +1,118 @@
+#!/usr/bin/env bash
+#
+# Native-image helpers. Both commands expect the Redis and Mongo of application.yml to be up.
+#
+#   metadata  Runs the shadow jar under the GraalVM tracing agent, drives every endpoint and
+#             merges the reflection/resource/proxy config it records into src/main/resources.
+#             Then runs the JVM tests under the agent for the nativeTest metadata in
+#             src/test/resources.
+#   budget    Starts a native executable and fails when startup time, time to first request
+#             or peak RSS exceed their budgets (STARTUP_BUDGET_MS, FIRST_REQUEST_BUDGET_MS,
+#             RSS_BUDGET_MB).
+#
+# Linux only: timings use date +%s%N and peak RSS comes from /proc.
+set -euo pipefail
+
+PORT=${PORT:-18080}
+BASE="http://localhost:$PORT"
+METADATA_DIR=src/main/resources/META-INF/native-image/io.carloship.jouwblog/jouwblog
+
+now_ms() { echo $(( $(date +%s%N) / 1000000 )); }
+
+# Waits until the server answers any request, or fails after 60s.
+await_server() {
+  local pid=$1 log=$2 deadline=$(( $(now_ms) + 60000 ))
+  until curl -s -o /dev/null "$BASE/user/000000000000000000000000"; do
+    if ! kill -0 "$pid" 2>/dev/null; then cat "$log"; echo "server exited before answering" >&2; exit 1; fi
+    if (( $(now_ms) > deadline )); then cat "$log"; echo "server did not answer within 60s" >&2; exit 1; fi
+    sleep 0.002
+  done
+}
+
+# Creates, reads, patches and deletes users and posts, so every Lettuce, Mongo and serde path runs.
+exercise() {
+  local rounds=$1 json user post
+  for ((i = 0; i < rounds; i++)); do
+    json=$(curl -sf -H 'Content-Type: application/json' \
+      -d "{\"username\":\"native$i$RANDOM\",\"name\":\"Native $i\",\"email\":\"native$i@example.com\"}" "$BASE/user/")
+    user=$(sed -E 's/.*"id":"([^"]+)".*/\1/' <<<"$json")
+    json=$(curl -sf -H 'Content-Type: application/json' \
+      -d "{\"userId\":\"$user\",\"title\":\"Post $i\",\"text\":\"native image post $i\"}" "$BASE/posts/")
+    post=$(sed -E 's/.*"postId":"([^"]+)".*/\1/' <<<"$json")
+
+    curl -sf -o /dev/null "$BASE/user/$user"
+    curl -sf -o /dev/null -H 'Accept-Encoding: gzip' "$BASE/posts/single/$user/$post"
+    curl -sf -o /dev/null "$BASE/posts/all/$user/10/1?expand=author"
+    curl -sf -o /dev/null "$BASE/posts/batch" -H 'Content-Type: application/json' -d "[{\"userId\":\"$user\",\"postId\":\"$post\"}]"
+    curl -sf -o /dev/null "$BASE/posts/search?q=native"
+    curl -sf -o /dev/null "$BASE/posts/stream/$user"
+    curl -sf -o /dev/null "$BASE/user/suggest?prefix=nat"
+    curl -sf -o /dev/null "$BASE/user/batch?ids=$user"
+    curl -sf -o /dev/null -X PATCH -H 'Content-Type: application/json' -d '{"likesDelta":1,"title":"Edited"}' "$BASE/posts/$user/$post"
+    curl -sf -o /dev/null -X PATCH -H 'Content-Type: application/json' -d '{"name":"Edited"}' "$BASE/user/$user"
+    curl -sf -o /dev/null -X DELETE "$BASE/posts/$user/$post"
+    curl -sf -o /dev/null -X DELETE "$BASE/user/$user"
+  done
+  curl -sf -o /dev/null "$BASE/metrics"
+}
+
+metadata() {
+  local java="${GRAALVM_HOME:-${JAVA_HOME:?set GRAALVM_HOME or JAVA_HOME to a GraalVM JDK}}/bin/java"
+  local log pid
+  ./gradlew -q shadowJar
+  log=$(mktemp)
+  "$java" -agentlib:native-image-agent=config-merge-dir="$METADATA_DIR" \
+    -Dmicronaut.server.port="$PORT" -jar build/libs/JouwBlog-0.1-all.jar >"$log" 2>&1 &
+  pid=$!
+  trap 'kill "$pid" 2>/dev/null || true; rm -f "$log"' EXIT
+
+  await_server "$pid" "$log"
+  exercise 3
+  # The agent writes its configuration on a normal shutdown.
+  kill -TERM "$pid"
+  wait "$pid" || true
+  echo "Merged agent output into $METADATA_DIR"
+
+  ./gradlew -q -Pagent test metadataCopy
+  echo "Merged test agent output into src/test/resources/META-INF/native-image"
+}
+
+budget() {
+  local binary=${1:?usage: native-image.sh budget <native executable>}
+  local startup_budget=${STARTUP_BUDGET_MS:-250} first_request_budget=${FIRST_REQUEST_BUDGET_MS:-400} rss_budget=${RSS_BUDGET_MB:-192}
+  local log pid start startup first_request rss_mb failed=0
+
+  log=$(mktemp)
+  start=$(now_ms)
+  "$binary" -Dmicronaut.server.port="$PORT" >"$log" 2>&1 &
+  pid=$!
+  trap 'kill "$pid" 2>/dev/null || true; rm -f "$log"' EXIT
+
+  await_server "$pid" "$log"
+  first_request=$(( $(now_ms) - start ))
+  startup=$(grep -oE 'Startup completed in [0-9]+ms' "$log" | grep -oE '[0-9]+' | head -1)
+
+  # Peak RSS after a short burst, so the caches and connection pools have been touched.
+  exercise 50
+  rss_mb=$(( $(awk '/VmHWM/ {print $2}' "/proc/$pid/status") / 1024 ))
+
+  check() {
+    local name=$1 value=$2 budget=$3 unit=$4
+    if (( value > budget )); then
+      printf '%-20s %6d %s  OVER budget of %d %s\n' "$name" "$value" "$unit" "$budget" "$unit"
+      failed=1
+    else
+      printf '%-20s %6d %s  (budget %d %s)\n' "$name" "$value" "$unit" "$budget" "$unit"
+    fi
+  }
+  check "startup" "${startup:?no startup line in the log}" "$startup_budget" ms
+  check "time to first request" "$first_request" "$first_request_budget" ms
+  check "peak RSS" "$rss_mb" "$rss_budget" MiB
+  return $failed
+}
+
+case "${1:-}" in
+  metadata) metadata ;;
+  budget) shift; budget "$@" ;;
+  *) echo "usage: $0 metadata | budget <native executable>" >&2; exit 2 ;;
+esac
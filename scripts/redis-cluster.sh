@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+#
+# A local Redis Cluster of plain redis-server processes, for running the application with
+# jouwblog.redis.cluster.enabled.
+#
+#   start  Starts NODES nodes (default 6) from port BASE_PORT (default 7000) and joins them
+#          into a cluster with REPLICAS replicas per primary (default 1).
+#   stop   Shuts the nodes down and removes their data.
+#   slots  Prints the slots of a user's keys and of a post's comment keys. Each group must
+#          share one slot.
+#
+# Then run the application with:
+#   JOUWBLOG_REDIS_CLUSTER_ENABLED=true \
+#   JOUWBLOG_REDIS_CLUSTER_URIS=redis://127.0.0.1:7000,redis://127.0.0.1:7001 ./gradlew run
+set -euo pipefail
+
+NODES=${NODES:-6}
+BASE_PORT=${BASE_PORT:-7000}
+REPLICAS=${REPLICAS:-1}
+DATA_DIR=${DATA_DIR:-build/redis-cluster}
+
+ports() { seq "$BASE_PORT" $((BASE_PORT + NODES - 1)); }
+
+start() {
+  local port addresses=()
+  for port in $(ports); do
+    mkdir -p "$DATA_DIR/$port"
+    redis-server --port "$port" --dir "$DATA_DIR/$port" --daemonize yes \
+      --cluster-enabled yes --cluster-config-file nodes.conf --cluster-node-timeout 5000 \
+      --appendonly no --save '' --logfile redis.log
+    addresses+=("127.0.0.1:$port")
+  done
+
+  for port in $(ports); do
+    until redis-cli -p "$port" ping >/dev/null 2>&1; do sleep 0.1; done
+  done
+  redis-cli --cluster create "${addresses[@]}" --cluster-replicas "$REPLICAS" --cluster-yes
+  redis-cli --cluster check "127.0.0.1:$BASE_PORT"
+}
+
+stop() {
+  local port
+  for port in $(ports); do
+    redis-cli -p "$port" shutdown nosave >/dev/null 2>&1 || true
+  done
+  rm -rf "$DATA_DIR"
+}
+
+slots() {
+  local user=${1:-000000000000000000000001} post=${2:-000000000000000000000002} key
+  for key in "user:{$user}" "user_posts:{$user}" "post:{$user}:$post" \
+             "post_comments:{$post}" "comments:{$post}:000000000000000000000003"; do
+    echo "$(redis-cli -p "$BASE_PORT" cluster keyslot "$key") $key"
+  done
+}
+
+case "${1:-}" in
+  start) start ;;
+  stop) stop ;;
+  slots) shift; slots "$@" ;;
+  *) echo "usage: $0 start|stop|slots [userId postId]" >&2; exit 2 ;;
+esac
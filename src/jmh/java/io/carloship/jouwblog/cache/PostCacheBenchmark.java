@@ -0,0 +1,80 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.carloship.jouwblog.response.Post;
+import org.jspecify.annotations.NonNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PostCache} under a mixed load: one thread writing posts of a handful of users while
+ * three threads read those users' post lists. Writes copy the per-user
+ * {@code CopyOnWriteArrayList}, so the cost grows with {@code postsPerUser}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostCacheBenchmark {
+
+    private static final int USERS = 16;
+
+    @Param({"100", "1000"})
+    int postsPerUser;
+
+    private PostCache cache;
+    private Post[] posts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = new PostCache(new DiscardingRedisRepository(), new OwnerAffinity(), new PostBodyCompression());
+        posts = new Post[USERS * postsPerUser];
+        for (int i = 0; i < posts.length; i++) {
+            posts[i] = new Post("post-" + i, "user-" + (i % USERS), "Title " + i, i, i, "text " + i, 0, 0);
+            cache.addPost(posts[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void addPost(Cursor cursor) {
+        cache.addPost(posts[cursor.next++ % posts.length]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public List<Post> getUserPosts(Cursor cursor) {
+        return cache.getUserPosts("user-" + (cursor.next++ % USERS));
+    }
+
+    /**
+     * Re-adding a cached post replaces it, which the cache reports as a removal and writes
+     * back to Redis; this stub keeps that write out of the measurement.
+     */
+    static class DiscardingRedisRepository extends PostRedisRepository {
+
+        @Override
+        public CompletableFuture<Boolean> savePost(@NonNull Post post) {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.common.HttpCaching;
+import io.carloship.jouwblog.response.Post;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.serde.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of building the body of a hot {@code GET /posts/single} response: serializing
+ * the cached {@link Post} on every request versus serving the pre-encoded bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class ResponseBytesCacheBenchmark {
+
+    @Param({"512", "16384"})
+    int textLength;
+
+    private ObjectMapper mapper;
+    private ResponseBytesCache cache;
+    private Post post;
+    private String etag;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mapper = ObjectMapper.getDefault();
+        post = new Post("post-1", "user-1", "A hot post", 1L, 2L, "x".repeat(textLength), 10, 2);
+        etag = HttpCaching.etag(post);
+
+        cache = new ResponseBytesCache();
+        cache.enabled = true;
+        cache.maxBytes = 64L * 1024 * 1024;
+        cache.gzip = true;
+        cache.gzipMinBytes = 1024;
+        cache.jsonMapper = mapper;
+        cache.init();
+        cache.okPost(post.getPostId(), etag, post, "gzip");
+    }
+
+    @Benchmark
+    public byte[] serializeEveryRequest() throws IOException {
+        return mapper.writeValueAsBytes(post);
+    }
+
+    @Benchmark
+    public MutableHttpResponse<?> cachedBytes() {
+        return cache.okPost(post.getPostId(), etag, post, null);
+    }
+
+    @Benchmark
+    public MutableHttpResponse<?> cachedGzipBytes() {
+        return cache.okPost(post.getPostId(), etag, post, "gzip, deflate");
+    }
+}
@@ -0,0 +1,79 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.repository.UserRedisRepository;
+import io.carloship.jouwblog.response.User;
+import org.jspecify.annotations.NonNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserCache#updateUser} with an unchanged username and with a rename, which also has
+ * to drop the old username entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class UserCacheBenchmark {
+
+    private static final int USERS = 10_000;
+
+    private UserCache cache;
+    private User[] users;
+    private User[] renamed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = new UserCache(new DiscardingRedisRepository(), new OwnerAffinity());
+        users = new User[USERS];
+        renamed = new User[USERS];
+        for (int i = 0; i < USERS; i++) {
+            users[i] = new User("user-" + i, "name" + i, "Name " + i, i + "@example.com");
+            renamed[i] = new User("user-" + i, "renamed" + i, "Name " + i, i + "@example.com");
+            cache.addUser(users[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public void updateSameUsername(Cursor cursor) {
+        cache.updateUser(users[cursor.next++ % USERS]);
+    }
+
+    @Benchmark
+    public void updateRenamed(Cursor cursor) {
+        int n = cursor.next;
+        cursor.next = (n + 1) % (2 * USERS);
+        // Each pass over the users flips every username, so every call is a rename.
+        cache.updateUser(((n / USERS) & 1) == 0 ? renamed[n % USERS] : users[n % USERS]);
+    }
+
+    /**
+     * See {@link PostCacheBenchmark.DiscardingRedisRepository}.
+     */
+    static class DiscardingRedisRepository extends UserRedisRepository {
+
+        DiscardingRedisRepository() {
+            super(null, null, null);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> saveUser(@NonNull User user) {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+}
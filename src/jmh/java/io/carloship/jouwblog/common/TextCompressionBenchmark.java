@@ -0,0 +1,112 @@
+package io.carloship.jouwblog.common;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deflate and inflate cost of post bodies with and without a trained dictionary. The
+ * {@code rawBytes} and {@code compressedBytes} counters of {@code deflate} give the ratio.
+ * The corpus is synthetic prose sharing a vocabulary and stock phrases, which is what a
+ * dictionary trained on real posts picks up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextCompressionBenchmark {
+
+    private static final String[] WORDS = ("the of and to a in is that for it as with was on be by this are or "
+            + "from at an but not have has which you we they their more can will about when one all there "
+            + "blog post posts write writing read reader readers today week year story code java service "
+            + "cache redis mongo latency request server client performance memory thread query index").split(" ");
+    private static final String[] PHRASES = {
+            "Thanks for reading, and see you in the next post. ",
+            "If you have any questions, leave a comment below. ",
+            "In this post we will take a closer look at ",
+            "As always, the full source code is available on GitHub. ",
+            "Let me know what you think in the comments. ",
+    };
+    private static final int CORPUS = 256;
+
+    @Param({"1024", "4096"})
+    int textLength;
+
+    @Param({"false", "true"})
+    boolean dictionary;
+
+    private TextCompression codec;
+    private List<String> texts;
+    private List<byte[]> compressed;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Sizes {
+        public long rawBytes;
+        public long compressedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        List<String> training = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            training.add(text(random, textLength));
+        }
+        codec = new TextCompression(dictionary
+                ? DictionaryTrainer.train(training, DictionaryTrainer.DEFAULT_SIZE)
+                : new byte[0]);
+
+        texts = new ArrayList<>(CORPUS);
+        compressed = new ArrayList<>(CORPUS);
+        for (int i = 0; i < CORPUS; i++) {
+            String text = text(random, textLength);
+            texts.add(text);
+            compressed.add(codec.deflate(text, 1));
+        }
+    }
+
+    private static String text(SplittableRandom random, int length) {
+        var text = new StringBuilder(length + 64);
+        while (text.length() < length) {
+            if (random.nextInt(8) == 0) {
+                text.append(PHRASES[random.nextInt(PHRASES.length)]);
+                continue;
+            }
+            int words = 6 + random.nextInt(12);
+            for (int i = 0; i < words; i++) {
+                // Squaring skews the picks towards the common words at the front.
+                double skew = random.nextDouble();
+                text.append(WORDS[(int) (skew * skew * WORDS.length)]).append(i == words - 1 ? ". " : " ");
+            }
+        }
+        return text.toString();
+    }
+
+    @Benchmark
+    public byte[] deflate(Sizes sizes) {
+        String text = texts.get(next++ & (CORPUS - 1));
+        byte[] bytes = codec.deflate(text, 1);
+        sizes.rawBytes += text.getBytes(StandardCharsets.UTF_8).length;
+        sizes.compressedBytes += bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public String inflate() {
+        return codec.inflate(compressed.get(next++ & (CORPUS - 1)));
+    }
+}
@@ -0,0 +1,75 @@
+package io.carloship.jouwblog.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Utils#getPage} over the list shapes it is called with: the {@code ArrayList} built
+ * from a Redis or Mongo read and the {@code CopyOnWriteArrayList} of cached post ids.
+ * The page is consumed so the cost of walking the sub-list view is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilsBenchmark {
+
+    @Param({"100", "10000"})
+    int listSize;
+
+    @Param({"20"})
+    int pageSize;
+
+    private List<String> arrayList;
+    private List<String> copyOnWriteList;
+    private int pages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        arrayList = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            arrayList.add("post-" + i);
+        }
+        copyOnWriteList = new CopyOnWriteArrayList<>(arrayList);
+        pages = Math.max(1, listSize / pageSize);
+    }
+
+    @Benchmark
+    public void arrayListPage(Blackhole blackhole) {
+        consume(Utils.getPage(arrayList, nextPage(), pageSize), blackhole);
+    }
+
+    @Benchmark
+    public void copyOnWriteListPage(Blackhole blackhole) {
+        consume(Utils.getPage(copyOnWriteList, nextPage(), pageSize), blackhole);
+    }
+
+    @Benchmark
+    public List<String> pastTheEnd() {
+        return Utils.getPage(arrayList, pages + 1, pageSize);
+    }
+
+    private int nextPage() {
+        int page = next++ % pages;
+        return page + 1;
+    }
+
+    private static void consume(List<String> page, Blackhole blackhole) {
+        for (String id : page) {
+            blackhole.consume(id);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.carloship.jouwblog.response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the Redis hash mapping every L2 read and write goes through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappedResponseBenchmark {
+
+    private Post post;
+    private User user;
+    private Comment comment;
+    private Map<String, String> postHash;
+    private Map<String, String> userHash;
+    private Map<String, String> commentHash;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        post = new Post("665f1c2e9b1d4a3f8c0e7b21", "665f1c2e9b1d4a3f8c0e7b20", "A post title",
+                1_717_000_000_000L, 1_717_000_500_000L, "x".repeat(512), 42, 7);
+        user = new User("665f1c2e9b1d4a3f8c0e7b20", "carlo", "Carlo Ship", "carlo@example.com");
+        comment = new Comment("665f1c2e9b1d4a3f8c0e7b22", post.getPostId(), user.getId(), "Nice post", 3);
+
+        postHash = post.toMap();
+        userHash = user.toMap();
+        commentHash = comment.toMap();
+    }
+
+    @Benchmark
+    public Map<String, String> postToMap() {
+        return post.toMap();
+    }
+
+    @Benchmark
+    public Post postFromMap() {
+        return post.fromMap(postHash);
+    }
+
+    @Benchmark
+    public Map<String, String> userToMap() {
+        return user.toMap();
+    }
+
+    @Benchmark
+    public User userFromMap() {
+        return user.fromMap(userHash);
+    }
+
+    @Benchmark
+    public Map<String, String> commentToMap() {
+        return comment.toMap();
+    }
+
+    @Benchmark
+    public Comment commentFromMap() {
+        return comment.fromMap(commentHash);
+    }
+}
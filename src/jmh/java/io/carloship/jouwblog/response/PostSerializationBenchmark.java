@@ -0,0 +1,59 @@
+package io.carloship.jouwblog.response;
+
+import io.micronaut.serde.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the post listings returned by {@code GET /posts/all} and {@code /posts/batch}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostSerializationBenchmark {
+
+    @Param({"10", "100"})
+    int posts;
+
+    @Param({"256", "4096"})
+    int textLength;
+
+    private ObjectMapper mapper;
+    private List<Post> page;
+    private List<PostView> views;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mapper = ObjectMapper.getDefault();
+        page = new ArrayList<>(posts);
+        views = new ArrayList<>(posts);
+        var author = new User("user-1", "carlo", "Carlo Ship", "carlo@example.com");
+        for (int i = 0; i < posts; i++) {
+            var post = new Post("post-" + i, "user-1", "Title " + i, i, i + 1, "x".repeat(textLength), i, i % 5);
+            page.add(post);
+            views.add(new PostView(post, author));
+        }
+    }
+
+    @Benchmark
+    public byte[] posts() throws IOException {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] viewsWithAuthor() throws IOException {
+        return mapper.writeValueAsBytes(views);
+    }
+}
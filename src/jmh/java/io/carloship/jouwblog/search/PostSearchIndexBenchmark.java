@@ -0,0 +1,85 @@
+package io.carloship.jouwblog.search;
+
+import io.carloship.jouwblog.response.Post;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of {@link PostSearchIndex} over a synthetic corpus whose vocabulary follows
+ * a Zipf-like distribution, so common terms produce long posting lists like real posts do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostSearchIndexBenchmark {
+
+    private static final int VOCABULARY = 50_000;
+
+    @Param({"100000", "1000000"})
+    int posts;
+
+    @Param({"10"})
+    int limit;
+
+    private PostSearchIndex index;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        index = new PostSearchIndex();
+
+        for (int i = 0; i < posts; i++) {
+            index.index(new Post(
+                    "post-" + i,
+                    "user-" + (i % 10_000),
+                    words(random, 6),
+                    0L,
+                    0L,
+                    words(random, 80),
+                    0,
+                    0
+            ));
+        }
+
+        queries = new String[1024];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = words(random, 1 + random.nextInt(3));
+        }
+    }
+
+    @Benchmark
+    public List<SearchHit> search() {
+        return index.search(queries[next++ & (queries.length - 1)], limit);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<SearchHit> searchConcurrent() {
+        return index.search(queries[(int) (Thread.currentThread().threadId() + System.nanoTime()) & (queries.length - 1)], limit);
+    }
+
+    private static String words(SplittableRandom random, int count) {
+        var builder = new StringBuilder(count * 8);
+        for (int i = 0; i < count; i++) {
+            // Squaring a uniform sample skews the rank towards frequent terms.
+            double u = random.nextDouble();
+            int rank = (int) (u * u * VOCABULARY);
+            builder.append('w').append(Integer.toString(rank, 36)).append(' ');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package io.carloship.jouwblog.search;
+
+import io.carloship.jouwblog.response.User;
+import io.carloship.jouwblog.response.UserSuggestion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UsernamePrefixIndexBenchmark {
+
+    @Param({"1000000"})
+    int users;
+
+    @Param({"10"})
+    int limit;
+
+    private UsernamePrefixIndex index;
+    private String[] prefixes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        index = new UsernamePrefixIndex();
+
+        for (int i = 0; i < users; i++) {
+            index.put(new User("id-" + i, username(random), "Name " + i, i + "@example.com"));
+        }
+
+        prefixes = new String[1024];
+        for (int i = 0; i < prefixes.length; i++) {
+            String username = username(random);
+            prefixes[i] = username.substring(0, 1 + random.nextInt(3));
+        }
+    }
+
+    @Benchmark
+    public List<UserSuggestion> suggest() {
+        return index.suggest(prefixes[next++ & (prefixes.length - 1)], limit);
+    }
+
+    private static String username(SplittableRandom random) {
+        var builder = new StringBuilder(10);
+        int length = 4 + random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}
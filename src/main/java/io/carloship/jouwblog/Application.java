@@ -4,8 +4,6 @@ import io.micronaut.runtime.Micronaut;
 import io.swagger.v3.oas.annotations.*;
 import io.swagger.v3.oas.annotations.info.*;
 
-import java.time.Duration;
-
 @OpenAPIDefinition(
     info = @Info(
             title = "JouwBlog",
@@ -14,9 +12,12 @@ import java.time.Duration;
 )
 public class Application {
 
-    public static final Duration DEFAULT_REDIS_TIME = Duration.ofMinutes(30);
+    /**
+     * Executor the controllers run on, configured under {@code micronaut.executors.request-handling}.
+     */
+    public static final String REQUEST_EXECUTOR = "request-handling";
 
-    static void main(String[] args) {
+    public static void main(String[] args) {
         Micronaut.run(Application.class, args);
     }
 
@@ -0,0 +1,150 @@
+package io.carloship.jouwblog.backup;
+
+import io.carloship.jouwblog.repository.CommentRepository;
+import io.carloship.jouwblog.repository.PostRepository;
+import io.carloship.jouwblog.repository.UserRepository;
+import io.carloship.jouwblog.response.BackupSummary;
+import io.carloship.jouwblog.response.Comment;
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.User;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.serde.ObjectMapper;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Writes every user, post and comment to a backup file in the {@link BackupFormat}.
+ * <p>
+ * Each collection is read over one Mongo cursor and written in chunks as it streams in, so
+ * memory stays flat however large the data set is. The file is written under a temporary
+ * name and moved into place once complete, so a listed backup is always a whole one.
+ */
+@Slf4j
+@Singleton
+@Requires(property = BackupExporter.ENABLED, value = StringUtils.TRUE)
+public class BackupExporter {
+
+    static final String ENABLED = "jouwblog.backup.enabled";
+    static final String SUFFIX = ".jbb";
+    static final Pattern NAME = Pattern.compile("backup-\\d{8}T\\d{6}Z\\" + SUFFIX);
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${jouwblog.backup.path:data/backup}")
+    protected String path = "data/backup";
+
+    @Value("${jouwblog.backup.chunk-size:1048576}")
+    protected int chunkSize = 1 << 20;
+
+    @Inject
+    protected UserRepository userRepository;
+
+    @Inject
+    protected PostRepository postRepository;
+
+    @Inject
+    protected CommentRepository commentRepository;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    /**
+     * Runs an export on the IO executor. Only one export runs at a time.
+     */
+    public CompletableFuture<BackupSummary> export() {
+        if (!running.compareAndSet(false, true)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("An export is already running"));
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return exportNow();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                running.set(false);
+            }
+        }, ioExecutor);
+    }
+
+    /**
+     * @return the backup file called {@code name}, or {@code null} if there is none
+     */
+    public @Nullable Path resolve(@NonNull String name) {
+        if (!NAME.matcher(name).matches()) return null;
+
+        Path file = Path.of(path).resolve(name);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private BackupSummary exportNow() throws IOException {
+        long start = System.nanoTime();
+        Path directory = Files.createDirectories(Path.of(path));
+        String name = "backup-" + TIMESTAMP.format(Instant.now()) + SUFFIX;
+        Path target = directory.resolve(name);
+        Path temp = directory.resolve(name + ".tmp");
+
+        BackupSummary summary;
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             var writer = new BackupFormat.ChunkWriter(channel, chunkSize)) {
+            try (Stream<User> users = userRepository.queryByIdIsNotNull()) {
+                write(writer, BackupFormat.USERS, users);
+            }
+            try (Stream<Post> posts = postRepository.queryByPostIdIsNotNull()) {
+                write(writer, BackupFormat.POSTS, posts);
+            }
+            try (Stream<Comment> comments = commentRepository.queryByCommentIdIsNotNull()) {
+                write(writer, BackupFormat.COMMENTS, comments);
+            }
+            writer.finish();
+            channel.force(true);
+
+            summary = new BackupSummary(name, writer.count(BackupFormat.USERS), writer.count(BackupFormat.POSTS),
+                    writer.count(BackupFormat.COMMENTS), writer.bytesWritten(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Exported {} users, {} posts and {} comments to {} ({} KiB) in {} ms", summary.getUsers(),
+                summary.getPosts(), summary.getComments(), target, summary.getBytes() / 1024, summary.getMillis());
+        return summary;
+    }
+
+    private void write(BackupFormat.ChunkWriter writer, byte kind, Stream<?> entities) throws IOException {
+        var iterator = entities.iterator();
+        while (iterator.hasNext()) {
+            writer.add(kind, objectMapper.writeValueAsBytes(iterator.next()));
+        }
+    }
+}
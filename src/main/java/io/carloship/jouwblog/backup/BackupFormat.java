@@ -0,0 +1,249 @@
+package io.carloship.jouwblog.backup;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * File layout of a backup: an 8-byte header followed by chunks.
+ * <p>
+ * A chunk is a 17-byte header (kind, record count, raw length, stored length, CRC32C of the
+ * header fields before it and the stored bytes) and the stored bytes: the deflated records,
+ * each a 4-byte length and the entity's JSON. The last chunk is an {@link #END} chunk holding
+ * the record count of every kind, so a truncated file is told apart from a complete one.
+ */
+final class BackupFormat {
+
+    static final int MAGIC = 0x4A42424B; // "JBBK"
+    static final int VERSION = 1;
+    static final int FILE_HEADER = 8;
+    // kind (1), count (4), raw length (4), stored length (4), crc (4)
+    static final int CHUNK_HEADER = 17;
+    static final int CRC_OFFSET = 13;
+    // Far above any chunk the writer produces, so a corrupt length fails before allocating.
+    static final int MAX_CHUNK_BYTES = 256 << 20;
+
+    static final byte END = 0;
+    static final byte USERS = 1;
+    static final byte POSTS = 2;
+    static final byte COMMENTS = 3;
+
+    private BackupFormat() {
+    }
+
+    record Chunk(byte kind, int count, int rawLength, byte[] stored) {
+    }
+
+    /**
+     * Buffers records of one kind and writes them as a chunk once {@code chunkSize} raw bytes
+     * are buffered, so memory stays at about two chunks whatever the size of the export.
+     */
+    static final class ChunkWriter implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final int chunkSize;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER);
+        private final CRC32C crc = new CRC32C();
+        private final long[] counts = new long[COMMENTS + 1];
+        private byte[] raw;
+        private byte[] stored;
+        private int rawLength;
+        private int count;
+        private byte kind = END;
+        private long bytesWritten;
+
+        ChunkWriter(FileChannel channel, int chunkSize) throws IOException {
+            this.channel = channel;
+            this.chunkSize = chunkSize;
+            this.raw = new byte[chunkSize + (chunkSize >> 2)];
+            this.stored = new byte[raw.length];
+            write(ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putInt(VERSION).flip());
+        }
+
+        void add(byte recordKind, byte[] record) throws IOException {
+            if (recordKind != kind) flush();
+            kind = recordKind;
+
+            int needed = rawLength + 4 + record.length;
+            if (needed > raw.length) raw = Arrays.copyOf(raw, Math.max(needed, raw.length * 2));
+            raw[rawLength] = (byte) (record.length >>> 24);
+            raw[rawLength + 1] = (byte) (record.length >>> 16);
+            raw[rawLength + 2] = (byte) (record.length >>> 8);
+            raw[rawLength + 3] = (byte) record.length;
+            System.arraycopy(record, 0, raw, rawLength + 4, record.length);
+            rawLength = needed;
+            count++;
+            counts[kind]++;
+
+            if (rawLength >= chunkSize) flush();
+        }
+
+        long count(byte recordKind) {
+            return counts[recordKind];
+        }
+
+        long bytesWritten() {
+            return bytesWritten;
+        }
+
+        private void flush() throws IOException {
+            if (count == 0) return;
+
+            deflater.reset();
+            deflater.setInput(raw, 0, rawLength);
+            deflater.finish();
+            int storedLength = 0;
+            while (!deflater.finished()) {
+                if (storedLength == stored.length) stored = Arrays.copyOf(stored, stored.length * 2);
+                storedLength += deflater.deflate(stored, storedLength, stored.length - storedLength);
+            }
+            writeChunk(kind, count, rawLength, stored, storedLength);
+            rawLength = 0;
+            count = 0;
+        }
+
+        /**
+         * Flushes the last chunk and writes the {@link #END} chunk. Without it the file does
+         * not import.
+         */
+        void finish() throws IOException {
+            flush();
+            var end = ByteBuffer.allocate(3 * Long.BYTES)
+                    .putLong(counts[USERS]).putLong(counts[POSTS]).putLong(counts[COMMENTS]);
+            writeChunk(END, 0, end.capacity(), end.array(), end.capacity());
+        }
+
+        private void writeChunk(byte chunkKind, int chunkCount, int chunkRawLength, byte[] bytes, int length) throws IOException {
+            header.clear();
+            header.put(chunkKind).putInt(chunkCount).putInt(chunkRawLength).putInt(length);
+            crc.reset();
+            crc.update(header.array(), 0, CRC_OFFSET);
+            crc.update(bytes, 0, length);
+            header.putInt((int) crc.getValue()).flip();
+            write(header);
+            write(ByteBuffer.wrap(bytes, 0, length));
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            bytesWritten += buffer.remaining();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads chunks in file order and checks their checksums. Inflating is left to
+     * {@link #inflate}, so it can run on another thread.
+     */
+    static final class ChunkReader {
+
+        private final FileChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER);
+        private long[] endCounts;
+
+        ChunkReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            var fileHeader = ByteBuffer.allocate(FILE_HEADER);
+            readFully(fileHeader);
+            if (fileHeader.getInt(0) != MAGIC || fileHeader.getInt(4) != VERSION) {
+                throw new IOException("Not a version " + VERSION + " backup file");
+            }
+        }
+
+        /**
+         * @return the next chunk of records, or {@code null} after the {@link #END} chunk
+         */
+        @Nullable Chunk next() throws IOException {
+            if (endCounts != null) return null;
+
+            header.clear();
+            readFully(header);
+            byte kind = header.get(0);
+            int count = header.getInt(1);
+            int rawLength = header.getInt(5);
+            int length = header.getInt(9);
+            int expectedCrc = header.getInt(CRC_OFFSET);
+            // Checked before the CRC, which cannot be computed without reading the chunk first.
+            // Every record takes at least its 4-byte length, which bounds the record count.
+            if (kind < END || kind > COMMENTS || length < 0 || length > MAX_CHUNK_BYTES
+                    || rawLength < 0 || rawLength > MAX_CHUNK_BYTES || count < 0 || count > rawLength / 4
+                    || (kind == END && (length != 3 * Long.BYTES || count != 0))) {
+                throw new IOException("Corrupt chunk header at offset " + (channel.position() - CHUNK_HEADER));
+            }
+
+            byte[] bytes = new byte[length];
+            readFully(ByteBuffer.wrap(bytes));
+            var crc = new CRC32C();
+            crc.update(header.array(), 0, CRC_OFFSET);
+            crc.update(bytes);
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Checksum mismatch in chunk at offset " + (channel.position() - length - CHUNK_HEADER));
+            }
+
+            if (kind == END) {
+                var end = ByteBuffer.wrap(bytes);
+                endCounts = new long[]{0, end.getLong(), end.getLong(), end.getLong()};
+                return null;
+            }
+            return new Chunk(kind, count, rawLength, bytes);
+        }
+
+        long endCount(byte kind) {
+            return endCounts[kind];
+        }
+
+        private void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new EOFException("Backup file is truncated");
+            }
+        }
+    }
+
+    /**
+     * @return the records of a chunk from {@link ChunkReader#next()}, each as its JSON bytes
+     */
+    static byte[][] inflate(Chunk chunk) throws IOException {
+        byte[] raw = new byte[chunk.rawLength()];
+        var inflater = new Inflater(true);
+        try {
+            inflater.setInput(chunk.stored());
+            int length = 0;
+            while (length < raw.length) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) break;
+                length += inflated;
+            }
+            if (length != raw.length) throw new IOException("Chunk inflated to " + length + " of " + raw.length + " bytes");
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt chunk: " + ex.getMessage(), ex);
+        } finally {
+            inflater.end();
+        }
+
+        var records = ByteBuffer.wrap(raw);
+        byte[][] result = new byte[chunk.count()][];
+        for (int i = 0; i < result.length; i++) {
+            int length = records.remaining() >= 4 ? records.getInt() : -1;
+            if (length < 0 || length > records.remaining()) {
+                throw new IOException("Corrupt length of record " + i + " of " + chunk.count() + " in chunk");
+            }
+            result[i] = new byte[length];
+            records.get(result[i]);
+        }
+        if (records.hasRemaining()) throw new IOException("Chunk holds more than its " + chunk.count() + " records");
+        return result;
+    }
+}
@@ -0,0 +1,244 @@
+package io.carloship.jouwblog.backup;
+
+import io.carloship.jouwblog.cache.ExistenceFilter;
+import io.carloship.jouwblog.cache.PeerInvalidation;
+import io.carloship.jouwblog.cache.PostCache;
+import io.carloship.jouwblog.cache.ResponseBytesCache;
+import io.carloship.jouwblog.cache.UserCache;
+import io.carloship.jouwblog.repository.CommentRedisRepository;
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.carloship.jouwblog.repository.RestoreRepository;
+import io.carloship.jouwblog.repository.UserRedisRepository;
+import io.carloship.jouwblog.response.BackupSummary;
+import io.carloship.jouwblog.response.Comment;
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.User;
+import io.carloship.jouwblog.search.PostSearchIndex;
+import io.carloship.jouwblog.search.UsernamePrefixIndex;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.serde.ObjectMapper;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Restores a backup written by {@link BackupExporter} into Mongo, and optionally warms Redis.
+ * <p>
+ * One thread reads and checks the chunks in file order while up to {@code import-parallelism}
+ * chunks are inflated and written at once, so memory stays at a few chunks. Each chunk goes
+ * to Mongo as one unordered bulk upsert and, with {@code warm}, to Redis as one pipelined
+ * batch. The existence filters and search indexes learn the restored ids as they are written.
+ * <p>
+ * Restored records replace whatever the caches held for their ids: L1, the encoded responses
+ * and peers are invalidated, cached users are dropped from Redis, and without {@code warm}
+ * restored posts and comments only replace cached copies and join the cached sets, so a
+ * listing served from Redis never misses them.
+ * <p>
+ * Restores are idempotent. A restore that fails part way can be run again from the start.
+ */
+@Slf4j
+@Singleton
+@Requires(property = BackupExporter.ENABLED, value = StringUtils.TRUE)
+public class BackupImporter {
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${jouwblog.backup.import-parallelism:4}")
+    protected int parallelism = 4;
+
+    @Inject
+    protected RestoreRepository restoreRepository;
+
+    @Inject
+    protected UserRedisRepository userRedisRepository;
+
+    @Inject
+    protected PostRedisRepository postRedisRepository;
+
+    @Inject
+    protected CommentRedisRepository commentRedisRepository;
+
+    @Inject
+    protected UserCache userCache;
+
+    @Inject
+    protected PostCache postCache;
+
+    @Inject
+    protected ResponseBytesCache responseBytes;
+
+    @Inject
+    protected PeerInvalidation peers;
+
+    @Inject
+    protected ExistenceFilter existence;
+
+    @Inject
+    protected PostSearchIndex searchIndex;
+
+    @Inject
+    protected UsernamePrefixIndex prefixIndex;
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    /**
+     * Runs a restore on the IO executor. Only one restore runs at a time.
+     */
+    public CompletableFuture<BackupSummary> restore(@NonNull Path file, boolean warm) {
+        if (!running.compareAndSet(false, true)) {
+            return CompletableFuture.failedFuture(new IllegalStateException("A restore is already running"));
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return restoreNow(file, warm);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                running.set(false);
+            }
+        }, ioExecutor);
+    }
+
+    private BackupSummary restoreNow(Path file, boolean warm) throws IOException {
+        long start = System.nanoTime();
+        var inFlight = new Semaphore(parallelism);
+        var failure = new AtomicReference<Throwable>();
+        LongAdder[] restored = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+
+        BackupFormat.ChunkReader reader;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            reader = new BackupFormat.ChunkReader(channel);
+            BackupFormat.Chunk chunk;
+            while (failure.get() == null && (chunk = reader.next()) != null) {
+                inFlight.acquire();
+                BackupFormat.Chunk next = chunk;
+                CompletableFuture.runAsync(() -> apply(next, warm, restored[next.kind()]), ioExecutor)
+                        .whenComplete((_, ex) -> {
+                            if (ex != null) failure.compareAndSet(null, ex);
+                            inFlight.release();
+                        });
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while restoring " + file);
+        } finally {
+            // Also on a corrupt chunk, so no write is still running once this returns.
+            inFlight.acquireUninterruptibly(parallelism);
+        }
+
+        if (failure.get() != null) {
+            throw new IOException("Error while restoring " + file + ": " + failure.get().getMessage(), failure.get());
+        }
+        for (byte kind : new byte[]{BackupFormat.USERS, BackupFormat.POSTS, BackupFormat.COMMENTS}) {
+            if (restored[kind].sum() != reader.endCount(kind)) {
+                throw new IOException("Restored " + restored[kind].sum() + " of " + reader.endCount(kind) + " records of kind " + kind);
+            }
+        }
+
+        var summary = new BackupSummary(file.getFileName().toString(), restored[BackupFormat.USERS].sum(),
+                restored[BackupFormat.POSTS].sum(), restored[BackupFormat.COMMENTS].sum(), Files.size(file),
+                (System.nanoTime() - start) / 1_000_000);
+        log.info("Restored {} users, {} posts and {} comments from {} in {} ms{}", summary.getUsers(), summary.getPosts(),
+                summary.getComments(), file, summary.getMillis(), warm ? ", Redis warmed" : "");
+        return summary;
+    }
+
+    private void apply(BackupFormat.Chunk chunk, boolean warm, LongAdder restored) {
+        try {
+            byte[][] records = BackupFormat.inflate(chunk);
+            switch (chunk.kind()) {
+                case BackupFormat.USERS -> {
+                    List<User> users = decode(records, User.class);
+                    restoreRepository.replaceUsers(users);
+                    List<String> userIds = users.stream().map(User::getId).toList();
+                    // Before warming, so the search key of a username the user no longer has goes too.
+                    require(userRedisRepository.evictUsers(userIds), "evicting", userIds.size(), "users");
+                    users.forEach(user -> {
+                        existence.addUser(user.getId());
+                        prefixIndex.remove(user.getId());
+                        prefixIndex.put(user);
+                        userCache.invalidate(user.getId());
+                        if (user.getUsername() != null) userCache.invalidateByUsername(user.getUsername());
+                        responseBytes.invalidateUser(user.getId());
+                        peers.user(user.getId());
+                    });
+                    if (warm) require(userRedisRepository.saveUsers(users), "saving", users.size(), "users");
+                }
+                case BackupFormat.POSTS -> {
+                    List<Post> posts = decode(records, Post.class);
+                    restoreRepository.replacePosts(posts);
+                    // Without warm, the posts still join the post sets Redis has, so cached listings stay complete.
+                    require(warm ? postRedisRepository.savePosts(posts) : postRedisRepository.replaceListedPosts(posts),
+                            "saving", posts.size(), "posts");
+                    posts.forEach(post -> {
+                        existence.addPost(post.getPostId());
+                        searchIndex.index(post);
+                        postCache.removePost(post.getPostId());
+                        responseBytes.invalidatePost(post.getPostId());
+                        peers.post(post.getPostId());
+                    });
+                    posts.stream().map(Post::getUserId).filter(Objects::nonNull).distinct().forEach(userId -> {
+                        postCache.invalidateUser(userId);
+                        peers.userPosts(userId);
+                    });
+                }
+                case BackupFormat.COMMENTS -> {
+                    List<Comment> comments = decode(records, Comment.class);
+                    restoreRepository.replaceComments(comments);
+                    require(warm ? commentRedisRepository.saveComments(comments) : commentRedisRepository.replaceListedComments(comments),
+                            "saving", comments.size(), "comments");
+                }
+                default -> throw new IOException("Unknown chunk kind " + chunk.kind());
+            }
+            restored.add(records.length);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * The Redis repositories log a failed batch and report {@code false}; a restore that left
+     * Redis behind Mongo must not report success.
+     */
+    private static void require(CompletableFuture<Boolean> written, String action, int count, String kind) throws IOException {
+        if (!written.join()) {
+            throw new IOException("Error while " + action + " " + count + " restored " + kind + " in Redis");
+        }
+    }
+
+    private <T> List<T> decode(byte[][] records, Class<T> type) throws IOException {
+        List<T> entities = new ArrayList<>(records.length);
+        for (byte[] record : records) {
+            entities.add(objectMapper.readValue(record, type));
+        }
+        return entities;
+    }
+}
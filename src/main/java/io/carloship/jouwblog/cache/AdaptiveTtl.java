@@ -0,0 +1,145 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.common.FrequencySketch;
+import io.carloship.jouwblog.common.RedisConnection;
+import io.lettuce.core.ExpireArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis TTLs derived from how often a key is read on this node.
+ * <p>
+ * The Redis repositories record every read in a {@link FrequencySketch} and ask for a TTL on
+ * every write. The TTL grows geometrically with the estimated frequency, from {@code min-ttl}
+ * for keys nobody reads to {@code max-ttl} for the hottest ones, so cold content leaves Redis
+ * quickly and hot content stays. Keys that turn hot between writes are queued and get their
+ * expiry pushed out in one pipelined batch per interval. Writes and extensions both use
+ * {@code EXPIRE ... GT}, so neither shortens a TTL another node has already extended; this
+ * needs Redis 7.0 or later.
+ */
+@Slf4j
+@Singleton
+public class AdaptiveTtl implements MeterBinder {
+
+    private static final int MAX_FREQUENCY = 15;
+
+    private final Set<String> hotKeys = ConcurrentHashMap.newKeySet();
+    private final LongAdder extended = new LongAdder();
+
+    private FrequencySketch sketch;
+    private double growth;
+
+    @Value("${jouwblog.redis-ttl.min-ttl:5m}")
+    protected Duration minTtl = Duration.ofMinutes(5);
+
+    @Value("${jouwblog.redis-ttl.max-ttl:6h}")
+    protected Duration maxTtl = Duration.ofHours(6);
+
+    @Value("${jouwblog.redis-ttl.hot-frequency:4}")
+    protected int hotFrequency = 4;
+
+    @Value("${jouwblog.redis-ttl.tracked-keys:262144}")
+    protected int trackedKeys = 262_144;
+
+    @Value("${jouwblog.redis-ttl.max-batch:10000}")
+    protected int maxBatch = 10_000;
+
+    @Inject
+    @Named(RedisConnection.BULK)
+    protected RedisClusterAsyncCommands<String, String> asyncCommands;
+
+    @PostConstruct
+    void init() {
+        this.sketch = new FrequencySketch(trackedKeys);
+        this.growth = Math.pow((double) maxTtl.toSeconds() / minTtl.toSeconds(), 1.0 / MAX_FREQUENCY);
+    }
+
+    /**
+     * Records a read of {@code key}. Keys that just crossed the hot threshold are queued
+     * for the next batched extension.
+     */
+    public void recordAccess(@NonNull String key) {
+        int frequency = sketch.increment(key);
+        if (frequency >= hotFrequency && hotKeys.size() < maxBatch) {
+            hotKeys.add(key);
+        }
+    }
+
+    @NonNull
+    public Duration ttlFor(@NonNull String key) {
+        return ttlFor(sketch.frequency(key));
+    }
+
+    /**
+     * Gives {@code key} the TTL of its frequency without shortening a longer one: {@code NX}
+     * sets it on a key the write just created, {@code GT} pushes out one that already expires.
+     * Both are pipelined on {@code commands}. The options need Redis 7.0 or later.
+     */
+    @NonNull
+    public CompletableFuture<Boolean> expire(@NonNull RedisClusterAsyncCommands<String, String> commands, @NonNull String key) {
+        Duration ttl = ttlFor(key);
+        var set = commands.expire(key, ttl, ExpireArgs.Builder.nx()).toCompletableFuture();
+        var extended = commands.expire(key, ttl, ExpireArgs.Builder.gt()).toCompletableFuture();
+        return set.thenCombine(extended, (wasSet, wasExtended) -> wasSet || wasExtended);
+    }
+
+    /**
+     * Whether {@code key} is read often enough to have its expiry extended.
+     */
+    public boolean isHot(@NonNull String key) {
+        return sketch.frequency(key) >= hotFrequency;
+    }
+
+    private Duration ttlFor(int frequency) {
+        return Duration.ofSeconds(Math.round(minTtl.toSeconds() * Math.pow(growth, frequency)));
+    }
+
+    @Scheduled(fixedDelay = "${jouwblog.redis-ttl.extend-interval:30s}")
+    void extendHotKeys() {
+        if (hotKeys.isEmpty()) return;
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(hotKeys.size());
+        var iterator = hotKeys.iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            iterator.remove();
+            futures.add(asyncCommands.expire(key, ttlFor(key), ExpireArgs.Builder.gt()).toCompletableFuture());
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenRun(() -> {
+                    long count = futures.stream().filter(CompletableFuture::join).count();
+                    extended.add(count);
+                    log.debug("Extended TTL of {} out of {} hot redis keys", count, futures.size());
+                })
+                .exceptionally(ex -> {
+                    log.warn("Error while extending TTL of {} hot redis keys: {}", futures.size(), ex.getMessage());
+                    return null;
+                });
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("jouwblog.redis.ttl.extended", extended, LongAdder::sum)
+                .description("Hot Redis keys whose expiry was pushed out")
+                .register(registry);
+    }
+}
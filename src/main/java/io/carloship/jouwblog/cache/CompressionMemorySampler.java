@@ -0,0 +1,78 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures what compressed post bodies save in Redis itself, next to the byte counts of
+ * {@link PostBodyCompression}: those leave out the hash encoding, field overhead and allocator
+ * rounding. Every {@code memory-sample-interval} the posts compressed last are looked up with
+ * {@link PostRedisRepository#sampleMemoryUsage}, MEMORY USAGE of their hash and of a plain-text
+ * copy of it.
+ */
+@Slf4j
+@Singleton
+@Requires(property = "jouwblog.compression.enabled", notEquals = StringUtils.FALSE)
+public class CompressionMemorySampler implements MeterBinder {
+
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder plainBytes = new LongAdder();
+
+    @Inject
+    protected PostBodyCompression compression;
+
+    @Inject
+    protected PostRedisRepository redisRepository;
+
+    @Scheduled(fixedDelay = "${jouwblog.compression.memory-sample-interval:1m}",
+            initialDelay = "${jouwblog.compression.memory-sample-interval:1m}")
+    void sample() {
+        for (var reference : compression.takeSamples()) {
+            redisRepository.sampleMemoryUsage(reference.getUserId(), reference.getPostId()).thenAccept(sample -> {
+                if (sample == null) return;
+                samples.increment();
+                storedBytes.add(sample.stored());
+                plainBytes.add(sample.plain());
+            }).exceptionally(ex -> {
+                log.warn("Error while sampling redis memory usage of post {}: {}", reference.getPostId(), ex.getMessage());
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("jouwblog.compression.redis-samples", samples, LongAdder::sum)
+                .description("Compressed post hashes measured with MEMORY USAGE")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.compression.redis-memory", storedBytes, LongAdder::sum)
+                .tag("form", "stored")
+                .description("MEMORY USAGE of the sampled post hashes and of plain-text copies of them")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.compression.redis-memory", plainBytes, LongAdder::sum)
+                .tag("form", "plain")
+                .description("MEMORY USAGE of the sampled post hashes and of plain-text copies of them")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("jouwblog.compression.redis-ratio", this, sampler -> {
+                    long plain = sampler.plainBytes.sum();
+                    return plain == 0 ? 1.0 : (double) sampler.storedBytes.sum() / plain;
+                })
+                .description("Redis memory of the sampled compressed post hashes per byte of their plain-text copies")
+                .register(registry);
+    }
+}
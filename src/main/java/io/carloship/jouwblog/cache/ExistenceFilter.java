@@ -0,0 +1,269 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.common.CuckooFilter;
+import io.carloship.jouwblog.common.RedisConnection;
+import io.carloship.jouwblog.repository.PostRepository;
+import io.carloship.jouwblog.repository.UserRepository;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Cuckoo filters of every existing post and user id, consulted before Redis and Mongo so a
+ * lookup of an id that never existed is answered from memory.
+ * <p>
+ * The filters are built from a Mongo id scan at startup and answer "maybe" for everything
+ * until the scan is done. Ids created on this node are added right away and announced to the
+ * other nodes over Redis pub/sub. Deletes only clear the local filter: a stale "maybe" on
+ * another node costs one lookup, while removing an id a node never saw could hide a live one.
+ * <p>
+ * Announcements are best effort, so a node may never hear of an id created elsewhere. The
+ * filters are therefore rebuilt from Mongo every {@code rebuild-interval}, and an id whose
+ * ObjectId timestamp is within {@code recent-window} of the start of the last scan, or newer,
+ * is never answered as missing: it may have reached Mongo after the scan, or be a journaled
+ * post still on its way there. Only ids that are older than that and absent from a full scan
+ * are rejected. Restored ids keep their old timestamps; a node that misses their
+ * announcement knows them after its next rebuild.
+ */
+@Slf4j
+@Singleton
+public class ExistenceFilter implements MeterBinder {
+
+    private static final String CHANNEL = "existence:added";
+    private static final char POST = 'p';
+    private static final char USER = 'u';
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final LongAdder postsRejected = new LongAdder();
+    private final LongAdder usersRejected = new LongAdder();
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile CuckooFilter posts;
+    private volatile CuckooFilter users;
+    // The filters a rebuild is filling, which also receive the ids added meanwhile.
+    private volatile CuckooFilter nextPosts;
+    private volatile CuckooFilter nextUsers;
+    // Ids created at or after this epoch second are never rejected.
+    private volatile long trustedBefore;
+    private volatile boolean ready;
+
+    @Value("${jouwblog.existence.enabled:true}")
+    protected boolean enabled;
+
+    @Value("${jouwblog.existence.expected-posts:1000000}")
+    protected int expectedPosts;
+
+    @Value("${jouwblog.existence.expected-users:100000}")
+    protected int expectedUsers;
+
+    @Value("${jouwblog.existence.recent-window:10m}")
+    protected Duration recentWindow = Duration.ofMinutes(10);
+
+    @Inject
+    protected PostRepository postRepository;
+
+    @Inject
+    protected UserRepository userRepository;
+
+    @Inject
+    @Named(RedisConnection.BULK)
+    protected RedisClusterAsyncCommands<String, String> redisCommands;
+
+    @Inject
+    protected StatefulRedisPubSubConnection<String, String> pubSubConnection;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    @PostConstruct
+    void init() {
+        posts = new CuckooFilter(expectedPosts);
+        users = new CuckooFilter(expectedUsers);
+    }
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        if (!enabled) return;
+
+        // Subscribe before scanning, so ids created elsewhere during the scan are not lost.
+        pubSubConnection.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                if (CHANNEL.equals(channel)) onAnnouncement(message);
+            }
+        });
+        pubSubConnection.async().subscribe(CHANNEL).toCompletableFuture()
+                .thenRunAsync(this::rebuild, ioExecutor)
+                .exceptionally(ex -> {
+                    log.error("Error while building existence filters, lookups stay unfiltered: {}", ex.getMessage(), ex);
+                    return null;
+                });
+    }
+
+    @Scheduled(fixedDelay = "${jouwblog.existence.rebuild-interval:10m}", initialDelay = "${jouwblog.existence.rebuild-interval:10m}")
+    void rebuildPeriodically() {
+        if (!enabled) return;
+
+        try {
+            rebuild();
+        } catch (RuntimeException ex) {
+            log.warn("Error while rebuilding existence filters, keeping the current ones: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Scans every id into new filters and swaps them in. Ids added meanwhile go to both the
+     * current and the new filters, so none is lost; a failed scan leaves the current ones.
+     */
+    void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) return;
+
+        long start = System.nanoTime();
+        long scanStart = Instant.now().getEpochSecond();
+        var builtPosts = new CuckooFilter((int) Math.max(expectedPosts, posts.count()));
+        var builtUsers = new CuckooFilter((int) Math.max(expectedUsers, users.count()));
+        nextPosts = builtPosts;
+        nextUsers = builtUsers;
+        try (Stream<String> postIds = postRepository.queryPostIdByPostIdIsNotNull();
+             Stream<String> userIds = userRepository.queryIdByIdIsNotNull()) {
+            postIds.forEach(builtPosts::add);
+            userIds.forEach(builtUsers::add);
+
+            // Swapped before the next filters are cleared, see add.
+            posts = builtPosts;
+            users = builtUsers;
+            trustedBefore = scanStart - recentWindow.toSeconds();
+            ready = true;
+        } finally {
+            nextPosts = null;
+            nextUsers = null;
+            rebuilding.set(false);
+        }
+
+        log.info("Existence filters built with {} posts and {} users ({} KiB) in {} ms",
+                builtPosts.count(), builtUsers.count(), (builtPosts.memoryBytes() + builtUsers.memoryBytes()) / 1024,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void onAnnouncement(String message) {
+        // Format: "<nodeId> <type><id>". Our own announcements were applied when they were made.
+        int space = message.indexOf(' ');
+        if (space < 0 || space + 2 > message.length() || message.startsWith(nodeId)) return;
+
+        String id = message.substring(space + 2);
+        switch (message.charAt(space + 1)) {
+            case POST -> add(nextPosts, posts, id);
+            case USER -> add(nextUsers, users, id);
+            default -> log.warn("Ignoring malformed existence announcement {}", message);
+        }
+    }
+
+    public boolean mightContainPost(@NonNull String postId) {
+        if (!ready || posts.mightContain(postId) || isRecent(postId)) return true;
+        postsRejected.increment();
+        return false;
+    }
+
+    public boolean mightContainUser(@NonNull String userId) {
+        if (!ready || users.mightContain(userId) || isRecent(userId)) return true;
+        usersRejected.increment();
+        return false;
+    }
+
+    public void addPost(@NonNull String postId) {
+        if (!enabled) return;
+        add(nextPosts, posts, postId);
+        announce(POST, postId);
+    }
+
+    public void addUser(@NonNull String userId) {
+        if (!enabled) return;
+        add(nextUsers, users, userId);
+        announce(USER, userId);
+    }
+
+    /**
+     * The next filter is read first: a rebuild swaps the current filter before clearing the
+     * next one, so an id added while it finishes lands in the filter that stays.
+     */
+    private static void add(CuckooFilter next, CuckooFilter current, String id) {
+        current.add(id);
+        if (next != null) next.add(id);
+    }
+
+    private boolean isRecent(String id) {
+        return ObjectId.isValid(id) && new ObjectId(id).getTimestamp() >= trustedBefore;
+    }
+
+    public void removePost(@NonNull String postId) {
+        if (enabled) posts.remove(postId);
+    }
+
+    public void removeUser(@NonNull String userId) {
+        if (enabled) users.remove(userId);
+    }
+
+    private void announce(char type, String id) {
+        redisCommands.publish(CHANNEL, nodeId + ' ' + type + id)
+                .exceptionally(ex -> {
+                    log.warn("Error while announcing new id {} to other nodes: {}", id, ex.getMessage());
+                    return null;
+                });
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (!enabled) return;
+
+        bind(registry, "post", () -> posts, postsRejected);
+        bind(registry, "user", () -> users, usersRejected);
+    }
+
+    // Read through a supplier, since every rebuild swaps the filters.
+    private static void bind(MeterRegistry registry, String type, Supplier<CuckooFilter> filter, LongAdder rejected) {
+        Gauge.builder("jouwblog.existence.count", filter, current -> current.get().count())
+                .tag("type", type)
+                .description("Ids held by the existence filter")
+                .register(registry);
+        Gauge.builder("jouwblog.existence.memory", filter, current -> current.get().memoryBytes())
+                .tag("type", type)
+                .baseUnit("bytes")
+                .description("Memory used by the existence filter tables")
+                .register(registry);
+        Gauge.builder("jouwblog.existence.fpp", filter, current -> current.get().falsePositiveRate())
+                .tag("type", type)
+                .description("Expected false-positive rate at the current occupancy")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.existence.rejected", rejected, LongAdder::sum)
+                .tag("type", type)
+                .description("Lookups answered as missing without touching Redis or Mongo")
+                .register(registry);
+    }
+}
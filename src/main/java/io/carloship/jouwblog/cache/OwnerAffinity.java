@@ -0,0 +1,175 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.common.HashRing;
+import io.carloship.jouwblog.common.RedisConnection;
+import io.lettuce.core.Range;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.runtime.server.event.ServerStartupEvent;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partitions the L1 caches by user over the live nodes, so cluster-wide L1 capacity grows
+ * with the node count instead of every node caching the same hot users.
+ * <p>
+ * Every node heartbeats into the {@code affinity:nodes} sorted set, scored with the time of
+ * its last heartbeat, and drops members that missed {@code node-timeout}. The live members
+ * form a {@link HashRing} that maps each user id to an owner node. The owner keeps the user
+ * and their posts in the full-size {@link UserCache} and {@link PostCache}. Other nodes only
+ * keep them in a small, short-lived near-cache. In {@code forward} mode they also send
+ * single-entity L1 misses to the owner first, see {@code AffinityForwarder}. Writes can land
+ * on any node and evict the other nodes' copies through {@link PeerInvalidation}.
+ * <p>
+ * With {@code mode: off}, or before the first heartbeat, every node owns every user.
+ */
+@Slf4j
+@Singleton
+public class OwnerAffinity implements MeterBinder {
+
+    public enum Mode { OFF, NEAR_CACHE, FORWARD }
+
+    public record Node(String id, String url) {
+    }
+
+    private static final String NODES_KEY = "affinity:nodes";
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile @Nullable Node self;
+    private volatile HashRing<Node> ring = new HashRing<>(List.of(), Node::id, 0);
+
+    @Value("${jouwblog.affinity.mode:off}")
+    protected Mode mode = Mode.OFF;
+
+    @Value("${jouwblog.affinity.advertised-url:}")
+    protected String advertisedUrl = "";
+
+    @Value("${jouwblog.affinity.node-timeout:10s}")
+    protected Duration nodeTimeout = Duration.ofSeconds(10);
+
+    @Value("${jouwblog.affinity.virtual-nodes:128}")
+    protected int virtualNodes = 128;
+
+    @Value("${jouwblog.affinity.near-cache.max-size:2000}")
+    protected int nearCacheSize = 2000;
+
+    @Value("${jouwblog.affinity.near-cache.expire-after-write:5s}")
+    protected Duration nearCacheTtl = Duration.ofSeconds(5);
+
+    @Inject
+    @Named(RedisConnection.BULK)
+    protected RedisClusterAsyncCommands<String, String> redisCommands;
+
+    @EventListener
+    void onStartup(ServerStartupEvent event) {
+        if (!enabled()) return;
+
+        String url = advertisedUrl.isBlank() ? event.getSource().getURI().toString() : advertisedUrl;
+        self = new Node(nodeId, url);
+        heartbeat();
+        log.info("Owner affinity in {} mode, advertised as {}", mode, url);
+    }
+
+    @Scheduled(fixedDelay = "${jouwblog.affinity.heartbeat:2s}")
+    void heartbeat() {
+        Node node = self;
+        if (node == null) return;
+
+        long now = System.currentTimeMillis();
+        redisCommands.zadd(NODES_KEY, now, node.id() + ' ' + node.url()).toCompletableFuture()
+                .thenCompose(_ -> redisCommands.zremrangebyscore(NODES_KEY,
+                        Range.create(0, now - nodeTimeout.toMillis())).toCompletableFuture())
+                .thenCompose(_ -> redisCommands.zrange(NODES_KEY, 0, -1).toCompletableFuture())
+                .thenAccept(this::updateRing)
+                .exceptionally(ex -> {
+                    log.warn("Error while sending affinity heartbeat, keeping {} nodes: {}", ring.members().size(), ex.getMessage());
+                    return null;
+                });
+    }
+
+    private void updateRing(List<String> entries) {
+        Set<Node> nodes = new HashSet<>();
+        for (String entry : entries) {
+            int space = entry.indexOf(' ');
+            if (space > 0) nodes.add(new Node(entry.substring(0, space), entry.substring(space + 1)));
+        }
+        if (nodes.equals(new HashSet<>(ring.members()))) return;
+
+        ring = new HashRing<>(nodes, Node::id, virtualNodes);
+        log.info("Affinity ring changed to {} nodes: {}", nodes.size(), nodes.stream().map(Node::url).sorted().toList());
+    }
+
+    @PreDestroy
+    void leave() {
+        Node node = self;
+        if (node == null) return;
+
+        self = null;
+        try {
+            // Leave right away, so the other nodes stop forwarding here before the timeout.
+            redisCommands.zrem(NODES_KEY, node.id() + ' ' + node.url()).get(1, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            log.warn("Error while leaving the affinity ring: {}", ex.getMessage());
+        }
+    }
+
+    public boolean enabled() {
+        return mode != Mode.OFF;
+    }
+
+    /**
+     * Whether this node keeps {@code userId} in its full-size L1 caches.
+     */
+    public boolean owns(@NonNull String userId) {
+        if (!enabled()) return true;
+
+        Node owner = ring.ownerOf(userId);
+        return owner == null || owner.id().equals(nodeId);
+    }
+
+    /**
+     * @return the url of the node an L1 miss for {@code userId} should be forwarded to, or
+     * {@code null} when it is read locally
+     */
+    public @Nullable String forwardTarget(@NonNull String userId) {
+        if (mode != Mode.FORWARD) return null;
+
+        Node owner = ring.ownerOf(userId);
+        return owner == null || owner.id().equals(nodeId) ? null : owner.url();
+    }
+
+    public int nearCacheSize() {
+        return nearCacheSize;
+    }
+
+    public Duration nearCacheTtl() {
+        return nearCacheTtl;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (!enabled()) return;
+
+        Gauge.builder("jouwblog.affinity.nodes", this, affinity -> affinity.ring.members().size())
+                .description("Live nodes on the owner-affinity ring")
+                .register(registry);
+    }
+}
@@ -0,0 +1,120 @@
+package io.carloship.jouwblog.cache;
+
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.util.UUID;
+
+/**
+ * Evicts users and posts written on this node from the L1 caches of the other nodes.
+ * <p>
+ * With {@link OwnerAffinity} enabled a write can land on any node, while the owner keeps the
+ * user and their posts in its full-size L1 for many minutes. Every write therefore publishes
+ * the ids it touched over Redis pub/sub, and the other nodes drop them from L1 and from the
+ * {@link ResponseBytesCache}. Delivery is best effort: a lost message leaves the old copy
+ * until it expires.
+ */
+@Slf4j
+@Singleton
+public class PeerInvalidation {
+
+    private static final String CHANNEL = "l1:invalidate";
+    private static final char USER = 'u';
+    private static final char POST = 'p';
+    private static final char USER_POSTS = 'l';
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Inject
+    protected OwnerAffinity affinity;
+
+    @Inject
+    protected UserCache userCache;
+
+    @Inject
+    protected PostCache postCache;
+
+    @Inject
+    protected ResponseBytesCache responseBytes;
+
+    @Inject
+    protected RedisClusterAsyncCommands<String, String> redisCommands;
+
+    @Inject
+    protected StatefulRedisPubSubConnection<String, String> pubSubConnection;
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        if (!affinity.enabled()) return;
+
+        pubSubConnection.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                if (CHANNEL.equals(channel)) onInvalidation(message);
+            }
+        });
+        pubSubConnection.async().subscribe(CHANNEL).exceptionally(ex -> {
+            log.error("Error while subscribing to L1 invalidations, peer writes only expire: {}", ex.getMessage(), ex);
+            return null;
+        });
+    }
+
+    private void onInvalidation(String message) {
+        // Format: "<nodeId> <type><id>". Our own writes updated the local caches already.
+        int space = message.indexOf(' ');
+        if (space < 0 || space + 2 > message.length() || message.startsWith(nodeId)) return;
+
+        String id = message.substring(space + 2);
+        switch (message.charAt(space + 1)) {
+            case USER -> {
+                userCache.invalidate(id);
+                responseBytes.invalidateUser(id);
+            }
+            case POST -> {
+                postCache.removePost(id);
+                responseBytes.invalidatePost(id);
+            }
+            case USER_POSTS -> postCache.invalidateUser(id);
+            default -> log.warn("Ignoring malformed L1 invalidation {}", message);
+        }
+    }
+
+    /**
+     * Evicts {@code userId} on the other nodes.
+     */
+    public void user(@NonNull String userId) {
+        publish(USER, userId);
+    }
+
+    /**
+     * Evicts {@code postId} on the other nodes.
+     */
+    public void post(@NonNull String postId) {
+        publish(POST, postId);
+    }
+
+    /**
+     * Evicts the cached post ids of {@code userId} on the other nodes, after a post was added
+     * or removed.
+     */
+    public void userPosts(@NonNull String userId) {
+        publish(USER_POSTS, userId);
+    }
+
+    private void publish(char type, String id) {
+        if (!affinity.enabled()) return;
+
+        redisCommands.publish(CHANNEL, nodeId + ' ' + type + id)
+                .exceptionally(ex -> {
+                    log.warn("Error while sending L1 invalidation of {} to other nodes: {}", id, ex.getMessage());
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,179 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.common.TextCompression;
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.PostReference;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compresses post bodies of at least {@code min-size} characters before they enter L1 or
+ * Redis, with {@link TextCompression#posts()}. The compressed bytes travel through the tiers
+ * as they are and are only inflated when the body is read, see {@link Post#getText()}.
+ * <p>
+ * Redis stores them Base64-encoded, so a body is only kept compressed when that still saves
+ * a quarter of its size. The saved bytes are counted as Redis would store them; what Redis
+ * really uses is measured by {@link CompressionMemorySampler} on the posts compressed last.
+ */
+@Slf4j
+@Singleton
+public class PostBodyCompression implements MeterBinder {
+
+    private static final double MAX_RATIO = 0.75;
+    private static final int SAMPLE_SLOTS = 16;
+
+    private final TextCompression codec = TextCompression.posts();
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder deflateNanos = new LongAdder();
+    private final AtomicReferenceArray<PostReference> recent = new AtomicReferenceArray<>(SAMPLE_SLOTS);
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    @Value("${jouwblog.compression.enabled:true}")
+    protected boolean enabled = true;
+
+    @Value("${jouwblog.compression.min-size:1024}")
+    protected int minSize = 1024;
+
+    @Value("${jouwblog.compression.level:1}")
+    protected int level = 1;
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            log.info("Compressing post bodies from {} characters, level {}, {} byte dictionary",
+                    minSize, level, codec.dictionarySize());
+        }
+    }
+
+    /**
+     * @return {@code post} with a compressed body, or {@code post} itself when its body is
+     * short, already compressed or does not compress well
+     */
+    public Post compact(@NonNull Post post) {
+        if (!enabled || post.getTextZ() != null) return post;
+
+        byte[] textZ = deflate(post.getText());
+        if (textZ == null) return post;
+
+        if (post.getUserId() != null && post.getPostId() != null) {
+            recent.set(Math.floorMod(nextSlot.getAndIncrement(), SAMPLE_SLOTS), new PostReference(post.getUserId(), post.getPostId()));
+        }
+        return post.withCompressedText(textZ);
+    }
+
+    /**
+     * Hands out the last few posts whose bodies were compressed, each once.
+     */
+    public List<PostReference> takeSamples() {
+        List<PostReference> samples = new ArrayList<>(SAMPLE_SLOTS);
+        for (int i = 0; i < SAMPLE_SLOTS; i++) {
+            PostReference reference = recent.getAndSet(i, null);
+            if (reference != null) samples.add(reference);
+        }
+        return samples;
+    }
+
+    /**
+     * The Redis hash fields holding {@code text}, for partial updates of the body.
+     */
+    public Map<String, String> textFields(@NonNull String text) {
+        return fields(text, enabled ? deflate(text) : null);
+    }
+
+    /**
+     * The Redis hash fields holding the body of {@code post} as it is, compressed or not.
+     */
+    public Map<String, String> textFields(@NonNull Post post) {
+        return fields(post.getTextZ() == null ? post.getText() : "", post.getTextZ());
+    }
+
+    private static Map<String, String> fields(String text, byte[] textZ) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put(Post.TEXT, textZ == null ? text : "");
+        fields.put(Post.TEXT_Z, textZ == null ? "" : Base64.getEncoder().encodeToString(textZ));
+        return fields;
+    }
+
+    private byte[] deflate(String text) {
+        if (text == null || text.length() < minSize) return null;
+
+        long start = System.nanoTime();
+        byte[] textZ = codec.deflate(text, level);
+        deflateNanos.add(System.nanoTime() - start);
+
+        int raw = text.getBytes(StandardCharsets.UTF_8).length;
+        int stored = (textZ.length + 2) / 3 * 4;
+        if (stored > raw * MAX_RATIO) {
+            skipped.increment();
+            return null;
+        }
+
+        compressed.increment();
+        rawBytes.add(raw);
+        storedBytes.add(stored);
+        return textZ;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (!enabled) return;
+
+        FunctionCounter.builder("jouwblog.compression.posts", compressed, LongAdder::sum)
+                .tag("outcome", "compressed")
+                .description("Post bodies over the size threshold, by whether they were kept compressed")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.compression.posts", skipped, LongAdder::sum)
+                .tag("outcome", "skipped")
+                .description("Post bodies over the size threshold, by whether they were kept compressed")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.compression.bytes", rawBytes, LongAdder::sum)
+                .tag("form", "raw")
+                .description("UTF-8 and stored Base64 bytes of the compressed post bodies")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.compression.bytes", storedBytes, LongAdder::sum)
+                .tag("form", "stored")
+                .description("UTF-8 and stored Base64 bytes of the compressed post bodies")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("jouwblog.compression.ratio", this, compression -> {
+                    long raw = compression.rawBytes.sum();
+                    return raw == 0 ? 1.0 : (double) compression.storedBytes.sum() / raw;
+                })
+                .description("Stored bytes per raw byte of the compressed post bodies")
+                .register(registry);
+        FunctionTimer.builder("jouwblog.compression.time", this,
+                        compression -> compression.compressed.sum() + compression.skipped.sum(),
+                        compression -> compression.deflateNanos.sum(), TimeUnit.NANOSECONDS)
+                .tag("operation", "deflate")
+                .description("CPU time spent compressing and inflating post bodies")
+                .register(registry);
+        FunctionTimer.builder("jouwblog.compression.time", codec,
+                        TextCompression::inflations, TextCompression::inflateNanos, TimeUnit.NANOSECONDS)
+                .tag("operation", "inflate")
+                .description("CPU time spent compressing and inflating post bodies")
+                .register(registry);
+    }
+}
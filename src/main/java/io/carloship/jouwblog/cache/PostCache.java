@@ -5,26 +5,43 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import io.carloship.jouwblog.repository.PostRedisRepository;
 import io.carloship.jouwblog.response.Post;
+import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * L1 cache of posts and of each user's post ids. With {@link OwnerAffinity} enabled, the posts
+ * and post ids of users owned by another node go to small near-caches instead of the main
+ * ones. Long bodies are kept compressed, see {@link PostBodyCompression}.
+ */
 @Slf4j
 @Singleton
 public class PostCache {
 
     private final Cache<String, CopyOnWriteArrayList<String>> userPostsCache;
+    private final Cache<String, CopyOnWriteArrayList<String>> nearUserPosts;
     private final Cache<String, Post> postCache;
+    private final Cache<String, Post> nearPosts;
+    private final Cache<String, Post> stalePosts;
     private final PostRedisRepository redisRepository;
+    private final OwnerAffinity affinity;
+    private final PostBodyCompression compression;
 
-    public PostCache(PostRedisRepository redisRepository) {
+    @Inject
+    public PostCache(PostRedisRepository redisRepository, OwnerAffinity affinity, PostBodyCompression compression) {
         this.redisRepository = redisRepository;
+        this.affinity = affinity;
+        this.compression = compression;
 
         // Using thread-safe CopyOnWriteArrayList for concurrent modifications
         this.userPostsCache = Caffeine.newBuilder()
@@ -37,21 +54,63 @@ public class PostCache {
                 .maximumSize(100_000) // Prevent unbounded growth
                 .removalListener(this::onPostRemoval)
                 .build();
+
+        // Post ids of users another node owns, expiring with their posts in nearPosts.
+        this.nearUserPosts = Caffeine.newBuilder()
+                .expireAfterWrite(affinity.nearCacheTtl())
+                .maximumSize(affinity.enabled() ? affinity.nearCacheSize() : 0)
+                .build();
+
+        // Posts of users another node owns. The owner writes them back, so evictions only
+        // keep the stale copy.
+        this.nearPosts = Caffeine.newBuilder()
+                .expireAfterWrite(affinity.nearCacheTtl())
+                .maximumSize(affinity.enabled() ? affinity.nearCacheSize() : 0)
+                .removalListener(this::onNearPostRemoval)
+                .build();
+
+        // Last known copy of posts that aged out of L1, only read when every other tier fails.
+        this.stalePosts = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofHours(6))
+                .maximumSize(200_000)
+                .build();
     }
 
     private void onPostRemoval(String key, Post value, RemovalCause cause) {
         if (key == null || value == null) return;
 
-        if (cause == RemovalCause.EXPLICIT) return;
+        // Replacing a copy is not an eviction: the new copy is current and still cached.
+        if (!cause.wasEvicted()) return;
 
-        var userPosts = userPostsCache.getIfPresent(value.getUserId());
-        if (userPosts != null) {
-            userPosts.remove(value.getPostId());
-        }
+        stalePosts.put(key, value);
+        forgetPostId(value.getUserId(), value.getPostId());
 
         saveToRedis(value);
     }
 
+    private void onNearPostRemoval(String key, Post value, RemovalCause cause) {
+        if (key == null || value == null || !cause.wasEvicted()) return;
+
+        stalePosts.put(key, value);
+        forgetPostId(value.getUserId(), value.getPostId());
+    }
+
+    private Cache<String, Post> cacheFor(String userId) {
+        return affinity.owns(userId) ? postCache : nearPosts;
+    }
+
+    private Cache<String, CopyOnWriteArrayList<String>> userPostsFor(String userId) {
+        return affinity.owns(userId) ? userPostsCache : nearUserPosts;
+    }
+
+    private void forgetPostId(String userId, String postId) {
+        // Ownership may have moved since the ids were cached, so both caches are checked.
+        var userPosts = userPostsCache.getIfPresent(userId);
+        if (userPosts != null) userPosts.remove(postId);
+        var nearIds = nearUserPosts.getIfPresent(userId);
+        if (nearIds != null) nearIds.remove(postId);
+    }
+
     private void saveToRedis(Post post) {
         redisRepository.savePost(post)
                 .thenAccept(result -> {
@@ -69,7 +128,7 @@ public class PostCache {
 
     protected List<String> getUserPostIds(String userId) {
         Objects.requireNonNull(userId, "userId cannot be null");
-        return userPostsCache.get(userId, _ -> new CopyOnWriteArrayList<>());
+        return userPostsFor(userId).get(userId, _ -> new CopyOnWriteArrayList<>());
     }
 
     public List<Post> getUserPosts(String userId) {
@@ -82,7 +141,7 @@ public class PostCache {
 
         List<Post> posts = new ArrayList<>(postIds.size());
         for (String id : postIds) {
-            var post = postCache.getIfPresent(id);
+            var post = getPost(id);
             if (post != null) {
                 posts.add(post);
             }
@@ -96,7 +155,7 @@ public class PostCache {
         Objects.requireNonNull(post.getPostId(), "postId cannot be null");
         Objects.requireNonNull(post.getUserId(), "userId cannot be null");
 
-        postCache.put(post.getPostId(), post);
+        cacheFor(post.getUserId()).put(post.getPostId(), compression.compact(post));
 
         var userPosts = getUserPostIds(post.getUserId());
 
@@ -108,25 +167,50 @@ public class PostCache {
 
     public Post getPost(String postId) {
         Objects.requireNonNull(postId, "postId cannot be null");
-        return postCache.getIfPresent(postId);
+        var post = postCache.getIfPresent(postId);
+        return post != null ? post : nearPosts.getIfPresent(postId);
+    }
+
+    /**
+     * @return the last copy evicted from L1 for {@code postId}, or {@code null} if there is none
+     */
+    public Post getStalePost(String postId) {
+        Objects.requireNonNull(postId, "postId cannot be null");
+        return stalePosts.getIfPresent(postId);
+    }
+
+    public Map<String, Post> getPosts(Collection<String> postIds) {
+        Objects.requireNonNull(postIds, "postIds cannot be null");
+        var found = postCache.getAllPresent(postIds);
+        if (!affinity.enabled() || found.size() == postIds.size()) {
+            return found;
+        }
+
+        Map<String, Post> merged = new HashMap<>(nearPosts.getAllPresent(postIds));
+        merged.putAll(found);
+        return merged;
+    }
+
+    public void addPosts(Collection<Post> posts) {
+        Objects.requireNonNull(posts, "posts cannot be null");
+        posts.forEach(this::addPost);
     }
 
     public void removePost(String postId) {
         Objects.requireNonNull(postId, "postId cannot be null");
 
-        var post = postCache.getIfPresent(postId);
+        stalePosts.invalidate(postId);
+        var post = getPost(postId);
         if (post != null) {
             postCache.invalidate(postId);
-
-            var userPosts = userPostsCache.getIfPresent(post.getUserId());
-            if (userPosts != null) {
-                userPosts.remove(postId);
-            }
+            nearPosts.invalidate(postId);
+            forgetPostId(post.getUserId(), postId);
         }
     }
 
     public void invalidateUser(String userId) {
         Objects.requireNonNull(userId, "userId cannot be null");
         userPostsCache.invalidate(userId);
+        nearUserPosts.invalidate(userId);
     }
 }
\ No newline at end of file
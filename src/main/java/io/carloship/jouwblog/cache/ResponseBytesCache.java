@@ -0,0 +1,138 @@
+package io.carloship.jouwblog.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.json.JsonMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoded JSON bodies of hot single-entity responses, keyed by entity and validated
+ * against the entity's ETag. A hit is written to the response as raw bytes, optionally
+ * pre-gzipped, so identical versions are serialized once instead of once per request.
+ */
+@Slf4j
+@Singleton
+public class ResponseBytesCache {
+
+    private static final String POST_PREFIX = "p:";
+    private static final String USER_PREFIX = "u:";
+
+    private Cache<String, EncodedResponse> encodedCache;
+
+    @Value("${jouwblog.response-cache.enabled:false}")
+    protected boolean enabled;
+
+    @Value("${jouwblog.response-cache.max-bytes:67108864}")
+    protected long maxBytes;
+
+    @Value("${jouwblog.response-cache.gzip:true}")
+    protected boolean gzip;
+
+    @Value("${jouwblog.response-cache.gzip-min-bytes:1024}")
+    protected int gzipMinBytes;
+
+    @Inject
+    protected JsonMapper jsonMapper;
+
+    @PostConstruct
+    void init() {
+        this.encodedCache = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(15))
+                .maximumWeight(maxBytes)
+                .weigher((String _, EncodedResponse value) -> value.weight())
+                .build();
+    }
+
+    public MutableHttpResponse<?> okPost(@NonNull String postId, @NonNull String etag, @NonNull Object body, @Nullable String acceptEncoding) {
+        return ok(POST_PREFIX + postId, etag, body, acceptEncoding);
+    }
+
+    public MutableHttpResponse<?> okUser(@NonNull String userId, @NonNull String etag, @NonNull Object body, @Nullable String acceptEncoding) {
+        return ok(USER_PREFIX + userId, etag, body, acceptEncoding);
+    }
+
+    public void invalidatePost(@NonNull String postId) {
+        if (enabled) encodedCache.invalidate(POST_PREFIX + postId);
+    }
+
+    public void invalidateUser(@NonNull String userId) {
+        if (enabled) encodedCache.invalidate(USER_PREFIX + userId);
+    }
+
+    private MutableHttpResponse<?> ok(String key, String etag, Object body, @Nullable String acceptEncoding) {
+        if (!enabled) {
+            return HttpResponse.ok(body);
+        }
+
+        var encoded = encodedCache.getIfPresent(key);
+        if (encoded == null || !encoded.etag().equals(etag)) {
+            encoded = encode(etag, body);
+            if (encoded == null) {
+                return HttpResponse.ok(body);
+            }
+            encodedCache.put(key, encoded);
+        }
+
+        if (encoded.gzip() != null && acceptsGzip(acceptEncoding)) {
+            return HttpResponse.ok(encoded.gzip())
+                    .contentType(MediaType.APPLICATION_JSON_TYPE)
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        return HttpResponse.ok(encoded.json())
+                .contentType(MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    private EncodedResponse encode(String etag, Object body) {
+        try {
+            byte[] json = jsonMapper.writeValueAsBytes(body);
+            byte[] compressed = gzip && json.length >= gzipMinBytes ? gzip(json) : null;
+            return new EncodedResponse(etag, json, compressed);
+        } catch (IOException ex) {
+            log.error("Error while encoding response body {}: {}", etag, ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    private static byte[] gzip(byte[] json) throws IOException {
+        var out = new ByteArrayOutputStream(json.length / 3);
+        try (var gzipStream = new GZIPOutputStream(out)) {
+            gzipStream.write(json);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private record EncodedResponse(String etag, byte[] json, byte[] gzip) {
+
+        EncodedResponse {
+            Objects.requireNonNull(etag, "etag cannot be null");
+            Objects.requireNonNull(json, "json cannot be null");
+        }
+
+        int weight() {
+            return json.length + (gzip == null ? 0 : gzip.length);
+        }
+    }
+}
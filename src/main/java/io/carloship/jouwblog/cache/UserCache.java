@@ -5,22 +5,40 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import io.carloship.jouwblog.repository.UserRedisRepository;
 import io.carloship.jouwblog.response.User;
+import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
+/**
+ * L1 cache of users by id and by username. With {@link OwnerAffinity} enabled, users owned by
+ * another node go to a small near-cache instead of the main one.
+ */
 @Slf4j
 @Singleton
 public class UserCache {
 
+    // nearUsers holds both keys of a user; prefixed so an id can never collide with a username.
+    private static final String NEAR_ID = "id:";
+    private static final String NEAR_USERNAME = "name:";
+
     private final Cache<String, User> usersByIdCache;
     private final Cache<String, User> usersByUsernameCache;
+    private final Cache<String, User> nearUsers;
+    private final Cache<String, User> staleUsers;
     private final UserRedisRepository repository;
+    private final OwnerAffinity affinity;
 
-    public UserCache(UserRedisRepository repository) {
+    @Inject
+    public UserCache(UserRedisRepository repository, OwnerAffinity affinity) {
         this.repository = repository;
+        this.affinity = affinity;
 
         this.usersByUsernameCache = Caffeine.newBuilder()
                 .expireAfterAccess(Duration.ofMinutes(15))
@@ -32,18 +50,40 @@ public class UserCache {
                 .maximumSize(50_000)
                 .removalListener(this::onUserRemoval)
                 .build();
+
+        // Users another node owns, keyed by prefixed id and username. The owner writes them back,
+        // so evictions only keep the stale copy.
+        this.nearUsers = Caffeine.newBuilder()
+                .expireAfterWrite(affinity.nearCacheTtl())
+                .maximumSize(affinity.enabled() ? affinity.nearCacheSize() * 2L : 0)
+                .removalListener(this::onNearUserRemoval)
+                .build();
+
+        // Last known copy of users that aged out of L1, only read when every other tier fails.
+        this.staleUsers = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofHours(6))
+                .maximumSize(100_000)
+                .build();
     }
 
     private void onUserRemoval(String key, User value, RemovalCause cause) {
         if (key == null || value == null) return;
 
-        if (cause == RemovalCause.EXPLICIT) return;
+        // Replacing a copy is not an eviction: the new copy is current and still cached.
+        if (!cause.wasEvicted()) return;
 
+        staleUsers.put(key, value);
         usersByUsernameCache.invalidate(value.getUsername());
 
         saveToRedis(value);
     }
 
+    private void onNearUserRemoval(String key, User value, RemovalCause cause) {
+        if (key == null || value == null || !cause.wasEvicted()) return;
+
+        if (key.startsWith(NEAR_ID)) staleUsers.put(value.getId(), value);
+    }
+
     private void saveToRedis(User user) {
         repository.saveUser(user)
                 .thenAccept(result -> {
@@ -65,27 +105,69 @@ public class UserCache {
         Objects.requireNonNull(user.getId(), "user ID cannot be null");
         Objects.requireNonNull(user.getUsername(), "username cannot be null");
 
+        if (!affinity.owns(user.getId())) {
+            addNearUser(user);
+            return;
+        }
         usersByIdCache.put(user.getId(), user);
         usersByUsernameCache.put(user.getUsername(), user);
     }
 
+    private void addNearUser(User user) {
+        nearUsers.put(NEAR_ID + user.getId(), user);
+        nearUsers.put(NEAR_USERNAME + user.getUsername(), user);
+    }
+
     public User getUserById(String userId) {
         Objects.requireNonNull(userId, "userId cannot be null");
-        return usersByIdCache.getIfPresent(userId);
+        var user = usersByIdCache.getIfPresent(userId);
+        return user != null ? user : nearUsers.getIfPresent(NEAR_ID + userId);
+    }
+
+    /**
+     * @return the last copy evicted from L1 for {@code userId}, or {@code null} if there is none
+     */
+    public User getStaleUser(String userId) {
+        Objects.requireNonNull(userId, "userId cannot be null");
+        return staleUsers.getIfPresent(userId);
+    }
+
+    public Map<String, User> getUsersById(Collection<String> userIds) {
+        Objects.requireNonNull(userIds, "userIds cannot be null");
+        var found = usersByIdCache.getAllPresent(userIds);
+        if (!affinity.enabled() || found.size() == userIds.size()) {
+            return found;
+        }
+
+        Map<String, User> merged = new HashMap<>(found);
+        for (String userId : userIds) {
+            if (merged.containsKey(userId)) continue;
+            var user = nearUsers.getIfPresent(NEAR_ID + userId);
+            if (user != null) merged.put(userId, user);
+        }
+        return merged;
+    }
+
+    public void addUsers(Collection<User> users) {
+        Objects.requireNonNull(users, "users cannot be null");
+        users.forEach(this::addUser);
     }
 
     public User getUserByUsername(String username) {
         Objects.requireNonNull(username, "username cannot be null");
-        return usersByUsernameCache.getIfPresent(username);
+        var user = usersByUsernameCache.getIfPresent(username);
+        return user != null ? user : nearUsers.getIfPresent(NEAR_USERNAME + username);
     }
 
     public void invalidate(String userId) {
         Objects.requireNonNull(userId, "userId cannot be null");
 
+        staleUsers.invalidate(userId);
         var user = getUserById(userId);
         if (user != null) {
             usersByUsernameCache.invalidate(user.getUsername());
             usersByIdCache.invalidate(userId);
+            nearUsers.invalidateAll(List.of(NEAR_ID + userId, NEAR_USERNAME + user.getUsername()));
         }
     }
 
@@ -94,8 +176,10 @@ public class UserCache {
 
         var user = getUserByUsername(username);
         if (user != null) {
+            staleUsers.invalidate(user.getId());
             usersByIdCache.invalidate(user.getId());
             usersByUsernameCache.invalidate(username);
+            nearUsers.invalidateAll(List.of(NEAR_ID + user.getId(), NEAR_USERNAME + username));
         }
     }
 
@@ -109,14 +193,21 @@ public class UserCache {
         if (existingUser != null && !existingUser.getUsername().equals(user.getUsername())) {
             // Username changed, remove old username from cache
             usersByUsernameCache.invalidate(existingUser.getUsername());
+            nearUsers.invalidate(NEAR_USERNAME + existingUser.getUsername());
         }
 
+        if (!affinity.owns(user.getId())) {
+            addNearUser(user);
+            return;
+        }
         usersByIdCache.put(user.getId(), user);
         usersByUsernameCache.put(user.getUsername(), user);
     }
 
     public void clear() {
+        staleUsers.invalidateAll();
         usersByIdCache.invalidateAll();
         usersByUsernameCache.invalidateAll();
+        nearUsers.invalidateAll();
     }
 }
\ No newline at end of file
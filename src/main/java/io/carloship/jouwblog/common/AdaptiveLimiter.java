@@ -0,0 +1,121 @@
+package io.carloship.jouwblog.common;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * AIMD concurrency limit for one backend.
+ * <p>
+ * A call is admitted only while fewer than {@code limit} calls are in flight, otherwise it
+ * fails immediately with {@link BackendOverloadedException}. Every completion adjusts the
+ * limit: a failure or a round trip slower than the latency threshold multiplies it by the
+ * backoff ratio, and a fast success under real load adds {@code 1/limit}, roughly one slot
+ * per round trip's worth of calls.
+ */
+@Slf4j
+public class AdaptiveLimiter implements MeterBinder {
+
+    private final String backend;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private double limit;
+
+    public AdaptiveLimiter(String backend, int initialLimit, int minLimit, int maxLimit,
+                           Duration latencyThreshold, double backoffRatio) {
+        this.backend = backend;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+    }
+
+    @NonNull
+    public <T> CompletableFuture<T> submit(@NonNull Supplier<? extends CompletionStage<T>> call) {
+        if (!tryAcquire()) {
+            rejected.increment();
+            log.debug("Rejected {} call, {} in flight", backend, inFlight.get());
+            return CompletableFuture.failedFuture(new BackendOverloadedException(backend));
+        }
+
+        long start = System.nanoTime();
+        CompletionStage<T> stage;
+        try {
+            stage = call.get();
+        } catch (RuntimeException ex) {
+            release(start, true);
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        return stage.whenComplete((_, ex) -> release(start, ex != null)).toCompletableFuture();
+    }
+
+    public int limit() {
+        synchronized (this) {
+            return (int) limit;
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    private boolean tryAcquire() {
+        int max = limit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    private void release(long start, boolean failed) {
+        int current = inFlight.getAndDecrement();
+        long rtt = System.nanoTime() - start;
+
+        synchronized (this) {
+            if (failed || rtt > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (current * 2 >= limit) {
+                // Only grow while the limit is actually being used, an idle backend proves nothing.
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("jouwblog.limiter.limit", this, AdaptiveLimiter::limit)
+                .tag("backend", backend)
+                .description("Current adaptive concurrency limit")
+                .register(registry);
+        Gauge.builder("jouwblog.limiter.inflight", this, AdaptiveLimiter::inFlight)
+                .tag("backend", backend)
+                .description("Calls currently in flight")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.limiter.rejected", this, AdaptiveLimiter::rejected)
+                .tag("backend", backend)
+                .description("Calls shed because the limit was reached")
+                .register(registry);
+    }
+}
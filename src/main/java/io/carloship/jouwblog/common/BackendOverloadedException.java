@@ -0,0 +1,28 @@
+package io.carloship.jouwblog.common;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Raised instead of queueing when a backend's {@link AdaptiveLimiter} has no capacity left.
+ */
+public class BackendOverloadedException extends RuntimeException {
+
+    public BackendOverloadedException(String backend) {
+        super("Backend " + backend + " is over its concurrency limit");
+    }
+
+    public static boolean isCause(Throwable ex) {
+        for (Throwable current = ex; current != null; current = current.getCause()) {
+            if (current instanceof BackendOverloadedException) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rethrows inside {@code exceptionally} blocks that would otherwise turn every failure
+     * into an empty result, so overload reaches the controller as a 503.
+     */
+    public static RuntimeException propagate(Throwable ex) {
+        return ex instanceof CompletionException completion ? completion : new CompletionException(ex);
+    }
+}
@@ -0,0 +1,35 @@
+package io.carloship.jouwblog.common;
+
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+import java.time.Duration;
+
+@Factory
+public class ConcurrencyLimits {
+
+    public static final String REDIS = "redis";
+    public static final String MONGO = "mongo";
+
+    @Singleton
+    @Named(REDIS)
+    AdaptiveLimiter redisLimiter(@Value("${jouwblog.limits.redis.initial:64}") int initial,
+                                 @Value("${jouwblog.limits.redis.min:8}") int min,
+                                 @Value("${jouwblog.limits.redis.max:512}") int max,
+                                 @Value("${jouwblog.limits.redis.latency-threshold:20ms}") Duration latencyThreshold,
+                                 @Value("${jouwblog.limits.redis.backoff-ratio:0.9}") double backoffRatio){
+        return new AdaptiveLimiter(REDIS, initial, min, max, latencyThreshold, backoffRatio);
+    }
+
+    @Singleton
+    @Named(MONGO)
+    AdaptiveLimiter mongoLimiter(@Value("${jouwblog.limits.mongo.initial:32}") int initial,
+                                 @Value("${jouwblog.limits.mongo.min:4}") int min,
+                                 @Value("${jouwblog.limits.mongo.max:256}") int max,
+                                 @Value("${jouwblog.limits.mongo.latency-threshold:200ms}") Duration latencyThreshold,
+                                 @Value("${jouwblog.limits.mongo.backoff-ratio:0.9}") double backoffRatio){
+        return new AdaptiveLimiter(MONGO, initial, min, max, latencyThreshold, backoffRatio);
+    }
+}
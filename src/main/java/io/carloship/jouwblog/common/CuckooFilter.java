@@ -0,0 +1,300 @@
+package io.carloship.jouwblog.common;
+
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Scalable cuckoo filter over string keys.
+ * <p>
+ * Each table holds 16-bit fingerprints in buckets of four slots, and a key lives in one of two
+ * buckets derived from its hash and fingerprint (partial-key cuckoo hashing), so keys can be
+ * deleted, unlike with a Bloom filter. When an insert cannot find room after
+ * {@code MAX_KICKS} relocations the table is sealed and a new one twice its size takes
+ * further inserts; lookups and deletes consult every table. The false-positive rate is about
+ * {@code 8 / 2^16} per full table.
+ * <p>
+ * Keys are spread over independent stripes by hash bits that neither the bucket index nor the
+ * fingerprint uses, each with its own tables and read-write lock, so concurrent inserts and
+ * lookups of different keys rarely wait on each other.
+ * <p>
+ * Deleting a key that was never added can remove another key's fingerprint, so callers must
+ * only delete what they added.
+ */
+public class CuckooFilter {
+
+    private static final int SLOTS_PER_BUCKET = 4;
+    private static final int MAX_KICKS = 500;
+    private static final short EMPTY = 0;
+    private static final int STRIPE_SHIFT = 32;
+    // Below this many keys per stripe the tables are too small to be worth splitting.
+    private static final int MIN_KEYS_PER_STRIPE = 4096;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public CuckooFilter(int expectedKeys) {
+        this(expectedKeys, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public CuckooFilter(int expectedKeys, int maxStripes) {
+        int count = Integer.highestOneBit(Math.clamp(expectedKeys / MIN_KEYS_PER_STRIPE, 1, Math.max(maxStripes, 1)));
+        int buckets = Integer.highestOneBit(Math.max(expectedKeys / count / SLOTS_PER_BUCKET, 16) - 1) << 1;
+        this.stripes = new Stripe[count];
+        this.stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(buckets);
+        }
+    }
+
+    public void add(@NonNull String key) {
+        long hash = Utils.hash64(key);
+        stripe(hash).add(hash, fingerprint(hash));
+    }
+
+    public boolean mightContain(@NonNull String key) {
+        long hash = Utils.hash64(key);
+        return stripe(hash).mightContain(hash, fingerprint(hash));
+    }
+
+    public boolean remove(@NonNull String key) {
+        long hash = Utils.hash64(key);
+        return stripe(hash).remove(hash, fingerprint(hash));
+    }
+
+    public long count() {
+        long count = 0;
+        for (Stripe stripe : stripes) count += stripe.count();
+        return count;
+    }
+
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) bytes += stripe.memoryBytes();
+        return bytes;
+    }
+
+    /**
+     * Expected false-positive rate at the current occupancy: a lookup compares against the
+     * eight slots of two buckets in every table of its stripe, and keys are spread evenly
+     * over the stripes.
+     */
+    public double falsePositiveRate() {
+        double rate = 0;
+        for (Stripe stripe : stripes) rate += stripe.falsePositiveRate();
+        return rate / stripes.length;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) stripe.clear();
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> STRIPE_SHIFT) & stripeMask];
+    }
+
+    private static final class Stripe {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<Table> tables = new ArrayList<>();
+        private final SplittableRandom random = new SplittableRandom();
+
+        Stripe(int buckets) {
+            tables.add(new Table(buckets));
+        }
+
+        void add(long hash, short fingerprint) {
+            lock.writeLock().lock();
+            try {
+                Table current = tables.getLast();
+                if (!current.insert(hash, fingerprint, random)) {
+                    // The table is sealed with the homeless fingerprint kept as its victim.
+                    tables.add(new Table(current.buckets() << 1));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean mightContain(long hash, short fingerprint) {
+            lock.readLock().lock();
+            try {
+                for (Table table : tables) {
+                    if (table.contains(hash, fingerprint)) return true;
+                }
+                return false;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean remove(long hash, short fingerprint) {
+            lock.writeLock().lock();
+            try {
+                for (int i = tables.size() - 1; i >= 0; i--) {
+                    if (tables.get(i).delete(hash, fingerprint)) return true;
+                }
+                return false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long count() {
+            lock.readLock().lock();
+            try {
+                long count = 0;
+                for (Table table : tables) count += table.count;
+                return count;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long memoryBytes() {
+            lock.readLock().lock();
+            try {
+                long bytes = 0;
+                for (Table table : tables) bytes += (long) table.slots.length * Short.BYTES;
+                return bytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        double falsePositiveRate() {
+            lock.readLock().lock();
+            try {
+                double miss = 1;
+                for (Table table : tables) {
+                    double load = (double) table.count / table.slots.length;
+                    miss *= Math.pow(1 - 1.0 / 65535, 2 * SLOTS_PER_BUCKET * load);
+                }
+                return 1 - miss;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                int buckets = tables.getFirst().buckets();
+                tables.clear();
+                tables.add(new Table(buckets));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static final class Table {
+
+        private final short[] slots;
+        private final int mask;
+        private int count;
+        private int victimBucket = -1;
+        private short victimFingerprint;
+
+        Table(int buckets) {
+            this.slots = new short[buckets * SLOTS_PER_BUCKET];
+            this.mask = buckets - 1;
+        }
+
+        int buckets() {
+            return mask + 1;
+        }
+
+        boolean insert(long hash, short fingerprint, SplittableRandom random) {
+            int bucket = (int) hash & mask;
+            if (put(bucket, fingerprint) || put(alternate(bucket, fingerprint), fingerprint)) {
+                count++;
+                return true;
+            }
+
+            bucket = random.nextBoolean() ? bucket : alternate(bucket, fingerprint);
+            short homeless = fingerprint;
+            for (int kick = 0; kick < MAX_KICKS; kick++) {
+                int slot = bucket * SLOTS_PER_BUCKET + random.nextInt(SLOTS_PER_BUCKET);
+                short evicted = slots[slot];
+                slots[slot] = homeless;
+                homeless = evicted;
+
+                bucket = alternate(bucket, homeless);
+                if (put(bucket, homeless)) {
+                    count++;
+                    return true;
+                }
+            }
+
+            victimBucket = bucket;
+            victimFingerprint = homeless;
+            count++;
+            return false;
+        }
+
+        boolean contains(long hash, short fingerprint) {
+            int first = (int) hash & mask;
+            int second = alternate(first, fingerprint);
+            if (victimBucket >= 0 && victimFingerprint == fingerprint
+                    && (victimBucket == first || victimBucket == second)) {
+                return true;
+            }
+            return find(first, fingerprint) >= 0 || find(second, fingerprint) >= 0;
+        }
+
+        boolean delete(long hash, short fingerprint) {
+            int first = (int) hash & mask;
+            int second = alternate(first, fingerprint);
+            if (victimBucket >= 0 && victimFingerprint == fingerprint
+                    && (victimBucket == first || victimBucket == second)) {
+                victimBucket = -1;
+                count--;
+                return true;
+            }
+
+            int slot = find(first, fingerprint);
+            if (slot < 0) slot = find(second, fingerprint);
+            if (slot < 0) return false;
+
+            slots[slot] = EMPTY;
+            count--;
+            return true;
+        }
+
+        private boolean put(int bucket, short fingerprint) {
+            int base = bucket * SLOTS_PER_BUCKET;
+            for (int i = base; i < base + SLOTS_PER_BUCKET; i++) {
+                if (slots[i] == EMPTY) {
+                    slots[i] = fingerprint;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int find(int bucket, short fingerprint) {
+            int base = bucket * SLOTS_PER_BUCKET;
+            for (int i = base; i < base + SLOTS_PER_BUCKET; i++) {
+                if (slots[i] == fingerprint) return i;
+            }
+            return -1;
+        }
+
+        private int alternate(int bucket, short fingerprint) {
+            return (bucket ^ (fingerprint * 0x5bd1e995)) & mask;
+        }
+    }
+
+    private static short fingerprint(long hash) {
+        short fingerprint = (short) (hash >>> 48);
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+}
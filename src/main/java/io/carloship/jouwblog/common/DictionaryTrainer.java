@@ -0,0 +1,101 @@
+package io.carloship.jouwblog.common;
+
+import org.jspecify.annotations.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a preset dictionary for {@link TextCompression} from sample texts.
+ * <p>
+ * Counts in how many samples each run of one to {@link #MAX_WORDS} words occurs, and scores
+ * a run by the bytes it would save over all samples. The best runs that are not part of an
+ * already picked one fill the dictionary, with the best last: deflate encodes nearer matches
+ * with shorter distances.
+ */
+public final class DictionaryTrainer {
+
+    /**
+     * Deflate hashes the whole dictionary again for every text, so past this size a larger
+     * dictionary costs more CPU per post than it saves in bytes.
+     */
+    public static final int DEFAULT_SIZE = 16 * 1024;
+
+    static final int MAX_WORDS = 4;
+    // Shorter matches cost deflate about as much as the literals they replace.
+    private static final int MIN_LENGTH = 5;
+
+    private DictionaryTrainer() {
+    }
+
+    public static byte[] train(@NonNull Collection<String> samples, int maxSize) {
+        maxSize = Math.min(maxSize, TextCompression.MAX_DICTIONARY_SIZE);
+
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (String sample : samples) {
+            for (String run : runs(sample)) {
+                documentFrequency.merge(run, 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (var entry : documentFrequency.entrySet()) {
+            if (entry.getValue() > 1) candidates.add(entry);
+        }
+        candidates.sort(Comparator.comparingLong((Map.Entry<String, Integer> entry) -> score(entry)).reversed());
+
+        List<String> picked = new ArrayList<>();
+        int size = 0;
+        for (var candidate : candidates) {
+            String run = candidate.getKey();
+            int length = run.getBytes(StandardCharsets.UTF_8).length;
+            if (size + length > maxSize) continue;
+            if (picked.stream().anyMatch(chosen -> chosen.contains(run))) continue;
+
+            picked.add(run);
+            size += length;
+            if (maxSize - size < MIN_LENGTH) break;
+        }
+
+        var dictionary = new ByteArrayOutputStream(size);
+        for (int i = picked.size() - 1; i >= 0; i--) {
+            dictionary.writeBytes(picked.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+        return dictionary.toByteArray();
+    }
+
+    private static long score(Map.Entry<String, Integer> entry) {
+        return (long) (entry.getValue() - 1) * entry.getKey().length();
+    }
+
+    /**
+     * The distinct runs of up to {@link #MAX_WORDS} words in {@code sample}, each with the
+     * whitespace and punctuation that follows it.
+     */
+    private static Set<String> runs(String sample) {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < sample.length(); i++) {
+            if (Character.isLetterOrDigit(sample.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(sample.charAt(i - 1)))) {
+                starts.add(i);
+            }
+        }
+        starts.add(sample.length());
+
+        Set<String> runs = new HashSet<>();
+        for (int first = 0; first < starts.size() - 1; first++) {
+            for (int words = 1; words <= MAX_WORDS && first + words < starts.size(); words++) {
+                String run = sample.substring(starts.get(first), starts.get(first + words));
+                if (run.length() >= MIN_LENGTH) runs.add(run);
+            }
+        }
+        return runs;
+    }
+}
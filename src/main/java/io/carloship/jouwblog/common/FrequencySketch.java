@@ -0,0 +1,116 @@
+package io.carloship.jouwblog.common;
+
+import org.jspecify.annotations.NonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of recent access frequency with 4-bit counters.
+ * <p>
+ * Four rows of counters are packed sixteen to a {@code long}, so tracking a few hundred
+ * thousand keys costs a few hundred KiB. Increments are conservative (only the smallest
+ * counters move), and once {@code 10 * width} increments have been seen every counter is
+ * halved, so the estimate follows what is popular now rather than what was popular once.
+ * <p>
+ * Counters are updated with compare-and-set on their word, so concurrent reads and increments
+ * never block each other; aging runs on whichever thread crosses the sample size first.
+ */
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final AtomicLongArray table;
+    private final int widthMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+    private final AtomicBoolean aging = new AtomicBoolean();
+
+    public FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(expectedKeys, 64) - 1) << 1;
+        this.table = new AtomicLongArray(width * DEPTH / 16);
+        this.widthMask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * @return the estimated recent access count of {@code key}, between 0 and 15
+     */
+    public int frequency(@NonNull String key) {
+        long hash = Utils.hash64(key);
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counter(index(hash, row)));
+        }
+        return min;
+    }
+
+    /**
+     * Records one access and returns the updated estimate.
+     */
+    public int increment(@NonNull String key) {
+        long hash = Utils.hash64(key);
+        int[] indexes = new int[DEPTH];
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            indexes[row] = index(hash, row);
+            min = Math.min(min, counter(indexes[row]));
+        }
+
+        if (min == MAX_COUNT) return min;
+
+        for (int index : indexes) {
+            increment(index, min);
+        }
+
+        if (additions.incrementAndGet() >= sampleSize && aging.compareAndSet(false, true)) {
+            try {
+                age();
+            } finally {
+                aging.set(false);
+            }
+        }
+        return min + 1;
+    }
+
+    /**
+     * Raises the counter at {@code index} to {@code min + 1} if it is still at {@code min}.
+     * A concurrent increment that got there first already did the work, so losing the race
+     * never counts an access twice.
+     */
+    private void increment(int index, int min) {
+        int word = index >>> 4;
+        int shift = (index & 15) << 2;
+        while (true) {
+            long current = table.get(word);
+            if ((int) (current >>> shift & MAX_COUNT) != min) return;
+            if (table.compareAndSet(word, current, current + (1L << shift))) return;
+        }
+    }
+
+    private void age() {
+        for (int i = 0; i < table.length(); i++) {
+            long current;
+            do {
+                current = table.get(i);
+            } while (!table.compareAndSet(i, current, (current >>> 1) & RESET_MASK));
+        }
+        additions.updateAndGet(count -> count / 2);
+    }
+
+    private int index(long hash, int row) {
+        long mixed = (hash ^ SEEDS[row]) * SEEDS[(row + 1) & (DEPTH - 1)];
+        mixed ^= mixed >>> 32;
+        return row * (widthMask + 1) + ((int) mixed & widthMask);
+    }
+
+    private int counter(int index) {
+        return (int) (table.get(index >>> 4) >>> ((index & 15) << 2)) & MAX_COUNT;
+    }
+}
@@ -0,0 +1,60 @@
+package io.carloship.jouwblog.common;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Immutable consistent-hash ring. Every member is placed at {@code virtualNodes} points,
+ * hashed from its id with {@link Utils#hash64}, and a key belongs to the first point at or
+ * after its own hash. Adding or removing one of n members moves about 1/n of the keys.
+ */
+public final class HashRing<T> {
+
+    private final long[] points;
+    private final Object[] owners;
+    private final List<T> members;
+
+    public HashRing(Collection<T> members, Function<T, String> id, int virtualNodes) {
+        this.members = List.copyOf(members);
+        int size = this.members.size() * virtualNodes;
+
+        long[] hashes = new long[size];
+        Object[] byHash = new Object[size];
+        int i = 0;
+        for (T member : this.members) {
+            String memberId = id.apply(member);
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[i] = Utils.hash64(memberId + '#' + v);
+                byHash[i++] = member;
+            }
+        }
+
+        Integer[] order = new Integer[size];
+        Arrays.setAll(order, index -> index);
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[size];
+        this.owners = new Object[size];
+        for (int j = 0; j < size; j++) {
+            points[j] = hashes[order[j]];
+            owners[j] = byHash[order[j]];
+        }
+    }
+
+    /**
+     * @return the member owning {@code key}, or {@code null} when the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T ownerOf(String key) {
+        if (points.length == 0) return null;
+
+        int index = Arrays.binarySearch(points, Utils.hash64(key));
+        if (index < 0) index = -index - 1;
+        return (T) owners[index == points.length ? 0 : index];
+    }
+
+    public List<T> members() {
+        return members;
+    }
+}
@@ -0,0 +1,178 @@
+package io.carloship.jouwblog.common;
+
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.PostView;
+import io.carloship.jouwblog.response.User;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MutableHttpResponse;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Conditional GET support. Validators are derived from version stamps already carried by
+ * the entities ({@code updateTimestamp} for posts), or from a 64-bit hash of the fields
+ * for users, which carry no version. An ETag can be computed and compared without
+ * serializing the body. {@code ResponseBytesCache} serves cached bytes on an equal ETag,
+ * so a validator must change whenever the body does; a 32-bit hash collides far too
+ * easily for that.
+ */
+@Singleton
+public class HttpCaching {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    @Value("${jouwblog.http.cache-control.posts:no-cache}")
+    protected String postsPolicy;
+
+    @Value("${jouwblog.http.cache-control.users:no-cache}")
+    protected String usersPolicy;
+
+    @Value("${jouwblog.http.cache-control.listings:no-cache}")
+    protected String listingsPolicy;
+
+    public String postsPolicy() {
+        return postsPolicy;
+    }
+
+    public String usersPolicy() {
+        return usersPolicy;
+    }
+
+    public String listingsPolicy() {
+        return listingsPolicy;
+    }
+
+    public static String etag(Post post) {
+        return "W/\"p-" + post.getPostId() + "-" + Long.toHexString(version(post)) + "\"";
+    }
+
+    public static String etag(User user) {
+        long hash = mixField(FNV_OFFSET, user.getUsername());
+        hash = mixField(hash, user.getName());
+        hash = mixField(hash, user.getEmail());
+        return "W/\"u-" + user.getId() + "-" + Long.toHexString(hash) + "\"";
+    }
+
+    public static String etag(List<PostView> views) {
+        long hash = FNV_OFFSET;
+        for (PostView view : views) {
+            hash = mix(hash, view.getPost().getPostId());
+            hash = mix(hash, version(view.getPost()));
+            if (view.getAuthor() != null) {
+                hash = mix(hash, etag(view.getAuthor()));
+            }
+        }
+        return "W/\"l-" + views.size() + "-" + Long.toHexString(hash) + "\"";
+    }
+
+    public static long lastModified(Post post) {
+        return version(post);
+    }
+
+    public static long lastModified(List<PostView> views) {
+        long max = 0;
+        for (PostView view : views) {
+            max = Math.max(max, version(view.getPost()));
+        }
+        return max;
+    }
+
+    /**
+     * Evaluates the request preconditions the way RFC 9110 orders them: {@code If-None-Match}
+     * wins, {@code If-Modified-Since} is only consulted when it is absent.
+     */
+    public static boolean isNotModified(@Nullable String ifNoneMatch, @Nullable String ifModifiedSince,
+                                        String etag, long lastModified) {
+        if (ifNoneMatch != null && !ifNoneMatch.isBlank()) {
+            return matches(ifNoneMatch, etag);
+        }
+
+        if (ifModifiedSince != null && !ifModifiedSince.isBlank() && lastModified > 0) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                // HTTP dates have second precision.
+                return lastModified / 1000 <= since / 1000;
+            } catch (DateTimeParseException ex) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    public <T> MutableHttpResponse<T> withValidators(MutableHttpResponse<T> response, String etag, long lastModified, String policy) {
+        response.header(HttpHeaders.ETAG, etag);
+        if (lastModified > 0) {
+            response.header(HttpHeaders.LAST_MODIFIED, httpDate(lastModified));
+        }
+        if (policy != null && !policy.isBlank()) {
+            response.header(HttpHeaders.CACHE_CONTROL, policy);
+        }
+        return response;
+    }
+
+    public MutableHttpResponse<?> notModified(String etag, long lastModified, String policy) {
+        return withValidators(HttpResponse.notModified(), etag, lastModified, policy);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        String trimmed = ifNoneMatch.trim();
+        if (trimmed.equals("*")) {
+            return true;
+        }
+
+        String opaque = opaque(etag);
+        for (String candidate : trimmed.split(",")) {
+            if (opaque(candidate.trim()).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // If-None-Match uses the weak comparison function, so the W/ prefix is ignored.
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static long version(Post post) {
+        return post.getUpdateTimestamp() != 0 ? post.getUpdateTimestamp() : post.getPostTimestamp();
+    }
+
+    private static String httpDate(long epochMillis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC));
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // The length goes first, so moving characters from one field to the next changes the hash.
+    private static long mixField(long hash, String value) {
+        return mix(mix(hash, value == null ? -1L : value.length()), value);
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) return mix(hash, 0L);
+
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,41 @@
+package io.carloship.jouwblog.common;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sliding window of the most recent round trips to one tier. Percentiles are recomputed from a
+ * sorted copy of the window every {@code WINDOW / 4} samples, so reading them is a volatile load.
+ */
+public class LatencyTracker {
+
+    private static final int WINDOW = 1024;
+    private static final int RECOMPUTE_EVERY = WINDOW / 4;
+
+    private final long[] samples = new long[WINDOW];
+    private final AtomicLong recorded = new AtomicLong();
+    private volatile long p95Nanos;
+
+    public void record(long nanos) {
+        long count = recorded.getAndIncrement();
+        // Races between writers only ever lose a sample, which the window can afford.
+        samples[(int) (count & (WINDOW - 1))] = nanos;
+
+        if ((count + 1) % RECOMPUTE_EVERY == 0) {
+            recompute(Math.min(count + 1, WINDOW));
+        }
+    }
+
+    /**
+     * @return the 95th percentile of the window in nanoseconds, or 0 before enough samples were seen
+     */
+    public long p95Nanos() {
+        return p95Nanos;
+    }
+
+    private void recompute(long size) {
+        long[] sorted = Arrays.copyOf(samples, (int) size);
+        Arrays.sort(sorted);
+        p95Nanos = sorted[(int) (size * 95 / 100) - 1];
+    }
+}
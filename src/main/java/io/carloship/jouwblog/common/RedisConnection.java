@@ -1,48 +1,170 @@
 package io.carloship.jouwblog.common;
 
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.async.RedisAsyncCommands;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.metrics.CommandLatencyRecorder;
 import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Bean;
 import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Primary;
+import io.micronaut.context.annotation.Requires;
 import io.micronaut.context.annotation.Value;
-import jakarta.annotation.PreDestroy;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.util.StringUtils;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Redis connections, split by purpose over one client and one set of event loops.
+ * <ul>
+ *     <li>{@link #READ}: the request path, reads and the writes of a single request. This is the
+ *     unqualified {@link RedisClusterAsyncCommands} bean, so a request never queues behind a
+ *     pipelined rebuild. A connection runs its commands in order, so a read issued after a
+ *     write of the same node sees that write.</li>
+ *     <li>{@link #BULK}: background work such as rebuilds, warm-ups, scans, TTL extension and
+ *     cascade deletes.</li>
+ *     <li>The pub/sub connection.</li>
+ * </ul>
+ * With {@code jouwblog.redis.split-connections: false} there is no bulk connection and
+ * background work shares the read connection.
+ * <p>
+ * A cluster {@code read-from} other than {@code upstream} sends reads to replicas, which may
+ * not have a write of the same request yet; the read-after-write order above then only holds
+ * for the upstream.
+ * With {@code jouwblog.redis.command-metrics}, commands on the read and bulk connections are
+ * timed per connection and command as {@code jouwblog.redis.command}.
+ * <p>
+ * With {@code jouwblog.redis.cluster.enabled} the connections go through a {@link RedisClusterClient}
+ * seeded from {@code jouwblog.redis.cluster.uris}, which routes every command to the node owning
+ * its slot. The repositories only use {@link RedisClusterAsyncCommands}, which both modes provide,
+ * and hash-tag their keys so each batch they send stays within one slot.
+ */
 @Factory
 public class RedisConnection {
 
+    public static final String READ = "redis-read";
+    public static final String BULK = "redis-bulk";
+
+    private static final String CLUSTER_ENABLED = "jouwblog.redis.cluster.enabled";
+    private static final String SPLIT_CONNECTIONS = "jouwblog.redis.split-connections";
+
     @Value("${redis.uri}")
     private String url;
 
+    @Value("${jouwblog.redis.command-metrics:false}")
+    protected boolean commandMetrics;
+
+    @Value("${jouwblog.redis.cluster.read-from:upstream}")
+    protected String readFrom;
+
+    @Singleton
+    @Bean(preDestroy = "shutdown")
+    ClientResources clientResources(@Value("${jouwblog.redis.io-threads:0}") int ioThreads){
+        var builder = DefaultClientResources.builder()
+                // Latency is recorded per connection by TimedRedisCommands instead.
+                .commandLatencyRecorder(CommandLatencyRecorder.disabled());
+        if (ioThreads > 0){
+            builder.ioThreadPoolSize(ioThreads).computationThreadPoolSize(ioThreads);
+        }
+        return builder.build();
+    }
+
     @Singleton
-    RedisClient client(){
-        return RedisClient.create(url);
+    @Requires(property = CLUSTER_ENABLED, notEquals = StringUtils.TRUE)
+    @Bean(preDestroy = "shutdown")
+    RedisClient client(ClientResources resources){
+        return RedisClient.create(resources, url);
     }
 
     @Singleton
-    StatefulRedisConnection<String, String> connection(){
-        return client().connect();
+    @Requires(property = CLUSTER_ENABLED, value = StringUtils.TRUE)
+    @Bean(preDestroy = "shutdown")
+    RedisClusterClient clusterClient(ClientResources resources,
+                                     @Value("${jouwblog.redis.cluster.uris}") List<String> uris,
+                                     @Value("${jouwblog.redis.cluster.topology-refresh:60s}") Duration topologyRefresh){
+        var client = RedisClusterClient.create(resources, uris.stream().map(RedisURI::create).toList());
+        client.setOptions(ClusterClientOptions.builder()
+                .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                        .enablePeriodicRefresh(topologyRefresh)
+                        // Follow MOVED redirects and failovers without waiting for the next period.
+                        .enableAllAdaptiveRefreshTriggers()
+                        .build())
+                .build());
+        return client;
     }
 
     @Singleton
-    StatefulRedisPubSubConnection<String, String> pubSubConnection(){
-        return client().connectPubSub();
+    @Named(READ)
+    @Bean(preDestroy = "close")
+    StatefulConnection<String, String> readConnection(Optional<RedisClient> client, Optional<RedisClusterClient> clusterClient){
+        if (clusterClient.isPresent()){
+            StatefulRedisClusterConnection<String, String> connection = clusterClient.get().connect();
+            connection.setReadFrom(ReadFrom.valueOf(readFrom));
+            return connection;
+        }
+        return client.orElseThrow().connect();
     }
 
     @Singleton
-    RedisCommands<String, String> syncCommands(){
-        return connection().sync();
+    @Named(BULK)
+    @Requires(property = SPLIT_CONNECTIONS, notEquals = StringUtils.FALSE)
+    @Bean(preDestroy = "close")
+    StatefulConnection<String, String> bulkConnection(Optional<RedisClient> client, Optional<RedisClusterClient> clusterClient){
+        // Writes always go to the upstream of the slot, so the cluster default read-from is kept.
+        return clusterClient.isPresent() ? clusterClient.get().connect() : client.orElseThrow().connect();
     }
 
     @Singleton
-    RedisAsyncCommands<String, String> asyncCommands(){
-        return connection().async();
+    @Bean(preDestroy = "close")
+    StatefulRedisPubSubConnection<String, String> pubSubConnection(Optional<RedisClient> client,
+                                                                   Optional<RedisClusterClient> clusterClient){
+        // A cluster forwards PUBLISH to every node, so any node serves the subscription.
+        return clusterClient.isPresent() ? clusterClient.get().connectPubSub() : client.orElseThrow().connectPubSub();
+    }
+
+    @Singleton
+    @Primary
+    RedisClusterAsyncCommands<String, String> asyncCommands(@Named(READ) StatefulConnection<String, String> connection,
+                                                            Optional<MeterRegistry> registry){
+        return timed(async(connection), "read", registry);
+    }
+
+    @Singleton
+    @Named(BULK)
+    RedisClusterAsyncCommands<String, String> bulkCommands(@Nullable @Named(BULK) StatefulConnection<String, String> bulk,
+                                                           @Named(READ) StatefulConnection<String, String> read,
+                                                           Optional<MeterRegistry> registry){
+        // Without a split the read connection is reused as is; only its own bean closes it.
+        return bulk == null ? timed(async(read), "read", registry) : timed(async(bulk), "bulk", registry);
+    }
+
+    private static RedisClusterAsyncCommands<String, String> async(StatefulConnection<String, String> connection){
+        if (connection instanceof StatefulRedisClusterConnection<String, String> cluster){
+            return cluster.async();
+        }
+        return ((StatefulRedisConnection<String, String>) connection).async();
     }
 
-    @PreDestroy
-    public void close(){
-        client().close();
+    private RedisClusterAsyncCommands<String, String> timed(RedisClusterAsyncCommands<String, String> commands, String connection,
+                                                            Optional<MeterRegistry> registry){
+        if (!commandMetrics || registry.isEmpty()){
+            return commands;
+        }
+        return TimedRedisCommands.wrap(commands, connection, registry.get());
     }
 }
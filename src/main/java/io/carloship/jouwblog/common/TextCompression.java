@@ -0,0 +1,176 @@
+package io.carloship.jouwblog.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate with a preset dictionary for short texts such as post bodies.
+ * <p>
+ * A post is too short for deflate to learn much from it, so the phrases common to all posts
+ * come from a dictionary trained on the corpus, see {@link DictionaryTrainer}. A compressed
+ * text is the big-endian length of its UTF-8 bytes followed by a zlib stream. The stream
+ * header carries the Adler-32 of the dictionary, so {@link #canInflate} can tell texts
+ * compressed with another dictionary apart.
+ * <p>
+ * Deflaters and inflaters hold native memory and are expensive to create, so they are pooled.
+ */
+@Slf4j
+public final class TextCompression {
+
+    public static final String POST_DICTIONARY = "/compression/post-text.dict";
+    // Deflate never looks back further than its 32 KiB window.
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int LENGTH_PREFIX = 4;
+    private static final int FDICT = 0x20;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final TextCompression POSTS = new TextCompression(loadDictionary(POST_DICTIONARY));
+
+    private final byte[] dictionary;
+    private final int dictionaryId;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final LongAdder inflations = new LongAdder();
+    private final LongAdder inflateNanos = new LongAdder();
+
+    public TextCompression(byte @NonNull [] dictionary) {
+        if (dictionary.length > MAX_DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length);
+        }
+        this.dictionary = dictionary;
+
+        var adler = new Adler32();
+        adler.update(dictionary);
+        this.dictionaryId = (int) adler.getValue();
+    }
+
+    /**
+     * The codec of post bodies, with the dictionary on the classpath at {@link #POST_DICTIONARY}
+     * or without one when none was trained.
+     */
+    public static TextCompression posts() {
+        return POSTS;
+    }
+
+    public int dictionarySize() {
+        return dictionary.length;
+    }
+
+    public long inflations() {
+        return inflations.sum();
+    }
+
+    public long inflateNanos() {
+        return inflateNanos.sum();
+    }
+
+    public byte[] deflate(@NonNull String text, int level) {
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) deflater = new Deflater();
+        try {
+            deflater.setLevel(level);
+            if (dictionary.length > 0) deflater.setDictionary(dictionary);
+            deflater.setInput(input);
+            deflater.finish();
+
+            byte[] output = new byte[LENGTH_PREFIX + input.length / 2 + 64];
+            writeLength(output, input.length);
+            int size = LENGTH_PREFIX;
+            while (!deflater.finished()) {
+                if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+                size += deflater.deflate(output, size, output.length - size);
+            }
+            return Arrays.copyOf(output, size);
+        } finally {
+            release(deflater);
+        }
+    }
+
+    public String inflate(byte @NonNull [] compressed) {
+        long start = System.nanoTime();
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) inflater = new Inflater();
+        try {
+            byte[] output = new byte[readLength(compressed)];
+            inflater.setInput(compressed, LENGTH_PREFIX, compressed.length - LENGTH_PREFIX);
+            int size = 0;
+            while (size < output.length && !inflater.finished()) {
+                int inflated = inflater.inflate(output, size, output.length - size);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    if (inflater.getAdler() != dictionaryId) {
+                        throw new IllegalStateException("Text was compressed with another dictionary");
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflated == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Compressed text is truncated");
+                }
+                size += inflated;
+            }
+            return new String(output, 0, size, StandardCharsets.UTF_8);
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Compressed text is corrupt", ex);
+        } finally {
+            inflater.reset();
+            if (inflaters.size() < POOL_SIZE) inflaters.offer(inflater); else inflater.end();
+            inflations.increment();
+            inflateNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return whether {@code compressed} was written without a dictionary or with this one
+     */
+    public boolean canInflate(byte @Nullable [] compressed) {
+        if (compressed == null || compressed.length < LENGTH_PREFIX + 2) return false;
+        if ((compressed[LENGTH_PREFIX + 1] & FDICT) == 0) return true;
+        return compressed.length >= LENGTH_PREFIX + 6 && readInt(compressed, LENGTH_PREFIX + 2) == dictionaryId;
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (deflaters.size() < POOL_SIZE) deflaters.offer(deflater); else deflater.end();
+    }
+
+    private static byte[] loadDictionary(String resource) {
+        try (InputStream in = TextCompression.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                log.info("No compression dictionary at {}, compressing without one", resource);
+                return new byte[0];
+            }
+            return in.readAllBytes();
+        } catch (IOException ex) {
+            log.warn("Error while loading compression dictionary {}, compressing without one: {}", resource, ex.getMessage());
+            return new byte[0];
+        }
+    }
+
+    private static void writeLength(byte[] bytes, int length) {
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+    }
+
+    private static int readLength(byte[] bytes) {
+        return readInt(bytes, 0);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | bytes[offset + 3] & 0xff;
+    }
+}
@@ -0,0 +1,149 @@
+package io.carloship.jouwblog.common;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Deadline-bounded, hedged L2/L3 reads.
+ * <p>
+ * Redis gets its own deadline and a miss, failure or timeout falls through to Mongo as before.
+ * When Redis has not answered after its recent p95, Mongo is queried in parallel and a Mongo
+ * hit wins. A Mongo miss or failure does not: the entity may have been written to Redis before
+ * it is visible to that Mongo read, so the read keeps waiting for Redis and only settles on the
+ * Mongo miss once Redis misses as well. Reads that time out count towards the p95 with the
+ * deadline they hit, so a Redis that stalls raises the hedge delay instead of hiding from it.
+ * <p>
+ * Callers attach their cache write-backs to the tier suppliers, so whichever tier answers
+ * populates L1 exactly as a sequential read would.
+ */
+@Slf4j
+@Singleton
+public class TieredReads implements MeterBinder {
+
+    private final LatencyTracker redisLatency = new LatencyTracker();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+
+    @Value("${jouwblog.reads.redis-deadline:50ms}")
+    protected Duration redisDeadline = Duration.ofMillis(50);
+
+    @Value("${jouwblog.reads.mongo-deadline:500ms}")
+    protected Duration mongoDeadline = Duration.ofMillis(500);
+
+    @Value("${jouwblog.reads.hedge.enabled:true}")
+    protected boolean hedgeEnabled = true;
+
+    @Value("${jouwblog.reads.hedge.min-delay:2ms}")
+    protected Duration minHedgeDelay = Duration.ofMillis(2);
+
+    @Value("${jouwblog.reads.serve-stale:true}")
+    protected boolean serveStale = true;
+
+    @Value("${jouwblog.reads.revalidate-delay:1s}")
+    protected Duration revalidateDelay = Duration.ofSeconds(1);
+
+    @NonNull
+    public <T> CompletableFuture<T> read(@NonNull Supplier<CompletableFuture<T>> redis,
+                                         @NonNull Supplier<CompletableFuture<T>> mongo) {
+        var result = new CompletableFuture<T>();
+        var mongoRead = new AtomicReference<CompletableFuture<T>>();
+        Supplier<CompletableFuture<T>> startMongo = () -> {
+            var started = mongoRead.get();
+            if (started != null) return started;
+
+            var candidate = new CompletableFuture<T>();
+            if (!mongoRead.compareAndSet(null, candidate)) return mongoRead.get();
+            mongo.get().orTimeout(mongoDeadline.toNanos(), TimeUnit.NANOSECONDS).whenComplete((value, ex) -> {
+                if (ex != null) candidate.completeExceptionally(ex);
+                else candidate.complete(value);
+            });
+            return candidate;
+        };
+
+        long start = System.nanoTime();
+        var redisRead = redis.get().orTimeout(redisDeadline.toNanos(), TimeUnit.NANOSECONDS);
+        redisRead.whenComplete((value, ex) -> {
+            if (ex == null || ex instanceof TimeoutException) redisLatency.record(System.nanoTime() - start);
+            if (ex == null && value != null) {
+                result.complete(value);
+                return;
+            }
+
+            startMongo.get().whenComplete((mongoValue, mongoEx) -> {
+                if (mongoEx != null) result.completeExceptionally(mongoEx);
+                else result.complete(mongoValue);
+            });
+        });
+
+        if (hedgeEnabled && !redisRead.isDone()) {
+            long delay = Math.max(redisLatency.p95Nanos(), minHedgeDelay.toNanos());
+            if (delay < redisDeadline.toNanos()) {
+                CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+                    if (redisRead.isDone() || result.isDone()) return;
+
+                    hedged.increment();
+                    startMongo.get().whenComplete((mongoValue, mongoEx) -> {
+                        if (mongoEx == null && mongoValue != null) result.complete(mongoValue);
+                    });
+                });
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Whether a read that failed on every tier may answer from a stale L1 copy.
+     */
+    public boolean serveStale() {
+        return serveStale;
+    }
+
+    /**
+     * Records a stale answer for {@code key} and schedules one background re-read of it. Later
+     * stale answers for the same key do not queue more re-reads until the pending one finishes.
+     */
+    public void revalidate(@NonNull String key, @NonNull Supplier<CompletableFuture<?>> reread) {
+        staleServed.increment();
+        if (!revalidating.add(key)) return;
+
+        CompletableFuture.delayedExecutor(revalidateDelay.toNanos(), TimeUnit.NANOSECONDS).execute(() ->
+                reread.get().whenComplete((_, ex) -> {
+                    revalidating.remove(key);
+                    if (ex != null) {
+                        log.debug("Revalidation of {} failed: {}", key, ex.getMessage());
+                    }
+                }));
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("jouwblog.reads.redis.p95", redisLatency, tracker -> tracker.p95Nanos() / 1_000_000.0)
+                .baseUnit("milliseconds")
+                .description("Recent Redis read p95, used as the hedge delay")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.reads.hedged", hedged, LongAdder::sum)
+                .description("Reads that also queried Mongo because Redis was slow")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.reads.stale", staleServed, LongAdder::sum)
+                .description("Reads answered from a stale L1 copy")
+                .register(registry);
+    }
+}
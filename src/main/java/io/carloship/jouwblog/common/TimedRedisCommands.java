@@ -0,0 +1,74 @@
+package io.carloship.jouwblog.common;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the round trip of every command issued through a {@link RedisClusterAsyncCommands}, from
+ * the call to the completion of its {@link RedisFuture}, as {@code jouwblog.redis.command} tagged
+ * with the connection and the command. The proxy implements the standalone or the cluster command
+ * interface, matching the target.
+ */
+final class TimedRedisCommands implements InvocationHandler {
+
+    private final RedisClusterAsyncCommands<String, String> target;
+    private final String connection;
+    private final MeterRegistry registry;
+    // The proxy passes the same Method instance on every call, so a lookup needs no getName().
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    private TimedRedisCommands(RedisClusterAsyncCommands<String, String> target, String connection, MeterRegistry registry) {
+        this.target = target;
+        this.connection = connection;
+        this.registry = registry;
+    }
+
+    @SuppressWarnings("unchecked")
+    static RedisClusterAsyncCommands<String, String> wrap(RedisClusterAsyncCommands<String, String> target, String connection,
+                                                          MeterRegistry registry) {
+        return (RedisClusterAsyncCommands<String, String>) Proxy.newProxyInstance(
+                RedisClusterAsyncCommands.class.getClassLoader(),
+                new Class<?>[]{target instanceof RedisAdvancedClusterAsyncCommands
+                        ? RedisAdvancedClusterAsyncCommands.class
+                        : RedisAsyncCommands.class},
+                new TimedRedisCommands(target, connection, registry));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+
+        if (result instanceof RedisFuture<?> future) {
+            Timer timer = timers.get(method);
+            if (timer == null) timer = timers.computeIfAbsent(method, this::timer);
+            future.whenComplete((_, _) -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }
+        return result;
+    }
+
+    private Timer timer(Method method) {
+        return Timer.builder("jouwblog.redis.command")
+                .tag("connection", connection)
+                .tag("command", method.getName())
+                .description("Round trip of Redis commands, from issue to reply")
+                .register(registry);
+    }
+}
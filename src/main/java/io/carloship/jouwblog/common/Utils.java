@@ -20,4 +20,22 @@ public class Utils {
         return sourceList.subList(fromIndex, toIndex);
     }
 
+    /**
+     * 64-bit FNV-1a followed by the murmur3 finalizer, so ids that share long prefixes still
+     * spread over every bit. Used by the in-memory sketches and filters.
+     */
+    public static long hash64(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
 }
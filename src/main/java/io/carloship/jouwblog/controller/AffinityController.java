@@ -0,0 +1,58 @@
+package io.carloship.jouwblog.controller;
+
+import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.service.AffinityForwarder;
+import io.carloship.jouwblog.service.PostService;
+import io.carloship.jouwblog.service.UserService;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.scheduling.annotation.ExecuteOn;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Node-to-node reads forwarded by {@link AffinityForwarder}. They are always answered locally,
+ * so two nodes that briefly disagree about the ring cannot forward in a loop.
+ */
+@Slf4j
+@ExecuteOn(Application.REQUEST_EXECUTOR)
+@Controller(AffinityForwarder.PATH)
+@Requires(property = "jouwblog.affinity.mode", value = "forward")
+public class AffinityController {
+
+    @Inject
+    protected PostService postService;
+
+    @Inject
+    protected UserService userService;
+
+    @Get("/posts/{userId}/{postId}")
+    CompletableFuture<MutableHttpResponse<?>> findPost(@NonNull @PathVariable String userId, @NonNull @PathVariable String postId){
+        return postService.findPost(postId, userId, false).<MutableHttpResponse<?>>thenApply(post ->
+                post == null ? HttpResponse.notFound() : HttpResponse.ok(post)
+        ).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while find forwarded post {} from user {}: {}", postId, userId, ex.getMessage());
+            return HttpResponse.serverError();
+        });
+    }
+
+    @Get("/users/{userId}")
+    CompletableFuture<MutableHttpResponse<?>> findUser(@NonNull @PathVariable String userId){
+        return userService.findUser(userId, false).<MutableHttpResponse<?>>thenApply(user ->
+                user == null ? HttpResponse.notFound() : HttpResponse.ok(user)
+        ).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while find forwarded user {}: {}", userId, ex.getMessage());
+            return HttpResponse.serverError();
+        });
+    }
+}
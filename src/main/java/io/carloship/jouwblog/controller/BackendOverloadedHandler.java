@@ -0,0 +1,25 @@
+package io.carloship.jouwblog.controller;
+
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.Produces;
+import io.micronaut.http.server.exceptions.ExceptionHandler;
+import jakarta.inject.Singleton;
+
+/**
+ * Turns load shedding into a fast 503 with a short retry hint.
+ */
+@Produces
+@Singleton
+public class BackendOverloadedHandler implements ExceptionHandler<BackendOverloadedException, HttpResponse<?>> {
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    @Override
+    public HttpResponse<?> handle(HttpRequest request, BackendOverloadedException exception) {
+        return HttpResponse.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+    }
+}
@@ -0,0 +1,78 @@
+package io.carloship.jouwblog.controller;
+
+import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.backup.BackupExporter;
+import io.carloship.jouwblog.backup.BackupImporter;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.http.server.types.files.SystemFile;
+import io.micronaut.scheduling.annotation.ExecuteOn;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Exports, downloads and restores backups, see {@link BackupExporter}. Only registered with
+ * {@code jouwblog.backup.enabled}, and only answered with the internal token, see
+ * {@link InternalEndpointFilter}.
+ */
+@Slf4j
+@ExecuteOn(Application.REQUEST_EXECUTOR)
+@Controller(BackupController.PATH)
+@Requires(property = "jouwblog.backup.enabled", value = StringUtils.TRUE)
+public class BackupController {
+
+    public static final String PATH = "/admin/backup";
+
+    @Inject
+    protected BackupExporter exporter;
+
+    @Inject
+    protected BackupImporter importer;
+
+    @Post("/export")
+    CompletableFuture<MutableHttpResponse<?>> export(){
+        return exporter.export().<MutableHttpResponse<?>>thenApply(HttpResponse::ok).exceptionally(ex -> {
+            if (ex.getCause() instanceof IllegalStateException) return HttpResponse.status(HttpStatus.CONFLICT, ex.getCause().getMessage());
+            log.error("Error while exporting backup: {}", ex.getMessage(), ex);
+            return HttpResponse.serverError();
+        });
+    }
+
+    /**
+     * Sends the file as it is on disk; the server hands it to the socket without copying it
+     * through the heap.
+     */
+    @Get("/{name}")
+    MutableHttpResponse<?> download(@NonNull @PathVariable String name){
+        var file = exporter.resolve(name);
+        if (file == null) {
+            return HttpResponse.notFound("Backup " + name + " not found");
+        }
+        return HttpResponse.ok(new SystemFile(file.toFile()).attach(name));
+    }
+
+    @Post("/{name}/restore{?warm}")
+    CompletableFuture<MutableHttpResponse<?>> restore(@NonNull @PathVariable String name, @QueryValue(defaultValue = "false") boolean warm){
+        var file = exporter.resolve(name);
+        if (file == null) {
+            return CompletableFuture.completedFuture(HttpResponse.notFound("Backup " + name + " not found"));
+        }
+
+        return importer.restore(file, warm).<MutableHttpResponse<?>>thenApply(HttpResponse::ok).exceptionally(ex -> {
+            if (ex.getCause() instanceof IllegalStateException) return HttpResponse.status(HttpStatus.CONFLICT, ex.getCause().getMessage());
+            log.error("Error while restoring backup {}: {}", name, ex.getMessage(), ex);
+            return HttpResponse.serverError();
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package io.carloship.jouwblog.controller;
+
+import io.carloship.jouwblog.service.AffinityForwarder;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.RequestFilter;
+import io.micronaut.http.annotation.ServerFilter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards the node-to-node and admin endpoints with a shared secret: a request to them must
+ * carry {@code jouwblog.internal.token} in the {@link #HEADER} header. Without a configured
+ * token they refuse every request, so a node never serves them to the public by accident.
+ */
+@Slf4j
+@ServerFilter(patterns = {AffinityForwarder.PATH + "/**", BackupController.PATH + "/**"})
+public class InternalEndpointFilter {
+
+    public static final String HEADER = "X-Internal-Token";
+
+    private final byte[] token;
+
+    public InternalEndpointFilter(@Value("${jouwblog.internal.token:}") String token) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @RequestFilter
+    @Nullable
+    HttpResponse<?> authenticate(HttpRequest<?> request) {
+        if (token.length == 0) {
+            log.warn("Refused {} {}: jouwblog.internal.token is not set", request.getMethod(), request.getPath());
+            return HttpResponse.status(HttpStatus.FORBIDDEN);
+        }
+
+        String presented = request.getHeaders().get(HEADER);
+        // Constant time, so the token cannot be guessed byte by byte from response times.
+        if (presented == null || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            return HttpResponse.unauthorized();
+        }
+        return null;
+    }
+}
@@ -1,73 +1,246 @@
 package io.carloship.jouwblog.controller;
 
+import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.cache.ResponseBytesCache;
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.common.HttpCaching;
 import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.PostPatch;
+import io.carloship.jouwblog.response.PostReference;
+import io.carloship.jouwblog.response.PostView;
 import io.carloship.jouwblog.service.PostService;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Body;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Delete;
 import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Header;
+import io.micronaut.http.annotation.Patch;
 import io.micronaut.http.annotation.PathVariable;
-import io.micronaut.scheduling.TaskExecutors;
-import io.micronaut.scheduling.annotation.Async;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.json.JsonMapper;
 import io.micronaut.scheduling.annotation.ExecuteOn;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.reactivestreams.Publisher;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
-@ExecuteOn(TaskExecutors.IO)
+@ExecuteOn(Application.REQUEST_EXECUTOR)
 @Controller("/posts/")
 public class PostController {
 
+    private static final int MAX_SEARCH_LIMIT = 100;
+    private static final String EXPAND_AUTHOR = "author";
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final int STREAM_CHUNK_POSTS = 32;
+
     @Inject
     protected PostService service;
 
-    @Async
-    @Get("/all/{userId}/{size}/{page}")
-    CompletableFuture<List<Post>> findAllPosts(@NonNull @PathVariable String userId, @PathVariable int size, @PathVariable int page){
+    @Inject
+    protected HttpCaching httpCaching;
+
+    @Inject
+    protected ResponseBytesCache responseBytes;
+
+    @Inject
+    protected JsonMapper jsonMapper;
+
+    @Value("${jouwblog.batch.max-size:100}")
+    protected int maxBatchSize;
+
+    @Get("/all/{userId}/{size}/{page}{?expand}")
+    CompletableFuture<MutableHttpResponse<?>> findAllPosts(@NonNull @PathVariable String userId, @PathVariable int size, @PathVariable int page,
+                                                           @Nullable @QueryValue String expand,
+                                                           @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                                           @Nullable @Header(HttpHeaders.IF_MODIFIED_SINCE) String ifModifiedSince){
         if (userId.isBlank()){
-            return CompletableFuture.completedFuture(List.of());
+            return CompletableFuture.completedFuture(HttpResponse.ok(List.of()));
+        }
+
+        boolean expandAuthor = expandsAuthor(expand);
+        if (!expandAuthor && (ifNoneMatch != null || ifModifiedSince != null)){
+            // Validate against the L1 page first, so a poll with an unchanged page costs no Redis or Mongo call.
+            List<Post> cachedPage = service.peekPage(userId, size, page);
+            if (cachedPage != null){
+                List<PostView> views = cachedPage.stream().map(post -> new PostView(post, null)).toList();
+                String etag = HttpCaching.etag(views);
+                long lastModified = HttpCaching.lastModified(views);
+                if (HttpCaching.isNotModified(ifNoneMatch, ifModifiedSince, etag, lastModified)){
+                    return CompletableFuture.completedFuture(httpCaching.notModified(etag, lastModified, httpCaching.listingsPolicy()));
+                }
+            }
         }
 
-        return service.findAllPage(userId, size, page).exceptionally(ex -> {
+        return service.findAllPage(userId, size, page)
+                .thenCompose(posts -> service.toViews(posts, expandAuthor))
+                .thenApply(views -> listResponse(views, ifNoneMatch, ifModifiedSince))
+                .exceptionally(ex -> {
+                    if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
                     log.error("Error while find all posts from user {}: {}", userId, ex.getMessage());
-                    return List.of();
+                    return HttpResponse.ok(List.of());
                 });
     }
 
-    @Async
     @Get("/single/{userId}/{postId}")
-    CompletableFuture<Post> findPost(@NonNull @PathVariable String userId, @NonNull @PathVariable String postId){
+    CompletableFuture<MutableHttpResponse<?>> findPost(@NonNull @PathVariable String userId, @NonNull @PathVariable String postId,
+                                                       @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                                       @Nullable @Header(HttpHeaders.IF_MODIFIED_SINCE) String ifModifiedSince,
+                                                       @Nullable @Header(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding){
         if (userId.isBlank() || postId.isBlank()){
-            return CompletableFuture.completedFuture(null);
+            return CompletableFuture.completedFuture(HttpResponse.notFound());
         }
 
-        return service.findPost(postId, userId).exceptionally(ex -> {
+        var cached = service.peekPost(postId);
+        if (cached != null){
+            String etag = HttpCaching.etag(cached);
+            long lastModified = HttpCaching.lastModified(cached);
+            if (HttpCaching.isNotModified(ifNoneMatch, ifModifiedSince, etag, lastModified)){
+                return CompletableFuture.completedFuture(httpCaching.notModified(etag, lastModified, httpCaching.postsPolicy()));
+            }
+        }
+
+        return service.findPost(postId, userId).<MutableHttpResponse<?>>thenApply(post -> {
+            if (post == null){
+                return HttpResponse.notFound();
+            }
+
+            String etag = HttpCaching.etag(post);
+            long lastModified = HttpCaching.lastModified(post);
+            if (HttpCaching.isNotModified(ifNoneMatch, ifModifiedSince, etag, lastModified)){
+                return httpCaching.notModified(etag, lastModified, httpCaching.postsPolicy());
+            }
+            return httpCaching.withValidators(responseBytes.okPost(postId, etag, post, acceptEncoding), etag, lastModified, httpCaching.postsPolicy());
+        }).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
             log.error("Error while find post {} from user {}: {}", postId,  userId, ex.getMessage());
-            return null;
+            return HttpResponse.serverError();
         });
     }
 
-    @Async
+    @Get(value = "/stream/{userId}", produces = APPLICATION_NDJSON)
+    Publisher<byte[]> streamPosts(@NonNull @PathVariable String userId){
+        return service.streamUserPosts(userId)
+                .buffer(STREAM_CHUNK_POSTS)
+                .map(this::toNdjson)
+                .doOnError(ex -> log.error("Error while stream posts from user {}: {}", userId, ex.getMessage()));
+    }
+
+    @io.micronaut.http.annotation.Post("/batch{?expand}")
+    CompletableFuture<MutableHttpResponse<?>> findPosts(@NonNull @Body List<PostReference> references, @Nullable @QueryValue String expand){
+        if (references.size() > maxBatchSize){
+            return CompletableFuture.completedFuture(HttpResponse.badRequest("At most " + maxBatchSize + " posts per batch"));
+        }
+
+        return service.findPosts(references)
+                .thenCompose(posts -> service.toViews(posts, expandsAuthor(expand)))
+                .<MutableHttpResponse<?>>thenApply(HttpResponse::ok)
+                .exceptionally(ex -> {
+                    if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+                    log.error("Error while find batch of {} posts: {}", references.size(), ex.getMessage());
+                    return HttpResponse.serverError();
+                });
+    }
+
+    @Get("/search{?q,limit,expand}")
+    CompletableFuture<MutableHttpResponse<?>> searchPosts(@NonNull @QueryValue String q, @QueryValue(defaultValue = "10") int limit,
+                                                          @Nullable @QueryValue String expand,
+                                                          @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch){
+        if (q.isBlank()){
+            return CompletableFuture.completedFuture(HttpResponse.ok(List.of()));
+        }
+
+        return service.search(q, Math.clamp(limit, 1, MAX_SEARCH_LIMIT))
+                .thenCompose(posts -> service.toViews(posts, expandsAuthor(expand)))
+                .thenApply(views -> listResponse(views, ifNoneMatch, null))
+                .exceptionally(ex -> {
+                    if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+                    log.error("Error while search posts for query {}: {}", q, ex.getMessage());
+                    return HttpResponse.ok(List.of());
+                });
+    }
+
     @io.micronaut.http.annotation.Post //Because my class called Post also :D
     CompletableFuture<Post> savePost(@NonNull Post post){
         return service.savePost(post).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
             log.error("Error while save post: {}", ex.getMessage());
             return null;
         });
     }
 
-    @Async
+    @Patch("/{userId}/{postId}")
+    CompletableFuture<MutableHttpResponse<?>> patchPost(@NonNull @PathVariable String userId, @NonNull @PathVariable String postId,
+                                                        @NonNull @Body PostPatch patch){
+        if (patch.isEmpty()){
+            return CompletableFuture.completedFuture(HttpResponse.badRequest("Patch has no fields"));
+        }
+
+        return service.patchPost(userId, postId, patch).<MutableHttpResponse<?>>thenApply(post -> {
+            if (post == null){
+                return HttpResponse.notFound();
+            }
+            return HttpResponse.ok(post);
+        }).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while patch post {} from user {}: {}", postId, userId, ex.getMessage());
+            return HttpResponse.serverError();
+        });
+    }
+
     @Delete("/{userId}/{postId}")
     CompletableFuture<MutableHttpResponse<Object>> deletePost(@NonNull @PathVariable String userId, @NonNull @PathVariable String postId){
-        return service.deletePost(userId, postId).thenApply(_ -> HttpResponse.ok())
+        return service.deletePost(postId, userId).thenApply(_ -> HttpResponse.ok())
                 .exceptionally(ex -> {
+                    if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
                     log.error("Error while delete post {} from user {}: {}", postId, userId, ex.getMessage());
                     return HttpResponse.serverError();
                 });
     }
+
+    private MutableHttpResponse<?> listResponse(List<PostView> views, @Nullable String ifNoneMatch, @Nullable String ifModifiedSince){
+        String etag = HttpCaching.etag(views);
+        long lastModified = HttpCaching.lastModified(views);
+        if (HttpCaching.isNotModified(ifNoneMatch, ifModifiedSince, etag, lastModified)){
+            return httpCaching.notModified(etag, lastModified, httpCaching.listingsPolicy());
+        }
+        return httpCaching.withValidators(HttpResponse.ok(views), etag, lastModified, httpCaching.listingsPolicy());
+    }
+
+    private byte[] toNdjson(List<Post> posts){
+        var out = new ByteArrayOutputStream(posts.size() * 512);
+        try {
+            for (Post post : posts){
+                out.write(jsonMapper.writeValueAsBytes(post));
+                out.write('\n');
+            }
+        } catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean expandsAuthor(@Nullable String expand){
+        if (expand == null || expand.isBlank()){
+            return false;
+        }
+
+        for (String field : expand.split(",")){
+            if (EXPAND_AUTHOR.equalsIgnoreCase(field.trim())){
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -1,55 +1,127 @@
 package io.carloship.jouwblog.controller;
 
+import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.cache.ResponseBytesCache;
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.common.HttpCaching;
 import io.carloship.jouwblog.response.User;
+import io.carloship.jouwblog.response.UserPatch;
+import io.carloship.jouwblog.response.UserSuggestion;
 import io.carloship.jouwblog.service.UserService;
+import io.micronaut.context.annotation.Value;
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.*;
-import io.micronaut.scheduling.TaskExecutors;
-import io.micronaut.scheduling.annotation.Async;
 import io.micronaut.scheduling.annotation.ExecuteOn;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
-@ExecuteOn(TaskExecutors.IO)
+@ExecuteOn(Application.REQUEST_EXECUTOR)
 @Controller("/user/")
 public class UserController {
 
+    private static final int MAX_SUGGESTIONS = 50;
+
     @Inject
     protected UserService service;
 
-    @Async
+    @Inject
+    protected HttpCaching httpCaching;
+
+    @Inject
+    protected ResponseBytesCache responseBytes;
+
+    @Value("${jouwblog.batch.max-size:100}")
+    protected int maxBatchSize;
+
     @Get("/{userId}")
-    CompletableFuture<MutableHttpResponse<?>> findUser(@NonNull @NotNull @PathVariable String userId){
+    CompletableFuture<MutableHttpResponse<?>> findUser(@NonNull @NotNull @PathVariable String userId,
+                                                       @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                                       @Nullable @Header(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding){
         if (userId.isBlank()) {
              return CompletableFuture.completedFuture(HttpResponse.badRequest("userId cannot be null"));
         }
 
-        return service.findUser(userId).thenApply(result -> {
+        var cached = service.peekUser(userId);
+        if (cached != null && HttpCaching.isNotModified(ifNoneMatch, null, HttpCaching.etag(cached), 0)) {
+            return CompletableFuture.completedFuture(httpCaching.notModified(HttpCaching.etag(cached), 0, httpCaching.usersPolicy()));
+        }
+
+        return service.findUser(userId).<MutableHttpResponse<?>>thenApply(result -> {
             if (result == null){
                 return HttpResponse.notFound("User with id " + userId + " not found");
             }
 
-            return HttpResponse.created(result);
+            String etag = HttpCaching.etag(result);
+            if (HttpCaching.isNotModified(ifNoneMatch, null, etag, 0)) {
+                return httpCaching.notModified(etag, 0, httpCaching.usersPolicy());
+            }
+            return httpCaching.withValidators(responseBytes.okUser(userId, etag, result, acceptEncoding), etag, 0, httpCaching.usersPolicy());
         }).exceptionally(ex -> {
-            log.error(ex.getMessage());
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while find user {}: {}", userId, ex.getMessage(), ex);
             return HttpResponse.serverError();
         });
     }
 
-    @Async
+    @Get("/batch{?ids}")
+    CompletableFuture<MutableHttpResponse<?>> findUsers(@NonNull @NotNull @QueryValue List<String> ids){
+        if (ids.size() > maxBatchSize) {
+            return CompletableFuture.completedFuture(HttpResponse.badRequest("At most " + maxBatchSize + " users per batch"));
+        }
+
+        return service.findUsers(ids).<MutableHttpResponse<?>>thenApply(HttpResponse::ok)
+                .exceptionally(ex -> {
+                    if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+                    log.error("Error while find batch of {} users: {}", ids.size(), ex.getMessage(), ex);
+                    return HttpResponse.serverError();
+                });
+    }
+
+    @Get("/suggest{?prefix,limit}")
+    List<UserSuggestion> suggestUsernames(@NonNull @NotNull @QueryValue String prefix, @QueryValue(defaultValue = "10") int limit){
+        if (prefix.isBlank()) {
+            return List.of();
+        }
+
+        return service.suggestUsernames(prefix, Math.clamp(limit, 1, MAX_SUGGESTIONS));
+    }
+
     @Post
     CompletableFuture<User> postUser(@NonNull @NotNull @Valid User user){
         return service.saveUser(user);
     }
 
-    @Async
+    @Patch("/{userId}")
+    CompletableFuture<MutableHttpResponse<?>> patchUser(@NonNull @NotNull @PathVariable String userId, @NonNull @NotNull @Body UserPatch patch){
+        if (userId.isBlank()) {
+            return CompletableFuture.completedFuture(HttpResponse.badRequest("userId cannot be null"));
+        }
+        if (patch.isEmpty()) {
+            return CompletableFuture.completedFuture(HttpResponse.badRequest("Patch has no fields"));
+        }
+
+        return service.patchUser(userId, patch).<MutableHttpResponse<?>>thenApply(result -> {
+            if (result == null){
+                return HttpResponse.notFound("User with id " + userId + " not found");
+            }
+            return HttpResponse.ok(result);
+        }).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while patch user {}: {}", userId, ex.getMessage(), ex);
+            return HttpResponse.serverError();
+        });
+    }
+
     @Delete("/{userId}")
     CompletableFuture<MutableHttpResponse<?>> deleteUser(@NonNull @NotNull @PathVariable String userId){
         if (userId.isBlank()) {
@@ -0,0 +1,214 @@
+package io.carloship.jouwblog.journal;
+
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import io.carloship.jouwblog.common.AdaptiveLimiter;
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.common.ConcurrencyLimits;
+import io.carloship.jouwblog.repository.PostBulkRepository;
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.service.PostService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies durable {@link WriteJournal} records to Mongo in batches of {@code replay-batch},
+ * oldest first, through the Mongo concurrency limit. A batch that fails is retried from the
+ * same record on the next run. The inserts are idempotent, so a batch that reached Mongo
+ * before a crash but not the checkpoint is harmless to apply again.
+ * <p>
+ * Only failures that are not an outage count as attempts: shedding and lost connections
+ * retry forever. After {@code max-attempts} the batch is applied record by record, and the
+ * records that still fail go to the journal's dead letter file and are taken out of the caches
+ * again, so one bad record cannot hold up the journal or the writes waiting on it.
+ */
+@Slf4j
+@Singleton
+@Requires(property = "jouwblog.journal.enabled", value = StringUtils.TRUE)
+public class JournalReplayer implements MeterBinder {
+
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    private int attempts;
+
+    @Value("${jouwblog.journal.replay-batch:500}")
+    protected int batchSize;
+
+    @Value("${jouwblog.journal.max-attempts:5}")
+    protected int maxAttempts;
+
+    @Inject
+    protected WriteJournal journal;
+
+    @Inject
+    protected PostBulkRepository bulkRepository;
+
+    @Inject
+    protected PostRedisRepository redisRepository;
+
+    @Inject
+    protected PostService postService;
+
+    @Inject
+    @Named(ConcurrencyLimits.MONGO)
+    protected AdaptiveLimiter mongoLimiter;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        List<Post> recovered = journal.takeRecovered();
+        if (recovered.isEmpty()) return;
+
+        // One at a time, so a large backlog is not shed by the Redis limiter.
+        CompletableFuture.runAsync(() -> recovered.forEach(post -> postService.publishJournaled(post).join()), ioExecutor)
+                .thenRun(() -> log.info("Published {} recovered journal posts", recovered.size()))
+                .exceptionally(ex -> {
+                    log.error("Error while publishing recovered journal posts: {}", ex.getMessage(), ex);
+                    return null;
+                });
+    }
+
+    @Scheduled(fixedDelay = "${jouwblog.journal.replay-interval:100ms}")
+    void replay() {
+        WriteJournal.Batch batch;
+        while (!(batch = journal.nextBatch(batchSize)).isEmpty()) {
+            try {
+                List<Post> posts = new ArrayList<>(batch.entries().size());
+                for (WriteJournal.Entry entry : batch.entries()) {
+                    if (entry.type() == WriteJournal.SAVE_POST) posts.add(journal.decodePost(entry));
+                }
+
+                long inserted = insert(posts);
+                applied(batch, posts);
+                replayed.add(inserted);
+                duplicates.add(posts.size() - inserted);
+                attempts = 0;
+            } catch (IOException | RuntimeException ex) {
+                if (isOutage(ex) || ++attempts < maxAttempts) {
+                    log.warn("Error while replaying {} journal records to mongo, retrying on the next run: {}",
+                            batch.entries().size(), ex.getMessage());
+                    return;
+                }
+
+                attempts = 0;
+                if (!replayOneByOne(batch)) return;
+            }
+        }
+    }
+
+    /**
+     * @return whether the batch got through, with the records that failed on their own
+     * dead-lettered
+     */
+    private boolean replayOneByOne(WriteJournal.Batch batch) {
+        log.warn("Replaying {} journal records one by one after {} failed attempts", batch.entries().size(), maxAttempts);
+
+        List<Post> posts = new ArrayList<>(batch.entries().size());
+        List<Post> dropped = new ArrayList<>();
+        for (WriteJournal.Entry entry : batch.entries()) {
+            Post post = null;
+            try {
+                post = journal.decodePost(entry);
+                long inserted = insert(List.of(post));
+                replayed.add(inserted);
+                duplicates.add(1 - inserted);
+                posts.add(post);
+            } catch (IOException | RuntimeException ex) {
+                if (isOutage(ex)) {
+                    log.warn("Error while replaying journal record {} to mongo, retrying on the next run: {}",
+                            entry.seq(), ex.getMessage());
+                    return false;
+                }
+
+                try {
+                    journal.deadLetter(entry);
+                } catch (IOException deadLetterEx) {
+                    log.error("Error while dead-lettering journal record {}, retrying on the next run: {}",
+                            entry.seq(), deadLetterEx.getMessage());
+                    return false;
+                }
+                log.error("Moved journal record {} to the dead letter file: {}", entry.seq(), ex.getMessage());
+                deadLettered.increment();
+                if (post != null) dropped.add(post);
+            }
+        }
+
+        try {
+            List<Post> released = new ArrayList<>(posts);
+            released.addAll(dropped);
+            applied(batch, released);
+        } catch (IOException ex) {
+            log.warn("Error while checkpointing the write journal, retrying on the next run: {}", ex.getMessage());
+            return false;
+        }
+        dropped.forEach(post -> postService.dropJournaled(post).exceptionally(ex -> {
+            log.warn("Error while dropping dead-lettered post {} from redis: {}", post.getPostId(), ex.getMessage());
+            return null;
+        }));
+        return true;
+    }
+
+    private long insert(List<Post> posts) {
+        return mongoLimiter.submit(() -> bulkRepository.insertIfAbsent(posts)).join();
+    }
+
+    private void applied(WriteJournal.Batch batch, List<Post> posts) throws IOException {
+        List<String> postIds = posts.stream().map(Post::getPostId).toList();
+        journal.markApplied(batch, postIds);
+        redisRepository.clearJournaled(postIds).exceptionally(ex -> {
+            log.warn("Error while clearing {} journaled marks, writes to them wait until they expire: {}",
+                    postIds.size(), ex.getMessage());
+            return 0L;
+        });
+    }
+
+    /**
+     * Shedding or a lost connection: nothing is wrong with the records themselves.
+     */
+    private static boolean isOutage(Throwable ex) {
+        if (BackendOverloadedException.isCause(ex)) return true;
+        for (Throwable current = ex; current != null; current = current.getCause()) {
+            if (current instanceof MongoSocketException || current instanceof MongoTimeoutException) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("jouwblog.journal.replayed", replayed, LongAdder::sum)
+                .description("Journaled posts inserted into Mongo by the replayer")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.journal.duplicates", duplicates, LongAdder::sum)
+                .description("Journaled posts Mongo already had when they were replayed")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.journal.dead-lettered", deadLettered, LongAdder::sum)
+                .description("Journal records the replayer gave up on and moved to the dead letter file")
+                .register(registry);
+    }
+}
@@ -0,0 +1,577 @@
+package io.carloship.jouwblog.journal;
+
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.carloship.jouwblog.response.Post;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.serde.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local write-ahead journal for fast-ack post creation.
+ * <p>
+ * Records go into fixed-size, memory-mapped segment files. Each record holds its length, a
+ * CRC32C, a sequence number, a type and a serialized {@link Post}. An append returns once
+ * the record is in the mapped buffer. The future it returns completes once a flusher thread
+ * has forced the record to disk. Concurrent appends share one force, so under load many
+ * writes pay for a single fsync.
+ * <p>
+ * {@link JournalReplayer} applies durable records to Mongo in order and then advances the
+ * {@code checkpoint} file. Segments that lie wholly behind the checkpoint are deleted. On
+ * startup the segments are scanned up to the first record whose checksum does not match, a
+ * torn write from a crash, and everything past the checkpoint is replayed again. Records the
+ * replayer gives up on are copied to the {@code dead-letter} file first.
+ * <p>
+ * A journaled post is also marked in Redis until it is applied, see
+ * {@link PostRedisRepository#markJournaled}. Updates and deletes of it wait in
+ * {@link #awaitApplied}, on this node through the journal itself and on the others through
+ * that mark, so the replay cannot land after them.
+ */
+@Slf4j
+@Singleton
+public class WriteJournal implements MeterBinder {
+
+    static final byte SAVE_POST = 1;
+
+    private static final int SEGMENT_MAGIC = 0x4A42574A; // "JBWJ"
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER = 8;
+    // length (4), crc (4), seq (8), type (1)
+    private static final int RECORD_HEADER = 17;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String DEAD_LETTER = "dead-letter";
+    private static final long POLL_MILLIS = 50;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<CompletableFuture<Void>> awaitingFlush = new ArrayList<>();
+    private final Map<String, CompletableFuture<Void>> unapplied = new ConcurrentHashMap<>();
+    private final List<Post> recoveredPosts = new ArrayList<>();
+
+    private Path directory;
+    private Segment head;
+    private int writeOffset;
+    private long nextSeq = 1;
+    private boolean closed;
+    private Thread flusher;
+
+    private volatile Position durable;
+    private volatile long appliedSeq;
+    private Position replayCursor;
+
+    @Value("${jouwblog.journal.enabled:false}")
+    protected boolean enabled;
+
+    @Value("${jouwblog.journal.path:data/journal}")
+    protected String path = "data/journal";
+
+    @Value("${jouwblog.journal.segment-size:67108864}")
+    protected int segmentSize = 64 << 20;
+
+    @Value("${jouwblog.journal.await-timeout:5s}")
+    protected Duration awaitTimeout = Duration.ofSeconds(5);
+
+    @Value("${jouwblog.journal.pending-ttl:10m}")
+    protected Duration pendingTtl = Duration.ofMinutes(10);
+
+    @Inject
+    protected ObjectMapper objectMapper;
+
+    @Inject
+    protected PostRedisRepository redisRepository;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * How long the Redis mark of a journaled post outlives its node, see
+     * {@link PostRedisRepository#markJournaled}.
+     */
+    public Duration pendingTtl() {
+        return pendingTtl;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) return;
+
+        directory = Path.of(path);
+        Files.createDirectories(directory);
+        appliedSeq = readCheckpoint();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(WriteJournal::isSegment).sorted().toList()) {
+                segments.add(Segment.open(file));
+            }
+        }
+        recover();
+
+        flusher = Thread.ofPlatform().daemon().name("write-journal-flusher").start(this::flushLoop);
+    }
+
+    private void recover() throws IOException {
+        long lastSeq = appliedSeq;
+        int recovered = 0;
+        for (Segment segment : segments) {
+            int offset = SEGMENT_HEADER;
+            Entry entry;
+            while ((entry = segment.read(offset)) != null) {
+                if (entry.seq() > appliedSeq) {
+                    if (replayCursor == null) replayCursor = new Position(segment, offset, entry.seq() - 1);
+                    if (entry.type() == SAVE_POST) recoverPost(entry);
+                    recovered++;
+                }
+                lastSeq = entry.seq();
+                offset = entry.next();
+            }
+            head = segment;
+            writeOffset = offset;
+        }
+
+        nextSeq = lastSeq + 1;
+        if (head == null) {
+            roll();
+        } else {
+            // Bytes past the last valid record are a torn write; later appends must not be
+            // followed by leftovers that could still pass the checksum.
+            head.zero(writeOffset);
+        }
+
+        durable = new Position(head, writeOffset, lastSeq);
+        if (replayCursor == null) replayCursor = durable;
+        if (recovered > 0) {
+            log.info("Write journal recovered {} records past checkpoint {} to replay", recovered, appliedSeq);
+        }
+    }
+
+    private void recoverPost(Entry entry) {
+        try {
+            Post post = decodePost(entry);
+            unapplied.put(post.getPostId(), new CompletableFuture<>());
+            recoveredPosts.add(post);
+        } catch (IOException ex) {
+            // The replayer fails on it as well and moves it to the dead letter file.
+            log.error("Error while decoding journal record {}: {}", entry.seq(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Hands out the posts recovered at startup once, so they can be made visible again: the
+     * caches they were published to did not survive the restart, and Mongo does not have them
+     * until they are replayed.
+     */
+    List<Post> takeRecovered() {
+        List<Post> posts = List.copyOf(recoveredPosts);
+        recoveredPosts.clear();
+        return posts;
+    }
+
+    /**
+     * Appends {@code post}, which must already have its id.
+     *
+     * @return a future completing once the record is durable on local disk
+     */
+    public CompletableFuture<Void> appendPost(@NonNull Post post) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(post);
+        int size = RECORD_HEADER + payload.length;
+        if (SEGMENT_HEADER + size > segmentSize) {
+            throw new IOException("Post " + post.getPostId() + " does not fit a journal segment of " + segmentSize + " bytes");
+        }
+
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (closed) throw new IOException("Write journal is closed");
+            if (writeOffset + size > head.capacity()) {
+                head.force(0, writeOffset);
+                roll();
+            }
+
+            head.write(writeOffset, nextSeq++, SAVE_POST, payload);
+            writeOffset += size;
+            unapplied.put(post.getPostId(), new CompletableFuture<>());
+            awaitingFlush.add(flushed);
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        return flushed;
+    }
+
+    private void roll() throws IOException {
+        Path file = directory.resolve(SEGMENT_PREFIX + String.format("%020d", nextSeq) + SEGMENT_SUFFIX);
+        head = Segment.create(file, segmentSize);
+        // Forcing the records is not enough while the new file's directory entry may be lost.
+        syncDirectory();
+        segments.add(head);
+        writeOffset = SEGMENT_HEADER;
+    }
+
+    private void flushLoop() {
+        Segment flushedSegment = null;
+        int flushedOffset = 0;
+        while (true) {
+            Segment segment;
+            int offset;
+            long seq;
+            List<CompletableFuture<Void>> batch;
+
+            lock.lock();
+            try {
+                while (awaitingFlush.isEmpty() && !closed) appended.awaitUninterruptibly();
+                if (awaitingFlush.isEmpty()) return;
+
+                segment = head;
+                offset = writeOffset;
+                seq = nextSeq - 1;
+                batch = List.copyOf(awaitingFlush);
+                awaitingFlush.clear();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                // Earlier segments were forced whole when the journal rolled over.
+                int from = segment == flushedSegment ? flushedOffset : 0;
+                segment.force(from, offset - from);
+                flushedSegment = segment;
+                flushedOffset = offset;
+                durable = new Position(segment, offset, seq);
+                batch.forEach(future -> future.complete(null));
+            } catch (RuntimeException ex) {
+                log.error("Error while forcing the write journal to disk: {}", ex.getMessage(), ex);
+                batch.forEach(future -> future.completeExceptionally(ex));
+            }
+        }
+    }
+
+    /**
+     * @return a future completing once the journaled creation of {@code postId}, if any, has
+     * been applied to Mongo, whichever node journaled it. It fails with a
+     * {@link BackendOverloadedException} when that takes longer than {@code await-timeout},
+     * which answers the update or delete waiting on it with a 503.
+     */
+    public CompletableFuture<Void> awaitApplied(@NonNull String postId) {
+        if (!enabled) return CompletableFuture.completedFuture(null);
+
+        var pending = unapplied.get(postId);
+        CompletableFuture<Void> applied = pending != null
+                ? pending.copy().orTimeout(awaitTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                : awaitMark(postId, System.nanoTime() + awaitTimeout.toNanos());
+        return applied.exceptionally(ex -> {
+            if (ex instanceof TimeoutException || ex.getCause() instanceof TimeoutException) {
+                log.warn("Journaled post {} was not applied to mongo within {}", postId, awaitTimeout);
+                throw new BackendOverloadedException("journal");
+            }
+            throw BackendOverloadedException.propagate(ex);
+        });
+    }
+
+    /**
+     * Polls the Redis mark of a post journaled on another node until it is cleared.
+     */
+    private CompletableFuture<Void> awaitMark(String postId, long deadline) {
+        return redisRepository.isJournaled(postId).thenCompose(journaled -> {
+            if (!journaled) return CompletableFuture.completedFuture(null);
+            if (System.nanoTime() > deadline) return CompletableFuture.failedFuture(new TimeoutException());
+
+            return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    .thenCompose(_ -> awaitMark(postId, deadline));
+        });
+    }
+
+    /**
+     * Up to {@code max} durable records after the last applied one. Only called by the replayer.
+     */
+    Batch nextBatch(int max) {
+        Position end = durable;
+        Position at = replayCursor;
+        List<Entry> entries = new ArrayList<>();
+        while (entries.size() < max && at.seq() < end.seq()) {
+            Entry entry = at.segment().read(at.offset());
+            if (entry == null) {
+                Segment next = segmentAfter(at.segment());
+                if (next == null) break;
+                at = new Position(next, SEGMENT_HEADER, at.seq());
+                continue;
+            }
+            entries.add(entry);
+            at = new Position(at.segment(), entry.next(), entry.seq());
+        }
+        return new Batch(entries, at);
+    }
+
+    Post decodePost(Entry entry) throws IOException {
+        return objectMapper.readValue(entry.payload(), Post.class);
+    }
+
+    /**
+     * Moves the checkpoint past {@code batch}, releases the writes waiting on {@code postIds}
+     * and drops the segments nothing points into any more. Clearing the Redis marks of the
+     * posts is up to the caller.
+     */
+    void markApplied(Batch batch, Collection<String> postIds) throws IOException {
+        writeCheckpoint(batch.end().seq());
+        appliedSeq = batch.end().seq();
+        replayCursor = batch.end();
+        for (String postId : postIds) {
+            var pending = unapplied.remove(postId);
+            if (pending != null) pending.complete(null);
+        }
+
+        List<Segment> obsolete = new ArrayList<>();
+        lock.lock();
+        try {
+            while (segments.size() > 1 && segments.getFirst() != replayCursor.segment() && segments.getFirst() != head) {
+                obsolete.add(segments.removeFirst());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Segment segment : obsolete) {
+            segment.delete();
+        }
+    }
+
+    /**
+     * Appends {@code entry} to the {@code dead-letter} file, one line per record: its sequence
+     * number, its type and its payload, the serialized post, as it was journaled.
+     */
+    void deadLetter(Entry entry) throws IOException {
+        byte[] prefix = (entry.seq() + " " + entry.type() + " ").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer line = ByteBuffer.allocate(prefix.length + entry.payload().length + 1)
+                .put(prefix).put(entry.payload()).put((byte) '\n').flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (line.hasRemaining()) channel.write(line);
+            channel.force(true);
+        }
+        syncDirectory();
+    }
+
+    private Segment segmentAfter(Segment segment) {
+        lock.lock();
+        try {
+            int index = segments.indexOf(segment);
+            return index >= 0 && index + 1 < segments.size() ? segments.get(index + 1) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT);
+        if (!Files.exists(file)) return 0;
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() != 12) {
+            log.warn("Write journal checkpoint {} is unusable, replaying every record", file);
+            return 0;
+        }
+        long seq = buffer.getLong();
+        if (buffer.getInt() != crc(ByteBuffer.wrap(buffer.array(), 0, 8))) {
+            log.warn("Write journal checkpoint {} fails its checksum, replaying every record", file);
+            return 0;
+        }
+        return seq;
+    }
+
+    private void writeCheckpoint(long seq) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12).putLong(seq);
+        buffer.putInt(crc(ByteBuffer.wrap(buffer.array(), 0, 8))).flip();
+
+        Path target = directory.resolve(CHECKPOINT);
+        Path tmp = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The rename is only durable once the directory is.
+        syncDirectory();
+    }
+
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException, IOException {
+        if (!enabled) return;
+
+        lock.lock();
+        try {
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        // Pending appends are flushed before the flusher exits; unapplied ones replay on restart.
+        flusher.join();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (!enabled) return;
+
+        Gauge.builder("jouwblog.journal.unapplied", this, journal -> journal.durable.seq() - journal.appliedSeq)
+                .description("Durable journal records not applied to Mongo yet")
+                .register(registry);
+    }
+
+    record Entry(long seq, byte type, byte[] payload, int next) {
+    }
+
+    record Position(Segment segment, int offset, long seq) {
+    }
+
+    record Batch(List<Entry> entries, Position end) {
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+    }
+
+    /**
+     * One memory-mapped segment file. Reads and writes use absolute offsets, so the flusher
+     * and the replayer can read while the appender writes further on.
+     */
+    static final class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, SEGMENT_MAGIC).putInt(4, SEGMENT_VERSION).force(0, SEGMENT_HEADER);
+            return new Segment(file, channel, buffer);
+        }
+
+        static Segment open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != SEGMENT_VERSION) {
+                channel.close();
+                throw new IOException("Unknown write journal segment format in " + file);
+            }
+            return new Segment(file, channel, buffer);
+        }
+
+        void write(int offset, long seq, byte type, byte[] payload) {
+            buffer.putLong(offset + 8, seq).put(offset + 16, type).put(offset + RECORD_HEADER, payload);
+            buffer.putInt(offset + 4, crc(buffer.slice(offset + 8, RECORD_HEADER - 8 + payload.length)));
+            // The length goes last: a record with a length is complete up to the checksum.
+            buffer.putInt(offset, payload.length);
+        }
+
+        /**
+         * @return the record at {@code offset}, or {@code null} at the end of the segment or
+         * of its valid records
+         */
+        Entry read(int offset) {
+            if (offset + RECORD_HEADER > buffer.capacity()) return null;
+
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER + length > buffer.capacity()) return null;
+            if (buffer.getInt(offset + 4) != crc(buffer.slice(offset + 8, RECORD_HEADER - 8 + length))) return null;
+
+            byte[] payload = new byte[length];
+            buffer.get(offset + RECORD_HEADER, payload);
+            return new Entry(buffer.getLong(offset + 8), buffer.get(offset + 16), payload, offset + RECORD_HEADER + length);
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Clears whatever was written past {@code from}, touching only the pages that need it.
+         */
+        void zero(int from) {
+            int end = from;
+            for (int offset = from; offset + 8 <= buffer.capacity(); offset += 8) {
+                if (buffer.getLong(offset) != 0) end = offset + 8;
+            }
+
+            byte[] zeros = new byte[8192];
+            for (int offset = from; offset < end; offset += zeros.length) {
+                buffer.put(offset, zeros, 0, Math.min(zeros.length, end - offset));
+            }
+            force(from, end - from);
+        }
+
+        void force(int from, int length) {
+            if (length > 0) buffer.force(from, length);
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.carloship.jouwblog.repository;
+
+import io.carloship.jouwblog.response.Comment;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+
+/**
+ * Per-post listing and count queries over comments, implemented by {@link CommentRepository}.
+ */
+public interface CommentListingRepository {
+
+    Page<Comment> findByPostId(String postId, Pageable pageable);
+
+    long countByPostId(String postId);
+}
@@ -1,19 +1,26 @@
 package io.carloship.jouwblog.repository;
 
-import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.cache.AdaptiveTtl;
+import io.carloship.jouwblog.common.RedisConnection;
 import io.carloship.jouwblog.response.Comment;
-import io.lettuce.core.api.async.RedisAsyncCommands;
-import io.micronaut.scheduling.annotation.Async;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
 
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Singleton
@@ -21,12 +28,17 @@ public class CommentRedisRepository {
 
     private static final String PREFIX = "comments:";
     private static final String POST_COMMENT = "post_comments:";
-    private static final Duration DEFAULT_EXPIRATION_SECONDS = Application.DEFAULT_REDIS_TIME;
 
     @Inject
-    protected RedisAsyncCommands<String, String> asyncCommands;
+    protected RedisClusterAsyncCommands<String, String> asyncCommands;
+
+    @Inject
+    @Named(RedisConnection.BULK)
+    protected RedisClusterAsyncCommands<String, String> bulkCommands;
+
+    @Inject
+    protected AdaptiveTtl ttl;
 
-    @Async
     @NonNull
     public CompletableFuture<List<Comment>> findComments(@NonNull String postId){
         if (postId.isBlank()){
@@ -35,6 +47,7 @@ public class CommentRedisRepository {
         }
 
         String key = buildKeyMembers(postId);
+        ttl.recordAccess(key);
 
         return asyncCommands.smembers(key).thenCompose(commentsIds -> {
             if (commentsIds == null || commentsIds.isEmpty()){
@@ -61,7 +74,6 @@ public class CommentRedisRepository {
         }).toCompletableFuture();
     }
 
-    @Async
     public CompletableFuture<Comment> findComment(@NonNull String postId, @NonNull String commentId){
         if (postId.isBlank() || commentId.isBlank()){
             log.warn("Invalid comment arguments for find operation");
@@ -69,6 +81,7 @@ public class CommentRedisRepository {
         }
 
         String key = buildKey(postId, commentId);
+        ttl.recordAccess(key);
         return asyncCommands.hgetall(key)
                 .thenApply(mappedResult -> {
                     if (mappedResult == null || mappedResult.isEmpty()) {
@@ -88,7 +101,6 @@ public class CommentRedisRepository {
                 .toCompletableFuture();
     }
 
-    @Async
     public CompletableFuture<Boolean> saveComment(@NonNull Comment comment){
         if ((comment.getPostId() == null || comment.getPostId().isBlank()) &&
                 (comment.getCommentId() == null || comment.getCommentId().isBlank())){
@@ -101,9 +113,9 @@ public class CommentRedisRepository {
         String memberKey  = buildKeyMembers(comment.getPostId());
 
         return asyncCommands.hset(key, map)
-                .thenCompose(_ -> asyncCommands.expire(key, DEFAULT_EXPIRATION_SECONDS))
-                .thenCompose(_ -> asyncCommands.sadd(memberKey, String.valueOf(comment.getPostId())))
-                .thenCompose(_ -> asyncCommands.expire(memberKey, DEFAULT_EXPIRATION_SECONDS))
+                .thenCompose(_ -> ttl.expire(asyncCommands, key))
+                .thenCompose(_ -> asyncCommands.sadd(memberKey, String.valueOf(comment.getCommentId())))
+                .thenCompose(_ -> ttl.expire(asyncCommands, memberKey))
                 .thenApply(_ -> {
                     log.debug("Comment saved successfully: commentId={}, postId={}", comment.getCommentId(), comment.getPostId());
                     return true;
@@ -115,18 +127,17 @@ public class CommentRedisRepository {
                 .toCompletableFuture();
     }
 
-    @Async
     public CompletableFuture<Boolean> deleteComment(@NonNull String commentId, @NonNull String postId) {
         if (commentId.isBlank() || postId.isBlank()) {
             log.warn("Invalid comment argument for delete operation, postId or commentId is blank");
             return CompletableFuture.completedFuture(false);
         }
 
-        String key = buildKey(commentId, postId);
+        String key = buildKey(postId, commentId);
         String membersKey = buildKeyMembers(postId);
 
         return asyncCommands.del(key)
-                .thenCompose(_ -> asyncCommands.srem(membersKey, postId))
+                .thenCompose(_ -> asyncCommands.srem(membersKey, commentId))
                 .thenApply(_ -> {
                     log.debug("Comment deleted: commentId={}, postId={}", commentId, postId);
                     return true;
@@ -138,11 +149,134 @@ public class CommentRedisRepository {
                 .toCompletableFuture();
     }
 
+    /**
+     * Removes comment hashes and the comment sets of their posts with UNLINK, which frees
+     * their memory off the main Redis thread. The keys span several posts, so they are sent as
+     * one UNLINK per cluster slot.
+     */
+    public CompletableFuture<Long> unlinkComments(@NonNull Collection<Comment> comments, @NonNull Collection<String> postIds) {
+        if (comments.isEmpty() && postIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        List<String> keys = Stream.concat(
+                comments.stream().map(comment -> buildKey(comment.getPostId(), comment.getCommentId())),
+                postIds.stream().map(this::buildKeyMembers)
+        ).toList();
+        List<CompletableFuture<Long>> futures = RedisKeys.bySlot(keys).stream()
+                .map(slotKeys -> bulkCommands.unlink(slotKeys.toArray(String[]::new)).toCompletableFuture())
+                .toList();
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> futures.stream().mapToLong(CompletableFuture::join).sum());
+    }
+
+    /**
+     * Writes many comments as one pipelined batch, see {@link PostRedisRepository#savePosts}.
+     */
+    public CompletableFuture<Boolean> saveComments(@NonNull Collection<Comment> comments) {
+        if (comments.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(comments.size() * 4);
+        for (Comment comment : comments) {
+            if (comment.getPostId() == null || comment.getPostId().isBlank()
+                    || comment.getCommentId() == null || comment.getCommentId().isBlank()) continue;
+
+            String key = buildKey(comment.getPostId(), comment.getCommentId());
+            String memberKey = buildKeyMembers(comment.getPostId());
+
+            futures.add(bulkCommands.hset(key, comment.toMap()).toCompletableFuture());
+            futures.add(ttl.expire(bulkCommands, key));
+            futures.add(bulkCommands.sadd(memberKey, comment.getCommentId()).toCompletableFuture());
+            futures.add(ttl.expire(bulkCommands, memberKey));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> true)
+                .exceptionally(ex -> {
+                    log.error("Error saving batch of {} comments: {}", comments.size(), ex.getMessage(), ex);
+                    return false;
+                });
+    }
+
+    /**
+     * Replaces the cached copies of comments written to Mongo behind the cache's back, see
+     * {@link PostRedisRepository#replaceListedPosts}.
+     */
+    public CompletableFuture<Boolean> replaceListedComments(@NonNull Collection<Comment> comments) {
+        if (comments.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(comments.size() * 3);
+        for (Comment comment : comments) {
+            if (comment.getPostId() == null || comment.getPostId().isBlank()
+                    || comment.getCommentId() == null || comment.getCommentId().isBlank()) continue;
+
+            String key = buildKey(comment.getPostId(), comment.getCommentId());
+            String memberKey = buildKeyMembers(comment.getPostId());
+
+            futures.add(RedisScripts.replaceIfListed(bulkCommands, memberKey, key, comment.getCommentId(), comment.toMap()));
+            futures.add(ttl.expire(bulkCommands, key));
+            futures.add(ttl.expire(bulkCommands, memberKey));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> true)
+                .exceptionally(ex -> {
+                    log.error("Error replacing batch of {} cached comments: {}", comments.size(), ex.getMessage(), ex);
+                    return false;
+                });
+    }
+
+    /**
+     * One page of an incremental keyspace scan over the posts' comment sets. The returned
+     * keys are the post ids the sets belong to.
+     */
+    public CompletableFuture<KeyScanCursor<String>> scanPostCommentSets(@NonNull ScanCursor cursor, int count) {
+        return bulkCommands.scan(cursor, ScanArgs.Builder.matches(POST_COMMENT + "*").limit(count))
+                .thenApply(page -> {
+                    page.getKeys().replaceAll(key -> RedisKeys.untag(key.substring(POST_COMMENT.length())));
+                    return page;
+                })
+                .toCompletableFuture();
+    }
+
+    public CompletableFuture<ValueScanCursor<String>> scanCommentIds(@NonNull String postId, @NonNull ScanCursor cursor, int count) {
+        return bulkCommands.sscan(buildKeyMembers(postId), cursor, ScanArgs.Builder.limit(count))
+                .toCompletableFuture();
+    }
+
+    /**
+     * Removes the ids among {@code commentIds} whose comment hash is gone from the post's
+     * comment set.
+     *
+     * @return the number of ids removed
+     */
+    public CompletableFuture<Long> removeDanglingCommentIds(@NonNull String postId, @NonNull Collection<String> commentIds) {
+        return RedisScripts.sremDangling(bulkCommands, buildKeyMembers(postId), commentIds,
+                commentId -> buildKey(postId, commentId));
+    }
+
+    public CompletableFuture<Long> countComments(@NonNull String postId) {
+        return bulkCommands.scard(buildKeyMembers(postId)).toCompletableFuture();
+    }
+
+    public boolean isPostCommentsHot(@NonNull String postId) {
+        return ttl.isHot(buildKeyMembers(postId));
+    }
+
+    public CompletableFuture<Long> unlinkPostComments(@NonNull String postId) {
+        return bulkCommands.unlink(buildKeyMembers(postId)).toCompletableFuture();
+    }
+
     private String buildKey(String postId, String commentId){
-        return PREFIX + postId + ":" + commentId;
+        return PREFIX + RedisKeys.tag(postId) + ":" + commentId;
     }
 
     private String buildKeyMembers(String postId){
-        return POST_COMMENT + postId;
+        return POST_COMMENT + RedisKeys.tag(postId);
     }
 }
@@ -1,14 +1,22 @@
 package io.carloship.jouwblog.repository;
 
 import io.carloship.jouwblog.response.Comment;
-import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.data.mongodb.annotation.MongoRepository;
 import io.micronaut.data.repository.CrudRepository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 @MongoRepository
-public interface CommentRepository extends CrudRepository<Comment, String> {
-    
-    Page<Comment> findByPostId(String postId, Pageable pageable);
-    
-}
\ No newline at end of file
+public interface CommentRepository extends CrudRepository<Comment, String>, CommentListingRepository {
+
+    List<Comment> findByPostIdInList(Collection<String> postIds, Pageable pageable);
+
+    /**
+     * Every comment over one Mongo cursor, for exports. The stream must be closed to release it.
+     */
+    Stream<Comment> queryByCommentIdIsNotNull();
+
+}
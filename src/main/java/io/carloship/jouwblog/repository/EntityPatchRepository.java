@@ -0,0 +1,138 @@
+package io.carloship.jouwblog.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import io.carloship.jouwblog.response.PostPatch;
+import io.carloship.jouwblog.response.UserPatch;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Field-level updates that Micronaut Data repositories cannot express: a {@code $set} of only
+ * the fields a PATCH carries plus {@code $inc} of counters, sent straight to the driver so
+ * an edit of a title does not rewrite the whole post.
+ * <p>
+ * Post updates are a single-stage pipeline rather than update operators, so counter deltas
+ * are clamped at zero in the same atomic update: a stray unlike never leaves a negative
+ * count behind.
+ */
+@Singleton
+public class EntityPatchRepository {
+
+    // Micronaut Data's default collection names for the Post and User entities.
+    private static final String POSTS = "post";
+    private static final String USERS = "user";
+
+    @Inject
+    protected MongoClient mongoClient;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    @Value("${mongodb.uri}")
+    protected String uri;
+
+    private MongoCollection<Document> posts;
+    private MongoCollection<Document> users;
+
+    @PostConstruct
+    void init() {
+        var database = mongoClient.getDatabase(new ConnectionString(uri).getDatabase());
+        this.posts = database.getCollection(POSTS);
+        this.users = database.getCollection(USERS);
+    }
+
+    /**
+     * Applies {@code patch} to the post if it belongs to {@code userId}.
+     *
+     * @return the counters as stored after the update, or {@code null} when no post matched
+     */
+    public CompletableFuture<PostCounters> patchPost(@NonNull String userId, @NonNull String postId,
+                                                     @NonNull PostPatch patch, long updateTimestamp) {
+        if (!ObjectId.isValid(postId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Pipeline values are expressions, so strings go in as literals: a leading $ is not a field path.
+        var set = new Document();
+        if (patch.getTitle() != null) set.append("title", new Document("$literal", patch.getTitle()));
+        if (patch.getText() != null) set.append("text", new Document("$literal", patch.getText()));
+        if (patch.getLikesDelta() != null) set.append("likes", addAtLeastZero("likes", patch.getLikesDelta()));
+        if (patch.getRepliesDelta() != null) set.append("replies", addAtLeastZero("replies", patch.getRepliesDelta()));
+        set.append("updateTimestamp", updateTimestamp);
+
+        // Only the counters come back, the rest of the document is already known to the caller.
+        var options = new FindOneAndUpdateOptions()
+                .returnDocument(ReturnDocument.AFTER)
+                .projection(Projections.include("likes", "replies"));
+
+        return CompletableFuture.supplyAsync(() -> {
+            Document after = posts.findOneAndUpdate(
+                    Filters.and(Filters.eq("_id", new ObjectId(postId)), Filters.eq("userId", userId)),
+                    List.of(new Document("$set", set)),
+                    options);
+            return after == null ? null : new PostCounters(
+                    after.getInteger("likes", 0),
+                    after.getInteger("replies", 0));
+        }, ioExecutor);
+    }
+
+    /**
+     * @return the user as it was before the update, or {@code null} when no user matched
+     */
+    public CompletableFuture<PatchedUser> patchUser(@NonNull String userId, @NonNull UserPatch patch) {
+        if (!ObjectId.isValid(userId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<Bson> updates = new ArrayList<>(3);
+        if (patch.getUsername() != null) updates.add(Updates.set("username", patch.getUsername()));
+        if (patch.getName() != null) updates.add(Updates.set("name", patch.getName()));
+        if (patch.getEmail() != null) updates.add(Updates.set("email", patch.getEmail()));
+
+        // The previous username comes back, so its search key can be dropped even when Redis lost the hash.
+        var options = new FindOneAndUpdateOptions()
+                .returnDocument(ReturnDocument.BEFORE)
+                .projection(Projections.include("username"));
+
+        return CompletableFuture.supplyAsync(() -> {
+            Document before = users.findOneAndUpdate(
+                    Filters.eq("_id", new ObjectId(userId)),
+                    Updates.combine(updates),
+                    options);
+            return before == null ? null : new PatchedUser(before.getString("username"));
+        }, ioExecutor);
+    }
+
+    private static Document addAtLeastZero(String field, int delta) {
+        var sum = new Document("$add", List.of(new Document("$ifNull", List.of("$" + field, 0)), delta));
+        return new Document("$max", List.of(0, sum));
+    }
+
+    public record PostCounters(int likes, int replies) {
+    }
+
+    public record PatchedUser(@Nullable String previousUsername) {
+    }
+}
@@ -0,0 +1,129 @@
+package io.carloship.jouwblog.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Picks the replica set member behind the per-user post listings of requests.
+ * <p>
+ * With {@code jouwblog.mongo.secondary-reads.enabled}, listings go to the {@code secondary}
+ * client. Its read preference and {@code maxStalenessSeconds} bound come from its connection
+ * string. A user who wrote within {@code read-your-writes-window} is read from the primary, so
+ * their own new, patched or deleted posts show up right away. Keep the window longer than the
+ * staleness bound.
+ * <p>
+ * Recent writers are marked in Redis with a {@code recent_writer:} key that expires with the
+ * window, so a listing served by any node sees a write made through another one. The mark is
+ * set before the write and also kept locally, which spares the Redis lookup for listings on
+ * the writing node. When Redis cannot answer, the listing goes to the primary.
+ * <p>
+ * Single-entity reads, background maintenance and the scans that drive deletes or the
+ * existence filters always use the primary.
+ */
+@Slf4j
+@Singleton
+public class MongoReadRouting implements MeterBinder {
+
+    public static final String SECONDARY = "secondary";
+    static final String ENABLED = "jouwblog.mongo.secondary-reads.enabled";
+    private static final String RECENT_WRITER_PREFIX = "recent_writer:";
+
+    private final PostRepository posts;
+    private final SecondaryPostRepository secondaryPosts;
+    private final RedisClusterAsyncCommands<String, String> redisCommands;
+    private final Duration window;
+    private final Cache<String, Boolean> recentWriters;
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder secondaryReads = new LongAdder();
+
+    @Inject
+    public MongoReadRouting(PostRepository posts,
+                            Optional<SecondaryPostRepository> secondaryPosts,
+                            RedisClusterAsyncCommands<String, String> redisCommands,
+                            @Value("${jouwblog.mongo.secondary-reads.read-your-writes-window:120s}") Duration window,
+                            @Value("${jouwblog.mongo.secondary-reads.tracked-writers:100000}") int trackedWriters) {
+        this.posts = posts;
+        this.secondaryPosts = secondaryPosts.orElse(null);
+        this.redisCommands = redisCommands;
+        this.window = window;
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(trackedWriters)
+                .build();
+
+        if (this.secondaryPosts != null) {
+            log.info("Routing Mongo post listings to secondaries, read-your-writes window {}", window);
+        }
+    }
+
+    /**
+     * Marks {@code userId} as a recent writer. Start the write once the returned future
+     * completes, so a listing that races with it on any node already reads from the primary.
+     * A failed mark is logged and completes the future all the same: the write matters more
+     * than the routing of the listings after it.
+     */
+    public CompletableFuture<Void> recordWrite(@NonNull String userId) {
+        if (secondaryPosts == null) return CompletableFuture.completedFuture(null);
+
+        recentWriters.put(userId, Boolean.TRUE);
+        return redisCommands.set(buildKey(userId), "1", SetArgs.Builder.px(window))
+                .toCompletableFuture()
+                .<Void>thenApply(_ -> null)
+                .exceptionally(ex -> {
+                    log.warn("Error while marking {} as a recent writer, other nodes may list from a secondary: {}",
+                            userId, ex.getMessage());
+                    return null;
+                });
+    }
+
+    public CompletableFuture<PostListingRepository> posts(@NonNull String userId) {
+        if (secondaryPosts == null || recentWriters.getIfPresent(userId) != null) {
+            return CompletableFuture.completedFuture(primary());
+        }
+
+        return redisCommands.exists(buildKey(userId)).toCompletableFuture()
+                .thenApply(marked -> marked == 0 ? secondary() : primary())
+                .exceptionally(_ -> primary());
+    }
+
+    private PostListingRepository primary() {
+        primaryReads.increment();
+        return posts;
+    }
+
+    private PostListingRepository secondary() {
+        secondaryReads.increment();
+        return secondaryPosts;
+    }
+
+    private static String buildKey(String userId) {
+        return RECENT_WRITER_PREFIX + RedisKeys.tag(userId);
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("jouwblog.mongo.routed-reads", primaryReads, LongAdder::sum)
+                .tag("member", "primary")
+                .description("Mongo post listings by the replica set member they went to")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.mongo.routed-reads", secondaryReads, LongAdder::sum)
+                .tag("member", SECONDARY)
+                .description("Mongo post listings by the replica set member they went to")
+                .register(registry);
+    }
+}
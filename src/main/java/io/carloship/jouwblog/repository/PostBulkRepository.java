@@ -0,0 +1,81 @@
+package io.carloship.jouwblog.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import io.carloship.jouwblog.response.Post;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NonNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Idempotent bulk inserts of posts whose ids were assigned before they reached Mongo, used to
+ * replay the write journal. A post is only written when its id is not taken, so replaying a
+ * record twice never overwrites a later update.
+ */
+@Singleton
+public class PostBulkRepository {
+
+    // Micronaut Data's default collection name for the Post entity.
+    private static final String POSTS = "post";
+
+    @Inject
+    protected MongoClient mongoClient;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    @Value("${mongodb.uri}")
+    protected String uri;
+
+    private MongoCollection<Document> posts;
+
+    @PostConstruct
+    void init() {
+        posts = mongoClient.getDatabase(new ConnectionString(uri).getDatabase()).getCollection(POSTS);
+    }
+
+    /**
+     * @return how many of {@code batch} were inserted, the rest already existed
+     */
+    public CompletableFuture<Long> insertIfAbsent(@NonNull Collection<Post> batch) {
+        if (batch.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        var options = new UpdateOptions().upsert(true);
+        List<UpdateOneModel<Document>> models = batch.stream()
+                .map(post -> new UpdateOneModel<Document>(
+                        Filters.eq("_id", new ObjectId(post.getPostId())),
+                        Updates.combine(
+                                Updates.setOnInsert("userId", post.getUserId()),
+                                Updates.setOnInsert("title", post.getTitle()),
+                                Updates.setOnInsert("postTimestamp", post.getPostTimestamp()),
+                                Updates.setOnInsert("updateTimestamp", post.getUpdateTimestamp()),
+                                Updates.setOnInsert("text", post.getText()),
+                                Updates.setOnInsert("likes", post.getLikes()),
+                                Updates.setOnInsert("replies", post.getReplies())),
+                        options))
+                .toList();
+
+        return CompletableFuture.supplyAsync(() ->
+                (long) posts.bulkWrite(models, new BulkWriteOptions().ordered(false)).getUpserts().size(), ioExecutor);
+    }
+}
@@ -0,0 +1,31 @@
+package io.carloship.jouwblog.repository;
+
+import io.carloship.jouwblog.response.Post;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Per-user listing and count queries over posts, implemented by both {@link PostRepository}
+ * and {@link SecondaryPostRepository}.
+ */
+public interface PostListingRepository {
+
+    CompletableFuture<Page<Post>> findPostsByUserId(String userId, Pageable pageable);
+
+    long countByUserId(String userId);
+
+    /**
+     * Lazily iterates a user's posts over a Mongo cursor. The stream must be closed to
+     * release the cursor.
+     */
+    Stream<Post> queryByUserIdOrderByPostTimestampDesc(String userId);
+
+    /**
+     * One page of a user's post ids, projected so the scan does not load the documents.
+     */
+    List<String> queryPostIdByUserId(String userId, Pageable pageable);
+}
@@ -1,19 +1,33 @@
 package io.carloship.jouwblog.repository;
 
-import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.cache.AdaptiveTtl;
+import io.carloship.jouwblog.cache.PostBodyCompression;
+import io.carloship.jouwblog.common.RedisConnection;
 import io.carloship.jouwblog.response.Post;
-import io.lettuce.core.api.async.RedisAsyncCommands;
-import io.micronaut.scheduling.annotation.Async;
+import io.carloship.jouwblog.response.PostReference;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Singleton
@@ -21,18 +35,30 @@ public class PostRedisRepository {
 
     private static final String PREFIX = "post:";
     private static final String USER_POSTS_SET_PREFIX = "user_posts:";
-    private static final Duration DEFAULT_EXPIRATION_SECONDS = Application.DEFAULT_REDIS_TIME;
+    private static final String JOURNALED_PREFIX = "journaled:";
+    private static final String MEMORY_SAMPLE_SUFFIX = ":memory-sample";
+    private static final Duration MEMORY_SAMPLE_TTL = Duration.ofSeconds(30);
 
     @Inject
-    protected RedisAsyncCommands<String, String> asyncCommands;
+    protected RedisClusterAsyncCommands<String, String> asyncCommands;
+
+    @Inject
+    @Named(RedisConnection.BULK)
+    protected RedisClusterAsyncCommands<String, String> bulkCommands;
+
+    @Inject
+    protected AdaptiveTtl ttl;
+
+    @Inject
+    protected PostBodyCompression compression;
 
-    @Async
     public CompletableFuture<Post> findPost(@NonNull String userId,@NonNull String postId) {
         if (userId.isBlank()) {
             return CompletableFuture.completedFuture(null);
         }
 
         String key = buildPostKey(userId, postId);
+        ttl.recordAccess(key);
         return asyncCommands.hgetall(key)
                 .thenApply(mappedResult -> {
                     if (mappedResult == null || mappedResult.isEmpty()) {
@@ -44,15 +70,13 @@ public class PostRedisRepository {
                     Post post = new Post();
                     return post.fromMap(mappedResult);
                 })
-                .exceptionally(ex -> {
-                    log.error("Error finding post: userId={}, postId={}, error={}",
+                .whenComplete((_, ex) -> {
+                    if (ex != null) log.error("Error finding post: userId={}, postId={}, error={}",
                             userId, postId, ex.getMessage(), ex);
-                    return null;
                 })
                 .toCompletableFuture();
     }
 
-    @Async
     @NonNull
     public CompletableFuture<List<Post>> findAllUserPosts(@NonNull String userId) {
         if (userId.isBlank()) {
@@ -61,6 +85,7 @@ public class PostRedisRepository {
         }
 
         String userPostsKey = buildUserPostsSetKey(userId);
+        ttl.recordAccess(userPostsKey);
 
         return asyncCommands.smembers(userPostsKey)
                 .thenCompose(postIds -> {
@@ -77,32 +102,26 @@ public class PostRedisRepository {
                             .thenApply(_ -> postFutures.stream()
                                     .map(CompletableFuture::join)
                                     .filter(Objects::nonNull)
-                                    .collect(Collectors.toList()))
-                            .exceptionally(ex -> {
-                                log.error("Error while computing completable futures: {}", ex.getMessage());
-                                return List.of();
-                            });
-                }).exceptionally(ex -> {
-                    log.error("Error finding all posts for user: {}, error={}", userId, ex.getMessage(), ex);
-                    return List.of();
+                                    .collect(Collectors.toList()));
+                }).whenComplete((_, ex) -> {
+                    if (ex != null) log.error("Error finding all posts for user: {}, error={}", userId, ex.getMessage());
                 }).toCompletableFuture();
     }
 
-    @Async
     public CompletableFuture<Boolean> savePost(@NonNull Post post) {
         if (post.getUserId() == null || post.getUserId().isBlank()) {
             log.warn("Invalid post data for save operation");
             return CompletableFuture.completedFuture(false);
         }
 
-        var map = post.toMap();
+        var map = compression.compact(post).toMap();
         String key = buildPostKey(post.getUserId(), post.getPostId());
         String userPostsKey = buildUserPostsSetKey(post.getUserId());
 
         return asyncCommands.hset(key, map)
-                .thenCompose(_ -> asyncCommands.expire(key, DEFAULT_EXPIRATION_SECONDS))
+                .thenCompose(_ -> ttl.expire(asyncCommands, key))
                 .thenCompose(_ -> asyncCommands.sadd(userPostsKey, String.valueOf(post.getPostId())))
-                .thenCompose(_ -> asyncCommands.expire(userPostsKey, DEFAULT_EXPIRATION_SECONDS))
+                .thenCompose(_ -> ttl.expire(asyncCommands, userPostsKey))
                 .thenApply(_ -> {
                     log.debug("Post saved successfully: userId={}, postId={}", post.getUserId(), post.getPostId());
                     return true;
@@ -114,7 +133,126 @@ public class PostRedisRepository {
                 .toCompletableFuture();
     }
 
-    @Async
+    /**
+     * Overwrites only the given hash fields, and only if the post is cached in Redis.
+     */
+    public CompletableFuture<Boolean> patchPost(@NonNull String userId, @NonNull String postId, @NonNull Map<String, String> fields) {
+        if (userId.isBlank() || fields.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        String[] args = fields.entrySet().stream()
+                .flatMap(field -> Stream.of(field.getKey(), field.getValue()))
+                .toArray(String[]::new);
+        return asyncCommands.<String>eval(RedisScripts.HSET_IF_EXISTS, ScriptOutputType.VALUE,
+                        new String[]{buildPostKey(userId, postId)}, args)
+                .thenApply(_ -> true)
+                .exceptionally(ex -> {
+                    log.error("Error patching post: userId={}, postId={}, error={}", userId, postId, ex.getMessage(), ex);
+                    return false;
+                })
+                .toCompletableFuture();
+    }
+
+    /**
+     * Fetches many posts in one round trip. Lettuce writes each command to the shared
+     * connection without waiting for the previous reply, so issuing every HGETALL before
+     * joining pipelines the whole batch.
+     */
+    @NonNull
+    public CompletableFuture<List<Post>> findPosts(@NonNull Collection<PostReference> references) {
+        if (references.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        List<CompletableFuture<Post>> postFutures = references.stream()
+                .filter(reference -> reference.getUserId() != null && !reference.getUserId().isBlank())
+                .map(reference -> {
+                    String key = buildPostKey(reference.getUserId(), reference.getPostId());
+                    ttl.recordAccess(key);
+                    return asyncCommands.hgetall(key)
+                            .thenApply(mappedResult -> mappedResult == null || mappedResult.isEmpty()
+                                    ? null
+                                    : new Post().fromMap(mappedResult))
+                            .whenComplete((_, ex) -> {
+                                if (ex != null) log.error("Error finding post in batch: userId={}, postId={}, error={}",
+                                        reference.getUserId(), reference.getPostId(), ex.getMessage());
+                            })
+                            .toCompletableFuture();
+                })
+                .toList();
+
+        return CompletableFuture.allOf(postFutures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> postFutures.stream()
+                        .map(CompletableFuture::join)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Writes many posts as one pipelined batch. Commands for a key are still applied in
+     * order by Redis, so each EXPIRE lands after its HSET/SADD without chaining on replies.
+     */
+    public CompletableFuture<Boolean> savePosts(@NonNull Collection<Post> posts) {
+        if (posts.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(posts.size() * 4);
+        for (Post post : posts) {
+            if (post.getUserId() == null || post.getUserId().isBlank()) continue;
+
+            String key = buildPostKey(post.getUserId(), post.getPostId());
+            String userPostsKey = buildUserPostsSetKey(post.getUserId());
+
+            futures.add(bulkCommands.hset(key, compression.compact(post).toMap()).toCompletableFuture());
+            futures.add(ttl.expire(bulkCommands, key));
+            futures.add(bulkCommands.sadd(userPostsKey, post.getPostId()).toCompletableFuture());
+            futures.add(ttl.expire(bulkCommands, userPostsKey));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> {
+                    log.debug("Saved batch of {} posts", posts.size());
+                    return true;
+                })
+                .exceptionally(ex -> {
+                    log.error("Error saving batch of {} posts: {}", posts.size(), ex.getMessage(), ex);
+                    return false;
+                });
+    }
+
+    /**
+     * Replaces the cached copies of posts that were written to Mongo behind the cache's back,
+     * without warming Redis: a post whose user has a cached post set is rewritten and added to
+     * that set, so the cached listing stays complete, and any other cached copy is dropped.
+     */
+    public CompletableFuture<Boolean> replaceListedPosts(@NonNull Collection<Post> posts) {
+        if (posts.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(posts.size() * 3);
+        for (Post post : posts) {
+            if (post.getUserId() == null || post.getUserId().isBlank()) continue;
+
+            String key = buildPostKey(post.getUserId(), post.getPostId());
+            String userPostsKey = buildUserPostsSetKey(post.getUserId());
+
+            futures.add(RedisScripts.replaceIfListed(bulkCommands, userPostsKey, key, post.getPostId(),
+                    compression.compact(post).toMap()));
+            futures.add(ttl.expire(bulkCommands, key));
+            futures.add(ttl.expire(bulkCommands, userPostsKey));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> true)
+                .exceptionally(ex -> {
+                    log.error("Error replacing batch of {} cached posts: {}", posts.size(), ex.getMessage(), ex);
+                    return false;
+                });
+    }
+
     public CompletableFuture<Boolean> deletePost(@NonNull String userId, @NonNull String postId) {
         if (userId.isBlank()) {
             return CompletableFuture.completedFuture(false);
@@ -137,11 +275,141 @@ public class PostRedisRepository {
                 .toCompletableFuture();
     }
 
+    /**
+     * Walks the members of a user's post set in pages, so a huge set never has to be read
+     * with one blocking SMEMBERS.
+     */
+    public CompletableFuture<ValueScanCursor<String>> scanUserPostIds(@NonNull String userId, @NonNull ScanCursor cursor, int count) {
+        return bulkCommands.sscan(buildUserPostsSetKey(userId), cursor, ScanArgs.Builder.limit(count))
+                .toCompletableFuture();
+    }
+
+    /**
+     * Removes post hashes with UNLINK, which frees their memory off the main Redis thread.
+     * The keys all carry the user's hash tag, so one command stays within one cluster slot.
+     */
+    public CompletableFuture<Long> unlinkPosts(@NonNull String userId, @NonNull Collection<String> postIds) {
+        if (postIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        String[] keys = postIds.stream()
+                .map(postId -> buildPostKey(userId, postId))
+                .toArray(String[]::new);
+        return bulkCommands.unlink(keys).toCompletableFuture();
+    }
+
+    public boolean isUserPostsHot(@NonNull String userId) {
+        return ttl.isHot(buildUserPostsSetKey(userId));
+    }
+
+    public CompletableFuture<Long> unlinkUserPosts(@NonNull String userId) {
+        return bulkCommands.unlink(buildUserPostsSetKey(userId)).toCompletableFuture();
+    }
+
+    /**
+     * One page of an incremental keyspace scan over the users' post sets. The returned keys
+     * are the user ids the sets belong to.
+     */
+    public CompletableFuture<KeyScanCursor<String>> scanUserPostSets(@NonNull ScanCursor cursor, int count) {
+        return bulkCommands.scan(cursor, ScanArgs.Builder.matches(USER_POSTS_SET_PREFIX + "*").limit(count))
+                .thenApply(page -> {
+                    page.getKeys().replaceAll(key -> RedisKeys.untag(key.substring(USER_POSTS_SET_PREFIX.length())));
+                    return page;
+                })
+                .toCompletableFuture();
+    }
+
+    /**
+     * Removes the ids among {@code postIds} whose post hash is gone from the user's post set.
+     *
+     * @return the number of ids removed
+     */
+    public CompletableFuture<Long> removeDanglingPostIds(@NonNull String userId, @NonNull Collection<String> postIds) {
+        return RedisScripts.sremDangling(bulkCommands, buildUserPostsSetKey(userId), postIds,
+                postId -> buildPostKey(userId, postId));
+    }
+
+    public CompletableFuture<Long> countUserPosts(@NonNull String userId) {
+        return bulkCommands.scard(buildUserPostsSetKey(userId)).toCompletableFuture();
+    }
+
+    /**
+     * Marks {@code postId} as acknowledged from a node's write journal but not in Mongo yet,
+     * so updates and deletes on every node wait for its replay. The mark expires after
+     * {@code ttl}, in case the node that journaled the post never comes back.
+     */
+    public CompletableFuture<Boolean> markJournaled(@NonNull String postId, @NonNull Duration ttl) {
+        return asyncCommands.set(buildJournaledKey(postId), "1", SetArgs.Builder.px(ttl))
+                .thenApply("OK"::equals)
+                .toCompletableFuture();
+    }
+
+    public CompletableFuture<Boolean> isJournaled(@NonNull String postId) {
+        return asyncCommands.exists(buildJournaledKey(postId))
+                .thenApply(count -> count > 0)
+                .toCompletableFuture();
+    }
+
+    /**
+     * Clears the marks of posts the journal replayer applied, one UNLINK per cluster slot.
+     */
+    public CompletableFuture<Long> clearJournaled(@NonNull Collection<String> postIds) {
+        if (postIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        List<String> keys = postIds.stream().map(PostRedisRepository::buildJournaledKey).toList();
+        List<CompletableFuture<Long>> futures = RedisKeys.bySlot(keys).stream()
+                .map(slotKeys -> bulkCommands.unlink(slotKeys.toArray(String[]::new)).toCompletableFuture())
+                .toList();
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> futures.stream().mapToLong(CompletableFuture::join).sum());
+    }
+
+    /**
+     * Measures with MEMORY USAGE what the hash of a post with a compressed body takes in Redis,
+     * next to a scratch copy of it holding the body as plain text. The copy shares the post's
+     * hash tag, so both are measured on the same node. It is removed right after, and is written
+     * with a short expiry so it cannot leak when that removal never happens.
+     *
+     * @return the sample, or {@code null} when the post is not in Redis or its body is not
+     * compressed
+     */
+    public CompletableFuture<MemorySample> sampleMemoryUsage(@NonNull String userId, @NonNull String postId) {
+        String key = buildPostKey(userId, postId);
+        String scratchKey = key + MEMORY_SAMPLE_SUFFIX;
+
+        return bulkCommands.hgetall(key).toCompletableFuture().thenCompose(fields -> {
+            String textZ = fields.get(Post.TEXT_Z);
+            Post post = textZ == null || textZ.isEmpty() ? null : new Post().fromMap(fields);
+            if (post == null) return CompletableFuture.completedFuture(null);
+
+            Map<String, String> plain = new HashMap<>(fields);
+            plain.put(Post.TEXT, post.getText());
+            plain.put(Post.TEXT_Z, "");
+            return RedisScripts.hsetWithExpiry(bulkCommands, scratchKey, MEMORY_SAMPLE_TTL, plain)
+                    .thenCompose(_ -> bulkCommands.memoryUsage(key))
+                    .thenCompose(stored -> bulkCommands.memoryUsage(scratchKey)
+                            .thenApply(plainBytes -> stored == null || plainBytes == null ? null : new MemorySample(stored, plainBytes)))
+                    .whenComplete((_, _) -> bulkCommands.unlink(scratchKey))
+                    .toCompletableFuture();
+        });
+    }
+
+    public record MemorySample(long stored, long plain) {
+    }
+
     private String buildPostKey(String userId, String postId) {
-        return PREFIX + userId + ":" + postId;
+        return PREFIX + RedisKeys.tag(userId) + ":" + postId;
     }
 
     private String buildUserPostsSetKey(String userId) {
-        return USER_POSTS_SET_PREFIX + userId;
+        return USER_POSTS_SET_PREFIX + RedisKeys.tag(userId);
+    }
+
+    private static String buildJournaledKey(String postId) {
+        return JOURNALED_PREFIX + RedisKeys.tag(postId);
     }
 }
\ No newline at end of file
@@ -1,19 +1,41 @@
 package io.carloship.jouwblog.repository;
 
 import io.carloship.jouwblog.response.Post;
-import io.micronaut.data.model.Page;
-import io.micronaut.data.model.Pageable;
 import io.micronaut.data.mongodb.annotation.MongoRepository;
 import io.micronaut.data.repository.async.AsyncCrudRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
+/**
+ * Posts on the primary. Listing and count queries live in {@link PostListingRepository}, so
+ * {@link MongoReadRouting} can send them to a secondary instead.
+ */
 @MongoRepository
-public interface PostRepository extends AsyncCrudRepository<Post, String> {
-    
-    CompletableFuture<Page<Post>> findPostsByUserId(String userId, Pageable pageable);
+public interface PostRepository extends AsyncCrudRepository<Post, String>, PostListingRepository {
 
     CompletableFuture<Post> findByUserId(String userId, String postId);
 
-    long countByUserId(String userId);
+    CompletableFuture<List<Post>> findByPostIdInList(Collection<String> postIds);
+
+    CompletableFuture<Long> deleteByPostIdInList(Collection<String> postIds);
+
+    /**
+     * Ids of every post, projected so the scan does not load the documents.
+     */
+    Stream<String> queryPostIdByPostIdIsNotNull();
+
+    /**
+     * Every post over one Mongo cursor, for exports. The stream must be closed to release it.
+     */
+    Stream<Post> queryByPostIdIsNotNull();
+
+    /**
+     * Posts written at or after {@code updateTimestamp}, over one Mongo cursor, for the search
+     * index catch-up. Without an index on {@code updateTimestamp} this is a collection scan.
+     * The stream must be closed to release it.
+     */
+    Stream<Post> queryByUpdateTimestampGreaterThanEqual(long updateTimestamp);
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package io.carloship.jouwblog.repository;
+
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.codec.StringCodec;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Key helpers for running the repositories against a Redis Cluster. Keys are built around a
+ * hash tag, {@code post:{userId}:postId}, so only the tagged part picks the slot: a user's post
+ * hashes and post set live on one node, as do a post's comment hashes and comment set.
+ */
+final class RedisKeys {
+
+    private RedisKeys() {
+    }
+
+    static String tag(String id) {
+        return "{" + id + "}";
+    }
+
+    /**
+     * @return the id inside a hash tag, for keys read back from a keyspace scan
+     */
+    static String untag(String tagged) {
+        if (tagged.length() >= 2 && tagged.charAt(0) == '{' && tagged.charAt(tagged.length() - 1) == '}') {
+            return tagged.substring(1, tagged.length() - 1);
+        }
+        return tagged;
+    }
+
+    /**
+     * Splits a multi-key batch into groups that each map to a single slot, since a cluster node
+     * rejects a command whose keys span slots.
+     */
+    static Collection<List<String>> bySlot(Collection<String> keys) {
+        return SlotHash.partition(StringCodec.UTF8, keys).values();
+    }
+}
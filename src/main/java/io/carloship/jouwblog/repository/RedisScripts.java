@@ -0,0 +1,126 @@
+package io.carloship.jouwblog.repository;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Lua scripts shared by the Redis repositories.
+ */
+final class RedisScripts {
+
+    /**
+     * HSET of the field/value pairs in ARGV, applied only when the hash KEYS[1] exists so a
+     * partial update never leaves a hash with missing fields behind. Returns the previous
+     * value of the first field, or nil when the hash does not exist.
+     */
+    static final String HSET_IF_EXISTS = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then return false end
+            local previous = redis.call('HGET', KEYS[1], ARGV[1])
+            redis.call('HSET', KEYS[1], unpack(ARGV))
+            return previous
+            """;
+
+    /**
+     * SREM from the set KEYS[1] of every member ARGV[i] whose hash KEYS[i + 1] does not exist.
+     * Checking and removing in one step keeps a member whose hash was written in between.
+     * Every key must share the set's hash tag. Returns the number of members removed.
+     */
+    static final String SREM_DANGLING = """
+            local removed = 0
+            for i = 2, #KEYS do
+                if redis.call('EXISTS', KEYS[i]) == 0 then
+                    removed = removed + redis.call('SREM', KEYS[1], ARGV[i - 1])
+                end
+            end
+            return removed
+            """;
+
+    /**
+     * Replaces the hash KEYS[2] of member ARGV[1] with the field/value pairs in ARGV[2..] and
+     * adds the member to the set KEYS[1], but only when that set exists: a cached listing stays
+     * complete, while no partial set is created. Without the set the hash is only removed. Both
+     * keys must share a hash tag. Returns 1 when the member was written.
+     */
+    static final String REPLACE_IF_LISTED = """
+            redis.call('UNLINK', KEYS[2])
+            if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end
+            redis.call('HSET', KEYS[2], unpack(ARGV, 2))
+            redis.call('SADD', KEYS[1], ARGV[1])
+            return 1
+            """;
+
+    /**
+     * HSET of the field/value pairs in ARGV[2..] into the hash KEYS[1], which then expires
+     * after ARGV[1] milliseconds. Written and given its expiry in one step, so a scratch hash
+     * cannot outlive a caller that fails before removing it.
+     */
+    static final String HSET_WITH_EXPIRY = """
+            redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """;
+
+    private RedisScripts() {
+    }
+
+    /**
+     * Runs {@link #SREM_DANGLING} for {@code members} of {@code setKey}, with
+     * {@code memberKey} naming the hash of a member.
+     */
+    static CompletableFuture<Long> sremDangling(RedisClusterAsyncCommands<String, String> commands, String setKey,
+                                                Collection<String> members, Function<String, String> memberKey) {
+        if (members.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        List<String> ids = List.copyOf(members);
+        String[] keys = new String[ids.size() + 1];
+        keys[0] = setKey;
+        for (int i = 0; i < ids.size(); i++) {
+            keys[i + 1] = memberKey.apply(ids.get(i));
+        }
+        return commands.<Long>eval(SREM_DANGLING, ScriptOutputType.INTEGER, keys, ids.toArray(String[]::new))
+                .toCompletableFuture();
+    }
+
+    /**
+     * Runs {@link #REPLACE_IF_LISTED} for {@code member} of {@code setKey}, stored in
+     * {@code hashKey} as {@code fields}.
+     */
+    static CompletableFuture<Long> replaceIfListed(RedisClusterAsyncCommands<String, String> commands, String setKey,
+                                                   String hashKey, String member, Map<String, String> fields) {
+        List<String> args = new ArrayList<>(fields.size() * 2 + 1);
+        args.add(member);
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        return commands.<Long>eval(REPLACE_IF_LISTED, ScriptOutputType.INTEGER, new String[]{setKey, hashKey},
+                        args.toArray(String[]::new))
+                .toCompletableFuture();
+    }
+
+    /**
+     * Runs {@link #HSET_WITH_EXPIRY} for {@code fields} of {@code key}.
+     */
+    static CompletableFuture<Long> hsetWithExpiry(RedisClusterAsyncCommands<String, String> commands, String key,
+                                                  Duration ttl, Map<String, String> fields) {
+        List<String> args = new ArrayList<>(fields.size() * 2 + 1);
+        args.add(String.valueOf(ttl.toMillis()));
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        return commands.<Long>eval(HSET_WITH_EXPIRY, ScriptOutputType.INTEGER, new String[]{key},
+                        args.toArray(String[]::new))
+                .toCompletableFuture();
+    }
+}
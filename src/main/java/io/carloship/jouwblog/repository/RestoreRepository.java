@@ -0,0 +1,94 @@
+package io.carloship.jouwblog.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import io.carloship.jouwblog.response.Comment;
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.User;
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.jspecify.annotations.NonNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Bulk restores of exported entities. Each entity replaces the document with its id or is
+ * inserted, so importing the same backup twice leaves the same data behind. Callers run it
+ * off the event loop.
+ */
+@Singleton
+public class RestoreRepository {
+
+    // Micronaut Data's default collection names for the entities.
+    private static final String POSTS = "post";
+    private static final String USERS = "user";
+    private static final String COMMENTS = "comment";
+
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    @Inject
+    protected MongoClient mongoClient;
+
+    @Value("${mongodb.uri}")
+    protected String uri;
+
+    private MongoCollection<Document> posts;
+    private MongoCollection<Document> users;
+    private MongoCollection<Document> comments;
+
+    @PostConstruct
+    void init() {
+        var database = mongoClient.getDatabase(new ConnectionString(uri).getDatabase());
+        this.posts = database.getCollection(POSTS);
+        this.users = database.getCollection(USERS);
+        this.comments = database.getCollection(COMMENTS);
+    }
+
+    public void replacePosts(@NonNull Collection<Post> batch) {
+        replace(posts, batch, post -> new Document("_id", new ObjectId(post.getPostId()))
+                .append("userId", post.getUserId())
+                .append("title", post.getTitle())
+                .append("postTimestamp", post.getPostTimestamp())
+                .append("updateTimestamp", post.getUpdateTimestamp())
+                .append("text", post.getText())
+                .append("likes", post.getLikes())
+                .append("replies", post.getReplies()));
+    }
+
+    public void replaceUsers(@NonNull Collection<User> batch) {
+        replace(users, batch, user -> new Document("_id", new ObjectId(user.getId()))
+                .append("username", user.getUsername())
+                .append("name", user.getName())
+                .append("email", user.getEmail()));
+    }
+
+    public void replaceComments(@NonNull Collection<Comment> batch) {
+        replace(comments, batch, comment -> new Document("_id", new ObjectId(comment.getCommentId()))
+                .append("postId", comment.getPostId())
+                .append("userId", comment.getUserId())
+                .append("commentText", comment.getCommentText())
+                .append("likes", comment.getLikes()));
+    }
+
+    private static <T> void replace(MongoCollection<Document> collection, Collection<T> batch, Function<T, Document> toDocument) {
+        if (batch.isEmpty()) return;
+
+        List<ReplaceOneModel<Document>> models = batch.stream()
+                .map(toDocument)
+                .map(document -> new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, UPSERT))
+                .toList();
+        collection.bulkWrite(models, UNORDERED);
+    }
+}
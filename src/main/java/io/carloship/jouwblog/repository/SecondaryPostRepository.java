@@ -0,0 +1,16 @@
+package io.carloship.jouwblog.repository;
+
+import io.carloship.jouwblog.response.Post;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.data.mongodb.annotation.MongoRepository;
+import io.micronaut.data.repository.GenericRepository;
+
+/**
+ * Post listings over the {@code mongodb.servers.secondary} client, whose connection string
+ * carries the secondary read preference and its {@code maxStalenessSeconds} bound.
+ */
+@MongoRepository(serverName = MongoReadRouting.SECONDARY)
+@Requires(property = MongoReadRouting.ENABLED, value = StringUtils.TRUE)
+public interface SecondaryPostRepository extends GenericRepository<Post, String>, PostListingRepository {
+}
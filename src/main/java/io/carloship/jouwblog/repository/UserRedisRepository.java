@@ -1,16 +1,24 @@
 package io.carloship.jouwblog.repository;
 
-import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.cache.AdaptiveTtl;
+import io.carloship.jouwblog.common.RedisConnection;
 import io.carloship.jouwblog.response.User;
-import io.lettuce.core.api.async.RedisAsyncCommands;
-import io.micronaut.scheduling.annotation.Async;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @Slf4j
 @Singleton
@@ -18,22 +26,27 @@ public class UserRedisRepository {
 
     private static final String PREFIX = "user:";
     private static final String PREFIX_SEARCH_USERNAME = "user_search:";
-    private static final Duration DEFAULT_EXPIRATION_SECONDS = Application.DEFAULT_REDIS_TIME;
 
-    private final RedisAsyncCommands<String, String> asyncCommands;
+    private final RedisClusterAsyncCommands<String, String> asyncCommands;
+    private final RedisClusterAsyncCommands<String, String> bulkCommands;
+    private final AdaptiveTtl ttl;
 
     @Inject
-    public UserRedisRepository(RedisAsyncCommands<String, String> asyncCommands) {
+    public UserRedisRepository(RedisClusterAsyncCommands<String, String> asyncCommands,
+                               @Named(RedisConnection.BULK) RedisClusterAsyncCommands<String, String> bulkCommands,
+                               AdaptiveTtl ttl) {
         this.asyncCommands = asyncCommands;
+        this.bulkCommands = bulkCommands;
+        this.ttl = ttl;
     }
 
-    @Async
     public CompletableFuture<User> findUser(@NonNull String id) {
         if (id.isBlank()) {
             return CompletableFuture.completedFuture(null);
         }
 
         String key = buildUserKey(id);
+        ttl.recordAccess(key);
         return asyncCommands.hgetall(key)
                 .thenApply(mappedResult -> {
                     if (mappedResult == null || mappedResult.isEmpty()) {
@@ -45,20 +58,51 @@ public class UserRedisRepository {
                     User user = new User();
                     return user.fromMap(mappedResult);
                 })
-                .exceptionally(ex -> {
-                    log.error("Error finding user: id={}, error={}", id, ex.getMessage(), ex);
-                    return null;
+                .whenComplete((_, ex) -> {
+                    if (ex != null) log.error("Error finding user: id={}, error={}", id, ex.getMessage(), ex);
                 })
                 .toCompletableFuture();
     }
 
-    @Async
+    /**
+     * Fetches many users in one round trip, see {@link PostRedisRepository#findPosts}.
+     */
+    @NonNull
+    public CompletableFuture<List<User>> findUsers(@NonNull Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        List<CompletableFuture<User>> userFutures = ids.stream()
+                .filter(id -> !id.isBlank())
+                .map(id -> {
+                    String key = buildUserKey(id);
+                    ttl.recordAccess(key);
+                    return asyncCommands.hgetall(key)
+                            .thenApply(mappedResult -> mappedResult == null || mappedResult.isEmpty()
+                                    ? null
+                                    : new User().fromMap(mappedResult))
+                            .whenComplete((_, ex) -> {
+                                if (ex != null) log.error("Error finding user in batch: id={}, error={}", id, ex.getMessage());
+                            })
+                            .toCompletableFuture();
+                })
+                .toList();
+
+        return CompletableFuture.allOf(userFutures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> userFutures.stream()
+                        .map(CompletableFuture::join)
+                        .filter(Objects::nonNull)
+                        .toList());
+    }
+
     public CompletableFuture<User> searchUser(String username) {
         if (username == null || username.isBlank()) {
             return CompletableFuture.completedFuture(null);
         }
 
         String searchKey = buildUsernameSearchKey(username);
+        ttl.recordAccess(searchKey);
         return asyncCommands.get(searchKey)
                 .thenCompose(userId -> {
                     if (userId == null || userId.isEmpty()) {
@@ -75,7 +119,6 @@ public class UserRedisRepository {
                 .toCompletableFuture();
     }
 
-    @Async
     public CompletableFuture<Boolean> saveUser(@NonNull User user) {
         if (user.getId() == null || user.getId().isBlank()
                 || user.getUsername() == null || user.getUsername().isBlank()) {
@@ -95,10 +138,10 @@ public class UserRedisRepository {
                 })
                 .thenCompose(_ -> {
                     // Set expiration for user hash
-                    return asyncCommands.expire(userKey, DEFAULT_EXPIRATION_SECONDS)
+                    return ttl.expire(asyncCommands, userKey)
                             .thenCompose(expireResult -> {
                                 // Set expiration for username search key
-                                return asyncCommands.expire(usernameKey, DEFAULT_EXPIRATION_SECONDS);
+                                return ttl.expire(asyncCommands, usernameKey);
                             });
                 })
                 .thenApply(expireResult -> {
@@ -114,7 +157,68 @@ public class UserRedisRepository {
                 .toCompletableFuture();
     }
 
-    @Async
+    /**
+     * Writes many users as one pipelined batch, see {@link PostRedisRepository#savePosts}.
+     */
+    public CompletableFuture<Boolean> saveUsers(@NonNull Collection<User> users) {
+        if (users.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(users.size() * 4);
+        for (User user : users) {
+            if (user.getId() == null || user.getId().isBlank()
+                    || user.getUsername() == null || user.getUsername().isBlank()) continue;
+
+            String userKey = buildUserKey(user.getId());
+            String usernameKey = buildUsernameSearchKey(user.getUsername());
+
+            futures.add(bulkCommands.hset(userKey, user.toMap()).toCompletableFuture());
+            futures.add(bulkCommands.set(usernameKey, user.getId()).toCompletableFuture());
+            futures.add(ttl.expire(bulkCommands, userKey));
+            futures.add(ttl.expire(bulkCommands, usernameKey));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> {
+                    log.debug("Saved batch of {} users", users.size());
+                    return true;
+                })
+                .exceptionally(ex -> {
+                    log.error("Error saving batch of {} users: {}", users.size(), ex.getMessage(), ex);
+                    return false;
+                });
+    }
+
+    /**
+     * Drops the cached copies of users, with the search keys of the usernames they were cached
+     * under, for users that were replaced in Mongo behind the cache's back.
+     */
+    public CompletableFuture<Boolean> evictUsers(@NonNull Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            String userKey = buildUserKey(id);
+            futures.add(bulkCommands.hget(userKey, "username")
+                    .thenCompose(username -> {
+                        CompletionStage<Long> unlinkUser = bulkCommands.unlink(userKey);
+                        if (username == null || username.isBlank()) return unlinkUser;
+                        return unlinkUser.thenCombine(bulkCommands.unlink(buildUsernameSearchKey(username)), Long::sum);
+                    })
+                    .toCompletableFuture());
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(_ -> true)
+                .exceptionally(ex -> {
+                    log.error("Error evicting batch of {} users: {}", ids.size(), ex.getMessage(), ex);
+                    return false;
+                });
+    }
+
     public CompletableFuture<Boolean> deleteUser(@NonNull String id) {
         if (id.isBlank()) {
             return CompletableFuture.completedFuture(false);
@@ -152,7 +256,46 @@ public class UserRedisRepository {
                 .toCompletableFuture();
     }
 
-    @Async
+    /**
+     * Overwrites only the given hash fields, and only if the user is cached in Redis. When
+     * the username changes, the search key of {@code previousUsername} is replaced as well,
+     * whether or not the hash is still cached, so it never points a lookup at the new owner
+     * of the name.
+     */
+    public CompletableFuture<Boolean> patchUser(@NonNull String userId, @NonNull Map<String, String> fields,
+                                                @Nullable String previousUsername) {
+        if (userId.isBlank() || fields.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        List<String> args = new ArrayList<>(fields.size() * 2);
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+
+        String newUsername = fields.get("username");
+        String userKey = buildUserKey(userId);
+        return asyncCommands.<String>eval(RedisScripts.HSET_IF_EXISTS, ScriptOutputType.VALUE,
+                        new String[]{userKey}, args.toArray(String[]::new))
+                .thenCompose(_ -> {
+                    if (newUsername == null || previousUsername == null || previousUsername.equalsIgnoreCase(newUsername)) {
+                        return CompletableFuture.completedFuture(true);
+                    }
+
+                    String newUsernameKey = buildUsernameSearchKey(newUsername);
+                    return asyncCommands.unlink(buildUsernameSearchKey(previousUsername))
+                            .thenCompose(_ -> asyncCommands.set(newUsernameKey, userId))
+                            .thenCompose(_ -> ttl.expire(asyncCommands, newUsernameKey))
+                            .thenApply(_ -> true);
+                })
+                .exceptionally(ex -> {
+                    log.error("Error patching user: id={}, error={}", userId, ex.getMessage(), ex);
+                    return false;
+                })
+                .toCompletableFuture();
+    }
+
     public CompletableFuture<Boolean> updateUsername(@NonNull String userId,@NonNull String newUsername) {
         if (userId.isBlank() || newUsername.isBlank()) {
             return CompletableFuture.completedFuture(false);
@@ -178,7 +321,7 @@ public class UserRedisRepository {
                                 return deleteOldFuture.thenCompose(v ->
                                         asyncCommands.set(newUsernameKey, userId)
                                                 .thenCompose(setResult ->
-                                                        asyncCommands.expire(newUsernameKey, DEFAULT_EXPIRATION_SECONDS)
+                                                        ttl.expire(asyncCommands, newUsernameKey)
                                                 )
                                 );
                             });
@@ -196,7 +339,7 @@ public class UserRedisRepository {
     }
 
     private String buildUserKey(String userId) {
-        return PREFIX + userId;
+        return PREFIX + RedisKeys.tag(userId);
     }
 
     private String buildUsernameSearchKey(String username) {
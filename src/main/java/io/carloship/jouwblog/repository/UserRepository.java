@@ -4,7 +4,23 @@ import io.carloship.jouwblog.response.User;
 import io.micronaut.data.mongodb.annotation.MongoRepository;
 import io.micronaut.data.repository.async.AsyncCrudRepository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
 @MongoRepository
 public interface UserRepository extends AsyncCrudRepository<User, String> {
 
+    CompletableFuture<List<User>> findByIdInList(Collection<String> ids);
+
+    /**
+     * Ids of every user, projected so the scan does not load the documents.
+     */
+    Stream<String> queryIdByIdIsNotNull();
+
+    /**
+     * Every user over one Mongo cursor, for exports. The stream must be closed to release it.
+     */
+    Stream<User> queryByIdIsNotNull();
 }
@@ -0,0 +1,21 @@
+package io.carloship.jouwblog.response;
+
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Serdeable
+@NoArgsConstructor
+@AllArgsConstructor
+public class BackupSummary {
+
+    private String file;
+    private long users;
+    private long posts;
+    private long comments;
+    private long bytes;
+    private long millis;
+
+}
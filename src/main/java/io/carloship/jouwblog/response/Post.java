@@ -1,23 +1,38 @@
 package io.carloship.jouwblog.response;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.carloship.jouwblog.common.TextCompression;
 import io.micronaut.data.annotation.GeneratedValue;
 import io.micronaut.data.annotation.MappedEntity;
+import io.micronaut.data.annotation.Transient;
 import io.micronaut.serde.annotation.Serdeable;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.bson.codecs.pojo.annotations.BsonId;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 
+import java.lang.ref.SoftReference;
+import java.util.Base64;
 import java.util.Map;
 
 @Data
 @Serdeable
 @MappedEntity
 @NoArgsConstructor
-@AllArgsConstructor
 public class Post implements MappedResponse {
 
+    /**
+     * Redis hash fields of the body. Every write sets both, the unused one to an empty string,
+     * so an HSET over an older hash never leaves a stale body behind.
+     */
+    public static final String TEXT = "text";
+    public static final String TEXT_Z = "textZ";
+
     @BsonId
     @GeneratedValue
     private String postId;
@@ -33,19 +48,103 @@ public class Post implements MappedResponse {
     private int likes;
     private int replies;
 
+    /**
+     * The body as {@link TextCompression#posts()} bytes, set instead of {@link #text} on the
+     * copies kept in the cache tiers. It is only inflated when {@link #getText()} is called.
+     */
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private byte[] textZ;
+
+    /**
+     * The last inflation of {@link #textZ}, which the collector may take back. A post that is
+     * read often is not inflated again for every serialization, comparison or indexing, while
+     * one that sits in L1 unread keeps only its compressed body.
+     */
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile SoftReference<String> inflated;
+
+    public Post(String postId, String userId, String title, long postTimestamp, long updateTimestamp,
+                String text, int likes, int replies) {
+        this.postId = postId;
+        this.userId = userId;
+        this.title = title;
+        this.postTimestamp = postTimestamp;
+        this.updateTimestamp = updateTimestamp;
+        this.text = text;
+        this.likes = likes;
+        this.replies = replies;
+    }
+
+    public String getText() {
+        if (text != null || textZ == null) return text;
+
+        SoftReference<String> cached = inflated;
+        String value = cached == null ? null : cached.get();
+        if (value == null) {
+            value = TextCompression.posts().inflate(textZ);
+            inflated = new SoftReference<>(value);
+        }
+        return value;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+        this.textZ = null;
+        this.inflated = null;
+    }
+
+    /**
+     * @return a copy holding {@code compressedText} as its body
+     */
+    @BsonIgnore
+    public Post withCompressedText(byte[] compressedText) {
+        Post copy = new Post(postId, userId, title, postTimestamp, updateTimestamp, null, likes, replies);
+        copy.textZ = compressedText;
+        return copy;
+    }
+
+    /**
+     * Takes over the body of {@code other} as it is stored, without inflating it.
+     */
+    @BsonIgnore
+    public void copyTextFrom(Post other) {
+        this.text = other.text;
+        this.textZ = other.textZ;
+        this.inflated = other.inflated;
+    }
+
     @Override
     @BsonIgnore
     public Post fromMap(Map<String, String> map) {
-        return new Post(
+        var post = new Post(
                 map.get("postId"),
                 map.get("userId"),
                 map.get("title"),
                 Long.parseLong(map.get("postTimestamp")),
                 Long.parseLong(map.get("updateTimestamp")),
-                map.get("text"),
+                map.get(TEXT),
                 Integer.parseInt(map.get("likes")),
                 Integer.parseInt(map.get("replies"))
         );
+
+        String compressed = map.get(TEXT_Z);
+        if (compressed != null && !compressed.isEmpty()) {
+            byte[] bytes = Base64.getDecoder().decode(compressed);
+            // Written by a node with another dictionary, read as a miss and reloaded.
+            if (!TextCompression.posts().canInflate(bytes)) return null;
+
+            post.text = null;
+            post.textZ = bytes;
+        }
+        return post;
     }
 
     @Override
@@ -57,7 +156,8 @@ public class Post implements MappedResponse {
                 "title", getTitle(),
                 "postTimestamp", String.valueOf(getPostTimestamp()),
                 "updateTimestamp", String.valueOf(getUpdateTimestamp()),
-                "text", getText(),
+                TEXT, textZ == null ? text : "",
+                TEXT_Z, textZ == null ? "" : Base64.getEncoder().encodeToString(textZ),
                 "likes", String.valueOf(getLikes()),
                 "replies", String.valueOf(getReplies())
         );
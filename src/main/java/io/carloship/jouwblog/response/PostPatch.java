@@ -0,0 +1,46 @@
+package io.carloship.jouwblog.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Body of a post PATCH. Absent fields are left untouched; counters are changed by a delta
+ * so concurrent likes do not overwrite each other.
+ */
+@Data
+@Serdeable
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostPatch {
+
+    @Nullable
+    private String title;
+
+    @Nullable
+    private String text;
+
+    @Nullable
+    private Integer likesDelta;
+
+    @Nullable
+    private Integer repliesDelta;
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return title == null && text == null && !hasCounters();
+    }
+
+    @JsonIgnore
+    public boolean hasCounters() {
+        return likesDelta != null || repliesDelta != null;
+    }
+
+    @JsonIgnore
+    public boolean changesContent() {
+        return title != null || text != null;
+    }
+}
@@ -0,0 +1,17 @@
+package io.carloship.jouwblog.response;
+
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Serdeable
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostReference {
+
+    private String userId;
+    private String postId;
+
+}
@@ -0,0 +1,26 @@
+package io.carloship.jouwblog.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Listing representation of a post. Serializes exactly like {@link Post} unless the
+ * author was expanded, in which case it carries an extra {@code author} object.
+ */
+@Data
+@Serdeable
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostView {
+
+    @JsonUnwrapped
+    private Post post;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private User author;
+
+}
@@ -0,0 +1,32 @@
+package io.carloship.jouwblog.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Body of a user PATCH. Absent fields are left untouched.
+ */
+@Data
+@Serdeable
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPatch {
+
+    @Nullable
+    private String username;
+
+    @Nullable
+    private String name;
+
+    @Nullable
+    private String email;
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return username == null && name == null && email == null;
+    }
+}
@@ -0,0 +1,751 @@
+package io.carloship.jouwblog.search;
+
+import io.carloship.jouwblog.repository.PostRepository;
+import io.carloship.jouwblog.response.Post;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Embedded inverted index over {@link Post#getTitle()} and {@link Post#getText()}.
+ * <p>
+ * Postings are primitive int arrays, documents get monotonically increasing ordinals so
+ * every posting list stays sorted, and queries are ranked with BM25. The index is updated
+ * incrementally by {@code PostService} and periodically written to a compact snapshot that
+ * is memory-mapped on the next start instead of being rebuilt from Mongo. Ordinals of
+ * removed or re-indexed documents are reclaimed by renumbering the live documents once
+ * they outnumber them.
+ * <p>
+ * Writes handled by other nodes, and writes made after the last snapshot before a crash,
+ * are caught up from Mongo every {@code catch-up-interval}: posts whose
+ * {@code updateTimestamp} is at most {@code catch-up-overlap} older than the start of the
+ * last scan are read again and indexed unless the index holds that version already. The
+ * snapshot stores that mark, so a restart only catches up from it. Until a full scan or a
+ * snapshot has succeeded the mark is unknown: every catch-up is then a full scan, and no
+ * snapshot is written, so a partial index is never trusted on a later start. Deletes on
+ * other nodes are not seen; search drops hits whose post is gone.
+ */
+@Slf4j
+@Singleton
+public class PostSearchIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x4A425349; // "JBSI"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final long UNKNOWN = -1;
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int TITLE_BOOST = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+    // Below this many dead ordinals renumbering costs more than the memory it frees.
+    private static final int MIN_DEAD_ORDINALS = 4096;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean scanning = new AtomicBoolean();
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+    private final List<PostingList> postings = new ArrayList<>();
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private String[] postIds = new String[1024];
+    private String[] userIds = new String[1024];
+    private int[] lengths = new int[1024];
+    // updateTimestamp of the indexed copy of every document.
+    private long[] versions = new long[1024];
+    private int[][] docTerms = new int[1024][];
+    private int nextOrdinal;
+
+    private int liveDocs;
+    private long totalLength;
+    private volatile boolean dirty;
+    // Start of the last successful scan, in epoch millis, or UNKNOWN before the first one.
+    private volatile long caughtUpTo = UNKNOWN;
+
+    // Writes seen while the snapshot or Mongo rebuild is loading, by post id, null for a
+    // removal. Replayed over the loaded index so they are not lost to it.
+    private Map<String, Post> restoring;
+
+    @Value("${jouwblog.search.enabled:true}")
+    protected boolean enabled = true;
+
+    @Value("${jouwblog.search.snapshot-path:data/search/posts.idx}")
+    protected String snapshotPath = "data/search/posts.idx";
+
+    @Value("${jouwblog.search.catch-up-overlap:10m}")
+    protected Duration catchUpOverlap = Duration.ofMinutes(10);
+
+    @Inject
+    protected PostRepository repository;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        if (!enabled) return;
+
+        CompletableFuture.runAsync(this::restore, ioExecutor).exceptionally(ex -> {
+            log.error("Error while restoring post search index: {}", ex.getMessage(), ex);
+            return null;
+        });
+    }
+
+    private void restore() {
+        // Held throughout, so a scheduled catch-up cannot run while the snapshot loads.
+        if (!scanning.compareAndSet(false, true)) return;
+
+        try {
+            Path snapshot = Path.of(snapshotPath);
+            if (Files.exists(snapshot)) {
+                beginRestore();
+                try {
+                    long start = System.nanoTime();
+                    load(snapshot);
+                    log.info("Post search index loaded from {} with {} documents in {} ms",
+                            snapshot, size(), (System.nanoTime() - start) / 1_000_000);
+                } catch (IOException | RuntimeException ex) {
+                    log.warn("Post search index snapshot {} is unusable, rebuilding from mongo: {}", snapshot, ex.getMessage());
+                } finally {
+                    finishRestore();
+                }
+            }
+
+            scan();
+        } finally {
+            scanning.set(false);
+        }
+    }
+
+    @Scheduled(fixedDelay = "${jouwblog.search.catch-up-interval:1m}", initialDelay = "${jouwblog.search.catch-up-interval:1m}")
+    void catchUp() {
+        if (!enabled || !scanning.compareAndSet(false, true)) return;
+
+        try {
+            scan();
+        } finally {
+            scanning.set(false);
+        }
+    }
+
+    /**
+     * Indexes the posts written since the last scan, or every post while no scan has
+     * succeeded yet. Writes made meanwhile are replayed over what the scan read.
+     */
+    private void scan() {
+        long since = caughtUpTo;
+        long scanStart = System.currentTimeMillis();
+        long start = System.nanoTime();
+        int indexed = 0;
+        beginRestore();
+        try (Stream<Post> posts = since == UNKNOWN
+                ? repository.queryByPostIdIsNotNull()
+                : repository.queryByUpdateTimestampGreaterThanEqual(since - catchUpOverlap.toMillis())) {
+            for (Post post : (Iterable<Post>) posts::iterator) {
+                if (indexIfNewer(post)) indexed++;
+            }
+            caughtUpTo = scanStart;
+        } catch (RuntimeException ex) {
+            log.error("Error while catching up post search index from mongo, retrying on the next run: {}", ex.getMessage(), ex);
+            return;
+        } finally {
+            finishRestore();
+        }
+
+        if (since == UNKNOWN) {
+            log.info("Post search index rebuilt from mongo with {} documents in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+        } else if (indexed > 0) {
+            log.debug("Post search index caught up {} posts from mongo", indexed);
+        }
+    }
+
+    /**
+     * Starts recording writes, so that {@link #finishRestore()} can apply them again over
+     * whatever the restore loaded.
+     */
+    void beginRestore() {
+        lock.writeLock().lock();
+        try {
+            restoring = new LinkedHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void finishRestore() {
+        lock.writeLock().lock();
+        try {
+            Map<String, Post> writes = restoring;
+            restoring = null;
+            if (writes == null) return;
+
+            for (var write : writes.entrySet()) {
+                if (write.getValue() == null) {
+                    remove(write.getKey());
+                } else {
+                    index(write.getValue());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot, unless a restore or catch-up is running or none has succeeded yet:
+     * a snapshot of a partial index would be trusted on every later start.
+     */
+    @Scheduled(fixedDelay = "${jouwblog.search.snapshot-interval:5m}", initialDelay = "${jouwblog.search.snapshot-interval:5m}")
+    void persistIfDirty() {
+        if (!enabled || !dirty || caughtUpTo == UNKNOWN || isRestoring()) return;
+
+        try {
+            persist(Path.of(snapshotPath));
+        } catch (IOException ex) {
+            log.error("Error while writing post search index snapshot: {}", ex.getMessage(), ex);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        persistIfDirty();
+    }
+
+    public void index(@NonNull Post post) {
+        index(post, true);
+    }
+
+    /**
+     * Indexes a post read from Mongo, unless the index holds this version or a newer one.
+     *
+     * @return whether the post was indexed
+     */
+    boolean indexIfNewer(@NonNull Post post) {
+        if (!enabled || post.getPostId() == null) return false;
+
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(post.getPostId());
+            if (ordinal != null && versions[ordinal] >= post.getUpdateTimestamp()) return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        index(post, false);
+        return true;
+    }
+
+    private boolean isRestoring() {
+        lock.readLock().lock();
+        try {
+            return restoring != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(Post post, boolean record) {
+        if (!enabled || post.getPostId() == null) return;
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        tokenize(post.getTitle(), TITLE_BOOST, frequencies);
+        tokenize(post.getText(), 1, frequencies);
+
+        lock.writeLock().lock();
+        try {
+            if (record && restoring != null) {
+                restoring.put(post.getPostId(), post);
+            }
+
+            Integer previous = ordinals.remove(post.getPostId());
+            if (previous != null) {
+                removeOrdinal(previous);
+                compactIfSparse();
+            }
+
+            int ordinal = nextOrdinal++;
+            ensureCapacity(ordinal + 1);
+
+            int[] ids = new int[frequencies.size()];
+            int length = 0;
+            int i = 0;
+            for (var entry : frequencies.entrySet()) {
+                int termId = termId(entry.getKey());
+                postings.get(termId).append(ordinal, entry.getValue());
+                ids[i++] = termId;
+                length += entry.getValue();
+            }
+
+            ordinals.put(post.getPostId(), ordinal);
+            postIds[ordinal] = post.getPostId();
+            userIds[ordinal] = post.getUserId();
+            lengths[ordinal] = length;
+            versions[ordinal] = post.getUpdateTimestamp();
+            docTerms[ordinal] = ids;
+            liveDocs++;
+            totalLength += length;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(@NonNull String postId) {
+        if (!enabled) return;
+
+        lock.writeLock().lock();
+        try {
+            if (restoring != null) {
+                restoring.put(postId, null);
+            }
+
+            Integer ordinal = ordinals.remove(postId);
+            if (ordinal != null) {
+                removeOrdinal(ordinal);
+                compactIfSparse();
+                dirty = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @NonNull
+    public List<SearchHit> search(@NonNull String query, int limit) {
+        if (!enabled || limit <= 0) return List.of();
+
+        Set<String> queryTerms = new LinkedHashSet<>();
+        tokenize(query, queryTerms);
+        if (queryTerms.isEmpty()) return List.of();
+
+        lock.readLock().lock();
+        try {
+            if (liveDocs == 0) return List.of();
+
+            float avgLength = (float) totalLength / liveDocs;
+            List<PostingList> lists = new ArrayList<>(queryTerms.size());
+            List<Float> idfs = new ArrayList<>(queryTerms.size());
+            for (String term : queryTerms) {
+                Integer termId = termIds.get(term);
+                if (termId == null) continue;
+
+                PostingList list = postings.get(termId);
+                int df = list.size();
+                if (df == 0) continue;
+
+                lists.add(list);
+                idfs.add((float) Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5)));
+            }
+
+            // Document at a time over the sorted posting lists: every document is scored in
+            // one go, so no accumulator sized by the whole index is needed.
+            int[] positions = new int[lists.size()];
+            PriorityQueue<SearchHit> top = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(SearchHit::score));
+            while (true) {
+                int doc = Integer.MAX_VALUE;
+                for (int t = 0; t < positions.length; t++) {
+                    PostingList list = lists.get(t);
+                    while (positions[t] < list.length() && list.freq(positions[t]) == 0) {
+                        positions[t]++;
+                    }
+                    if (positions[t] < list.length()) {
+                        doc = Math.min(doc, list.doc(positions[t]));
+                    }
+                }
+                if (doc == Integer.MAX_VALUE) break;
+
+                float norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                float score = 0f;
+                for (int t = 0; t < positions.length; t++) {
+                    PostingList list = lists.get(t);
+                    if (positions[t] < list.length() && list.doc(positions[t]) == doc) {
+                        int tf = list.freq(positions[t]++);
+                        score += idfs.get(t) * (tf * (K1 + 1)) / (tf + norm);
+                    }
+                }
+
+                if (top.size() < limit) {
+                    top.add(new SearchHit(postIds[doc], userIds[doc], score));
+                } else if (score > top.peek().score()) {
+                    top.poll();
+                    top.add(new SearchHit(postIds[doc], userIds[doc], score));
+                }
+            }
+
+            List<SearchHit> hits = new ArrayList<>(top);
+            hits.sort(Comparator.comparingDouble(SearchHit::score).reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes live documents with renumbered ordinals, so the snapshot is also a compaction.
+     * Doc ordinals are delta encoded and all integers are varints.
+     */
+    public void persist(@NonNull Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        lock.readLock().lock();
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            dirty = false;
+
+            int[] remap = new int[nextOrdinal];
+            int live = 0;
+            for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+                remap[ordinal] = postIds[ordinal] != null ? live++ : -1;
+            }
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(caughtUpTo);
+            writeVarInt(out, live);
+            for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+                if (remap[ordinal] < 0) continue;
+                writeString(out, postIds[ordinal]);
+                writeString(out, userIds[ordinal] == null ? "" : userIds[ordinal]);
+                writeVarInt(out, lengths[ordinal]);
+                out.writeLong(versions[ordinal]);
+            }
+
+            int termCount = 0;
+            for (PostingList list : postings) {
+                if (list.size() > 0) termCount++;
+            }
+
+            writeVarInt(out, termCount);
+            for (int termId = 0; termId < postings.size(); termId++) {
+                PostingList list = postings.get(termId);
+                if (list.size() == 0) continue;
+
+                writeString(out, terms.get(termId));
+                writeVarInt(out, list.size());
+                int previous = 0;
+                for (int i = 0; i < list.length(); i++) {
+                    if (list.freq(i) == 0) continue;
+                    int doc = remap[list.doc(i)];
+                    writeVarInt(out, doc - previous);
+                    writeVarInt(out, list.freq(i));
+                    previous = doc;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Post search index snapshot written to {}", target);
+    }
+
+    /**
+     * Replaces the in-memory index with the snapshot at {@code source}, read through a
+     * memory-mapped buffer, and catches up from the mark it was written with. Writes made
+     * since {@link #beginRestore()} are kept, see {@link #finishRestore()}.
+     */
+    public void load(@NonNull Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unknown post search index snapshot format");
+            }
+
+            long loadedCaughtUpTo = buffer.getLong();
+            int docCount = readVarInt(buffer);
+            String[] loadedPostIds = new String[Math.max(docCount, 1024)];
+            String[] loadedUserIds = new String[loadedPostIds.length];
+            int[] loadedLengths = new int[loadedPostIds.length];
+            long[] loadedVersions = new long[loadedPostIds.length];
+            Map<String, Integer> loadedOrdinals = HashMap.newHashMap(docCount);
+            long loadedTotalLength = 0;
+
+            for (int ordinal = 0; ordinal < docCount; ordinal++) {
+                loadedPostIds[ordinal] = readString(buffer);
+                String userId = readString(buffer);
+                loadedUserIds[ordinal] = userId.isEmpty() ? null : userId;
+                loadedLengths[ordinal] = readVarInt(buffer);
+                loadedVersions[ordinal] = buffer.getLong();
+                loadedOrdinals.put(loadedPostIds[ordinal], ordinal);
+                loadedTotalLength += loadedLengths[ordinal];
+            }
+
+            int termCount = readVarInt(buffer);
+            Map<String, Integer> loadedTermIds = HashMap.newHashMap(termCount);
+            List<String> loadedTerms = new ArrayList<>(termCount);
+            List<PostingList> loadedPostings = new ArrayList<>(termCount);
+            int[] termsPerDoc = new int[loadedPostIds.length];
+
+            for (int termId = 0; termId < termCount; termId++) {
+                String term = readString(buffer);
+                int size = readVarInt(buffer);
+                PostingList list = new PostingList(size);
+                int doc = 0;
+                for (int i = 0; i < size; i++) {
+                    doc += readVarInt(buffer);
+                    list.append(doc, readVarInt(buffer));
+                    termsPerDoc[doc]++;
+                }
+
+                loadedTermIds.put(term, termId);
+                loadedTerms.add(term);
+                loadedPostings.add(list);
+            }
+
+            int[][] loadedDocTerms = new int[loadedPostIds.length][];
+            for (int ordinal = 0; ordinal < docCount; ordinal++) {
+                loadedDocTerms[ordinal] = new int[termsPerDoc[ordinal]];
+                termsPerDoc[ordinal] = 0;
+            }
+            for (int termId = 0; termId < termCount; termId++) {
+                PostingList list = loadedPostings.get(termId);
+                for (int i = 0; i < list.size(); i++) {
+                    int doc = list.doc(i);
+                    loadedDocTerms[doc][termsPerDoc[doc]++] = termId;
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                termIds.clear();
+                termIds.putAll(loadedTermIds);
+                terms.clear();
+                terms.addAll(loadedTerms);
+                postings.clear();
+                postings.addAll(loadedPostings);
+                ordinals.clear();
+                ordinals.putAll(loadedOrdinals);
+                postIds = loadedPostIds;
+                userIds = loadedUserIds;
+                lengths = loadedLengths;
+                versions = loadedVersions;
+                docTerms = loadedDocTerms;
+                nextOrdinal = docCount;
+                liveDocs = docCount;
+                totalLength = loadedTotalLength;
+                caughtUpTo = loadedCaughtUpTo;
+                dirty = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void removeOrdinal(int ordinal) {
+        for (int termId : docTerms[ordinal]) {
+            postings.get(termId).remove(ordinal);
+        }
+
+        totalLength -= lengths[ordinal];
+        liveDocs--;
+        postIds[ordinal] = null;
+        userIds[ordinal] = null;
+        lengths[ordinal] = 0;
+        versions[ordinal] = 0;
+        docTerms[ordinal] = null;
+    }
+
+    /**
+     * Renumbers the live documents from zero once dead ordinals outnumber them, and drops
+     * the terms no live document uses any more. The ordinal remapping keeps the order, so
+     * posting lists stay sorted.
+     */
+    private void compactIfSparse() {
+        int dead = nextOrdinal - liveDocs;
+        if (dead < MIN_DEAD_ORDINALS || dead < liveDocs) return;
+
+        int[] remap = new int[nextOrdinal];
+        int capacity = Math.max(1024, liveDocs + (liveDocs >> 1));
+        String[] compactPostIds = new String[capacity];
+        String[] compactUserIds = new String[capacity];
+        int[] compactLengths = new int[capacity];
+        long[] compactVersions = new long[capacity];
+        int[][] compactDocTerms = new int[capacity][];
+        int live = 0;
+        for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+            if (postIds[ordinal] == null) {
+                remap[ordinal] = -1;
+                continue;
+            }
+            remap[ordinal] = live;
+            compactPostIds[live] = postIds[ordinal];
+            compactUserIds[live] = userIds[ordinal];
+            compactLengths[live] = lengths[ordinal];
+            compactVersions[live] = versions[ordinal];
+            compactDocTerms[live] = docTerms[ordinal];
+            ordinals.put(postIds[ordinal], live);
+            live++;
+        }
+
+        int[] termRemap = new int[postings.size()];
+        List<String> compactTerms = new ArrayList<>();
+        List<PostingList> compactPostings = new ArrayList<>();
+        termIds.clear();
+        for (int termId = 0; termId < postings.size(); termId++) {
+            PostingList list = postings.get(termId);
+            if (list.size() == 0) {
+                termRemap[termId] = -1;
+                continue;
+            }
+            termRemap[termId] = compactTerms.size();
+            termIds.put(terms.get(termId), compactTerms.size());
+            compactTerms.add(terms.get(termId));
+            compactPostings.add(list.remap(remap));
+        }
+        for (int ordinal = 0; ordinal < live; ordinal++) {
+            int[] ids = compactDocTerms[ordinal];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = termRemap[ids[i]];
+            }
+        }
+
+        terms.clear();
+        terms.addAll(compactTerms);
+        postings.clear();
+        postings.addAll(compactPostings);
+        postIds = compactPostIds;
+        userIds = compactUserIds;
+        lengths = compactLengths;
+        versions = compactVersions;
+        docTerms = compactDocTerms;
+        nextOrdinal = live;
+        log.debug("Post search index compacted, {} dead ordinals reclaimed", dead);
+    }
+
+    private int termId(String term) {
+        Integer id = termIds.get(term);
+        if (id != null) return id;
+
+        int newId = terms.size();
+        termIds.put(term, newId);
+        terms.add(term);
+        postings.add(new PostingList());
+        return newId;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= postIds.length) return;
+
+        int newCapacity = Math.max(capacity, postIds.length + (postIds.length >> 1));
+        postIds = Arrays.copyOf(postIds, newCapacity);
+        userIds = Arrays.copyOf(userIds, newCapacity);
+        lengths = Arrays.copyOf(lengths, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        docTerms = Arrays.copyOf(docTerms, newCapacity);
+    }
+
+    static void tokenize(String text, int weight, Map<String, Integer> frequencies) {
+        forEachToken(text, token -> frequencies.merge(token, weight, Integer::sum));
+    }
+
+    static void tokenize(String text, Set<String> tokens) {
+        forEachToken(text, tokens::add);
+    }
+
+    private static void forEachToken(String text, Consumer<String> consumer) {
+        if (text == null || text.isEmpty()) return;
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start <= MAX_TERM_LENGTH) {
+                    consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
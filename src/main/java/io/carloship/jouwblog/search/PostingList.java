@@ -0,0 +1,112 @@
+package io.carloship.jouwblog.search;
+
+import java.util.Arrays;
+
+/**
+ * Primitive posting list of a single term: document ordinals sorted ascending with
+ * their term frequencies kept in a parallel array.
+ * <p>
+ * Removing a posting only zeroes its frequency, so the slot stays in place as a tombstone
+ * and the list stays sorted for the binary search. Readers iterate over {@link #length()}
+ * slots and skip those with a frequency of zero. Once tombstones make up half of the slots
+ * the list is compacted, so a removal costs O(log df) amortized instead of shifting the
+ * tail of the list every time.
+ */
+final class PostingList {
+
+    private int[] docs;
+    private int[] freqs;
+    private int length;
+    private int removed;
+
+    PostingList() {
+        this(4);
+    }
+
+    PostingList(int capacity) {
+        this.docs = new int[Math.max(capacity, 1)];
+        this.freqs = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends a posting. Ordinals are handed out monotonically by the index, so the
+     * list stays sorted without any shifting.
+     */
+    void append(int doc, int freq) {
+        if (length == docs.length) {
+            int capacity = docs.length + (docs.length >> 1) + 1;
+            docs = Arrays.copyOf(docs, capacity);
+            freqs = Arrays.copyOf(freqs, capacity);
+        }
+
+        docs[length] = doc;
+        freqs[length] = freq;
+        length++;
+    }
+
+    boolean remove(int doc) {
+        int index = Arrays.binarySearch(docs, 0, length, doc);
+        if (index < 0 || freqs[index] == 0) {
+            return false;
+        }
+
+        freqs[index] = 0;
+        removed++;
+        if (removed > length >> 1) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy without tombstones whose ordinals are mapped through {@code remap}, which
+     * must keep their order
+     */
+    PostingList remap(int[] remap) {
+        PostingList copy = new PostingList(size());
+        for (int i = 0; i < length; i++) {
+            if (freqs[i] != 0) {
+                copy.append(remap[docs[i]], freqs[i]);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return the number of live postings, the document frequency of the term
+     */
+    int size() {
+        return length - removed;
+    }
+
+    /**
+     * @return the number of slots including tombstones
+     */
+    int length() {
+        return length;
+    }
+
+    int doc(int index) {
+        return docs[index];
+    }
+
+    /**
+     * @return the term frequency at {@code index}, zero for a removed posting
+     */
+    int freq(int index) {
+        return freqs[index];
+    }
+
+    private void compact() {
+        int live = 0;
+        for (int i = 0; i < length; i++) {
+            if (freqs[i] != 0) {
+                docs[live] = docs[i];
+                freqs[live] = freqs[i];
+                live++;
+            }
+        }
+        length = live;
+        removed = 0;
+    }
+}
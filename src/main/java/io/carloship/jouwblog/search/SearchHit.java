@@ -0,0 +1,7 @@
+package io.carloship.jouwblog.search;
+
+/**
+ * Ranked result of a {@link PostSearchIndex} query.
+ */
+public record SearchHit(String postId, String userId, float score) {
+}
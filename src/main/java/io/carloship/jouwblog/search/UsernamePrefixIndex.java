@@ -0,0 +1,147 @@
+package io.carloship.jouwblog.search;
+
+import io.carloship.jouwblog.repository.UserRepository;
+import io.carloship.jouwblog.response.User;
+import io.carloship.jouwblog.response.UserSuggestion;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory prefix index over usernames backing mention autocomplete.
+ * <p>
+ * Entries are kept in a sorted skip list keyed by {@code lowercase(username) + '\0' + userId},
+ * so a prefix query is a single range scan that stops after {@code limit} entries and two
+ * users whose names only differ in case do not collide.
+ * <p>
+ * The startup rebuild builds a new skip list from the sorted scan in one pass and swaps it
+ * in. Writes made while the scan runs are recorded and win over what the scan returned, so
+ * a user created, renamed or deleted meanwhile is not lost or brought back.
+ */
+@Slf4j
+@Singleton
+public class UsernamePrefixIndex {
+
+    private static final char SEPARATOR = '\0';
+
+    private volatile ConcurrentSkipListMap<String, UserSuggestion> entries = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, String> keysByUserId = new ConcurrentHashMap<>();
+
+    // Writes made during the startup rebuild by user id, null for a removal. Guarded by this.
+    private Map<String, UserSuggestion> rebuilding;
+
+    @Value("${jouwblog.autocomplete.enabled:true}")
+    protected boolean enabled = true;
+
+    @Inject
+    protected UserRepository repository;
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        if (!enabled) return;
+
+        synchronized (this) {
+            rebuilding = new HashMap<>();
+        }
+
+        long start = System.nanoTime();
+        repository.findAll().thenAccept(users -> {
+            var sorted = new TreeMap<String, UserSuggestion>();
+            for (User user : users) {
+                if (user.getId() == null || user.getUsername() == null) continue;
+                sorted.put(buildKey(user.getUsername(), user.getId()), new UserSuggestion(user.getId(), user.getUsername()));
+            }
+
+            synchronized (this) {
+                Map<String, UserSuggestion> writes = rebuilding;
+                rebuilding = null;
+                sorted.values().removeIf(suggestion -> writes.containsKey(suggestion.getId()));
+                for (UserSuggestion suggestion : writes.values()) {
+                    if (suggestion != null) {
+                        sorted.put(buildKey(suggestion.getUsername(), suggestion.getId()), suggestion);
+                    }
+                }
+
+                // Built from a sorted map, the skip list links its nodes in one linear pass.
+                var rebuilt = new ConcurrentSkipListMap<>(sorted);
+                keysByUserId.clear();
+                sorted.forEach((key, suggestion) -> keysByUserId.put(suggestion.getId(), key));
+                entries = rebuilt;
+            }
+
+            log.info("Username prefix index rebuilt with {} users in {} ms",
+                    entries.size(), (System.nanoTime() - start) / 1_000_000);
+        }).exceptionally(ex -> {
+            synchronized (this) {
+                rebuilding = null;
+            }
+            log.error("Error while rebuilding username prefix index from mongo: {}", ex.getMessage(), ex);
+            return null;
+        });
+    }
+
+    public synchronized void put(@NonNull User user) {
+        if (!enabled || user.getId() == null || user.getUsername() == null) return;
+
+        String key = buildKey(user.getUsername(), user.getId());
+        var suggestion = new UserSuggestion(user.getId(), user.getUsername());
+        if (rebuilding != null) {
+            rebuilding.put(user.getId(), suggestion);
+        }
+
+        String previous = keysByUserId.put(user.getId(), key);
+        if (previous != null && !previous.equals(key)) {
+            entries.remove(previous);
+        }
+
+        entries.put(key, suggestion);
+    }
+
+    public synchronized void remove(@NonNull String userId) {
+        if (!enabled) return;
+
+        if (rebuilding != null) {
+            rebuilding.put(userId, null);
+        }
+
+        String key = keysByUserId.remove(userId);
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    @NonNull
+    public List<UserSuggestion> suggest(@NonNull String prefix, int limit) {
+        if (!enabled || prefix.isBlank() || limit <= 0) return List.of();
+
+        String from = prefix.toLowerCase(Locale.ROOT);
+        List<UserSuggestion> result = new ArrayList<>(limit);
+        for (var entry : entries.tailMap(from, true).entrySet()) {
+            if (!entry.getKey().startsWith(from) || result.size() == limit) break;
+            result.add(entry.getValue());
+        }
+
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String buildKey(String username, String userId) {
+        return username.toLowerCase(Locale.ROOT) + SEPARATOR + userId;
+    }
+}
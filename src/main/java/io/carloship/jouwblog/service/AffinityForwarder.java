@@ -0,0 +1,59 @@
+package io.carloship.jouwblog.service;
+
+import io.carloship.jouwblog.cache.OwnerAffinity;
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.User;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.NonNull;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends single-entity L1 misses to the node owning the user, see {@link OwnerAffinity}. The
+ * owner answers from its L1 or reads through its own tiers without forwarding again. Callers
+ * fall back to a local read when the owner fails or is slower than {@code forward-timeout}.
+ * Requests carry the internal token the owner checks, see {@code InternalEndpointFilter}.
+ */
+@Singleton
+public class AffinityForwarder {
+
+    public static final String PATH = "/internal/affinity";
+    // Same as InternalEndpointFilter.HEADER, which lives in the controller package.
+    private static final String TOKEN_HEADER = "X-Internal-Token";
+
+    @Value("${jouwblog.affinity.forward-timeout:100ms}")
+    protected Duration timeout;
+
+    @Value("${jouwblog.internal.token:}")
+    protected String token;
+
+    @Inject
+    @Client("/")
+    protected HttpClient httpClient;
+
+    public CompletableFuture<Post> findPost(@NonNull String ownerUrl, @NonNull String userId, @NonNull String postId) {
+        return get(ownerUrl + PATH + "/posts/" + userId + "/" + postId, Post.class);
+    }
+
+    public CompletableFuture<User> findUser(@NonNull String ownerUrl, @NonNull String userId) {
+        return get(ownerUrl + PATH + "/users/" + userId, User.class);
+    }
+
+    private <T> CompletableFuture<T> get(String url, Class<T> type) {
+        // Absolute urls bypass the client's own base url.
+        return Mono.from(httpClient.retrieve(HttpRequest.GET(url).header(TOKEN_HEADER, token), type))
+                .timeout(timeout)
+                .onErrorResume(HttpClientResponseException.class,
+                        ex -> ex.getStatus() == HttpStatus.NOT_FOUND ? Mono.empty() : Mono.error(ex))
+                .toFuture();
+    }
+}
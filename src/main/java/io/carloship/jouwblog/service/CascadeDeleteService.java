@@ -0,0 +1,258 @@
+package io.carloship.jouwblog.service;
+
+import io.carloship.jouwblog.cache.ExistenceFilter;
+import io.carloship.jouwblog.cache.PostCache;
+import io.carloship.jouwblog.cache.ResponseBytesCache;
+import io.carloship.jouwblog.common.AdaptiveLimiter;
+import io.carloship.jouwblog.common.ConcurrencyLimits;
+import io.carloship.jouwblog.common.RedisConnection;
+import io.carloship.jouwblog.repository.CommentRedisRepository;
+import io.carloship.jouwblog.repository.CommentRepository;
+import io.carloship.jouwblog.repository.MongoReadRouting;
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.carloship.jouwblog.repository.PostRepository;
+import io.carloship.jouwblog.repository.UserRepository;
+import io.carloship.jouwblog.response.Comment;
+import io.carloship.jouwblog.search.PostSearchIndex;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Removes everything a deleted user leaves behind: their posts, the comments on those posts
+ * and the matching Redis hashes and sets.
+ * <p>
+ * The user id is added to a pending set in Redis before the user itself is deleted, so a job
+ * cut short by a crash or a redeploy, or one whose node died right after the delete, is
+ * picked up again by the periodic retry of any node. A job only runs once the user is gone
+ * from Mongo, so an id left pending by a failed user delete never touches live posts. A run
+ * does at most {@code max-batches} batches and stops on a batch that deleted nothing; the
+ * retry carries on from there. The job works in batches:
+ * one page of post ids, one bulk delete of their comments and of the posts in Mongo, and
+ * one UNLINK per batch of Redis keys, which frees memory off the Redis main thread. Between
+ * batches it pauses, and pauses longer while live traffic is using most of the Mongo
+ * concurrency limit. Every step is idempotent, so running a job twice is harmless.
+ */
+@Slf4j
+@Singleton
+public class CascadeDeleteService {
+
+    private static final String PENDING_KEY = "cascade_delete:pending";
+
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    @Value("${jouwblog.cascade-delete.batch-size:200}")
+    protected int batchSize;
+
+    @Value("${jouwblog.cascade-delete.pause:50ms}")
+    protected Duration pause;
+
+    @Value("${jouwblog.cascade-delete.max-batches:10000}")
+    protected int maxBatches;
+
+    @Inject
+    protected PostRepository postRepository;
+
+    @Inject
+    protected CommentRepository commentRepository;
+
+    @Inject
+    protected UserRepository userRepository;
+
+    @Inject
+    protected MongoReadRouting readRouting;
+
+    @Inject
+    protected PostRedisRepository postRedisRepository;
+
+    @Inject
+    protected CommentRedisRepository commentRedisRepository;
+
+    @Inject
+    @Named(RedisConnection.BULK)
+    protected RedisClusterAsyncCommands<String, String> asyncCommands;
+
+    @Inject
+    protected PostCache postCache;
+
+    @Inject
+    protected PostSearchIndex searchIndex;
+
+    @Inject
+    protected ExistenceFilter existence;
+
+    @Inject
+    protected ResponseBytesCache responseBytes;
+
+    @Inject
+    @Named(ConcurrencyLimits.MONGO)
+    protected AdaptiveLimiter mongoLimiter;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        resumePending();
+    }
+
+    /**
+     * Starts every pending job this node is not running yet. Jobs are idempotent, so two
+     * nodes picking up the same one is harmless.
+     */
+    @Scheduled(fixedDelay = "${jouwblog.cascade-delete.retry-interval:5m}", initialDelay = "${jouwblog.cascade-delete.retry-interval:5m}")
+    void resumePending() {
+        asyncCommands.smembers(PENDING_KEY).thenAccept(userIds -> {
+            userIds.removeAll(running);
+            if (userIds.isEmpty()) return;
+
+            log.info("Resuming {} pending cascade deletes", userIds.size());
+            userIds.forEach(this::start);
+        }).exceptionally(ex -> {
+            log.error("Error while reading pending cascade deletes: {}", ex.getMessage(), ex);
+            return null;
+        });
+    }
+
+    /**
+     * Records the job before the user is deleted, so it is not lost if this node dies right
+     * after the delete. Start it with {@link #start} once the user is gone, or drop it with
+     * {@link #cancel} if the delete failed.
+     */
+    public CompletableFuture<Void> markPending(@NonNull String userId) {
+        return readRouting.recordWrite(userId)
+                .thenCompose(_ -> asyncCommands.sadd(PENDING_KEY, userId))
+                .thenAccept(_ -> {});
+    }
+
+    public CompletableFuture<Void> cancel(@NonNull String userId) {
+        return asyncCommands.srem(PENDING_KEY, userId)
+                .thenAccept(_ -> {})
+                .toCompletableFuture();
+    }
+
+    /**
+     * Starts the job in the background unless this node already runs it.
+     */
+    public void start(@NonNull String userId) {
+        if (!running.add(userId)) return;
+
+        CompletableFuture.runAsync(() -> run(userId), ioExecutor).whenComplete((_, ex) -> {
+            running.remove(userId);
+            if (ex != null) {
+                log.error("Cascade delete of user {} failed, it will be retried: {}", userId, ex.getMessage(), ex);
+            }
+        });
+    }
+
+    private void run(String userId) {
+        if (userRepository.existsById(userId).join()) {
+            log.debug("Cascade delete of user {} waits until the user is deleted", userId);
+            return;
+        }
+
+        long start = System.nanoTime();
+        long posts = 0;
+        long comments = 0;
+        int batches = 0;
+
+        // Each pass deletes the page it read, so the first page is always the next one.
+        List<String> postIds;
+        while (!(postIds = postRepository.queryPostIdByUserId(userId, Pageable.from(0, batchSize))).isEmpty()) {
+            if (++batches > maxBatches) {
+                log.info("Cascade delete of user {} paused after {} batches, the retry continues it", userId, maxBatches);
+                return;
+            }
+            comments += deleteComments(postIds);
+
+            long deleted = postRepository.deleteByPostIdInList(postIds).join();
+            if (deleted == 0) {
+                throw new IllegalStateException("Deleting a page of " + postIds.size() + " posts removed none");
+            }
+            postRedisRepository.unlinkPosts(userId, postIds).join();
+            // A post deleted concurrently already left the existence filter, and the count does
+            // not say which one that was, so a short page leaves its fingerprints for the
+            // next rebuild instead of risking removing another post's.
+            boolean deletedAll = deleted == postIds.size();
+            for (String postId : postIds) {
+                postCache.removePost(postId);
+                searchIndex.remove(postId);
+                if (deletedAll) existence.removePost(postId);
+                responseBytes.invalidatePost(postId);
+            }
+
+            posts += postIds.size();
+            throttle();
+        }
+
+        // Redis may still hold posts Mongo no longer knows about.
+        var cursor = ScanCursor.INITIAL;
+        do {
+            var page = postRedisRepository.scanUserPostIds(userId, cursor, batchSize).join();
+            postRedisRepository.unlinkPosts(userId, page.getValues()).join();
+            cursor = page;
+            throttle();
+        } while (!cursor.isFinished());
+
+        postRedisRepository.unlinkUserPosts(userId).join();
+        postCache.invalidateUser(userId);
+        asyncCommands.srem(PENDING_KEY, userId).toCompletableFuture().join();
+
+        log.info("Cascade delete of user {} removed {} posts and {} comments in {} ms",
+                userId, posts, comments, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private long deleteComments(List<String> postIds) {
+        long deleted = 0;
+        String previousFirst = null;
+        List<Comment> comments;
+        while (!(comments = commentRepository.findByPostIdInList(postIds, Pageable.from(0, batchSize))).isEmpty()) {
+            String first = comments.getFirst().getCommentId();
+            if (first != null && first.equals(previousFirst)) {
+                throw new IllegalStateException("Deleting a page of " + comments.size() + " comments removed none");
+            }
+            previousFirst = first;
+
+            commentRedisRepository.unlinkComments(comments, List.of()).join();
+            commentRepository.deleteAll(comments);
+            deleted += comments.size();
+            throttle();
+        }
+
+        commentRedisRepository.unlinkComments(List.of(), postIds).join();
+        return deleted;
+    }
+
+    private void throttle() {
+        long millis = pause.toMillis();
+        if (mongoLimiter.inFlight() * 2 > mongoLimiter.limit()) {
+            // Live traffic is using most of Mongo's budget, back off harder.
+            millis *= 10;
+        }
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cascade delete interrupted", ex);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package io.carloship.jouwblog.service;
+
+import io.carloship.jouwblog.common.AdaptiveLimiter;
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.common.ConcurrencyLimits;
+import io.carloship.jouwblog.repository.CommentRedisRepository;
+import io.carloship.jouwblog.repository.CommentRepository;
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.carloship.jouwblog.repository.PostRepository;
+import io.carloship.jouwblog.response.Comment;
+import io.carloship.jouwblog.response.Post;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Low-priority upkeep of the {@code user_posts:} and {@code post_comments:} membership sets.
+ * <p>
+ * The sets and the hashes they point to expire independently, so a set often names posts or
+ * comments that are gone and every read of it pays for HGETALLs that come back empty. Each
+ * pass resumes an incremental SCAN over the sets, walks every set with SSCAN and removes the
+ * dangling members with a script that checks and removes each one atomically, so a member
+ * whose hash is written while the pass runs is kept. A set that ends up smaller
+ * than the matching Mongo count is rebuilt from Mongo when it is hot and small enough, and
+ * otherwise dropped so reads fall through to Mongo instead of returning a partial list.
+ * <p>
+ * A pass stops early whenever live traffic is using more than half of the Redis or Mongo
+ * concurrency limit, and the next pass picks up where it stopped. The Mongo counts go through
+ * the Mongo limiter, and a set whose count is shed is left for the next pass.
+ */
+@Slf4j
+@Singleton
+public class MembershipMaintenanceService implements MeterBinder {
+
+    private static final String USER_POSTS = "user_posts";
+    private static final String POST_COMMENTS = "post_comments";
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder danglingPosts = new LongAdder();
+    private final LongAdder danglingComments = new LongAdder();
+    private final LongAdder rebuiltPostSets = new LongAdder();
+    private final LongAdder rebuiltCommentSets = new LongAdder();
+    private final LongAdder droppedPostSets = new LongAdder();
+    private final LongAdder droppedCommentSets = new LongAdder();
+
+    private ScanCursor postSetsCursor = ScanCursor.INITIAL;
+    private ScanCursor commentSetsCursor = ScanCursor.INITIAL;
+
+    @Value("${jouwblog.membership-maintenance.enabled:true}")
+    protected boolean enabled;
+
+    @Value("${jouwblog.membership-maintenance.sets-per-pass:500}")
+    protected int setsPerPass;
+
+    @Value("${jouwblog.membership-maintenance.scan-count:100}")
+    protected int scanCount;
+
+    @Value("${jouwblog.membership-maintenance.max-rebuild:5000}")
+    protected int maxRebuild;
+
+    @Value("${jouwblog.membership-maintenance.pause:20ms}")
+    protected Duration pause;
+
+    // The primary: a count from a lagging secondary would rebuild or drop a set for nothing.
+    @Inject
+    protected PostRepository postRepository;
+
+    @Inject
+    protected CommentRepository commentRepository;
+
+    @Inject
+    protected PostRedisRepository postRedisRepository;
+
+    @Inject
+    protected CommentRedisRepository commentRedisRepository;
+
+    @Inject
+    @Named(ConcurrencyLimits.REDIS)
+    protected AdaptiveLimiter redisLimiter;
+
+    @Inject
+    @Named(ConcurrencyLimits.MONGO)
+    protected AdaptiveLimiter mongoLimiter;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    @Scheduled(fixedDelay = "${jouwblog.membership-maintenance.interval:1m}", initialDelay = "${jouwblog.membership-maintenance.interval:1m}")
+    void schedulePass() {
+        if (!enabled || !running.compareAndSet(false, true)) return;
+
+        CompletableFuture.runAsync(this::pass, ioExecutor).whenComplete((_, ex) -> {
+            running.set(false);
+            if (ex != null) {
+                log.error("Error during membership set maintenance: {}", ex.getMessage(), ex);
+            }
+        });
+    }
+
+    void pass() {
+        long start = System.nanoTime();
+        long removedBefore = danglingPosts.sum() + danglingComments.sum();
+
+        int budget = setsPerPass;
+        while (budget > 0 && !busy()) {
+            KeyScanCursor<String> page = postRedisRepository.scanUserPostSets(postSetsCursor, scanCount).join();
+            for (String userId : page.getKeys()) {
+                maintainUserPosts(userId);
+                budget--;
+            }
+            postSetsCursor = page.isFinished() ? ScanCursor.INITIAL : page;
+            if (page.isFinished()) break;
+            sleep();
+        }
+
+        budget = setsPerPass;
+        while (budget > 0 && !busy()) {
+            KeyScanCursor<String> page = commentRedisRepository.scanPostCommentSets(commentSetsCursor, scanCount).join();
+            for (String postId : page.getKeys()) {
+                maintainPostComments(postId);
+                budget--;
+            }
+            commentSetsCursor = page.isFinished() ? ScanCursor.INITIAL : page;
+            if (page.isFinished()) break;
+            sleep();
+        }
+
+        long removed = danglingPosts.sum() + danglingComments.sum() - removedBefore;
+        if (removed > 0) {
+            log.info("Membership maintenance removed {} dangling set members in {} ms",
+                    removed, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private void maintainUserPosts(String userId) {
+        var cursor = ScanCursor.INITIAL;
+        do {
+            ValueScanCursor<String> page = postRedisRepository.scanUserPostIds(userId, cursor, scanCount).join();
+            danglingPosts.add(postRedisRepository.removeDanglingPostIds(userId, page.getValues()).join());
+            cursor = page;
+        } while (!cursor.isFinished());
+
+        // An emptied set is gone already, reads of it fall through to Mongo.
+        long cached = postRedisRepository.countUserPosts(userId).join();
+        if (cached == 0) return;
+
+        Long expected = count(() -> postRepository.countByUserId(userId));
+        if (expected == null || cached >= expected) return;
+
+        if (expected <= maxRebuild && postRedisRepository.isUserPostsHot(userId)) {
+            try (Stream<Post> posts = postRepository.queryByUserIdOrderByPostTimestampDesc(userId)) {
+                inChunks(posts, chunk -> postRedisRepository.savePosts(chunk).join());
+            }
+            rebuiltPostSets.increment();
+        } else {
+            postRedisRepository.unlinkUserPosts(userId).join();
+            droppedPostSets.increment();
+        }
+    }
+
+    private void maintainPostComments(String postId) {
+        var cursor = ScanCursor.INITIAL;
+        do {
+            ValueScanCursor<String> page = commentRedisRepository.scanCommentIds(postId, cursor, scanCount).join();
+            danglingComments.add(commentRedisRepository.removeDanglingCommentIds(postId, page.getValues()).join());
+            cursor = page;
+        } while (!cursor.isFinished());
+
+        // An emptied set is gone already, reads of it fall through to Mongo.
+        long cached = commentRedisRepository.countComments(postId).join();
+        if (cached == 0) return;
+
+        Long expected = count(() -> commentRepository.countByPostId(postId));
+        if (expected == null || cached >= expected) return;
+
+        if (expected <= maxRebuild && commentRedisRepository.isPostCommentsHot(postId)) {
+            Page<Comment> page = commentRepository.findByPostId(postId, Pageable.from(0, scanCount));
+            while (true) {
+                commentRedisRepository.saveComments(page.getContent()).join();
+                if (!page.hasNext()) break;
+                page = commentRepository.findByPostId(postId, page.nextPageable());
+            }
+            rebuiltCommentSets.increment();
+        } else {
+            commentRedisRepository.unlinkPostComments(postId).join();
+            droppedCommentSets.increment();
+        }
+    }
+
+    private <T> void inChunks(Stream<T> items, Function<List<T>, ?> consumer) {
+        List<T> chunk = new ArrayList<>(scanCount);
+        items.forEach(item -> {
+            chunk.add(item);
+            if (chunk.size() == scanCount) {
+                consumer.apply(chunk);
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty()) consumer.apply(chunk);
+    }
+
+    /**
+     * Runs a Mongo count under the Mongo limiter.
+     *
+     * @return the count, or {@code null} when the limiter shed it
+     */
+    private Long count(LongSupplier count) {
+        try {
+            return mongoLimiter.submit(() -> CompletableFuture.completedFuture(count.getAsLong())).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof BackendOverloadedException) return null;
+            throw ex;
+        }
+    }
+
+    private boolean busy() {
+        return redisLimiter.inFlight() * 2 > redisLimiter.limit()
+                || mongoLimiter.inFlight() * 2 > mongoLimiter.limit();
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(pause.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Membership maintenance interrupted", ex);
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        bind(registry, USER_POSTS, danglingPosts, rebuiltPostSets, droppedPostSets);
+        bind(registry, POST_COMMENTS, danglingComments, rebuiltCommentSets, droppedCommentSets);
+    }
+
+    private static void bind(MeterRegistry registry, String set, LongAdder dangling, LongAdder rebuilt, LongAdder dropped) {
+        FunctionCounter.builder("jouwblog.membership.dangling.removed", dangling, LongAdder::sum)
+                .tag("set", set)
+                .description("Dangling set members removed, each one an empty HGETALL saved on every read of its set")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.membership.rebuilt", rebuilt, LongAdder::sum)
+                .tag("set", set)
+                .description("Incomplete hot sets rebuilt from Mongo")
+                .register(registry);
+        FunctionCounter.builder("jouwblog.membership.dropped", dropped, LongAdder::sum)
+                .tag("set", set)
+                .description("Incomplete cold sets dropped so reads fall through to Mongo")
+                .register(registry);
+    }
+}
@@ -1,19 +1,48 @@
 package io.carloship.jouwblog.service;
 
+import io.carloship.jouwblog.cache.ExistenceFilter;
+import io.carloship.jouwblog.cache.OwnerAffinity;
+import io.carloship.jouwblog.cache.PeerInvalidation;
+import io.carloship.jouwblog.cache.PostBodyCompression;
 import io.carloship.jouwblog.cache.PostCache;
+import io.carloship.jouwblog.cache.ResponseBytesCache;
+import io.carloship.jouwblog.common.AdaptiveLimiter;
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.common.ConcurrencyLimits;
+import io.carloship.jouwblog.common.TieredReads;
 import io.carloship.jouwblog.common.Utils;
+import io.carloship.jouwblog.journal.WriteJournal;
+import io.carloship.jouwblog.repository.EntityPatchRepository;
+import io.carloship.jouwblog.repository.MongoReadRouting;
 import io.carloship.jouwblog.repository.PostRedisRepository;
 import io.carloship.jouwblog.repository.PostRepository;
 import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.PostPatch;
+import io.carloship.jouwblog.response.PostReference;
+import io.carloship.jouwblog.response.PostView;
+import io.carloship.jouwblog.search.PostSearchIndex;
 import io.micronaut.data.model.Pageable;
-import io.micronaut.scheduling.annotation.Async;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.annotation.PostConstruct;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.jspecify.annotations.NonNull;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Singleton
@@ -25,121 +54,470 @@ public class PostService {
     @Inject
     protected PostRedisRepository redisRepository;
 
+    @Inject
+    protected EntityPatchRepository patchRepository;
+
+    @Inject
+    protected MongoReadRouting readRouting;
+
     @Inject
     protected PostCache postCache;
 
-    @Async
+    @Inject
+    protected PostBodyCompression compression;
+
+    @Inject
+    protected PostSearchIndex searchIndex;
+
+    @Inject
+    protected ExistenceFilter existence;
+
+    @Inject
+    protected UserService userService;
+
+    @Inject
+    protected ResponseBytesCache responseBytes;
+
+    @Inject
+    protected PeerInvalidation peers;
+
+    @Inject
+    protected TieredReads tieredReads;
+
+    @Inject
+    protected OwnerAffinity affinity;
+
+    @Inject
+    protected AffinityForwarder forwarder;
+
+    @Inject
+    protected WriteJournal journal;
+
+    @Inject
+    @Named(TaskExecutors.IO)
+    protected ExecutorService ioExecutor;
+
+    @Inject
+    @Named(ConcurrencyLimits.REDIS)
+    protected AdaptiveLimiter redisLimiter;
+
+    @Inject
+    @Named(ConcurrencyLimits.MONGO)
+    protected AdaptiveLimiter mongoLimiter;
+
+    private Scheduler cursorScheduler;
+
+    @PostConstruct
+    void init(){
+        this.cursorScheduler = Schedulers.fromExecutorService(ioExecutor);
+    }
+
     public CompletableFuture<Post> findPost(@NonNull String postId, @NonNull String userId){
+        return findPost(postId, userId, true);
+    }
+
+    /**
+     * @param forward whether an L1 miss for a user owned by another node may be sent to that
+     *                node, see {@link OwnerAffinity}
+     */
+    public CompletableFuture<Post> findPost(@NonNull String postId, @NonNull String userId, boolean forward){
         var cached = postCache.getPost(postId);
         if  (cached != null) { return CompletableFuture.completedFuture(cached); }
+        if (!existence.mightContainPost(postId)) { return CompletableFuture.completedFuture(null); }
 
-        return redisRepository.findPost(userId, postId).thenCompose(redisPost -> {
-            if (redisPost != null) {
-                postCache.addPost(redisPost);
-                return CompletableFuture.completedFuture(redisPost);
-            }
+        String owner = forward ? affinity.forwardTarget(userId) : null;
+        if (owner != null) {
+            return forwarder.findPost(owner, userId, postId).thenApply(post -> {
+                if (post != null) {
+                    postCache.addPost(post);
+                }
+                return post;
+            }).exceptionallyCompose(ex -> {
+                log.debug("Reading post {} locally, owner {} failed: {}", postId, owner, ex.getMessage());
+                return findPost(postId, userId, false);
+            });
+        }
 
-            return repository.findByUserId(userId, postId).thenApply(mongoPost -> {
-                if (mongoPost != null){
-                    postCache.addPost(mongoPost);
-                    redisRepository.savePost(mongoPost);
+        return tieredReads.read(
+                () -> redisLimiter.submit(() -> redisRepository.findPost(userId, postId)).thenApply(redisPost -> {
+                    if (redisPost != null) {
+                        postCache.addPost(redisPost);
+                    }
+                    return redisPost;
+                }),
+                () -> mongoLimiter.submit(() -> repository.findByUserId(userId, postId)).thenApply(mongoPost -> {
+                    if (mongoPost != null){
+                        Post stored = compression.compact(mongoPost);
+                        postCache.addPost(stored);
+                        redisLimiter.submit(() -> redisRepository.savePost(stored));
+                    }
                     return mongoPost;
-                }
+                })
+        ).exceptionally(ex -> {
+            var stale = tieredReads.serveStale() ? postCache.getStalePost(postId) : null;
+            if (stale != null) {
+                log.warn("Serving stale post {} from user {}: {}", postId, userId, ex.getMessage());
+                tieredReads.revalidate("post:" + postId, () -> findPost(postId, userId));
+                return stale;
+            }
 
-                return null;
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while find post {} from user {}: {}", postId, userId, ex.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Resolves many posts with one lookup per tier: a single pass over L1, one pipelined
+     * Redis round trip for the L1 misses and one {@code $in} query for the Redis misses.
+     * Everything found in a lower tier is written back up as a batch. Posts come back in
+     * request order, without duplicates and without the ids that do not exist.
+     */
+    public CompletableFuture<List<Post>> findPosts(@NonNull List<PostReference> references){
+        Map<String, PostReference> requested = new LinkedHashMap<>();
+        for (PostReference reference : references) {
+            if (reference.getPostId() != null) { requested.putIfAbsent(reference.getPostId(), reference); }
+        }
+
+        Map<String, Post> found = new HashMap<>(postCache.getPosts(requested.keySet()));
+        List<PostReference> cacheMisses = requested.values().stream()
+                .filter(reference -> !found.containsKey(reference.getPostId()))
+                .filter(reference -> existence.mightContainPost(reference.getPostId()))
+                .toList();
+
+        if (cacheMisses.isEmpty()) {
+            return CompletableFuture.completedFuture(inRequestOrder(requested.keySet(), found));
+        }
+
+        // A Redis failure reaches the limiter first and is read as a miss here.
+        return redisLimiter.submit(() -> redisRepository.findPosts(cacheMisses)).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            return List.of();
+        }).thenCompose(redisPosts -> {
+            postCache.addPosts(redisPosts);
+            redisPosts.forEach(post -> found.put(post.getPostId(), post));
+
+            List<String> redisMisses = cacheMisses.stream()
+                    .map(PostReference::getPostId)
+                    .filter(postId -> !found.containsKey(postId))
+                    .toList();
+
+            if (redisMisses.isEmpty()) {
+                return CompletableFuture.completedFuture(inRequestOrder(requested.keySet(), found));
+            }
+
+            return mongoLimiter.submit(() -> repository.findByPostIdInList(redisMisses)).thenApply(mongoPosts -> {
+                List<Post> stored = mongoPosts.stream().map(compression::compact).toList();
+                postCache.addPosts(stored);
+                redisLimiter.submit(() -> redisRepository.savePosts(stored));
+                mongoPosts.forEach(post -> found.put(post.getPostId(), post));
+
+                return inRequestOrder(requested.keySet(), found);
             }).exceptionally(ex -> {
-                log.error("Error while find post {} in mongo from user {}: {}", postId, userId, ex.getMessage());
-                return null;
+                if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+                log.error("Error while find batch of {} posts in mongo: {}", redisMisses.size(), ex.getMessage());
+                return inRequestOrder(requested.keySet(), found);
             });
-        }).exceptionally(ex -> {
-            log.error("Error while find post {} in redis from user {}: {}", postId, userId, ex.getMessage());
-            return null;
         });
     }
 
-    @Async
-    public CompletableFuture<List<Post>> findAllPage(@NonNull String userId, int size, int page) {
+    /**
+     * Wraps posts into listing views. With {@code expandAuthor} every distinct author of the
+     * page is resolved through one {@link UserBatchLoader} instead of one lookup per post.
+     */
+    public CompletableFuture<List<PostView>> toViews(List<Post> posts, boolean expandAuthor){
+        if (posts == null || posts.isEmpty()) { return CompletableFuture.completedFuture(List.of()); }
+
+        if (!expandAuthor) {
+            return CompletableFuture.completedFuture(posts.stream().map(post -> new PostView(post, null)).toList());
+        }
+
+        var loader = userService.newBatchLoader();
+        List<CompletableFuture<PostView>> views = posts.stream()
+                .map(post -> post.getUserId() == null
+                        ? CompletableFuture.completedFuture(new PostView(post, null))
+                        : loader.load(post.getUserId()).thenApply(author -> new PostView(post, author)))
+                .toList();
+
+        return loader.dispatch().thenApply(_ -> views.stream()
+                .map(CompletableFuture::join)
+                .toList());
+    }
+
+    private static List<Post> inRequestOrder(Iterable<String> postIds, Map<String, Post> found){
+        List<Post> posts = new ArrayList<>();
+        for (String postId : postIds) {
+            var post = found.get(postId);
+            if (post != null) { posts.add(post); }
+        }
+        return posts;
+    }
+
+    /**
+     * L1-only lookup, used to answer conditional requests without touching Redis or Mongo.
+     */
+    public Post peekPost(@NonNull String postId){
+        return postCache.getPost(postId);
+    }
+
+    /**
+     * L1-only page lookup, {@code null} when the page is not fully known to the cache.
+     */
+    public List<Post> peekPage(@NonNull String userId, int size, int page){
+        if (size <= 0 || page <= 0) { return null; }
+
         List<Post> cached = postCache.getUserPosts(userId);
-        int fromIndex = page * size;
+        if (cached.size() > page * size) {
+            return Utils.getPage(cached, page, size);
+        }
+        return null;
+    }
 
-        if (cached != null && cached.size() > fromIndex) {
-            return CompletableFuture.completedFuture(Utils.getPage(cached, page, size));
+    public CompletableFuture<List<Post>> findAllPage(@NonNull String userId, int size, int page) {
+        List<Post> cachedPage = peekPage(userId, size, page);
+        if (cachedPage != null) {
+            return CompletableFuture.completedFuture(cachedPage);
         }
 
-        return redisRepository.findAllUserPosts(userId).thenCompose(redisPosts -> {
+        int fromIndex = page * size;
+
+        // A Redis failure reaches the limiter first and is read as a miss here.
+        return redisLimiter.submit(() -> redisRepository.findAllUserPosts(userId)).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            return null;
+        }).thenCompose(redisPosts -> {
             if (redisPosts != null && redisPosts.size() > fromIndex) {
 
                 redisPosts.forEach(postCache::addPost);
                 return CompletableFuture.completedFuture(Utils.getPage(redisPosts, page, size));
             }
 
-            return repository.findPostsByUserId(userId, Pageable.from(page, size))
+            return readRouting.posts(userId)
+                    .thenCompose(listings -> mongoLimiter.submit(() -> listings.findPostsByUserId(userId, Pageable.from(page, size))))
                     .thenApply(result -> {
                         List<Post> content = result.getContent();
 
                         content.forEach(post -> {
-                            postCache.addPost(post);
-                            redisRepository.savePost(post);
+                            Post stored = compression.compact(post);
+                            postCache.addPost(stored);
+                            redisLimiter.submit(() -> redisRepository.savePost(stored));
                         });
 
                         return content;
                     })
                     .exceptionally(ex -> {
+                        if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
                         log.error("Error while process user {} posts by pagination in mongo: {}", userId, ex.getMessage());
                         return null;
                     });
         }).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
             log.error("Error while process user {} posts by pagination in redis: {}", userId, ex.getMessage());
             return null;
         });
     }
 
-    @Async
+    /**
+     * Streams every post of a user straight from a Mongo cursor, newest first. Documents are
+     * only pulled as the subscriber requests them, and the cursor is closed on completion,
+     * error or cancellation, so memory stays flat however many posts the user has. Cursor
+     * reads and downstream requests run on the IO executor, never on the event loop.
+     */
+    public Flux<Post> streamUserPosts(@NonNull String userId){
+        return Mono.fromFuture(() -> readRouting.posts(userId))
+                .flatMapMany(listings -> Flux.fromStream(() -> listings.queryByUserIdOrderByPostTimestampDesc(userId))
+                        .subscribeOn(cursorScheduler));
+    }
+
     public CompletableFuture<Post> savePost(@NonNull Post post){
         post.setPostTimestamp(System.currentTimeMillis());
+        post.setUpdateTimestamp(post.getPostTimestamp());
+        if (post.getUserId() == null) { return store(post); }
+        return readRouting.recordWrite(post.getUserId()).thenCompose(_ -> store(post));
+    }
+
+    private CompletableFuture<Post> store(Post post){
         if (post.getPostId() == null){
-            return repository.save(post).thenCompose(postWithId -> {
+            if (journal.isEnabled()) { return saveJournaled(post); }
+
+            return mongoLimiter.submit(() -> repository.save(post)).thenCompose(postWithId -> {
                 if (postWithId.getPostId() == null || postWithId.getPostId().isBlank()){
                     log.warn("Post id isn't created in mongo... back end problem...");
                     return CompletableFuture.completedFuture(null);
                 }
 
-                return redisRepository.savePost(postWithId).thenApply(operation -> {
+                existence.addPost(postWithId.getPostId());
+                Post stored = compression.compact(postWithId);
+                return redisLimiter.submit(() -> redisRepository.savePost(stored)).thenApply(operation -> {
                     if (!operation){
                         log.warn("Cannot possible add post in redis...");
                         return null;
                     }
 
-                    postCache.addPost(postWithId);
+                    postCache.addPost(stored);
+                    peers.userPosts(postWithId.getUserId());
+                    searchIndex.index(postWithId);
                     return postWithId;
                 });
             });
         }
 
-        return repository.update(post).thenCompose(updated -> {
+        return journal.awaitApplied(post.getPostId()).thenCompose(_ -> mongoLimiter.submit(() -> repository.update(post))).thenCompose(updated -> {
             log.debug("Updating post {} in redis...", updated.getPostId());
-            return redisRepository.savePost(updated).thenApply(operation -> {
+            Post stored = compression.compact(updated);
+            return redisLimiter.submit(() -> redisRepository.savePost(stored)).thenApply(operation -> {
                 if (!operation){
                     log.warn("Cannot possible update post in redis...");
                     return null;
                 }
 
-                postCache.addPost(updated);
+                postCache.addPost(stored);
+                responseBytes.invalidatePost(updated.getPostId());
+                peers.post(updated.getPostId());
+                searchIndex.index(updated);
                 return updated;
             });
         });
     }
 
-    @Async
+    /**
+     * Fast-ack creation: the post gets its id here, is marked as journaled in Redis and is
+     * appended to the {@link WriteJournal}. Once the record is durable on local disk the post
+     * is made visible in L1 and Redis and the client is answered; the replayer inserts it
+     * into Mongo later. The mark comes first, so no node can update or delete an acknowledged
+     * post before its replay.
+     */
+    private CompletableFuture<Post> saveJournaled(Post post){
+        post.setPostId(new ObjectId().toHexString());
+
+        return redisLimiter.submit(() -> redisRepository.markJournaled(post.getPostId(), journal.pendingTtl())).thenCompose(_ -> {
+            try {
+                return journal.appendPost(post);
+            } catch (IOException ex) {
+                log.error("Error while journaling post from user {}: {}", post.getUserId(), ex.getMessage());
+                return CompletableFuture.failedFuture(ex);
+            }
+        }).thenCompose(_ -> publishJournaled(post)).thenApply(_ -> post);
+    }
+
+    /**
+     * Makes a journaled post visible before Mongo has it: in the existence filter, L1, the
+     * search index and Redis. Also used for the posts the journal recovered at startup.
+     */
+    public CompletableFuture<Void> publishJournaled(@NonNull Post post){
+        existence.addPost(post.getPostId());
+        Post stored = compression.compact(post);
+        postCache.addPost(stored);
+        peers.userPosts(post.getUserId());
+        searchIndex.index(post);
+        return redisLimiter.submit(() -> redisRepository.savePost(stored)).<Void>thenApply(_ -> null).exceptionally(ex -> {
+            log.warn("Error while add journaled post {} in redis: {}", post.getPostId(), ex.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Takes back {@link #publishJournaled} for a post the replayer gave up on, so nothing
+     * serves a post Mongo will never have.
+     */
+    public CompletableFuture<Void> dropJournaled(@NonNull Post post){
+        searchIndex.remove(post.getPostId());
+        responseBytes.invalidatePost(post.getPostId());
+        return redisRepository.deletePost(post.getUserId(), post.getPostId()).thenAccept(_ -> {
+            postCache.removePost(post.getPostId());
+            peers.post(post.getPostId());
+            peers.userPosts(post.getUserId());
+        });
+    }
+
+    /**
+     * Applies a partial update. Mongo gets a {@code $set}/{@code $inc} of only the patched
+     * fields and Redis an HSET of only those fields (skipped when the post is not in Redis).
+     * The L1 copy is replaced by a patched copy, so the next read needs no reload.
+     *
+     * @return the patched post, or {@code null} if the user has no such post
+     */
+    public CompletableFuture<Post> patchPost(@NonNull String userId, @NonNull String postId, @NonNull PostPatch patch){
+        if (!existence.mightContainPost(postId)) { return CompletableFuture.completedFuture(null); }
+
+        long updateTimestamp = System.currentTimeMillis();
+        return readRouting.recordWrite(userId).thenCompose(_ -> journal.awaitApplied(postId)).thenCompose(_ -> mongoLimiter.submit(() -> patchRepository.patchPost(userId, postId, patch, updateTimestamp))).thenCompose(counters -> {
+            if (counters == null) { return CompletableFuture.completedFuture(null); }
+
+            var cached = postCache.getPost(postId);
+            Post patched = null;
+            if (cached != null) {
+                patched = new Post(
+                        cached.getPostId(),
+                        cached.getUserId(),
+                        patch.getTitle() != null ? patch.getTitle() : cached.getTitle(),
+                        cached.getPostTimestamp(),
+                        updateTimestamp,
+                        patch.getText(),
+                        counters.likes(),
+                        counters.replies()
+                );
+                // An untouched body is carried over as stored, without inflating it.
+                if (patch.getText() == null) patched.copyTextFrom(cached);
+                patched = compression.compact(patched);
+                postCache.addPost(patched);
+            }
+            responseBytes.invalidatePost(postId);
+
+            Map<String, String> fields = new LinkedHashMap<>();
+            if (patch.getTitle() != null) fields.put("title", patch.getTitle());
+            if (patch.getText() != null) {
+                fields.putAll(patched != null ? compression.textFields(patched) : compression.textFields(patch.getText()));
+            }
+            if (patch.hasCounters()) {
+                fields.put("likes", String.valueOf(counters.likes()));
+                fields.put("replies", String.valueOf(counters.replies()));
+            }
+            fields.put("updateTimestamp", String.valueOf(updateTimestamp));
+
+            Post known = patched;
+            return redisLimiter.submit(() -> redisRepository.patchPost(userId, postId, fields))
+                    .thenCompose(_ -> known != null ? CompletableFuture.completedFuture(known) : findPost(postId, userId))
+                    .thenApply(post -> {
+                        peers.post(postId);
+                        if (post != null && patch.changesContent()) {
+                            searchIndex.index(post);
+                        }
+                        return post;
+                    });
+        });
+    }
+
+    public CompletableFuture<List<Post>> search(@NonNull String query, int limit){
+        List<PostReference> references = searchIndex.search(query, limit).stream()
+                .filter(hit -> hit.userId() != null)
+                .map(hit -> new PostReference(hit.userId(), hit.postId()))
+                .toList();
+
+        if (references.isEmpty()) { return CompletableFuture.completedFuture(List.of()); }
+
+        return findPosts(references);
+    }
+
     public CompletableFuture<Void> deletePost(@NonNull String postId, @NonNull String userId){
-        return repository.deleteById(postId).thenCompose(_1 ->
-                redisRepository.deletePost(userId, postId).thenAccept(_2 ->
-                        postCache.removePost(postId))
-                        .exceptionally(ex -> {
-                            log.error("Error while delete post {} from user {} in redis: {}", postId, userId, ex.getMessage());
-                            return null;
-                        })
-        ).exceptionally(ex -> {
+        responseBytes.invalidatePost(postId);
+        return readRouting.recordWrite(userId).thenCompose(_ -> journal.awaitApplied(postId)).thenCompose(_ -> mongoLimiter.submit(() -> repository.deleteById(postId))).thenCompose(deleted -> {
+            // Only once Mongo confirmed: a shed or failed delete leaves the post searchable.
+            searchIndex.remove(postId);
+            // Only what this call deleted: removing a fingerprint twice can drop another post's.
+            if (deleted > 0) existence.removePost(postId);
+            return redisLimiter.submit(() -> redisRepository.deletePost(userId, postId)).thenAccept(_2 -> {
+                        postCache.removePost(postId);
+                        peers.post(postId);
+                        peers.userPosts(userId);
+                    })
+                    .exceptionally(ex -> {
+                        if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+                        log.error("Error while delete post {} from user {} in redis: {}", postId, userId, ex.getMessage());
+                        return null;
+                    });
+        }).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
             log.error("Error while delete post {} from user {} in mongo: {}", postId, userId, ex.getMessage());
             return null;
         });
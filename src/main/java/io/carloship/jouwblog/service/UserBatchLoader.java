@@ -0,0 +1,59 @@
+package io.carloship.jouwblog.service;
+
+import io.carloship.jouwblog.response.User;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects user lookups made while rendering one response and resolves them together.
+ * <p>
+ * Callers {@link #load(String)} every id they need, then {@link #dispatch()} once. Ids are
+ * deduplicated and resolved in a single tiered batch through {@link UserService#findUsers}.
+ * Instances are cheap and meant to live for one request only; they are not thread-safe.
+ */
+@Slf4j
+public final class UserBatchLoader {
+
+    private final UserService service;
+    private final Map<String, CompletableFuture<User>> pending = new LinkedHashMap<>();
+
+    UserBatchLoader(UserService service) {
+        this.service = service;
+    }
+
+    @NonNull
+    public CompletableFuture<User> load(@NonNull String userId) {
+        return pending.computeIfAbsent(userId, _ -> new CompletableFuture<>());
+    }
+
+    @NonNull
+    public CompletableFuture<Void> dispatch() {
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<String> userIds = new ArrayList<>(pending.keySet());
+        return service.findUsers(userIds).handle((users, ex) -> {
+            if (ex != null) {
+                log.error("Error while load batch of {} users: {}", userIds.size(), ex.getMessage());
+            }
+
+            Map<String, User> byId = new HashMap<>();
+            if (users != null) {
+                users.forEach(user -> byId.put(user.getId(), user));
+            }
+
+            // Unresolved ids complete with null so a missing author never fails the page.
+            pending.forEach((userId, future) -> future.complete(byId.get(userId)));
+            pending.clear();
+            return null;
+        });
+    }
+}
@@ -1,15 +1,34 @@
 package io.carloship.jouwblog.service;
 
+import io.carloship.jouwblog.cache.ExistenceFilter;
+import io.carloship.jouwblog.cache.OwnerAffinity;
+import io.carloship.jouwblog.cache.PeerInvalidation;
+import io.carloship.jouwblog.cache.ResponseBytesCache;
 import io.carloship.jouwblog.cache.UserCache;
+import io.carloship.jouwblog.common.AdaptiveLimiter;
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.common.ConcurrencyLimits;
+import io.carloship.jouwblog.common.TieredReads;
+import io.carloship.jouwblog.repository.EntityPatchRepository;
 import io.carloship.jouwblog.repository.UserRedisRepository;
 import io.carloship.jouwblog.repository.UserRepository;
 import io.carloship.jouwblog.response.User;
-import io.micronaut.scheduling.annotation.Async;
+import io.carloship.jouwblog.response.UserPatch;
+import io.carloship.jouwblog.response.UserSuggestion;
+import io.carloship.jouwblog.search.UsernamePrefixIndex;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -22,93 +41,286 @@ public class UserService {
     @Inject
     protected UserRedisRepository redisRepository;
 
+    @Inject
+    protected EntityPatchRepository patchRepository;
+
     @Inject
     protected UserCache cache;
 
-    @Async
+    @Inject
+    protected UsernamePrefixIndex prefixIndex;
+
+    @Inject
+    protected ExistenceFilter existence;
+
+    @Inject
+    protected CascadeDeleteService cascadeDelete;
+
+    @Inject
+    protected ResponseBytesCache responseBytes;
+
+    @Inject
+    protected PeerInvalidation peers;
+
+    @Inject
+    protected TieredReads tieredReads;
+
+    @Inject
+    protected OwnerAffinity affinity;
+
+    @Inject
+    protected AffinityForwarder forwarder;
+
+    @Inject
+    @Named(ConcurrencyLimits.REDIS)
+    protected AdaptiveLimiter redisLimiter;
+
+    @Inject
+    @Named(ConcurrencyLimits.MONGO)
+    protected AdaptiveLimiter mongoLimiter;
+
+    /**
+     * L1-only lookup, used to answer conditional requests without touching Redis or Mongo.
+     */
+    public User peekUser(@NonNull String userId){
+        return cache.getUserById(userId);
+    }
+
     public CompletableFuture<User> findUser(@NonNull String userId){
+        return findUser(userId, true);
+    }
+
+    /**
+     * @param forward whether an L1 miss for a user owned by another node may be sent to that
+     *                node, see {@link OwnerAffinity}
+     */
+    public CompletableFuture<User> findUser(@NonNull String userId, boolean forward){
         User cached = cache.getUserById(userId);
         if (cached != null){
             return CompletableFuture.completedFuture(cached);
         }
+        if (!existence.mightContainUser(userId)){
+            return CompletableFuture.completedFuture(null);
+        }
 
-        return redisRepository.findUser(userId).thenCompose(redisUser -> {
-            if (redisUser != null){
-                cache.addUser(redisUser);
-                return CompletableFuture.completedFuture(redisUser);
-            }
+        String owner = forward ? affinity.forwardTarget(userId) : null;
+        if (owner != null){
+            return forwarder.findUser(owner, userId).thenApply(user -> {
+                if (user != null){
+                    cache.addUser(user);
+                }
+                return user;
+            }).exceptionallyCompose(ex -> {
+                log.debug("Reading user {} locally, owner {} failed: {}", userId, owner, ex.getMessage());
+                return findUser(userId, false);
+            });
+        }
 
-            return repository.findById(userId).thenApply(mongo -> {
-                if (mongo != null){
-                    cache.addUser(mongo);
-                    redisRepository.saveUser(mongo);
+        return tieredReads.read(
+                () -> redisLimiter.submit(() -> redisRepository.findUser(userId)).thenApply(redisUser -> {
+                    if (redisUser != null){
+                        cache.addUser(redisUser);
+                    }
+                    return redisUser;
+                }),
+                () -> mongoLimiter.submit(() -> repository.findById(userId)).thenApply(mongo -> {
+                    if (mongo != null){
+                        cache.addUser(mongo);
+                        redisLimiter.submit(() -> redisRepository.saveUser(mongo));
+                    }
                     return mongo;
-                }
+                })
+        ).exceptionally(ex -> {
+            var stale = tieredReads.serveStale() ? cache.getStaleUser(userId) : null;
+            if (stale != null){
+                log.warn("Serving stale user {}: {}", userId, ex.getMessage());
+                tieredReads.revalidate("user:" + userId, () -> findUser(userId));
+                return stale;
+            }
 
-                return null;
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while find user {}: {}", userId, ex.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Resolves many users with one lookup per tier, see {@link PostService#findPosts}.
+     */
+    public CompletableFuture<List<User>> findUsers(@NonNull List<String> userIds){
+        Set<String> requested = new LinkedHashSet<>(userIds);
+
+        Map<String, User> found = new HashMap<>(cache.getUsersById(requested));
+        List<String> cacheMisses = requested.stream()
+                .filter(id -> !found.containsKey(id))
+                .filter(existence::mightContainUser)
+                .toList();
+
+        if (cacheMisses.isEmpty()){
+            return CompletableFuture.completedFuture(inRequestOrder(requested, found));
+        }
+
+        // A Redis failure reaches the limiter first and is read as a miss here.
+        return redisLimiter.submit(() -> redisRepository.findUsers(cacheMisses)).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            return List.of();
+        }).thenCompose(redisUsers -> {
+            cache.addUsers(redisUsers);
+            redisUsers.forEach(user -> found.put(user.getId(), user));
+
+            List<String> redisMisses = cacheMisses.stream()
+                    .filter(id -> !found.containsKey(id))
+                    .toList();
+
+            if (redisMisses.isEmpty()){
+                return CompletableFuture.completedFuture(inRequestOrder(requested, found));
+            }
+
+            return mongoLimiter.submit(() -> repository.findByIdInList(redisMisses)).thenApply(mongoUsers -> {
+                cache.addUsers(mongoUsers);
+                redisLimiter.submit(() -> redisRepository.saveUsers(mongoUsers));
+                mongoUsers.forEach(user -> found.put(user.getId(), user));
+
+                return inRequestOrder(requested, found);
             }).exceptionally(ex -> {
-                log.error("Error while find user {} in mongo: {}", userId, ex.getMessage());
-                return null;
+                if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+                log.error("Error while find batch of {} users in mongo: {}", redisMisses.size(), ex.getMessage());
+                return inRequestOrder(requested, found);
             });
-        }).exceptionally(ex -> {
-            log.error("Error while find user {} in redis: {}", userId, ex.getMessage());
-            return null;
         });
     }
 
-    @Async
+    /**
+     * Creates a loader that batches the user lookups of a single request.
+     */
+    public UserBatchLoader newBatchLoader(){
+        return new UserBatchLoader(this);
+    }
+
+    private static List<User> inRequestOrder(Iterable<String> userIds, Map<String, User> found){
+        List<User> users = new ArrayList<>();
+        for (String userId : userIds) {
+            var user = found.get(userId);
+            if (user != null) { users.add(user); }
+        }
+        return users;
+    }
+
     public CompletableFuture<User> saveUser(@NonNull User user){
         if (user.getId() == null){
-            return repository.save(user).thenCompose(savedUser -> {
+            return mongoLimiter.submit(() -> repository.save(user)).thenCompose(savedUser -> {
                 if (savedUser.getId() == null || savedUser.getId().isBlank()){
                     log.warn("User id isn't created in mongo... back end problem...");
                     return CompletableFuture.completedFuture(null);
                 }
 
-                return redisRepository.saveUser(savedUser).thenApply(operation -> {
+                existence.addUser(savedUser.getId());
+                return redisLimiter.submit(() -> redisRepository.saveUser(savedUser)).thenApply(operation -> {
                     if (!operation){
                         log.warn("Cannot possible add user in redis...");
                         return null;
                     }
 
                     cache.addUser(user);
+                    prefixIndex.put(savedUser);
                     return savedUser;
                 });
             });
         }
 
-        return repository.update(user).thenCompose(updatedUser -> {
+        return mongoLimiter.submit(() -> repository.update(user)).thenCompose(updatedUser -> {
             log.debug("Updating user {} in redis...", updatedUser.getId());
-            return redisRepository.saveUser(updatedUser).thenApply(operation -> {
+            return redisLimiter.submit(() -> redisRepository.saveUser(updatedUser)).thenApply(operation -> {
                 if (!operation){
                     log.warn("Cannot possible update user in redis...");
                     return null;
                 }
 
                 cache.addUser(updatedUser);
+                responseBytes.invalidateUser(updatedUser.getId());
+                peers.user(updatedUser.getId());
+                prefixIndex.put(updatedUser);
                 return updatedUser;
             }).exceptionally(ex -> {
+                if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
                 log.error("Error while update user in redis {}: {}", user.getId(), ex.getMessage());
                 return null;
             });
         }).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
             log.error("Error while update user in mongo {}: {}", user.getId(), ex.getMessage());
             return null;
         });
     }
 
 
-    @Async
+    /**
+     * Applies a partial update, see {@link PostService#patchPost}.
+     *
+     * @return the patched user, or {@code null} if there is no such user
+     */
+    public CompletableFuture<User> patchUser(@NonNull String userId, @NonNull UserPatch patch){
+        if (!existence.mightContainUser(userId)){
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return mongoLimiter.submit(() -> patchRepository.patchUser(userId, patch)).thenCompose(before -> {
+            if (before == null){
+                return CompletableFuture.completedFuture(null);
+            }
+
+            Map<String, String> fields = new LinkedHashMap<>();
+            if (patch.getUsername() != null) fields.put("username", patch.getUsername());
+            if (patch.getName() != null) fields.put("name", patch.getName());
+            if (patch.getEmail() != null) fields.put("email", patch.getEmail());
+
+            // Evicted rather than patched in place: a copy built from a stale L1 entry would
+            // carry the stale fields back into the cache.
+            cache.invalidate(userId);
+            if (before.previousUsername() != null) cache.invalidateByUsername(before.previousUsername());
+            responseBytes.invalidateUser(userId);
+            if (patch.getUsername() != null){
+                prefixIndex.put(new User(userId, patch.getUsername(), null, null));
+            }
+
+            return redisLimiter.submit(() -> redisRepository.patchUser(userId, fields, before.previousUsername()))
+                    .thenCompose(_ -> {
+                        // A read that raced the Redis write may have cached the old fields again.
+                        cache.invalidate(userId);
+                        peers.user(userId);
+                        return findUser(userId);
+                    });
+        });
+    }
+
+    public List<UserSuggestion> suggestUsernames(@NonNull String prefix, int limit){
+        return prefixIndex.suggest(prefix, limit);
+    }
+
     public CompletableFuture<Void> deleteUser(@NonNull String id){
-        return repository.deleteById(id).thenCompose(_ ->
-                redisRepository.deleteUser(id).thenAccept(_2 ->
-                        cache.invalidate(id))
-                        .exceptionally(ex -> {
-                            log.error("Error while delete user {} from redis: {}", id, ex.getMessage());
-                            return null;
-                        })
-        ).exceptionally(ex -> {
-            log.error("Error while delete user {} from mongo: {}", id, ex.getMessage());
+        responseBytes.invalidateUser(id);
+        // The cascade is recorded first, so a crash right after the delete cannot orphan posts.
+        return cascadeDelete.markPending(id).thenCompose(_ -> mongoLimiter.submit(() -> repository.deleteById(id)).whenComplete((_, ex) -> {
+            // Shed before reaching Mongo, so the user is certainly still there.
+            if (ex != null && BackendOverloadedException.isCause(ex)) cascadeDelete.cancel(id);
+        })).thenCompose(deleted -> {
+            // Only once Mongo confirmed: a shed or failed delete leaves the user in autocomplete.
+            prefixIndex.remove(id);
+            // Only what this call deleted: removing a fingerprint twice can drop another user's.
+            if (deleted > 0) existence.removeUser(id);
+            cascadeDelete.start(id);
+            return redisLimiter.submit(() -> redisRepository.deleteUser(id)).thenAccept(_2 -> {
+                        cache.invalidate(id);
+                        peers.user(id);
+                    })
+                    .exceptionally(ex -> {
+                        if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+                        log.error("Error while delete user {} from redis: {}", id, ex.getMessage());
+                        return null;
+                    });
+        }).exceptionally(ex -> {
+            if (BackendOverloadedException.isCause(ex)) throw BackendOverloadedException.propagate(ex);
+            log.error("Error while delete user {} from mongo: {}", id, ex.getMessage(), ex);
             return null;
         });
     }
@@ -0,0 +1,179 @@
+package io.carloship.jouwblog.backup;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+class BackupFormatTest {
+
+    private static final int CHUNK_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsRoundTripAcrossChunks() throws IOException {
+        Path file = write(true, 10, 25, 3);
+
+        List<List<String>> records = new ArrayList<>(List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+        int chunks = 0;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var reader = new BackupFormat.ChunkReader(channel);
+            BackupFormat.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                chunks++;
+                for (byte[] record : BackupFormat.inflate(chunk)) {
+                    records.get(chunk.kind()).add(new String(record, StandardCharsets.UTF_8));
+                }
+            }
+
+            Assertions.assertEquals(10, reader.endCount(BackupFormat.USERS));
+            Assertions.assertEquals(25, reader.endCount(BackupFormat.POSTS));
+            Assertions.assertEquals(3, reader.endCount(BackupFormat.COMMENTS));
+        }
+
+        Assertions.assertTrue(chunks > 3);
+        Assertions.assertEquals(records(BackupFormat.USERS, 10), records.get(BackupFormat.USERS));
+        Assertions.assertEquals(records(BackupFormat.POSTS, 25), records.get(BackupFormat.POSTS));
+        Assertions.assertEquals(records(BackupFormat.COMMENTS, 3), records.get(BackupFormat.COMMENTS));
+    }
+
+    @Test
+    void refusesTruncatedFile() throws IOException {
+        Path file = write(true, 10, 25, 3);
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        Assertions.assertThrows(EOFException.class, () -> readAll(file));
+    }
+
+    @Test
+    void refusesFileWithoutEndChunk() throws IOException {
+        Path file = write(false, 10, 25, 3);
+
+        Assertions.assertThrows(EOFException.class, () -> readAll(file));
+    }
+
+    @Test
+    void refusesCorruptPayload() throws IOException {
+        Path file = write(true, 10, 25, 3);
+        flip(file, BackupFormat.FILE_HEADER + BackupFormat.CHUNK_HEADER + 2);
+
+        var ex = Assertions.assertThrows(IOException.class, () -> readAll(file));
+        Assertions.assertTrue(ex.getMessage().startsWith("Checksum mismatch"));
+    }
+
+    @Test
+    void refusesCorruptRecordCountInHeader() throws IOException {
+        Path file = write(true, 10, 25, 3);
+        // The low byte of the count: still a plausible count, so only the checksum catches it.
+        flip(file, BackupFormat.FILE_HEADER + 4);
+
+        var ex = Assertions.assertThrows(IOException.class, () -> readAll(file));
+        Assertions.assertTrue(ex.getMessage().startsWith("Checksum mismatch"));
+    }
+
+    @Test
+    void refusesRecordCountBeyondRawLengthBeforeAllocating() throws IOException {
+        Path file = write(true, 10, 25, 3);
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), BackupFormat.FILE_HEADER + 1);
+        }
+
+        var ex = Assertions.assertThrows(IOException.class, () -> readAll(file));
+        Assertions.assertTrue(ex.getMessage().startsWith("Corrupt chunk header"));
+    }
+
+    @Test
+    void refusesCorruptRecordLength() {
+        byte[] raw = ByteBuffer.allocate(7).putInt(1000).put("abc".getBytes(StandardCharsets.UTF_8)).array();
+
+        var chunk = new BackupFormat.Chunk(BackupFormat.USERS, 1, raw.length, deflate(raw));
+        Assertions.assertThrows(IOException.class, () -> BackupFormat.inflate(chunk));
+
+        var negative = ByteBuffer.wrap(Arrays.copyOf(raw, raw.length)).putInt(0, -1).array();
+        var negativeChunk = new BackupFormat.Chunk(BackupFormat.USERS, 1, negative.length, deflate(negative));
+        Assertions.assertThrows(IOException.class, () -> BackupFormat.inflate(negativeChunk));
+    }
+
+    @Test
+    void refusesFileOfAnotherFormat() throws IOException {
+        Path file = directory.resolve("other.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        Assertions.assertThrows(IOException.class, () -> readAll(file));
+    }
+
+    private Path write(boolean finish, int users, int posts, int comments) throws IOException {
+        Path file = directory.resolve("backup.bin");
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             var writer = new BackupFormat.ChunkWriter(channel, CHUNK_SIZE)) {
+            add(writer, BackupFormat.USERS, users);
+            add(writer, BackupFormat.POSTS, posts);
+            add(writer, BackupFormat.COMMENTS, comments);
+            if (finish) writer.finish();
+        }
+        return file;
+    }
+
+    private static void add(BackupFormat.ChunkWriter writer, byte kind, int count) throws IOException {
+        for (String record : records(kind, count)) {
+            writer.add(kind, record.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> records(byte kind, int count) {
+        List<String> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add("{\"kind\":" + kind + ",\"id\":\"record-" + i + "\"}");
+        }
+        return records;
+    }
+
+    private static void readAll(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var reader = new BackupFormat.ChunkReader(channel);
+            BackupFormat.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                BackupFormat.inflate(chunk);
+            }
+        }
+    }
+
+    private static void flip(Path file, long position) throws IOException {
+        try (var raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0x01);
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        var deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] stored = new byte[raw.length + 64];
+            int length = deflater.deflate(stored);
+            return Arrays.copyOf(stored, length);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.carloship.jouwblog.cache;
+
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.User;
+import io.carloship.jouwblog.standin.InMemoryPostRepository;
+import io.carloship.jouwblog.standin.InMemoryUserRepository;
+import io.carloship.jouwblog.standin.StandInProfile;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+class ExistenceFilterTest {
+
+    private final InMemoryPostRepository postRepository = new InMemoryPostRepository(StandInProfile.INSTANT);
+    private final InMemoryUserRepository userRepository = new InMemoryUserRepository(StandInProfile.INSTANT);
+
+    @Test
+    void rejectsOldIdsMissingFromTheScan() {
+        String postId = oldId();
+        String userId = oldId();
+        savePost(postId);
+        saveUser(userId);
+
+        ExistenceFilter filter = open();
+
+        Assertions.assertTrue(filter.mightContainPost(postId));
+        Assertions.assertTrue(filter.mightContainUser(userId));
+        Assertions.assertFalse(filter.mightContainPost(oldId()));
+        Assertions.assertFalse(filter.mightContainUser(oldId()));
+    }
+
+    @Test
+    void neverRejectsNewIdWhoseAnnouncementWasLost() {
+        ExistenceFilter filter = open();
+
+        // Created on another node after this one scanned, and the announcement never arrived.
+        String postId = new ObjectId().toHexString();
+        String userId = new ObjectId().toHexString();
+        savePost(postId);
+        saveUser(userId);
+
+        Assertions.assertTrue(filter.mightContainPost(postId));
+        Assertions.assertTrue(filter.mightContainUser(userId));
+    }
+
+    @Test
+    void rebuildPicksUpIdsItWasNeverTold() {
+        ExistenceFilter filter = open();
+
+        // Restored on another node: an old timestamp, and the announcement never arrived.
+        String postId = oldId();
+        savePost(postId);
+        filter.rebuild();
+
+        Assertions.assertTrue(filter.mightContainPost(postId));
+    }
+
+    @Test
+    void answersMaybeUntilBuilt() {
+        var filter = new ExistenceFilter();
+        filter.expectedPosts = 1000;
+        filter.expectedUsers = 1000;
+        filter.init();
+
+        Assertions.assertTrue(filter.mightContainPost(oldId()));
+        Assertions.assertTrue(filter.mightContainUser(oldId()));
+    }
+
+    private ExistenceFilter open() {
+        var filter = new ExistenceFilter();
+        filter.enabled = true;
+        filter.expectedPosts = 1000;
+        filter.expectedUsers = 1000;
+        filter.postRepository = postRepository;
+        filter.userRepository = userRepository;
+        filter.init();
+        filter.rebuild();
+        return filter;
+    }
+
+    private void savePost(String postId) {
+        postRepository.save(new Post(postId, "user", "title", 1L, 1L, "text", 0, 0)).join();
+    }
+
+    private void saveUser(String userId) {
+        userRepository.save(new User(userId, "user-" + userId, "name", "user@example.com")).join();
+    }
+
+    private static String oldId() {
+        return new ObjectId(Date.from(Instant.now().minus(Duration.ofDays(1)))).toHexString();
+    }
+}
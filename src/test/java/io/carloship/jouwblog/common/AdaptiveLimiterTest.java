@@ -0,0 +1,97 @@
+package io.carloship.jouwblog.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+class AdaptiveLimiterTest {
+
+    private static final Duration THRESHOLD = Duration.ofSeconds(10);
+
+    @Test
+    void growsWhileTheLimitIsUsedUpToItsMaximum() {
+        var limiter = new AdaptiveLimiter("test", 10, 1, 12, THRESHOLD, 0.5);
+
+        for (int round = 0; round < 100; round++) {
+            saturate(limiter).forEach(call -> call.complete("ok"));
+        }
+
+        Assertions.assertEquals(12, limiter.limit());
+        Assertions.assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void doesNotGrowWhileIdle() {
+        var limiter = new AdaptiveLimiter("test", 10, 1, 100, THRESHOLD, 0.5);
+
+        for (int i = 0; i < 1_000; i++) {
+            limiter.submit(() -> CompletableFuture.completedFuture("ok")).join();
+        }
+
+        Assertions.assertEquals(10, limiter.limit());
+    }
+
+    @Test
+    void backsOffOnFailuresDownToItsMinimum() {
+        var limiter = new AdaptiveLimiter("test", 16, 3, 100, THRESHOLD, 0.5);
+
+        var failed = limiter.submit(() -> CompletableFuture.failedFuture(new IllegalStateException("connection refused")));
+        Assertions.assertThrows(CompletionException.class, failed::join);
+        Assertions.assertEquals(8, limiter.limit());
+
+        limiter.submit(() -> {
+            throw new IllegalStateException("connection refused");
+        });
+        Assertions.assertEquals(4, limiter.limit());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.submit(() -> CompletableFuture.failedFuture(new IllegalStateException("connection refused")));
+        }
+        Assertions.assertEquals(3, limiter.limit());
+        Assertions.assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void backsOffOnSlowCalls() throws InterruptedException {
+        var limiter = new AdaptiveLimiter("test", 10, 1, 100, Duration.ofMillis(1), 0.5);
+
+        var call = new CompletableFuture<String>();
+        var result = limiter.submit(() -> call);
+        Thread.sleep(20);
+        call.complete("ok");
+
+        Assertions.assertEquals("ok", result.join());
+        Assertions.assertEquals(5, limiter.limit());
+    }
+
+    @Test
+    void shedsCallsOverTheLimit() {
+        var limiter = new AdaptiveLimiter("test", 2, 1, 100, THRESHOLD, 0.5);
+        List<CompletableFuture<String>> pending = saturate(limiter);
+
+        var shed = limiter.submit(() -> CompletableFuture.completedFuture("ok"));
+
+        var ex = Assertions.assertThrows(CompletionException.class, shed::join);
+        Assertions.assertTrue(ex.getCause() instanceof BackendOverloadedException);
+        Assertions.assertEquals(1, limiter.rejected());
+        Assertions.assertEquals(2, pending.size());
+        Assertions.assertEquals(2, limiter.inFlight());
+    }
+
+    // Fills every slot of the current limit with a call that completes when the test says so.
+    private static List<CompletableFuture<String>> saturate(AdaptiveLimiter limiter) {
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        int limit = limiter.limit();
+        for (int i = 0; i < limit; i++) {
+            var call = new CompletableFuture<String>();
+            limiter.submit(() -> call);
+            calls.add(call);
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,115 @@
+package io.carloship.jouwblog.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class CuckooFilterTest {
+
+    @Test
+    void hasNoFalseNegativesPastItsExpectedSize() {
+        var filter = new CuckooFilter(10_000);
+        for (int i = 0; i < 50_000; i++) {
+            filter.add("key-" + i);
+        }
+
+        for (int i = 0; i < 50_000; i++) {
+            Assertions.assertTrue(filter.mightContain("key-" + i), "key-" + i);
+        }
+        Assertions.assertEquals(50_000, filter.count());
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheEstimate() {
+        var filter = new CuckooFilter(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            filter.add("present-" + i);
+        }
+
+        int falsePositives = 0;
+        int probes = 200_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("absent-" + i)) falsePositives++;
+        }
+
+        double rate = (double) falsePositives / probes;
+        Assertions.assertTrue(rate < 0.001, "false-positive rate " + rate);
+        Assertions.assertTrue(rate < filter.falsePositiveRate() * 3 + 1e-4,
+                "rate " + rate + " against estimate " + filter.falsePositiveRate());
+    }
+
+    @Test
+    void removesOnlyWhatWasAdded() {
+        var filter = new CuckooFilter(1_000);
+        filter.add("a");
+        filter.add("b");
+
+        Assertions.assertTrue(filter.remove("a"));
+        Assertions.assertFalse(filter.mightContain("a"));
+        Assertions.assertTrue(filter.mightContain("b"));
+        Assertions.assertFalse(filter.remove("a"));
+        Assertions.assertEquals(1, filter.count());
+    }
+
+    @Test
+    void keepsDuplicatesUntilEveryCopyIsRemoved() {
+        var filter = new CuckooFilter(1_000);
+        filter.add("a");
+        filter.add("a");
+
+        filter.remove("a");
+        Assertions.assertTrue(filter.mightContain("a"));
+        filter.remove("a");
+        Assertions.assertFalse(filter.mightContain("a"));
+    }
+
+    @Test
+    void clearForgetsEveryKey() {
+        var filter = new CuckooFilter(1_000);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("key-" + i);
+        }
+
+        filter.clear();
+
+        Assertions.assertEquals(0, filter.count());
+        Assertions.assertFalse(filter.mightContain("key-1"));
+    }
+
+    @Test
+    void stripesLargeFilters() {
+        Assertions.assertEquals(1, new CuckooFilter(1_000, 16).stripeCount());
+        Assertions.assertEquals(16, new CuckooFilter(1_000_000, 16).stripeCount());
+    }
+
+    @Test
+    void takesConcurrentInserts() throws Exception {
+        var filter = new CuckooFilter(100_000, 8);
+        int threads = 8;
+        int perThread = 20_000;
+        List<Future<?>> writers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        filter.add(thread + "-" + i);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) writer.get();
+        }
+
+        Assertions.assertEquals((long) threads * perThread, filter.count());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                Assertions.assertTrue(filter.mightContain(t + "-" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.carloship.jouwblog.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+class HashRingTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final int KEYS = 100_000;
+
+    @Test
+    void emptyRingHasNoOwner() {
+        Assertions.assertNull(ring(List.of()).ownerOf("key"));
+    }
+
+    @Test
+    void spreadsKeysEvenly() {
+        var members = members(5);
+        var ring = ring(members);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owned.merge(ring.ownerOf(key(i)), 1, Integer::sum);
+        }
+
+        Assertions.assertEquals(members.size(), owned.size());
+        double fair = (double) KEYS / members.size();
+        for (var entry : owned.entrySet()) {
+            double share = entry.getValue() / fair;
+            Assertions.assertTrue(share > 0.75 && share < 1.25, entry.getKey() + " owns " + share + " of its fair share");
+        }
+    }
+
+    @Test
+    void addingAMemberOnlyMovesKeysToIt() {
+        var before = ring(members(5));
+        var after = ring(members(6));
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = after.ownerOf(key(i));
+            if (!owner.equals(before.ownerOf(key(i)))) {
+                Assertions.assertEquals("node-5", owner);
+                moved++;
+            }
+        }
+
+        double fraction = (double) moved / KEYS;
+        Assertions.assertTrue(fraction > 0.1 && fraction < 0.25, "moved " + fraction + " of the keys");
+    }
+
+    @Test
+    void removingAMemberOnlyMovesItsKeys() {
+        var members = members(5);
+        var before = ring(members);
+        var after = ring(members.subList(0, 4));
+
+        for (int i = 0; i < KEYS; i++) {
+            String owner = before.ownerOf(key(i));
+            if (!owner.equals("node-4")) {
+                Assertions.assertEquals(owner, after.ownerOf(key(i)));
+            }
+        }
+    }
+
+    @Test
+    void ownersDoNotDependOnMemberOrder() {
+        var members = members(5);
+        var shuffled = new ArrayList<>(members);
+        Collections.reverse(shuffled);
+
+        var ring = ring(members);
+        var reversed = ring(shuffled);
+        for (int i = 0; i < KEYS; i++) {
+            Assertions.assertEquals(ring.ownerOf(key(i)), reversed.ownerOf(key(i)));
+        }
+    }
+
+    private static HashRing<String> ring(List<String> members) {
+        return new HashRing<>(members, Function.identity(), VIRTUAL_NODES);
+    }
+
+    private static List<String> members(int count) {
+        List<String> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            members.add("node-" + i);
+        }
+        return members;
+    }
+
+    private static String key(int i) {
+        return "user-" + i;
+    }
+}
@@ -0,0 +1,109 @@
+package io.carloship.jouwblog.common;
+
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.PostView;
+import io.carloship.jouwblog.response.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+class HttpCachingTest {
+
+    private static final long UPDATED = 1_700_000_000_123L;
+
+    @Test
+    void userEtagIsStableForTheSameFields() {
+        Assertions.assertEquals(HttpCaching.etag(user("alice", "Alice", "alice@example.com")),
+                HttpCaching.etag(user("alice", "Alice", "alice@example.com")));
+    }
+
+    @Test
+    void userEtagChangesWhenStringHashCodesCollide() {
+        // "Aa" and "BB" share a String.hashCode, and so did the old Objects.hash validators.
+        Assertions.assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        Assertions.assertNotEquals(HttpCaching.etag(user("alice", "Aa", "alice@example.com")),
+                HttpCaching.etag(user("alice", "BB", "alice@example.com")));
+    }
+
+    @Test
+    void userEtagSeparatesFields() {
+        Assertions.assertNotEquals(HttpCaching.etag(user("alice", "Alice", "a@example.com")),
+                HttpCaching.etag(user("alice", "Alicea", "@example.com")));
+        Assertions.assertNotEquals(HttpCaching.etag(user("alice", null, "")),
+                HttpCaching.etag(user("alice", "", null)));
+    }
+
+    @Test
+    void postEtagFollowsTheUpdateTimestamp() {
+        Post post = post(UPDATED);
+        String before = HttpCaching.etag(post);
+        post.setUpdateTimestamp(UPDATED + 1);
+
+        Assertions.assertNotEquals(before, HttpCaching.etag(post));
+        Assertions.assertEquals(HttpCaching.etag(post(0)), HttpCaching.etag(post(0)));
+        Assertions.assertEquals(1_000L, HttpCaching.lastModified(post(0)));
+    }
+
+    @Test
+    void listingEtagChangesWithAnAuthor() {
+        var views = List.of(new PostView(post(UPDATED), user("alice", "Aa", "alice@example.com")));
+        var renamed = List.of(new PostView(post(UPDATED), user("alice", "BB", "alice@example.com")));
+
+        Assertions.assertNotEquals(HttpCaching.etag(views), HttpCaching.etag(renamed));
+        Assertions.assertEquals(UPDATED, HttpCaching.lastModified(views));
+    }
+
+    @Test
+    void ifNoneMatchUsesWeakComparison() {
+        String etag = HttpCaching.etag(post(UPDATED));
+        String strong = etag.substring(2);
+
+        Assertions.assertTrue(HttpCaching.isNotModified(etag, null, etag, UPDATED));
+        Assertions.assertTrue(HttpCaching.isNotModified(strong, null, etag, UPDATED));
+        Assertions.assertTrue(HttpCaching.isNotModified("W/\"other\", " + strong, null, etag, UPDATED));
+        Assertions.assertTrue(HttpCaching.isNotModified("*", null, etag, UPDATED));
+        Assertions.assertFalse(HttpCaching.isNotModified("W/\"other\"", null, etag, UPDATED));
+    }
+
+    @Test
+    void ifNoneMatchWinsOverIfModifiedSince() {
+        String etag = HttpCaching.etag(post(UPDATED));
+
+        // A stale tag with a current date: the tag decides, so the body is sent.
+        Assertions.assertFalse(HttpCaching.isNotModified("W/\"stale\"", httpDate(UPDATED), etag, UPDATED));
+        // A current tag with a stale date: the tag decides, so 304.
+        Assertions.assertTrue(HttpCaching.isNotModified(etag, httpDate(UPDATED - 60_000), etag, UPDATED));
+    }
+
+    @Test
+    void ifModifiedSinceComparesWholeSeconds() {
+        Assertions.assertTrue(HttpCaching.isNotModified(null, httpDate(UPDATED), "W/\"x\"", UPDATED));
+        Assertions.assertTrue(HttpCaching.isNotModified(" ", httpDate(UPDATED), "W/\"x\"", UPDATED));
+        Assertions.assertFalse(HttpCaching.isNotModified(null, httpDate(UPDATED - 1_000), "W/\"x\"", UPDATED));
+    }
+
+    @Test
+    void ignoresUnusableIfModifiedSince() {
+        Assertions.assertFalse(HttpCaching.isNotModified(null, "yesterday", "W/\"x\"", UPDATED));
+        // Without a Last-Modified there is nothing to compare the date with.
+        Assertions.assertFalse(HttpCaching.isNotModified(null, httpDate(UPDATED), "W/\"x\"", 0));
+        Assertions.assertFalse(HttpCaching.isNotModified(null, null, "W/\"x\"", UPDATED));
+    }
+
+    private static User user(String username, String name, String email) {
+        return new User("user-1", username, name, email);
+    }
+
+    private static Post post(long updateTimestamp) {
+        return new Post("post-1", "user-1", "title", 1_000L, updateTimestamp, "text", 0, 0);
+    }
+
+    private static String httpDate(long epochMillis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,112 @@
+package io.carloship.jouwblog.common;
+
+import io.carloship.jouwblog.response.Post;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class TextCompressionTest {
+
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog. ".repeat(40) + "Ünïcödé ✓";
+    private static final String SHORT_TEXT = "The quick brown fox jumps over the lazy dog.";
+
+    private final TextCompression plain = new TextCompression(new byte[0]);
+    private final TextCompression trained = new TextCompression(
+            "jumps over the lazy dog. The quick brown fox ".getBytes(StandardCharsets.UTF_8));
+    private final TextCompression other = new TextCompression(
+            "an entirely different dictionary".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    void roundTripsWithAndWithoutDictionary() {
+        for (TextCompression codec : List.of(plain, trained)) {
+            Assertions.assertEquals(TEXT, codec.inflate(codec.deflate(TEXT, 1)));
+            Assertions.assertEquals(SHORT_TEXT, codec.inflate(codec.deflate(SHORT_TEXT, 9)));
+            Assertions.assertEquals("", codec.inflate(codec.deflate("", 1)));
+        }
+    }
+
+    @Test
+    void dictionaryShrinksShortTexts() {
+        Assertions.assertTrue(trained.deflate(SHORT_TEXT, 1).length < plain.deflate(SHORT_TEXT, 1).length);
+    }
+
+    @Test
+    void keepsTheTailOfAnOversizedDictionary() {
+        byte[] dictionary = new byte[TextCompression.MAX_DICTIONARY_SIZE + 100];
+        Arrays.fill(dictionary, (byte) 'x');
+        var codec = new TextCompression(dictionary);
+
+        Assertions.assertEquals(TextCompression.MAX_DICTIONARY_SIZE, codec.dictionarySize());
+        Assertions.assertEquals(TEXT, codec.inflate(codec.deflate(TEXT, 1)));
+    }
+
+    @Test
+    void canInflateTellsDictionariesApart() {
+        byte[] withoutDictionary = plain.deflate(TEXT, 1);
+        byte[] withDictionary = trained.deflate(TEXT, 1);
+
+        Assertions.assertTrue(plain.canInflate(withoutDictionary));
+        Assertions.assertTrue(trained.canInflate(withoutDictionary));
+        Assertions.assertTrue(trained.canInflate(withDictionary));
+        Assertions.assertFalse(other.canInflate(withDictionary));
+        Assertions.assertFalse(plain.canInflate(withDictionary));
+        Assertions.assertFalse(trained.canInflate(null));
+        Assertions.assertFalse(trained.canInflate(new byte[3]));
+    }
+
+    @Test
+    void refusesTextFromAnotherDictionary() {
+        byte[] withDictionary = trained.deflate(TEXT, 1);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> other.inflate(withDictionary));
+    }
+
+    @Test
+    void refusesTruncatedText() {
+        byte[] compressed = plain.deflate(TEXT, 1);
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> plain.inflate(Arrays.copyOf(compressed, compressed.length / 2)));
+    }
+
+    @Test
+    void readsPostFromAnotherDictionaryAsMiss() {
+        Map<String, String> fields = new HashMap<>(new Post("post", "user", "title", 1L, 1L, "", 0, 0).toMap());
+        fields.put(Post.TEXT_Z, Base64.getEncoder().encodeToString(other.deflate(TEXT, 1)));
+
+        Assertions.assertNull(new Post().fromMap(fields));
+    }
+
+    @Test
+    void inflatesPostBodyOnceWhileItIsRead() {
+        TextCompression codec = TextCompression.posts();
+        Post post = new Post("post", "user", "title", 1L, 1L, null, 0, 0).withCompressedText(codec.deflate(TEXT, 1));
+        long before = codec.inflations();
+
+        Assertions.assertEquals(TEXT, post.getText());
+        Assertions.assertEquals(TEXT, post.getText());
+        Assertions.assertEquals(post, new Post("post", "user", "title", 1L, 1L, TEXT, 0, 0));
+
+        Assertions.assertEquals(before + 1, codec.inflations());
+    }
+
+    @Test
+    void trainsOnPhrasesSharedBySamples() {
+        List<String> samples = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            samples.add("Thanks for reading, see you next week! Post number " + i + " about topic " + (i * 7919));
+        }
+
+        byte[] dictionary = DictionaryTrainer.train(samples, 64);
+
+        Assertions.assertTrue(dictionary.length <= 64);
+        Assertions.assertTrue(new String(dictionary, StandardCharsets.UTF_8).contains("Thanks for reading"));
+    }
+}
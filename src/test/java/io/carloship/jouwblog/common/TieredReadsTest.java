@@ -0,0 +1,125 @@
+package io.carloship.jouwblog.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+class TieredReadsTest {
+
+    private static final long WAIT_SECONDS = 5;
+
+    private final AtomicInteger mongoReads = new AtomicInteger();
+
+    @Test
+    void answersFromARedisHitWithoutMongo() throws Exception {
+        var reads = reads(true);
+
+        var result = reads.read(() -> CompletableFuture.completedFuture("redis"), mongo("mongo"));
+
+        Assertions.assertEquals("redis", result.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, mongoReads.get());
+    }
+
+    @Test
+    void fallsBackToMongoOnARedisMiss() throws Exception {
+        var reads = reads(true);
+
+        var result = reads.read(() -> CompletableFuture.completedFuture(null), mongo("mongo"));
+
+        Assertions.assertEquals("mongo", result.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, mongoReads.get());
+    }
+
+    @Test
+    void fallsBackToMongoOnARedisFailure() throws Exception {
+        var reads = reads(true);
+
+        var result = reads.read(() -> CompletableFuture.failedFuture(new IllegalStateException("connection refused")), mongo("mongo"));
+
+        Assertions.assertEquals("mongo", result.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, mongoReads.get());
+    }
+
+    @Test
+    void fallsBackToMongoWhenRedisMissesItsDeadline() throws Exception {
+        var reads = reads(false);
+        reads.redisDeadline = Duration.ofMillis(20);
+
+        var result = reads.read(CompletableFuture::new, mongo("mongo"));
+
+        Assertions.assertEquals("mongo", result.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, mongoReads.get());
+    }
+
+    @Test
+    void hedgedMongoHitWinsOverASlowRedis() throws Exception {
+        var reads = reads(true);
+        var redis = new CompletableFuture<String>();
+
+        var result = reads.read(() -> redis, mongo("mongo"));
+
+        // Well before the Redis deadline, so only the hedge can have answered.
+        Assertions.assertEquals("mongo", result.get(1, TimeUnit.SECONDS));
+        Assertions.assertFalse(redis.isDone());
+
+        redis.complete(null);
+        Assertions.assertEquals(1, mongoReads.get());
+    }
+
+    @Test
+    void hedgedMongoMissWaitsForRedis() throws Exception {
+        var reads = reads(true);
+        var redis = new CompletableFuture<String>();
+
+        var result = reads.read(() -> redis, mongo(null));
+        awaitHedge();
+
+        Assertions.assertFalse(result.isDone());
+        redis.complete("redis");
+        Assertions.assertEquals("redis", result.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, mongoReads.get());
+    }
+
+    @Test
+    void settlesOnTheHedgedMongoMissOnceRedisMissesToo() throws Exception {
+        var reads = reads(true);
+        var redis = new CompletableFuture<String>();
+
+        var result = reads.read(() -> redis, mongo(null));
+        awaitHedge();
+        redis.complete(null);
+
+        Assertions.assertNull(result.get(WAIT_SECONDS, TimeUnit.SECONDS));
+        // The fallback reuses the hedged read instead of querying Mongo again.
+        Assertions.assertEquals(1, mongoReads.get());
+    }
+
+    private static TieredReads reads(boolean hedge) {
+        var reads = new TieredReads();
+        reads.hedgeEnabled = hedge;
+        reads.minHedgeDelay = Duration.ofMillis(5);
+        reads.redisDeadline = Duration.ofSeconds(2);
+        reads.mongoDeadline = Duration.ofSeconds(2);
+        return reads;
+    }
+
+    private Supplier<CompletableFuture<String>> mongo(String value) {
+        return () -> {
+            mongoReads.incrementAndGet();
+            return CompletableFuture.completedFuture(value);
+        };
+    }
+
+    private void awaitHedge() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (mongoReads.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertEquals(1, mongoReads.get());
+    }
+}
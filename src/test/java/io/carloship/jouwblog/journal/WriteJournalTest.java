@@ -0,0 +1,226 @@
+package io.carloship.jouwblog.journal;
+
+import io.carloship.jouwblog.common.BackendOverloadedException;
+import io.carloship.jouwblog.response.Post;
+import io.micronaut.serde.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+class WriteJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int RECORD_HEADER = 17;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsRoundTripAcrossRestart() throws Exception {
+        WriteJournal journal = open();
+        append(journal, "a", "b", "c");
+        journal.close();
+
+        journal = open();
+        try {
+            Assertions.assertEquals(List.of("a", "b", "c"), ids(journal.takeRecovered()));
+            List<Post> replayed = decode(journal, journal.nextBatch(10));
+            Assertions.assertEquals(List.of("a", "b", "c"), ids(replayed));
+            Assertions.assertEquals("text of b", replayed.get(1).getText());
+            Assertions.assertEquals(List.of(), journal.takeRecovered());
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void checkpointSkipsAppliedRecords() throws Exception {
+        WriteJournal journal = open();
+        append(journal, "a", "b", "c");
+        WriteJournal.Batch batch = journal.nextBatch(2);
+        journal.markApplied(batch, ids(decode(journal, batch)));
+        journal.close();
+
+        journal = open();
+        try {
+            Assertions.assertEquals(List.of("c"), ids(journal.takeRecovered()));
+            Assertions.assertEquals(List.of("c"), ids(decode(journal, journal.nextBatch(10))));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void unusableCheckpointReplaysEverything() throws Exception {
+        WriteJournal journal = open();
+        append(journal, "a", "b");
+        WriteJournal.Batch batch = journal.nextBatch(10);
+        journal.markApplied(batch, ids(decode(journal, batch)));
+        journal.close();
+        Files.write(directory.resolve("checkpoint"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+
+        journal = open();
+        try {
+            Assertions.assertEquals(List.of("a", "b"), ids(decode(journal, journal.nextBatch(10))));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void stopsAtRecordFailingItsChecksum() throws Exception {
+        WriteJournal journal = open();
+        append(journal, "a", "b");
+        journal.close();
+        try (var file = new RandomAccessFile(segments().getFirst().toFile(), "rw")) {
+            long payload = secondRecord(file) + RECORD_HEADER;
+            file.seek(payload);
+            int value = file.read();
+            file.seek(payload);
+            file.write(value ^ 0xFF);
+        }
+
+        journal = open();
+        try {
+            Assertions.assertEquals(List.of("a"), ids(decode(journal, journal.nextBatch(10))));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void dropsTornTailAndKeepsAppending() throws Exception {
+        WriteJournal journal = open();
+        append(journal, "a", "b");
+        journal.close();
+        try (var file = new RandomAccessFile(segments().getFirst().toFile(), "rw")) {
+            // The end of the second record never reached the disk.
+            long from = secondRecord(file) + RECORD_HEADER + 4;
+            file.seek(from);
+            file.write(new byte[(int) (SEGMENT_SIZE - from)]);
+        }
+
+        journal = open();
+        append(journal, "c");
+        journal.close();
+
+        journal = open();
+        try {
+            WriteJournal.Batch batch = journal.nextBatch(10);
+            Assertions.assertEquals(List.of("a", "c"), ids(decode(journal, batch)));
+            Assertions.assertEquals(List.of(1L, 2L), batch.entries().stream().map(WriteJournal.Entry::seq).toList());
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void rollsOverAndDeletesAppliedSegments() throws Exception {
+        WriteJournal journal = open();
+        try {
+            String[] postIds = new String[40];
+            for (int i = 0; i < postIds.length; i++) postIds[i] = "post-" + i;
+            append(journal, postIds);
+            Assertions.assertTrue(segments().size() > 1);
+
+            List<Post> replayed = new ArrayList<>();
+            WriteJournal.Batch batch;
+            while (!(batch = journal.nextBatch(7)).isEmpty()) {
+                List<Post> posts = decode(journal, batch);
+                journal.markApplied(batch, ids(posts));
+                replayed.addAll(posts);
+            }
+
+            Assertions.assertEquals(List.of(postIds), ids(replayed));
+            Assertions.assertEquals(1, segments().size());
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void awaitAppliedCompletesOnceReplayed() throws Exception {
+        WriteJournal journal = open();
+        try {
+            append(journal, "a");
+            CompletableFuture<Void> applied = journal.awaitApplied("a");
+            Assertions.assertFalse(applied.isDone());
+
+            WriteJournal.Batch batch = journal.nextBatch(10);
+            journal.markApplied(batch, ids(decode(journal, batch)));
+
+            applied.join();
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void awaitAppliedGivesUpAfterTimeout() throws Exception {
+        WriteJournal journal = open();
+        try {
+            append(journal, "a");
+
+            var ex = Assertions.assertThrows(CompletionException.class, () -> journal.awaitApplied("a").join());
+            Assertions.assertTrue(BackendOverloadedException.isCause(ex));
+        } finally {
+            journal.close();
+        }
+    }
+
+    private WriteJournal open() throws IOException {
+        var journal = new WriteJournal();
+        journal.enabled = true;
+        journal.path = directory.toString();
+        journal.segmentSize = SEGMENT_SIZE;
+        journal.awaitTimeout = Duration.ofMillis(100);
+        journal.objectMapper = ObjectMapper.getDefault();
+        journal.open();
+        return journal;
+    }
+
+    private static void append(WriteJournal journal, String... postIds) throws IOException {
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+        for (String postId : postIds) {
+            durable.add(journal.appendPost(new Post(postId, "user", "title", 1L, 1L, "text of " + postId, 0, 0)));
+        }
+        durable.forEach(CompletableFuture::join);
+    }
+
+    private static List<Post> decode(WriteJournal journal, WriteJournal.Batch batch) throws IOException {
+        List<Post> posts = new ArrayList<>();
+        for (WriteJournal.Entry entry : batch.entries()) {
+            posts.add(journal.decodePost(entry));
+        }
+        return posts;
+    }
+
+    private static List<String> ids(List<Post> posts) {
+        return posts.stream().map(Post::getPostId).toList();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+
+    /**
+     * @return the offset of the second record, behind the 8 byte segment header and the first
+     */
+    private static long secondRecord(RandomAccessFile file) throws IOException {
+        file.seek(8);
+        return 8 + RECORD_HEADER + file.readInt();
+    }
+}
@@ -0,0 +1,94 @@
+package io.carloship.jouwblog.load;
+
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.User;
+import io.micronaut.serde.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Users and posts created through the API before a run, so reads hit ids that exist.
+ */
+public final class BlogFixture {
+
+    private final List<String> userIds;
+    private final List<PostRef> posts;
+
+    private BlogFixture(List<String> userIds, List<PostRef> posts) {
+        this.userIds = userIds;
+        this.posts = posts;
+    }
+
+    public static BlogFixture seed(HttpClient http, URI base, int users, int postsPerUser) throws Exception {
+        var mapper = ObjectMapper.getDefault();
+        var random = new SplittableRandom(42);
+
+        List<String> userIds = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            String json = "{\"username\":\"loaduser" + i + "\",\"name\":\"Load User " + i + "\",\"email\":\"load" + i + "@example.com\"}";
+            userIds.add(mapper.readValue(post(http, base, "/user/", json), User.class).getId());
+        }
+
+        List<PostRef> posts = new ArrayList<>(users * postsPerUser);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> created = new ArrayList<>(users * postsPerUser);
+            List<String> authors = new ArrayList<>(users * postsPerUser);
+            for (String userId : userIds) {
+                for (int i = 0; i < postsPerUser; i++) {
+                    String json = postJson(userId, random);
+                    created.add(executor.submit(() -> post(http, base, "/posts/", json)));
+                    authors.add(userId);
+                }
+            }
+            for (int i = 0; i < created.size(); i++) {
+                posts.add(new PostRef(authors.get(i), mapper.readValue(created.get(i).get(), Post.class).getPostId()));
+            }
+        }
+        return new BlogFixture(List.copyOf(userIds), List.copyOf(posts));
+    }
+
+    static String postJson(String userId, SplittableRandom random) {
+        return "{\"userId\":\"" + userId + "\",\"title\":\"Post " + random.nextInt(1_000_000)
+                + "\",\"text\":\"" + "lorem ipsum ".repeat(10 + random.nextInt(90)) + "\"}";
+    }
+
+    private static String post(HttpClient http, URI base, String path, String json) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(base.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        var response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Seeding " + path + " failed with " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    String randomUser(SplittableRandom random) {
+        return userIds.get(random.nextInt(userIds.size()));
+    }
+
+    PostRef randomPost(SplittableRandom random) {
+        return posts.get(random.nextInt(posts.size()));
+    }
+
+    public int users() {
+        return userIds.size();
+    }
+
+    public int posts() {
+        return posts.size();
+    }
+
+    record PostRef(String userId, String postId) {
+    }
+}
@@ -0,0 +1,76 @@
+package io.carloship.jouwblog.load;
+
+import io.carloship.jouwblog.standin.InMemoryRedis;
+import io.carloship.jouwblog.standin.StandInProfiles;
+import io.micronaut.runtime.server.EmbeddedServer;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Runs every {@link Workload} in a closed and an open loop against the service backed by the
+ * in-memory stand-ins. Excluded from {@code test}; run it with {@code ./gradlew loadTest} and
+ * tune it with {@code -Pload.duration}, {@code -Pload.clients}, {@code -Pload.rate},
+ * {@code -Pload.users} and {@code -Pload.posts-per-user}. Backend latency and failures are
+ * set in {@code application-loadtest.yml}.
+ */
+@Tag("load")
+@MicronautTest(environments = StandInProfiles.ENVIRONMENT)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BlogLoadTest {
+
+    private static final Path REPORTS = Path.of("build", "reports", "load");
+
+    private final Duration duration = Duration.parse("PT" + System.getProperty("load.duration", "20s").toUpperCase());
+    private final int clients = Integer.getInteger("load.clients", 64);
+    private final int rate = Integer.getInteger("load.rate", 2000);
+    private final int users = Integer.getInteger("load.users", 200);
+    private final int postsPerUser = Integer.getInteger("load.posts-per-user", 20);
+
+    @Inject
+    EmbeddedServer server;
+
+    @Inject
+    InMemoryRedis redis;
+
+    private LoadGenerator generator;
+
+    @BeforeAll
+    void seed() throws Exception {
+        var http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        var fixture = BlogFixture.seed(http, server.getURI(), users, postsPerUser);
+        generator = new LoadGenerator(http, URI.create(server.getURI() + "/"), fixture);
+
+        // One short untimed run, so the JIT and the caches are warm before anything is measured.
+        generator.closedLoop(Workload.MIXED, clients, Duration.ofSeconds(5));
+        System.out.printf("Seeded %d users and %d posts, %d Redis keys%n", fixture.users(), fixture.posts(), redis.size());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Workload.class)
+    void closedLoop(Workload workload) throws Exception {
+        check(generator.closedLoop(workload, clients, duration));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Workload.class)
+    void openLoop(Workload workload) throws Exception {
+        check(generator.openLoop(workload, rate, duration));
+    }
+
+    private static void check(LoadReport report) throws Exception {
+        report.print(System.out);
+        report.writeDistribution(REPORTS);
+        Assertions.assertTrue(report.requests() > 0, "no request completed");
+    }
+}
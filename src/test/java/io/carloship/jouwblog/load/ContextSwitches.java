@@ -0,0 +1,50 @@
+package io.carloship.jouwblog.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Voluntary and involuntary context switches of this JVM, summed over the threads listed in
+ * {@code /proc/self/task}. Threads that exit take their counts with them, so a run is only
+ * comparable with another run whose threads outlive it, such as the pooled carrier and
+ * request threads. Reads as zero where there is no procfs.
+ */
+public record ContextSwitches(long voluntary, long involuntary) {
+
+    private static final Path TASKS = Path.of("/proc/self/task");
+
+    public static ContextSwitches sample() {
+        if (!Files.isDirectory(TASKS)) return new ContextSwitches(0, 0);
+
+        long voluntary = 0;
+        long involuntary = 0;
+        try (Stream<Path> tasks = Files.list(TASKS)) {
+            for (Path task : (Iterable<Path>) tasks::iterator) {
+                try {
+                    for (String line : Files.readAllLines(task.resolve("status"))) {
+                        if (line.startsWith("voluntary_ctxt_switches:")) {
+                            voluntary += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        } else if (line.startsWith("nonvoluntary_ctxt_switches:")) {
+                            involuntary += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException _) {
+                    // The thread exited between listing and reading.
+                }
+            }
+        } catch (IOException _) {
+            return new ContextSwitches(0, 0);
+        }
+        return new ContextSwitches(voluntary, involuntary);
+    }
+
+    public ContextSwitches since(ContextSwitches earlier) {
+        return new ContextSwitches(voluntary - earlier.voluntary, involuntary - earlier.involuntary);
+    }
+
+    public long total() {
+        return voluntary + involuntary;
+    }
+}
@@ -0,0 +1,87 @@
+package io.carloship.jouwblog.load;
+
+import io.carloship.jouwblog.Application;
+import io.carloship.jouwblog.standin.StandInProfiles;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.runtime.server.EmbeddedServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the same closed loop against the service with the request executor on virtual threads
+ * and on a platform thread pool, and reports throughput, latency and the context switches the
+ * JVM made per request under each. Part of {@code ./gradlew loadTest}; the platform pool is
+ * set with {@code -Pload.platform-type} and {@code -Pload.platform-threads}.
+ */
+@Tag("load")
+class ExecutorComparisonTest {
+
+    private static final Path REPORTS = Path.of("build", "reports", "load");
+    private static final String EXECUTOR = "micronaut.executors." + Application.REQUEST_EXECUTOR;
+
+    private final Duration duration = Duration.parse("PT" + System.getProperty("load.duration", "20s").toUpperCase());
+    private final int clients = Integer.getInteger("load.clients", 64);
+    private final int users = Integer.getInteger("load.users", 200);
+    private final int postsPerUser = Integer.getInteger("load.posts-per-user", 20);
+    private final String platformType = System.getProperty("load.platform-type", "FIXED");
+    private final int platformThreads = Integer.getInteger("load.platform-threads", 200);
+
+    @Test
+    void virtualAgainstPlatformThreads() throws Exception {
+        List<Result> results = new ArrayList<>();
+        results.add(run("virtual", Map.of(EXECUTOR + ".type", "THREAD_PER_TASK", EXECUTOR + ".virtual", true)));
+        results.add(run("platform " + platformType.toLowerCase() + " " + platformThreads, Map.of(
+                EXECUTOR + ".type", platformType,
+                EXECUTOR + ".virtual", false,
+                EXECUTOR + ".n-threads", platformThreads)));
+
+        Files.createDirectories(REPORTS);
+        try (var file = new PrintStream(Files.newOutputStream(REPORTS.resolve("executors.txt")))) {
+            print(System.out, results);
+            print(file, results);
+        }
+        results.forEach(result -> Assertions.assertTrue(result.report().requests() > 0, "no request completed on " + result.executor()));
+    }
+
+    private Result run(String executor, Map<String, Object> properties) throws Exception {
+        try (EmbeddedServer server = ApplicationContext.run(EmbeddedServer.class, properties, StandInProfiles.ENVIRONMENT)) {
+            var http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            var fixture = BlogFixture.seed(http, server.getURI(), users, postsPerUser);
+            var generator = new LoadGenerator(http, URI.create(server.getURI() + "/"), fixture);
+            generator.closedLoop(Workload.MIXED, clients, Duration.ofSeconds(5));
+
+            var before = ContextSwitches.sample();
+            var report = generator.closedLoop(Workload.MIXED, clients, duration);
+            return new Result(executor, report, ContextSwitches.sample().since(before));
+        }
+    }
+
+    private static void print(PrintStream out, List<Result> results) {
+        out.printf("%n%-24s %9s %9s %9s %12s %12s %9s%n",
+                "executor", "req/s", "p50 ms", "p99 ms", "voluntary", "involuntary", "cs/req");
+        for (Result result : results) {
+            var total = result.report().total();
+            long requests = total.getTotalCount();
+            out.printf("%-24s %9.0f %9.2f %9.2f %12d %12d %9.2f%n", result.executor(),
+                    requests / (double) result.report().duration().toSeconds(),
+                    total.getValueAtPercentile(50) / 1_000_000.0,
+                    total.getValueAtPercentile(99) / 1_000_000.0,
+                    result.switches().voluntary(), result.switches().involuntary(),
+                    requests == 0 ? 0 : result.switches().total() / (double) requests);
+        }
+    }
+
+    private record Result(String executor, LoadReport report, ContextSwitches switches) {
+    }
+}
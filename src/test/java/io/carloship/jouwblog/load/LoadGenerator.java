@@ -0,0 +1,117 @@
+package io.carloship.jouwblog.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link Workload} against the API and records per-operation latency in HDR histograms.
+ * <p>
+ * The closed loop runs a fixed number of clients that each send their next request when the
+ * previous one returns, which finds the throughput ceiling. The open loop sends requests at a
+ * fixed rate whether or not earlier ones have returned, and measures latency from when each
+ * request was due rather than when it was sent, so a stall shows up in the percentiles instead
+ * of silently lowering the rate (coordinated omission).
+ */
+public final class LoadGenerator {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final HttpClient http;
+    private final URI base;
+    private final BlogFixture fixture;
+
+    public LoadGenerator(HttpClient http, URI base, BlogFixture fixture) {
+        this.http = http;
+        this.base = base;
+        this.fixture = fixture;
+    }
+
+    public LoadReport closedLoop(Workload workload, int clients, Duration duration) throws InterruptedException {
+        var run = new Run(workload, "closed, " + clients + " clients");
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                var random = new SplittableRandom(i);
+                executor.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        run.call(workload.next(random), random, System.nanoTime());
+                    }
+                });
+            }
+        }
+        return run.report(duration);
+    }
+
+    public LoadReport openLoop(Workload workload, int requestsPerSecond, Duration duration) {
+        var run = new Run(workload, "open, " + requestsPerSecond + " req/s");
+        long interval = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        var random = new SplittableRandom(7);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long due = start; due < end; due += interval) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+
+                var operation = workload.next(random);
+                var requestRandom = random.split();
+                long intended = due;
+                executor.execute(() -> run.call(operation, requestRandom, intended));
+            }
+        }
+        return run.report(duration);
+    }
+
+    private final class Run {
+
+        private final Workload workload;
+        private final String mode;
+        private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+        Run(Workload workload, String mode) {
+            this.workload = workload;
+            this.mode = mode;
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new Recorder(MAX_LATENCY_NANOS, 3));
+                errors.put(operation, new LongAdder());
+            }
+        }
+
+        void call(Operation operation, SplittableRandom random, long startNanos) {
+            try {
+                var response = http.send(operation.request(base, fixture, random), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 500) errors.get(operation).increment();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                errors.get(operation).increment();
+            }
+            latencies.get(operation).recordValue(Math.min(System.nanoTime() - startNanos, MAX_LATENCY_NANOS));
+        }
+
+        LoadReport report(Duration duration) {
+            var histograms = new EnumMap<Operation, Histogram>(Operation.class);
+            var errorCounts = new EnumMap<Operation, Long>(Operation.class);
+            latencies.forEach((operation, recorder) -> histograms.put(operation, recorder.getIntervalHistogram()));
+            errors.forEach((operation, count) -> errorCounts.put(operation, count.sum()));
+            return new LoadReport(workload, mode, duration, histograms, errorCounts);
+        }
+    }
+}
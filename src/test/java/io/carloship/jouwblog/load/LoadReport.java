@@ -0,0 +1,64 @@
+package io.carloship.jouwblog.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Throughput, errors and latency percentiles of one run, per operation and in total.
+ */
+public record LoadReport(Workload workload, String mode, Duration duration,
+                         Map<Operation, Histogram> latencies, Map<Operation, Long> errors) {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    public long requests() {
+        return total().getTotalCount();
+    }
+
+    public long errorCount() {
+        return errors.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public Histogram total() {
+        var total = new Histogram(3);
+        latencies.values().forEach(total::add);
+        return total;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%n%s (%s) for %ds: %.0f req/s, %d errors%n", workload, mode, duration.toSeconds(),
+                requests() / (double) duration.toSeconds(), errorCount());
+        out.printf("%-12s %9s %7s %9s %9s %9s %9s %9s%n", "operation", "requests", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        latencies.forEach((operation, histogram) -> {
+            if (histogram.getTotalCount() > 0) row(out, operation.name(), histogram, errors.get(operation));
+        });
+        row(out, "TOTAL", total(), errorCount());
+    }
+
+    /**
+     * Writes the full percentile distribution of the run in HdrHistogram's {@code .hgrm}
+     * format, which plots and diffs across runs.
+     */
+    public void writeDistribution(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        String name = workload.name().toLowerCase() + "-" + mode.substring(0, mode.indexOf(',')) + ".hgrm";
+        try (var out = new PrintStream(Files.newOutputStream(directory.resolve(name)))) {
+            total().outputPercentileDistribution(out, NANOS_PER_MILLI);
+        }
+    }
+
+    private static void row(PrintStream out, String name, Histogram histogram, long errors) {
+        out.printf("%-12s %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(), errors,
+                histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                histogram.getMaxValue() / NANOS_PER_MILLI);
+    }
+}
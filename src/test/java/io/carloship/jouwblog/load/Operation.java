@@ -0,0 +1,60 @@
+package io.carloship.jouwblog.load;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.SplittableRandom;
+
+/**
+ * One kind of request of the blog API, built against the ids of a {@link BlogFixture}.
+ */
+public enum Operation {
+
+    READ_POST {
+        @Override
+        HttpRequest request(URI base, BlogFixture fixture, SplittableRandom random) {
+            var post = fixture.randomPost(random);
+            return get(base, "/posts/single/" + post.userId() + "/" + post.postId());
+        }
+    },
+    LIST_POSTS {
+        @Override
+        HttpRequest request(URI base, BlogFixture fixture, SplittableRandom random) {
+            return get(base, "/posts/all/" + fixture.randomUser(random) + "/10/1");
+        }
+    },
+    READ_USER {
+        @Override
+        HttpRequest request(URI base, BlogFixture fixture, SplittableRandom random) {
+            return get(base, "/user/" + fixture.randomUser(random));
+        }
+    },
+    CREATE_POST {
+        @Override
+        HttpRequest request(URI base, BlogFixture fixture, SplittableRandom random) {
+            return send(base, "/posts/", "POST", BlogFixture.postJson(fixture.randomUser(random), random));
+        }
+    },
+    PATCH_POST {
+        @Override
+        HttpRequest request(URI base, BlogFixture fixture, SplittableRandom random) {
+            var post = fixture.randomPost(random);
+            String body = random.nextInt(4) == 0
+                    ? "{\"title\":\"Edited " + random.nextInt() + "\"}"
+                    : "{\"likesDelta\":1}";
+            return send(base, "/posts/" + post.userId() + "/" + post.postId(), "PATCH", body);
+        }
+    };
+
+    abstract HttpRequest request(URI base, BlogFixture fixture, SplittableRandom random);
+
+    private static HttpRequest get(URI base, String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).GET().build();
+    }
+
+    private static HttpRequest send(URI base, String path, String method, String json) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
@@ -0,0 +1,53 @@
+package io.carloship.jouwblog.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Weighted mixes of {@link Operation}s.
+ */
+public enum Workload {
+
+    READ_HEAVY(Map.of(
+            Operation.READ_POST, 60,
+            Operation.LIST_POSTS, 20,
+            Operation.READ_USER, 15,
+            Operation.CREATE_POST, 3,
+            Operation.PATCH_POST, 2)),
+    WRITE_HEAVY(Map.of(
+            Operation.READ_POST, 20,
+            Operation.LIST_POSTS, 5,
+            Operation.READ_USER, 5,
+            Operation.CREATE_POST, 40,
+            Operation.PATCH_POST, 30)),
+    MIXED(Map.of(
+            Operation.READ_POST, 40,
+            Operation.LIST_POSTS, 15,
+            Operation.READ_USER, 10,
+            Operation.CREATE_POST, 20,
+            Operation.PATCH_POST, 15));
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    Workload(Map<Operation, Integer> weights) {
+        var ordered = new EnumMap<>(weights);
+        this.operations = ordered.keySet().toArray(Operation[]::new);
+        this.cumulativeWeights = new int[operations.length];
+
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += ordered.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    Operation next(SplittableRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) return operations[i];
+        }
+        return operations[operations.length - 1];
+    }
+}
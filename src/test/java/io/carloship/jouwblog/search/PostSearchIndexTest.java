@@ -0,0 +1,213 @@
+package io.carloship.jouwblog.search;
+
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.standin.InMemoryPostRepository;
+import io.carloship.jouwblog.standin.StandInProfile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+class PostSearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void scoresWithBm25() {
+        var index = new PostSearchIndex();
+        index.index(post("a", "", "apple apple pear"));
+        index.index(post("b", "", "apple pear plum cherry"));
+        index.index(post("c", "", "pear plum"));
+
+        List<SearchHit> hits = index.search("apple", 10);
+
+        Assertions.assertEquals(List.of("a", "b"), hits.stream().map(SearchHit::postId).toList());
+        float avgLength = 9f / 3;
+        Assertions.assertEquals(bm25(2, 3, avgLength, 3, 2), hits.get(0).score(), 1e-5);
+        Assertions.assertEquals(bm25(1, 4, avgLength, 3, 2), hits.get(1).score(), 1e-5);
+    }
+
+    @Test
+    void sumsScoresOverQueryTerms() {
+        var index = new PostSearchIndex();
+        index.index(post("a", "", "apple pear"));
+        index.index(post("b", "", "apple plum"));
+        index.index(post("c", "", "cherry plum"));
+
+        List<SearchHit> hits = index.search("apple plum", 10);
+
+        Assertions.assertEquals("b", hits.getFirst().postId());
+        Assertions.assertEquals(3, hits.size());
+        float expected = bm25(1, 2, 2, 3, 2) * 2;
+        Assertions.assertEquals(expected, hits.getFirst().score(), 1e-5);
+    }
+
+    @Test
+    void boostsTitleTerms() {
+        var index = new PostSearchIndex();
+        index.index(post("body", "", "kiwi mango"));
+        index.index(post("title", "kiwi", "mango"));
+
+        Assertions.assertEquals("title", index.search("kiwi", 1).getFirst().postId());
+    }
+
+    @Test
+    void forgetsRemovedAndReplacedDocuments() {
+        var index = new PostSearchIndex();
+        index.index(post("a", "", "apple"));
+        index.index(post("b", "", "apple"));
+        index.remove("a");
+        index.index(post("b", "", "pear"));
+
+        Assertions.assertEquals(List.of(), index.search("apple", 10));
+        Assertions.assertEquals("b", index.search("pear", 10).getFirst().postId());
+        Assertions.assertEquals(1, index.size());
+    }
+
+    @Test
+    void keepsRankingWhenDeadOrdinalsAreReclaimed() {
+        var index = new PostSearchIndex();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 5_000; i++) {
+                index.index(post("post-" + i, "", "common word" + (i % 100) + (i == 42 ? " rare" : "")));
+            }
+        }
+
+        Assertions.assertEquals(5_000, index.size());
+        Assertions.assertEquals(List.of("post-42"), index.search("rare", 10).stream().map(SearchHit::postId).toList());
+        Assertions.assertEquals(50, index.search("word7", 100).size());
+    }
+
+    @Test
+    void snapshotRoundTrips() throws IOException {
+        var index = new PostSearchIndex();
+        index.index(post("a", "first title", "apple apple pear"));
+        index.index(post("b", "second", "apple pear plum cherry"));
+        index.index(post("c", "third", "pear plum"));
+        index.index(post("d", "gone", "apple"));
+        index.remove("d");
+        Path snapshot = directory.resolve("posts.idx");
+        index.persist(snapshot);
+
+        var loaded = new PostSearchIndex();
+        loaded.load(snapshot);
+
+        Assertions.assertEquals(3, loaded.size());
+        for (String query : List.of("apple", "pear plum", "title", "cherry", "gone")) {
+            Assertions.assertEquals(index.search(query, 10), loaded.search(query, 10), query);
+        }
+    }
+
+    @Test
+    void keepsWritesMadeWhileRestoring() throws IOException {
+        var index = new PostSearchIndex();
+        index.index(post("a", "", "apple"));
+        index.index(post("b", "", "apple"));
+        Path snapshot = directory.resolve("posts.idx");
+        index.persist(snapshot);
+
+        var restored = new PostSearchIndex();
+        restored.beginRestore();
+        restored.index(post("c", "", "apple"));
+        restored.remove("b");
+        restored.load(snapshot);
+        restored.finishRestore();
+
+        Assertions.assertEquals(List.of("a", "c"),
+                restored.search("apple", 10).stream().map(SearchHit::postId).sorted().toList());
+    }
+
+    @Test
+    void catchesUpPostsWrittenElsewhere() {
+        var repository = new InMemoryPostRepository(StandInProfile.INSTANT);
+        repository.save(recentPost("a", "apple")).join();
+        var index = new PostSearchIndex();
+        index.repository = repository;
+
+        index.catchUp();
+        repository.save(recentPost("b", "apple")).join();
+        index.catchUp();
+
+        Assertions.assertEquals(List.of("a", "b"),
+                index.search("apple", 10).stream().map(SearchHit::postId).sorted().toList());
+    }
+
+    @Test
+    void keepsNewerLocalWritesOverCaughtUpCopies() {
+        var repository = new InMemoryPostRepository(StandInProfile.INSTANT);
+        repository.save(recentPost("a", "apple")).join();
+        var index = new PostSearchIndex();
+        index.repository = repository;
+        Post edited = recentPost("a", "pear");
+        edited.setUpdateTimestamp(edited.getUpdateTimestamp() + 1_000);
+        index.index(edited);
+
+        index.catchUp();
+
+        Assertions.assertEquals(List.of(), index.search("apple", 10));
+        Assertions.assertEquals("a", index.search("pear", 10).getFirst().postId());
+    }
+
+    @Test
+    void snapshotResumesCatchUpFromItsMark() throws IOException {
+        var repository = new InMemoryPostRepository(StandInProfile.INSTANT);
+        repository.save(recentPost("a", "apple")).join();
+        var index = new PostSearchIndex();
+        index.repository = repository;
+        index.catchUp();
+        Path snapshot = directory.resolve("posts.idx");
+        index.persist(snapshot);
+
+        // Written after the snapshot, by another node or before a crash.
+        repository.save(recentPost("b", "apple")).join();
+        // Far older than the mark, so only a full scan would read it.
+        repository.save(post("old", "", "apple")).join();
+
+        var restored = new PostSearchIndex();
+        restored.repository = repository;
+        restored.load(snapshot);
+        restored.catchUp();
+
+        Assertions.assertEquals(List.of("a", "b"),
+                restored.search("apple", 10).stream().map(SearchHit::postId).sorted().toList());
+    }
+
+    @Test
+    void neverPersistsBeforeAScanSucceeded() {
+        Path snapshot = directory.resolve("posts.idx");
+        var index = new PostSearchIndex();
+        index.snapshotPath = snapshot.toString();
+        index.repository = new InMemoryPostRepository(new StandInProfile(Duration.ZERO, Duration.ZERO, Duration.ZERO, 0, 1));
+
+        index.catchUp();
+        index.index(post("a", "", "apple"));
+        index.persistIfDirty();
+        Assertions.assertFalse(Files.exists(snapshot));
+
+        index.repository = new InMemoryPostRepository(StandInProfile.INSTANT);
+        index.catchUp();
+        index.persistIfDirty();
+        Assertions.assertTrue(Files.exists(snapshot));
+    }
+
+    private static float bm25(int tf, int length, float avgLength, int docs, int df) {
+        float idf = (float) Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+        float norm = 1.2f * (1 - 0.75f + 0.75f * length / avgLength);
+        return idf * (tf * 2.2f) / (tf + norm);
+    }
+
+    private static Post post(String postId, String title, String text) {
+        return new Post(postId, "user-" + postId, title, 0L, 0L, text, 0, 0);
+    }
+
+    private static Post recentPost(String postId, String text) {
+        long now = System.currentTimeMillis();
+        return new Post(postId, "user-" + postId, "", now, now, text, 0, 0);
+    }
+}
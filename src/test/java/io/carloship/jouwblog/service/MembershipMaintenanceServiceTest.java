@@ -0,0 +1,53 @@
+package io.carloship.jouwblog.service;
+
+import io.carloship.jouwblog.repository.CommentRedisRepository;
+import io.carloship.jouwblog.repository.PostRedisRepository;
+import io.carloship.jouwblog.response.Comment;
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.standin.StandInProfiles;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+@MicronautTest(environments = StandInProfiles.ENVIRONMENT)
+class MembershipMaintenanceServiceTest {
+
+    @Inject
+    MembershipMaintenanceService maintenance;
+
+    @Inject
+    PostRedisRepository postRedisRepository;
+
+    @Inject
+    CommentRedisRepository commentRedisRepository;
+
+    @Inject
+    RedisClusterAsyncCommands<String, String> redis;
+
+    @Test
+    void removesOnlyDanglingPostIds() {
+        postRedisRepository.savePosts(List.of(new Post("live-post", "maintained-user", "", 0L, 0L, "text", 0, 0))).join();
+        redis.sadd("user_posts:{maintained-user}", "gone-post").toCompletableFuture().join();
+
+        maintenance.pass();
+
+        Assertions.assertEquals(Set.of("live-post"),
+                redis.smembers("user_posts:{maintained-user}").toCompletableFuture().join());
+    }
+
+    @Test
+    void removesOnlyDanglingCommentIds() {
+        commentRedisRepository.saveComments(List.of(new Comment("live-comment", "maintained-post", "user", "text", 0))).join();
+        redis.sadd("post_comments:{maintained-post}", "gone-comment").toCompletableFuture().join();
+
+        maintenance.pass();
+
+        Assertions.assertEquals(Set.of("live-comment"),
+                redis.smembers("post_comments:{maintained-post}").toCompletableFuture().join());
+    }
+}
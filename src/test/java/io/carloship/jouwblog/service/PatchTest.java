@@ -0,0 +1,69 @@
+package io.carloship.jouwblog.service;
+
+import io.carloship.jouwblog.response.Post;
+import io.carloship.jouwblog.response.PostPatch;
+import io.carloship.jouwblog.response.User;
+import io.carloship.jouwblog.response.UserPatch;
+import io.carloship.jouwblog.standin.StandInProfiles;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@MicronautTest(environments = StandInProfiles.ENVIRONMENT)
+class PatchTest {
+
+    @Inject
+    UserService userService;
+
+    @Inject
+    PostService postService;
+
+    @Inject
+    RedisClusterAsyncCommands<String, String> redis;
+
+    @Test
+    void renameReplacesTheSearchKey() {
+        User user = userService.saveUser(new User(null, "Before", "name", "before@example.com")).join();
+
+        User patched = userService.patchUser(user.getId(), new UserPatch("After", null, null)).join();
+
+        Assertions.assertEquals("After", patched.getUsername());
+        Assertions.assertEquals("name", patched.getName());
+        Assertions.assertNull(redis.get("user_search:before").toCompletableFuture().join());
+        Assertions.assertEquals(user.getId(), redis.get("user_search:after").toCompletableFuture().join());
+    }
+
+    @Test
+    void renameReplacesTheSearchKeyOfAnUncachedUser() {
+        User user = userService.saveUser(new User(null, "Evicted", "name", "evicted@example.com")).join();
+        redis.unlink("user:" + user.getId()).toCompletableFuture().join();
+
+        userService.patchUser(user.getId(), new UserPatch("Renamed", null, null)).join();
+
+        Assertions.assertNull(redis.get("user_search:evicted").toCompletableFuture().join());
+        Assertions.assertEquals("Renamed", userService.findUser(user.getId()).join().getUsername());
+    }
+
+    @Test
+    void patchedUserIsReadBackWhole() {
+        User user = userService.saveUser(new User(null, "whole", "name", "whole@example.com")).join();
+        userService.findUser(user.getId()).join();
+
+        User patched = userService.patchUser(user.getId(), new UserPatch(null, null, "new@example.com")).join();
+
+        Assertions.assertEquals(new User(user.getId(), "whole", "name", "new@example.com"), patched);
+        Assertions.assertEquals(patched, userService.findUser(user.getId()).join());
+    }
+
+    @Test
+    void countersNeverGoNegative() {
+        Post post = postService.savePost(new Post(null, "patching-user", "title", 0L, 0L, "text", 1, 0)).join();
+
+        Post patched = postService.patchPost("patching-user", post.getPostId(), new PostPatch(null, null, -5, -1)).join();
+
+        Assertions.assertEquals(0, patched.getLikes());
+        Assertions.assertEquals(0, patched.getReplies());
+    }
+}
@@ -0,0 +1,102 @@
+package io.carloship.jouwblog.standin;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * One Mongo collection held in memory.
+ * <p>
+ * Documents are copied on the way in and out, so callers cannot change stored state without
+ * a write, just like with the real driver. Ids are generated {@link ObjectId}s and documents
+ * are kept in id order, which is insertion order, the natural order of a Mongo collection.
+ */
+public class InMemoryCollection<E> {
+
+    private final Map<String, E> documents = new ConcurrentSkipListMap<>();
+    private final Function<E, String> id;
+    private final BiConsumer<E, String> setId;
+    private final UnaryOperator<E> copy;
+
+    public InMemoryCollection(Function<E, String> id, BiConsumer<E, String> setId, UnaryOperator<E> copy) {
+        this.id = id;
+        this.setId = setId;
+        this.copy = copy;
+    }
+
+    /**
+     * Inserts {@code entity}, assigning it a new id when it has none.
+     */
+    public <S extends E> S save(S entity) {
+        if (id.apply(entity) == null) {
+            setId.accept(entity, new ObjectId().toHexString());
+        }
+        documents.put(id.apply(entity), copy.apply(entity));
+        return entity;
+    }
+
+    public <S extends E> S update(S entity) {
+        documents.put(id.apply(entity), copy.apply(entity));
+        return entity;
+    }
+
+    /**
+     * Applies {@code change} to a copy of the document and stores it.
+     *
+     * @return the stored copy, or {@code null} when no document has that id
+     */
+    public E modify(String entityId, Predicate<E> filter, UnaryOperator<E> change) {
+        var result = new ArrayList<E>(1);
+        documents.computeIfPresent(entityId, (_, current) -> {
+            if (!filter.test(current)) return current;
+            E changed = change.apply(copy.apply(current));
+            result.add(changed);
+            return changed;
+        });
+        return result.isEmpty() ? null : copy.apply(result.getFirst());
+    }
+
+    public E find(String entityId) {
+        E document = documents.get(entityId);
+        return document == null ? null : copy.apply(document);
+    }
+
+    public List<E> findAll(Predicate<E> filter) {
+        return stream(filter).toList();
+    }
+
+    public Stream<E> stream(Predicate<E> filter) {
+        return documents.values().stream().filter(filter).map(copy);
+    }
+
+    public long count(Predicate<E> filter) {
+        return documents.values().stream().filter(filter).count();
+    }
+
+    public long delete(String entityId) {
+        return documents.remove(entityId) != null ? 1 : 0;
+    }
+
+    public long delete(Collection<String> entityIds) {
+        return entityIds.stream().mapToLong(this::delete).sum();
+    }
+
+    public long deleteAll() {
+        long count = documents.size();
+        documents.clear();
+        return count;
+    }
+
+    public String idOf(E entity) {
+        return id.apply(entity);
+    }
+}
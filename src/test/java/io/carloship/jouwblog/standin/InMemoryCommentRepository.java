@@ -0,0 +1,139 @@
+package io.carloship.jouwblog.standin;
+
+import io.carloship.jouwblog.repository.CommentRepository;
+import io.carloship.jouwblog.response.Comment;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+@Singleton
+@Replaces(CommentRepository.class)
+@Requires(env = StandInProfiles.ENVIRONMENT)
+public class InMemoryCommentRepository implements CommentRepository {
+
+    final InMemoryCollection<Comment> comments = new InMemoryCollection<>(Comment::getCommentId, Comment::setCommentId, InMemoryCommentRepository::copy);
+
+    private final StandInProfile profile;
+
+    public InMemoryCommentRepository(@Named(StandInProfiles.MONGO) StandInProfile profile) {
+        this.profile = profile;
+    }
+
+    static Comment copy(Comment comment) {
+        return new Comment(comment.getCommentId(), comment.getPostId(), comment.getUserId(), comment.getCommentText(), comment.getLikes());
+    }
+
+    @Override
+    public Page<Comment> findByPostId(String postId, Pageable pageable) {
+        return profile.sync(() -> {
+            List<Comment> all = comments.findAll(comment -> postId.equals(comment.getPostId()));
+            int from = (int) Math.min(pageable.getOffset(), all.size());
+            int to = Math.min(from + pageable.getSize(), all.size());
+            return Page.of(all.subList(from, to), pageable, (long) all.size());
+        });
+    }
+
+    @Override
+    public List<Comment> findByPostIdInList(Collection<String> postIds, Pageable pageable) {
+        var wanted = new HashSet<>(postIds);
+        return profile.sync(() -> comments.stream(comment -> wanted.contains(comment.getPostId()))
+                .skip(pageable.getOffset())
+                .limit(pageable.getSize())
+                .toList());
+    }
+
+    @Override
+    public long countByPostId(String postId) {
+        return profile.sync(() -> comments.count(comment -> postId.equals(comment.getPostId())));
+    }
+
+    @Override
+    public Stream<Comment> queryByCommentIdIsNotNull() {
+        return profile.sync(() -> comments.stream(_ -> true));
+    }
+
+    @Override
+    public <S extends Comment> @NonNull S save(@NonNull S entity) {
+        return profile.sync(() -> comments.save(entity));
+    }
+
+    @Override
+    public <S extends Comment> @NonNull S update(@NonNull S entity) {
+        return profile.sync(() -> comments.update(entity));
+    }
+
+    @Override
+    public <S extends Comment> @NonNull List<S> updateAll(@NonNull Iterable<S> entities) {
+        return profile.sync(() -> {
+            List<S> updated = new ArrayList<>();
+            entities.forEach(comment -> updated.add(comments.update(comment)));
+            return updated;
+        });
+    }
+
+    @Override
+    public <S extends Comment> @NonNull List<S> saveAll(@NonNull Iterable<S> entities) {
+        return profile.sync(() -> {
+            List<S> saved = new ArrayList<>();
+            entities.forEach(comment -> saved.add(comments.save(comment)));
+            return saved;
+        });
+    }
+
+    @Override
+    public @NonNull Optional<Comment> findById(@NonNull String id) {
+        return profile.sync(() -> Optional.ofNullable(comments.find(id)));
+    }
+
+    @Override
+    public boolean existsById(@NonNull String id) {
+        return profile.sync(() -> comments.find(id) != null);
+    }
+
+    @Override
+    public @NonNull List<Comment> findAll() {
+        return profile.sync(() -> comments.findAll(_ -> true));
+    }
+
+    @Override
+    public long count() {
+        return profile.sync(() -> comments.count(_ -> true));
+    }
+
+    @Override
+    public void deleteById(@NonNull String id) {
+        profile.sync(() -> comments.delete(id));
+    }
+
+    @Override
+    public void delete(@NonNull Comment entity) {
+        profile.sync(() -> comments.delete(entity.getCommentId()));
+    }
+
+    @Override
+    public void deleteAll(@NonNull Iterable<? extends Comment> entities) {
+        profile.sync(() -> {
+            long deleted = 0;
+            for (Comment comment : entities) {
+                deleted += comments.delete(comment.getCommentId());
+            }
+            return deleted;
+        });
+    }
+
+    @Override
+    public void deleteAll() {
+        profile.sync(comments::deleteAll);
+    }
+}
@@ -0,0 +1,64 @@
+package io.carloship.jouwblog.standin;
+
+import io.carloship.jouwblog.repository.EntityPatchRepository;
+import io.carloship.jouwblog.response.PostPatch;
+import io.carloship.jouwblog.response.UserPatch;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Field-level updates against the in-memory collections. The parent still gets a
+ * {@code MongoClient} injected, but never uses it.
+ */
+@Singleton
+@Replaces(EntityPatchRepository.class)
+@Requires(env = StandInProfiles.ENVIRONMENT)
+public class InMemoryEntityPatchRepository extends EntityPatchRepository {
+
+    private final InMemoryPostRepository postRepository;
+    private final InMemoryUserRepository userRepository;
+    private final StandInProfile profile;
+
+    public InMemoryEntityPatchRepository(InMemoryPostRepository postRepository, InMemoryUserRepository userRepository,
+                                         @Named(StandInProfiles.MONGO) StandInProfile profile) {
+        this.postRepository = postRepository;
+        this.userRepository = userRepository;
+        this.profile = profile;
+    }
+
+    @Override
+    public CompletableFuture<PostCounters> patchPost(@NonNull String userId, @NonNull String postId,
+                                                     @NonNull PostPatch patch, long updateTimestamp) {
+        return profile.async(() -> {
+            var patched = postRepository.posts.modify(postId, post -> userId.equals(post.getUserId()), post -> {
+                if (patch.getTitle() != null) post.setTitle(patch.getTitle());
+                if (patch.getText() != null) post.setText(patch.getText());
+                if (patch.getLikesDelta() != null) post.setLikes(Math.max(0, post.getLikes() + patch.getLikesDelta()));
+                if (patch.getRepliesDelta() != null) post.setReplies(Math.max(0, post.getReplies() + patch.getRepliesDelta()));
+                post.setUpdateTimestamp(updateTimestamp);
+                return post;
+            });
+            return patched == null ? null : new PostCounters(patched.getLikes(), patched.getReplies());
+        });
+    }
+
+    @Override
+    public CompletableFuture<PatchedUser> patchUser(@NonNull String userId, @NonNull UserPatch patch) {
+        return profile.async(() -> {
+            String[] previousUsername = new String[1];
+            var patched = userRepository.users.modify(userId, _ -> true, user -> {
+                previousUsername[0] = user.getUsername();
+                if (patch.getUsername() != null) user.setUsername(patch.getUsername());
+                if (patch.getName() != null) user.setName(patch.getName());
+                if (patch.getEmail() != null) user.setEmail(patch.getEmail());
+                return user;
+            });
+            return patched == null ? null : new PatchedUser(previousUsername[0]);
+        });
+    }
+}
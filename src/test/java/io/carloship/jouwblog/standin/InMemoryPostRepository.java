@@ -0,0 +1,180 @@
+package io.carloship.jouwblog.standin;
+
+import io.carloship.jouwblog.repository.PostRepository;
+import io.carloship.jouwblog.response.Post;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+@Singleton
+@Replaces(PostRepository.class)
+@Requires(env = StandInProfiles.ENVIRONMENT)
+public class InMemoryPostRepository implements PostRepository {
+
+    final InMemoryCollection<Post> posts = new InMemoryCollection<>(Post::getPostId, Post::setPostId, InMemoryPostRepository::copy);
+
+    private final StandInProfile profile;
+
+    public InMemoryPostRepository(@Named(StandInProfiles.MONGO) StandInProfile profile) {
+        this.profile = profile;
+    }
+
+    static Post copy(Post post) {
+        return new Post(post.getPostId(), post.getUserId(), post.getTitle(), post.getPostTimestamp(),
+                post.getUpdateTimestamp(), post.getText(), post.getLikes(), post.getReplies());
+    }
+
+    @Override
+    public CompletableFuture<Page<Post>> findPostsByUserId(String userId, Pageable pageable) {
+        return profile.async(() -> {
+            List<Post> all = posts.findAll(post -> userId.equals(post.getUserId()));
+            int from = (int) Math.min(pageable.getOffset(), all.size());
+            int to = Math.min(from + pageable.getSize(), all.size());
+            return Page.of(all.subList(from, to), pageable, (long) all.size());
+        });
+    }
+
+    @Override
+    public CompletableFuture<Post> findByUserId(String userId, String postId) {
+        return profile.async(() -> {
+            Post post = posts.find(postId);
+            return post != null && userId.equals(post.getUserId()) ? post : null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Post>> findByPostIdInList(Collection<String> postIds) {
+        return profile.async(() -> {
+            List<Post> found = new ArrayList<>(postIds.size());
+            for (String postId : new HashSet<>(postIds)) {
+                Post post = posts.find(postId);
+                if (post != null) found.add(post);
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> deleteByPostIdInList(Collection<String> postIds) {
+        return profile.async(() -> posts.delete(postIds));
+    }
+
+    @Override
+    public long countByUserId(String userId) {
+        return profile.sync(() -> posts.count(post -> userId.equals(post.getUserId())));
+    }
+
+    @Override
+    public Stream<Post> queryByUserIdOrderByPostTimestampDesc(String userId) {
+        return profile.sync(() -> posts.stream(post -> userId.equals(post.getUserId()))
+                .sorted(Comparator.comparingLong(Post::getPostTimestamp).reversed()));
+    }
+
+    @Override
+    public Stream<String> queryPostIdByPostIdIsNotNull() {
+        return profile.sync(() -> posts.stream(_ -> true).map(Post::getPostId));
+    }
+
+    @Override
+    public Stream<Post> queryByPostIdIsNotNull() {
+        return profile.sync(() -> posts.stream(_ -> true));
+    }
+
+    @Override
+    public Stream<Post> queryByUpdateTimestampGreaterThanEqual(long updateTimestamp) {
+        return profile.sync(() -> posts.stream(post -> post.getUpdateTimestamp() >= updateTimestamp));
+    }
+
+    @Override
+    public List<String> queryPostIdByUserId(String userId, Pageable pageable) {
+        return profile.sync(() -> posts.stream(post -> userId.equals(post.getUserId()))
+                .skip(pageable.getOffset())
+                .limit(pageable.getSize())
+                .map(Post::getPostId)
+                .toList());
+    }
+
+    @Override
+    public <S extends Post> @NonNull CompletableFuture<S> save(@NonNull S entity) {
+        return profile.async(() -> posts.save(entity));
+    }
+
+    @Override
+    public <S extends Post> @NonNull CompletableFuture<S> update(@NonNull S entity) {
+        return profile.async(() -> posts.update(entity));
+    }
+
+    @Override
+    public <S extends Post> @NonNull CompletableFuture<? extends Iterable<S>> updateAll(@NonNull Iterable<S> entities) {
+        return profile.async(() -> {
+            entities.forEach(posts::update);
+            return entities;
+        });
+    }
+
+    @Override
+    public <S extends Post> @NonNull CompletableFuture<? extends Iterable<S>> saveAll(@NonNull Iterable<S> entities) {
+        return profile.async(() -> {
+            entities.forEach(posts::save);
+            return entities;
+        });
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Post> findById(@NonNull String id) {
+        return profile.async(() -> posts.find(id));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Boolean> existsById(@NonNull String id) {
+        return profile.async(() -> posts.find(id) != null);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<? extends Iterable<Post>> findAll() {
+        return profile.async(() -> posts.findAll(_ -> true));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> count() {
+        return profile.async(() -> posts.count(_ -> true));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> deleteById(@NonNull String id) {
+        return profile.async(() -> posts.delete(id));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> delete(@NonNull Post entity) {
+        return profile.async(() -> posts.delete(entity.getPostId()));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> deleteAll(@NonNull Iterable<? extends Post> entities) {
+        return profile.async(() -> {
+            long deleted = 0;
+            for (Post post : entities) {
+                deleted += posts.delete(post.getPostId());
+            }
+            return deleted;
+        });
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> deleteAll() {
+        return profile.async(posts::deleteAll);
+    }
+}
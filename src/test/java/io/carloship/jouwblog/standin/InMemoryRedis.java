@@ -0,0 +1,439 @@
+package io.carloship.jouwblog.standin;
+
+import io.lettuce.core.ExpireArgs;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.async.RedisPubSubAsyncCommands;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A single-node Redis held in memory, exposing the subset of {@link RedisAsyncCommands} and
+ * pub/sub the repositories use.
+ * <p>
+ * Commands run one at a time under one lock, like on the Redis main thread, and their replies
+ * arrive after the latency of the {@link StandInProfile}. Keys expire lazily when touched.
+ * Commands the repositories do not use fail with {@link UnsupportedOperationException}, so a
+ * new command shows up here instead of silently returning nothing.
+ */
+public class InMemoryRedis {
+
+    private static final String CURSOR_PREFIX = "k:";
+
+    private final NavigableMap<String, Entry> keys = new TreeMap<>();
+    private final List<RedisPubSubListener<String, String>> listeners = new CopyOnWriteArrayList<>();
+    private final Set<String> channels = ConcurrentHashMap.newKeySet();
+    private final StandInProfile profile;
+
+    public InMemoryRedis(StandInProfile profile) {
+        this.profile = profile;
+    }
+
+    @SuppressWarnings("unchecked")
+    public RedisAsyncCommands<String, String> asyncCommands() {
+        return (RedisAsyncCommands<String, String>) proxy(RedisAsyncCommands.class, this::command);
+    }
+
+    @SuppressWarnings("unchecked")
+    public StatefulRedisPubSubConnection<String, String> pubSubConnection() {
+        var async = proxy(RedisPubSubAsyncCommands.class, (method, args) -> switch (method.getName()) {
+            case "subscribe" -> reply(() -> {
+                channels.addAll(Arrays.asList((String[]) args[0]));
+                return null;
+            });
+            case "unsubscribe" -> reply(() -> {
+                Arrays.asList((String[]) args[0]).forEach(channels::remove);
+                return null;
+            });
+            default -> throw unsupported(method);
+        });
+
+        return (StatefulRedisPubSubConnection<String, String>) proxy(StatefulRedisPubSubConnection.class, (method, args) -> switch (method.getName()) {
+            case "addListener" -> listeners.add((RedisPubSubListener<String, String>) args[0]);
+            case "removeListener" -> listeners.remove((RedisPubSubListener<String, String>) args[0]);
+            case "async" -> async;
+            case "isOpen" -> true;
+            case "close" -> null;
+            default -> throw unsupported(method);
+        });
+    }
+
+    /**
+     * Number of live keys, for reports.
+     */
+    public synchronized int size() {
+        keys.values().removeIf(Entry::expired);
+        return keys.size();
+    }
+
+    private Object command(Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "get" -> reply(() -> string(arg(args, 0)));
+            case "set" -> reply(() -> {
+                keys.put(arg(args, 0), new Entry(arg(args, 1)));
+                return "OK";
+            });
+            case "del", "unlink" -> reply(() -> {
+                long removed = 0;
+                for (String key : (String[]) args[0]) {
+                    if (live(key) != null) {
+                        keys.remove(key);
+                        removed++;
+                    }
+                }
+                return removed;
+            });
+            case "exists" -> reply(() -> {
+                long found = 0;
+                for (String key : (String[]) args[0]) {
+                    if (live(key) != null) found++;
+                }
+                return found;
+            });
+            case "expire" -> reply(() -> expire(arg(args, 0), args[1], args.length > 2 ? (ExpireArgs) args[2] : null));
+            case "hget" -> reply(() -> {
+                var hash = hash(arg(args, 0), false);
+                return hash == null ? null : hash.get(arg(args, 1));
+            });
+            case "hgetall" -> reply(() -> {
+                var hash = hash(arg(args, 0), false);
+                return hash == null ? new HashMap<>() : new HashMap<>(hash);
+            });
+            case "hset" -> reply(() -> hset(args));
+            case "sadd" -> reply(() -> {
+                var set = set(arg(args, 0), true);
+                long added = 0;
+                for (String member : (String[]) args[1]) {
+                    if (set.add(member)) added++;
+                }
+                return added;
+            });
+            case "srem" -> reply(() -> {
+                String key = arg(args, 0);
+                var set = set(key, false);
+                if (set == null) return 0L;
+                long removed = 0;
+                for (String member : (String[]) args[1]) {
+                    if (set.remove(member)) removed++;
+                }
+                if (set.isEmpty()) keys.remove(key);
+                return removed;
+            });
+            case "smembers" -> reply(() -> {
+                var set = set(arg(args, 0), false);
+                return set == null ? new TreeSet<>() : new TreeSet<>(set);
+            });
+            case "scard" -> reply(() -> {
+                var set = set(arg(args, 0), false);
+                return set == null ? 0L : (long) set.size();
+            });
+            case "scan" -> reply(() -> scan(args));
+            case "sscan" -> reply(() -> sscan(args));
+            case "eval" -> reply(() -> eval(args));
+            case "publish" -> reply(() -> publish(arg(args, 0), arg(args, 1)));
+            default -> throw unsupported(method);
+        };
+    }
+
+    private <T> StandInRedisFuture<T> reply(Supplier<T> command) {
+        return profile.async(() -> {
+            synchronized (this) {
+                return command.get();
+            }
+        }, new StandInRedisFuture<>());
+    }
+
+    private Entry live(String key) {
+        var entry = keys.get(key);
+        if (entry != null && entry.expired()) {
+            keys.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private String string(String key) {
+        var entry = live(key);
+        if (entry == null) return null;
+        if (entry.value instanceof String value) return value;
+        throw wrongType();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key, boolean create) {
+        var entry = live(key);
+        if (entry == null) {
+            if (!create) return null;
+            entry = new Entry(new HashMap<String, String>());
+            keys.put(key, entry);
+        }
+        if (entry.value instanceof Map<?, ?> value) return (Map<String, String>) value;
+        throw wrongType();
+    }
+
+    @SuppressWarnings("unchecked")
+    private NavigableSet<String> set(String key, boolean create) {
+        var entry = live(key);
+        if (entry == null) {
+            if (!create) return null;
+            entry = new Entry(new TreeSet<String>());
+            keys.put(key, entry);
+        }
+        if (entry.value instanceof NavigableSet<?> value) return (NavigableSet<String>) value;
+        throw wrongType();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object hset(Object[] args) {
+        var hash = hash(arg(args, 0), true);
+        if (args[1] instanceof Map<?, ?> fields) {
+            long added = 0;
+            for (var field : ((Map<String, String>) fields).entrySet()) {
+                if (hash.put(field.getKey(), field.getValue()) == null) added++;
+            }
+            return added;
+        }
+        return hash.put(arg(args, 1), arg(args, 2)) == null;
+    }
+
+    private boolean expire(String key, Object ttl, ExpireArgs expireArgs) {
+        var entry = live(key);
+        if (entry == null) return false;
+
+        long millis = ttl instanceof Duration duration ? duration.toMillis() : ((Number) ttl).longValue() * 1000;
+        long expiresAt = System.currentTimeMillis() + millis;
+        if (expireArgs != null) {
+            var options = new CommandArgs<>(StringCodec.UTF8);
+            expireArgs.build(options);
+            String option = options.toCommandString();
+            // NX only sets a missing expiry, GT treats a missing one as infinite.
+            if (option.equals("NX") && entry.expiresAt != 0) return false;
+            if (option.equals("GT") && (entry.expiresAt == 0 || expiresAt <= entry.expiresAt)) return false;
+        }
+
+        entry.expiresAt = expiresAt;
+        return true;
+    }
+
+    private KeyScanCursor<String> scan(Object[] args) {
+        var cursor = (ScanCursor) args[0];
+        var scanArgs = args.length > 1 ? (ScanArgs) args[1] : null;
+        Pattern match = scanMatch(scanArgs);
+
+        var result = new KeyScanCursor<String>();
+        var remaining = after(keys.navigableKeySet(), cursor).iterator();
+        String last = null;
+        for (long examined = 0; examined < scanCount(scanArgs) && remaining.hasNext(); examined++) {
+            last = remaining.next();
+            // Not live(): removing expired keys here would break the iteration.
+            if (!keys.get(last).expired() && (match == null || match.matcher(last).matches())) {
+                result.getKeys().add(last);
+            }
+        }
+        finish(result, last, remaining.hasNext());
+        return result;
+    }
+
+    private ValueScanCursor<String> sscan(Object[] args) {
+        var set = set(arg(args, 0), false);
+        ScanCursor cursor = ScanCursor.INITIAL;
+        ScanArgs scanArgs = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i] instanceof ScanCursor value) cursor = value;
+            if (args[i] instanceof ScanArgs value) scanArgs = value;
+        }
+
+        var result = new ValueScanCursor<String>();
+        if (set == null) {
+            finish(result, null, false);
+            return result;
+        }
+
+        Pattern match = scanMatch(scanArgs);
+        var remaining = after(set, cursor).iterator();
+        String last = null;
+        for (long examined = 0; examined < scanCount(scanArgs) && remaining.hasNext(); examined++) {
+            last = remaining.next();
+            if (match == null || match.matcher(last).matches()) {
+                result.getValues().add(last);
+            }
+        }
+        finish(result, last, remaining.hasNext());
+        return result;
+    }
+
+    /**
+     * Cursors carry the last element returned, so a scan survives writes between pages.
+     */
+    private static NavigableSet<String> after(NavigableSet<String> elements, ScanCursor cursor) {
+        String position = cursor.getCursor();
+        if (position == null || !position.startsWith(CURSOR_PREFIX)) return elements;
+        return elements.tailSet(position.substring(CURSOR_PREFIX.length()), false);
+    }
+
+    private static void finish(ScanCursor result, String last, boolean more) {
+        result.setFinished(!more);
+        result.setCursor(more ? CURSOR_PREFIX + last : ScanCursor.FINISHED.getCursor());
+    }
+
+    private Object eval(Object[] args) {
+        String script = (String) args[0];
+        String[] scriptKeys = (String[]) args[2];
+        String[] values = args.length > 3 ? (String[]) args[3] : new String[0];
+
+        // The replace-if-listed script of restores.
+        if (script.contains("EXISTS") && script.contains("SADD")) {
+            keys.remove(scriptKeys[1]);
+            var set = set(scriptKeys[0], false);
+            if (set == null) return 0L;
+
+            var hash = hash(scriptKeys[1], true);
+            for (int i = 1; i + 1 < values.length; i += 2) {
+                hash.put(values[i], values[i + 1]);
+            }
+            set.add(values[0]);
+            return 1L;
+        }
+        // The HSET-if-exists script of the repositories.
+        if (script.contains("EXISTS") && script.contains("HSET")) {
+            var hash = hash(scriptKeys[0], false);
+            if (hash == null) return null;
+
+            String previous = hash.get(values[0]);
+            for (int i = 0; i + 1 < values.length; i += 2) {
+                hash.put(values[i], values[i + 1]);
+            }
+            return previous;
+        }
+        // The HSET-with-expiry script of the memory sampler.
+        if (script.contains("PEXPIRE") && script.contains("HSET")) {
+            var hash = hash(scriptKeys[0], true);
+            for (int i = 1; i + 1 < values.length; i += 2) {
+                hash.put(values[i], values[i + 1]);
+            }
+            live(scriptKeys[0]).expiresAt = System.currentTimeMillis() + Long.parseLong(values[0]);
+            return 1L;
+        }
+        // The SREM-dangling script of the maintenance pass.
+        if (script.contains("EXISTS") && script.contains("SREM")) {
+            var set = set(scriptKeys[0], false);
+            if (set == null) return 0L;
+            long removed = 0;
+            for (int i = 1; i < scriptKeys.length; i++) {
+                if (live(scriptKeys[i]) == null && set.remove(values[i - 1])) removed++;
+            }
+            if (set.isEmpty()) keys.remove(scriptKeys[0]);
+            return removed;
+        }
+        throw new UnsupportedOperationException("Script is not supported by the in-memory Redis: " + script);
+    }
+
+    private long publish(String channel, String message) {
+        if (!channels.contains(channel)) return 0L;
+
+        listeners.forEach(listener -> profile.async(() -> {
+            listener.message(channel, message);
+            return null;
+        }));
+        return listeners.size();
+    }
+
+    private static Pattern scanMatch(ScanArgs scanArgs) {
+        Object match = scanField(scanArgs, "match");
+        if (match == null) return null;
+
+        String glob = match instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : match.toString();
+        var regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static long scanCount(ScanArgs scanArgs) {
+        Object count = scanField(scanArgs, "count");
+        return count instanceof Number number ? number.longValue() : 10;
+    }
+
+    // ScanArgs only exposes its options by writing them into a command.
+    private static Object scanField(ScanArgs scanArgs, String name) {
+        if (scanArgs == null) return null;
+        try {
+            Field field = ScanArgs.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(scanArgs);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot read ScanArgs." + name, ex);
+        }
+    }
+
+    private static String arg(Object[] args, int index) {
+        return (String) args[index];
+    }
+
+    private static RedisCommandExecutionException wrongType() {
+        return new RedisCommandExecutionException("WRONGTYPE Operation against a key holding the wrong kind of value");
+    }
+
+    private static UnsupportedOperationException unsupported(Method method) {
+        return new UnsupportedOperationException(method.getName() + " is not supported by the in-memory Redis");
+    }
+
+    private static Object proxy(Class<?> type, Handler handler) {
+        InvocationHandler invocation = (proxy, method, args) -> switch (method.getName()) {
+            case "toString" -> "InMemoryRedis " + type.getSimpleName();
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> handler.handle(method, args == null ? new Object[0] : args);
+        };
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocation);
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(Method method, Object[] args);
+    }
+
+    private static final class Entry {
+        final Object value;
+        long expiresAt;
+
+        Entry(Object value) {
+            this.value = value;
+        }
+
+        boolean expired() {
+            return expiresAt != 0 && expiresAt <= System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.carloship.jouwblog.standin;
+
+import io.carloship.jouwblog.repository.UserRepository;
+import io.carloship.jouwblog.response.User;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+@Singleton
+@Replaces(UserRepository.class)
+@Requires(env = StandInProfiles.ENVIRONMENT)
+public class InMemoryUserRepository implements UserRepository {
+
+    final InMemoryCollection<User> users = new InMemoryCollection<>(User::getId, User::setId, InMemoryUserRepository::copy);
+
+    private final StandInProfile profile;
+
+    public InMemoryUserRepository(@Named(StandInProfiles.MONGO) StandInProfile profile) {
+        this.profile = profile;
+    }
+
+    static User copy(User user) {
+        return new User(user.getId(), user.getUsername(), user.getName(), user.getEmail());
+    }
+
+    @Override
+    public CompletableFuture<List<User>> findByIdInList(Collection<String> ids) {
+        return profile.async(() -> {
+            List<User> found = new ArrayList<>(ids.size());
+            for (String id : new HashSet<>(ids)) {
+                User user = users.find(id);
+                if (user != null) found.add(user);
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Stream<String> queryIdByIdIsNotNull() {
+        return profile.sync(() -> users.stream(_ -> true).map(User::getId));
+    }
+
+    @Override
+    public Stream<User> queryByIdIsNotNull() {
+        return profile.sync(() -> users.stream(_ -> true));
+    }
+
+    @Override
+    public <S extends User> @NonNull CompletableFuture<S> save(@NonNull S entity) {
+        return profile.async(() -> users.save(entity));
+    }
+
+    @Override
+    public <S extends User> @NonNull CompletableFuture<S> update(@NonNull S entity) {
+        return profile.async(() -> users.update(entity));
+    }
+
+    @Override
+    public <S extends User> @NonNull CompletableFuture<? extends Iterable<S>> updateAll(@NonNull Iterable<S> entities) {
+        return profile.async(() -> {
+            entities.forEach(users::update);
+            return entities;
+        });
+    }
+
+    @Override
+    public <S extends User> @NonNull CompletableFuture<? extends Iterable<S>> saveAll(@NonNull Iterable<S> entities) {
+        return profile.async(() -> {
+            entities.forEach(users::save);
+            return entities;
+        });
+    }
+
+    @Override
+    public @NonNull CompletableFuture<User> findById(@NonNull String id) {
+        return profile.async(() -> users.find(id));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Boolean> existsById(@NonNull String id) {
+        return profile.async(() -> users.find(id) != null);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<? extends Iterable<User>> findAll() {
+        return profile.async(() -> users.findAll(_ -> true));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> count() {
+        return profile.async(() -> users.count(_ -> true));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> deleteById(@NonNull String id) {
+        return profile.async(() -> users.delete(id));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> delete(@NonNull User entity) {
+        return profile.async(() -> users.delete(entity.getId()));
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> deleteAll(@NonNull Iterable<? extends User> entities) {
+        return profile.async(() -> {
+            long deleted = 0;
+            for (User user : entities) {
+                deleted += users.delete(user.getId());
+            }
+            return deleted;
+        });
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Long> deleteAll() {
+        return profile.async(users::deleteAll);
+    }
+}
@@ -0,0 +1,95 @@
+package io.carloship.jouwblog.standin;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency and failure behaviour of a stand-in backend.
+ * <p>
+ * Every call waits {@code latency} plus a uniformly random share of {@code jitter}, and fails
+ * with a {@link StandInFailure} with probability {@code failureRate}. A further
+ * {@code spikeRate} of calls take {@code spikeLatency} instead, to model the slow tail
+ * hedging and deadlines exist for.
+ */
+public record StandInProfile(Duration latency, Duration jitter, Duration spikeLatency, double spikeRate, double failureRate) {
+
+    public static final StandInProfile INSTANT = new StandInProfile(Duration.ZERO, Duration.ZERO, Duration.ZERO, 0, 0);
+
+    /**
+     * Runs {@code call} now and completes the returned future once the simulated latency
+     * has passed, so commands issued back to back keep their order like on a real connection.
+     */
+    public <T> CompletableFuture<T> async(Supplier<T> call) {
+        return async(call, new CompletableFuture<>());
+    }
+
+    <T, F extends CompletableFuture<T>> F async(Supplier<T> call, F future) {
+        long delay = nextDelayNanos();
+        boolean fail = fails();
+
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            return future;
+        }
+
+        Runnable complete = () -> {
+            if (fail) {
+                future.completeExceptionally(new StandInFailure());
+            } else {
+                future.complete(result);
+            }
+        };
+        if (delay == 0) {
+            complete.run();
+        } else {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(complete);
+        }
+        return future;
+    }
+
+    /**
+     * Blocks the calling thread for the simulated latency, then runs {@code call}.
+     */
+    public <T> T sync(Supplier<T> call) {
+        long delay = nextDelayNanos();
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new StandInFailure();
+            }
+        }
+        if (fails()) {
+            throw new StandInFailure();
+        }
+        return call.get();
+    }
+
+    private long nextDelayNanos() {
+        var random = ThreadLocalRandom.current();
+        if (spikeRate > 0 && random.nextDouble() < spikeRate) {
+            return spikeLatency.toNanos();
+        }
+
+        long jitterNanos = jitter.toNanos();
+        return latency.toNanos() + (jitterNanos > 0 ? random.nextLong(jitterNanos) : 0);
+    }
+
+    private boolean fails() {
+        return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+
+    public static class StandInFailure extends RuntimeException {
+
+        StandInFailure() {
+            super("Injected stand-in failure", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.carloship.jouwblog.standin;
+
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+import java.time.Duration;
+
+/**
+ * The Redis and Mongo profiles, configured under {@code standin.redis.*} and {@code standin.mongo.*}.
+ */
+@Factory
+@Requires(env = StandInProfiles.ENVIRONMENT)
+public class StandInProfiles {
+
+    public static final String ENVIRONMENT = "loadtest";
+    public static final String REDIS = "redis";
+    public static final String MONGO = "mongo";
+
+    @Singleton
+    @Named(REDIS)
+    StandInProfile redis(@Value("${standin.redis.latency:200us}") Duration latency,
+                         @Value("${standin.redis.jitter:100us}") Duration jitter,
+                         @Value("${standin.redis.spike-latency:20ms}") Duration spikeLatency,
+                         @Value("${standin.redis.spike-rate:0}") double spikeRate,
+                         @Value("${standin.redis.failure-rate:0}") double failureRate) {
+        return new StandInProfile(latency, jitter, spikeLatency, spikeRate, failureRate);
+    }
+
+    @Singleton
+    @Named(MONGO)
+    StandInProfile mongo(@Value("${standin.mongo.latency:2ms}") Duration latency,
+                         @Value("${standin.mongo.jitter:1ms}") Duration jitter,
+                         @Value("${standin.mongo.spike-latency:200ms}") Duration spikeLatency,
+                         @Value("${standin.mongo.spike-rate:0}") double spikeRate,
+                         @Value("${standin.mongo.failure-rate:0}") double failureRate) {
+        return new StandInProfile(latency, jitter, spikeLatency, spikeRate, failureRate);
+    }
+}
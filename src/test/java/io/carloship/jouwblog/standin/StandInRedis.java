@@ -0,0 +1,43 @@
+package io.carloship.jouwblog.standin;
+
+import io.carloship.jouwblog.common.RedisConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Primary;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+/**
+ * Replaces {@link RedisConnection} with an {@link InMemoryRedis}. The read and bulk commands
+ * share it, like with {@code jouwblog.redis.split-connections: false}.
+ */
+@Factory
+@Replaces(RedisConnection.class)
+@Requires(env = StandInProfiles.ENVIRONMENT)
+public class StandInRedis {
+
+    @Singleton
+    InMemoryRedis inMemoryRedis(@Named(StandInProfiles.REDIS) StandInProfile profile) {
+        return new InMemoryRedis(profile);
+    }
+
+    @Singleton
+    @Primary
+    RedisClusterAsyncCommands<String, String> asyncCommands(InMemoryRedis redis) {
+        return redis.asyncCommands();
+    }
+
+    @Singleton
+    @Named(RedisConnection.BULK)
+    RedisClusterAsyncCommands<String, String> bulkCommands(InMemoryRedis redis) {
+        return redis.asyncCommands();
+    }
+
+    @Singleton
+    StatefulRedisPubSubConnection<String, String> pubSubConnection(InMemoryRedis redis) {
+        return redis.pubSubConnection();
+    }
+}
@@ -0,0 +1,40 @@
+package io.carloship.jouwblog.standin;
+
+import io.lettuce.core.RedisFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class StandInRedisFuture<T> extends CompletableFuture<T> implements RedisFuture<T> {
+
+    @Override
+    public String getError() {
+        if (!isCompletedExceptionally()) return null;
+        try {
+            join();
+            return null;
+        } catch (RuntimeException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            return cause.getMessage();
+        }
+    }
+
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            get(timeout, unit);
+            return true;
+        } catch (ExecutionException ex) {
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new StandInRedisFuture<>();
+    }
+}
@@ -0,0 +1,70 @@
+package io.carloship.jouwblog.tools;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+import io.carloship.jouwblog.common.DictionaryTrainer;
+import io.carloship.jouwblog.common.TextCompression;
+import org.bson.Document;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trains the post body dictionary on a random sample of the posts in Mongo and reports how
+ * well it compresses a second, held-out sample.
+ * <p>
+ * {@code ./gradlew trainPostDictionary -Pdictionary.uri=mongodb://localhost:27017/jouwBlog}
+ */
+public final class TrainPostDictionary {
+
+    public static void main(String[] args) throws IOException {
+        String uri = System.getProperty("dictionary.uri", "mongodb://localhost:27017/jouwBlog");
+        int samples = Integer.getInteger("dictionary.samples", 20_000);
+        int size = Integer.getInteger("dictionary.size", DictionaryTrainer.DEFAULT_SIZE);
+        int minSize = Integer.getInteger("dictionary.min-size", 1024);
+        Path output = Path.of(System.getProperty("dictionary.output", "src/main/resources" + TextCompression.POST_DICTIONARY));
+
+        List<String> training = new ArrayList<>();
+        List<String> heldOut = new ArrayList<>();
+        try (var client = MongoClients.create(uri)) {
+            var posts = client.getDatabase(new ConnectionString(uri).getDatabase()).getCollection("post");
+            for (Document post : posts.aggregate(List.of(
+                    Aggregates.match(new Document("$expr", new Document("$gte", List.of(new Document("$strLenCP", "$text"), minSize)))),
+                    Aggregates.sample(samples + samples / 10),
+                    Aggregates.project(Projections.include("text"))))) {
+                (heldOut.size() * 10 < training.size() ? heldOut : training).add(post.getString("text"));
+            }
+        }
+        if (training.isEmpty()) {
+            System.out.println("No posts of at least " + minSize + " characters to train on");
+            return;
+        }
+
+        byte[] dictionary = DictionaryTrainer.train(training, size);
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Files.write(output, dictionary);
+        System.out.printf("Trained a %d byte dictionary on %d posts into %s%n", dictionary.length, training.size(), output);
+
+        report("no dictionary", new TextCompression(new byte[0]), heldOut);
+        report("dictionary", new TextCompression(dictionary), heldOut);
+    }
+
+    private static void report(String label, TextCompression codec, List<String> texts) {
+        long raw = 0;
+        long compressed = 0;
+        long start = System.nanoTime();
+        for (String text : texts) {
+            raw += text.getBytes(StandardCharsets.UTF_8).length;
+            compressed += codec.deflate(text, 1).length;
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-13s ratio %.3f over %d held-out posts, %.1f MB/s%n",
+                label, raw == 0 ? 1.0 : (double) compressed / raw, texts.size(), raw * 1e3 / Math.max(nanos, 1));
+    }
+}